@@ -87,8 +87,9 @@ public class Room implements Closeable {
 				"ROOM {}: notifying other participants {} of new participant {}",
 				name, participants.values(), participant.getName());
 
+		final String newParticipantText = newParticipantMsg.toString();
 		for (final RoomParticipant participant1 : participants.values()) {
-			participant1.sendMessage(newParticipantMsg);
+			participant1.sendMessage(newParticipantText);
 		}
 
 		participants.put(participant.getName(), participant);
@@ -127,9 +128,10 @@ public class Room implements Closeable {
 		final JsonObject participantLeftJson = new JsonObject();
 		participantLeftJson.addProperty("id", "participantLeft");
 		participantLeftJson.addProperty("name", name);
+		final String participantLeftText = participantLeftJson.toString();
 		for (final RoomParticipant participant : participants.values()) {
 			participant.cancelSendingVideoTo(name);
-			participant.sendMessage(participantLeftJson);
+			participant.sendMessage(participantLeftText);
 		}
 	}
 
@@ -292,9 +292,20 @@ public class RoomParticipant implements Closeable {
 	}
 
 	public void sendMessage(JsonObject message) {
+		sendMessage(message.toString());
+	}
+
+	/**
+	 * Sends a message already serialized, so the same text can be sent to
+	 * all the participants of the room without serializing it again.
+	 *
+	 * @param message
+	 *            the JSON text of the message
+	 */
+	public void sendMessage(String message) {
 		log.debug("USER {}: Enqueueing message {}", name, message);
 		try {
-			messages.put(message.toString());
+			messages.put(message);
 			log.debug("USER {}: Enqueued message {}", name, message);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
@@ -23,7 +23,9 @@ import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientRuntime;
 import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocketPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +59,72 @@ public class KurentoClient {
 
 	}
 
+	/**
+	 * Creates a client that uses the websocket client, threads and timer of
+	 * the given runtime, so many clients in the same JVM can share them.
+	 *
+	 * @param websocketUrl
+	 *            url of the media server
+	 * @param listener
+	 *            listener of the connection events, or null
+	 * @param runtime
+	 *            the runtime shared with other clients
+	 * @return the client
+	 */
+	public static KurentoClient create(String websocketUrl,
+			KurentoConnectionListener listener, JsonRpcClientRuntime runtime) {
+		log.info("Connecting to KMS in {}", websocketUrl);
+		JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+				websocketUrl, JsonRpcConnectionListenerKurento.create(listener),
+				runtime);
+		client.setLabel("KurentoClient");
+		return new KurentoClient(client);
+	}
+
+	/**
+	 * Creates a client that opens several websocket connections to the media
+	 * server. The objects of each pipeline are always managed through the same
+	 * connection, so traffic of a pipeline (like a big SDP or a burst of
+	 * events) doesn't delay the other pipelines.
+	 *
+	 * @param websocketUrl
+	 *            url of the media server
+	 * @param poolSize
+	 *            number of websocket connections
+	 * @return the client
+	 */
+	public static KurentoClient create(String websocketUrl, int poolSize) {
+		return create(websocketUrl, poolSize, null);
+	}
+
+	/**
+	 * Creates a client that opens several websocket connections to the media
+	 * server. The listener is notified of the events of every connection.
+	 *
+	 * @param websocketUrl
+	 *            url of the media server
+	 * @param poolSize
+	 *            number of websocket connections
+	 * @param listener
+	 *            listener of the connection events
+	 * @return the client
+	 */
+	public static KurentoClient create(String websocketUrl, int poolSize,
+			KurentoConnectionListener listener) {
+
+		if (poolSize == 1) {
+			return create(websocketUrl, listener);
+		}
+
+		log.info("Connecting to KMS in {} with {} connections", websocketUrl,
+				poolSize);
+		JsonRpcClientWebSocketPool client = new JsonRpcClientWebSocketPool(
+				websocketUrl, poolSize,
+				JsonRpcConnectionListenerKurento.create(listener));
+		client.setLabel("KurentoClient");
+		return new KurentoClient(client);
+	}
+
 	KurentoClient(JsonRpcClient client) {
 		this.manager = new RomManager(new RomClientJsonRpcClient(client));
 		try {
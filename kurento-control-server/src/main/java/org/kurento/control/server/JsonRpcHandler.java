@@ -37,6 +37,7 @@ import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.server.NotificationBroadcaster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -255,9 +256,8 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 			}
 
 			if (!sessions.isEmpty()) {
-				for (Session session : sessions) {
-					sendNotificationToClient(request, session);
-				}
+				NotificationBroadcaster.broadcast(sessions, "onEvent",
+						request.getParams());
 			} else {
 				log.error("Received event but no client interested in it: {}",
 						request);
@@ -269,16 +269,6 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 		}
 	}
 
-	private void sendNotificationToClient(Request<JsonObject> request,
-			Session session) {
-
-		try {
-			session.sendNotification("onEvent", request.getParams());
-		} catch (IOException e) {
-			log.error("Exception while sending event from KMS to the client", e);
-		}
-	}
-
 	private void processTransactionRequest(Transaction transaction,
 			Request<JsonObject> request) {
 
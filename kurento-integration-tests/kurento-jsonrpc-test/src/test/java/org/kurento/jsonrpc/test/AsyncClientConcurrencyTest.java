@@ -0,0 +1,159 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Sends a lot of async requests to a handler that delays its responses. With
+ * the old implementation (one blocked thread of a 10 thread pool per request)
+ * the time needed is NUM_REQUESTS / 10 * RESPONSE_DELAY. The same scenario is
+ * also executed with sync requests from a 10 thread pool to compare both.
+ */
+public class AsyncClientConcurrencyTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(AsyncClientConcurrencyTest.class);
+
+	private static final int NUM_REQUESTS = 500;
+
+	private static final int RESPONSE_DELAY = 200;
+
+	private static final int BLOCKING_THREADS = 10;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private final ScheduledExecutorService scheduler = Executors
+				.newScheduledThreadPool(4);
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				final Request<JsonObject> request) throws Exception {
+
+			transaction.startAsync();
+
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						transaction.sendResponse(request.getParams());
+					} catch (IOException e) {
+						log.warn("Exception sending response", e);
+					}
+				}
+			}, RESPONSE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/async_concurrency");
+
+		// Warm up
+		client.sendRequest("echo", Integer.valueOf(0), Integer.class);
+
+		long asyncTime = sendAsyncRequests(client);
+		long blockingTime = sendBlockingRequests(client);
+
+		log.info("{} requests with a server delay of {} ms: "
+				+ "async={} ms, blocking ({} threads)={} ms", NUM_REQUESTS,
+				RESPONSE_DELAY, asyncTime, BLOCKING_THREADS, blockingTime);
+
+		client.close();
+
+		Assert.assertTrue("Async requests should not be limited by threads",
+				asyncTime < blockingTime);
+	}
+
+	private long sendAsyncRequests(JsonRpcClient client)
+			throws InterruptedException {
+
+		final CountDownLatch latch = new CountDownLatch(NUM_REQUESTS);
+		final AtomicInteger errors = new AtomicInteger();
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+
+			JsonObject params = new JsonObject();
+			params.addProperty("value", i);
+
+			client.sendRequest("echo", params, new Continuation<JsonElement>() {
+
+				@Override
+				public void onSuccess(JsonElement result) {
+					latch.countDown();
+				}
+
+				@Override
+				public void onError(Throwable cause) {
+					log.warn("Error in async request", cause);
+					errors.incrementAndGet();
+					latch.countDown();
+				}
+			});
+		}
+
+		Assert.assertTrue("Timeout waiting for async responses",
+				latch.await(30, TimeUnit.SECONDS));
+
+		Assert.assertEquals(0, errors.get());
+
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private long sendBlockingRequests(final JsonRpcClient client)
+			throws InterruptedException {
+
+		ExecutorService executor = Executors
+				.newFixedThreadPool(BLOCKING_THREADS);
+
+		final CountDownLatch latch = new CountDownLatch(NUM_REQUESTS);
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+			final int value = i;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						client.sendRequest("echo", Integer.valueOf(value),
+								Integer.class);
+					} catch (IOException e) {
+						log.warn("Error in blocking request", e);
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+
+		Assert.assertTrue("Timeout waiting for blocking responses",
+				latch.await(60, TimeUnit.SECONDS));
+
+		executor.shutdown();
+
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class BatchTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_REQUESTS = 10;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("fail".equals(request.getMethod())) {
+				throw new RuntimeException("Failed request");
+			}
+
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	private List<Request<JsonObject>> createBatch() {
+
+		List<Request<JsonObject>> requests = new ArrayList<>();
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+			JsonObject params = new JsonObject();
+			params.addProperty("value", i);
+			requests.add(new Request<>(i % 3 == 2 ? "fail" : "echo", params));
+		}
+		return requests;
+	}
+
+	private void assertResponses(List<Response<JsonElement>> responses) {
+
+		Assert.assertEquals(NUM_REQUESTS, responses.size());
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+
+			Response<JsonElement> response = responses.get(i);
+
+			if (i % 3 == 2) {
+				Assert.assertTrue(response.isError());
+			} else {
+				Assert.assertEquals(i, response.getResult().getAsJsonObject()
+						.get("value").getAsInt());
+			}
+		}
+	}
+
+	@Test
+	public void syncBatchTest() throws IOException {
+
+		JsonRpcClient client = createJsonRpcClient("/batch");
+
+		assertResponses(client.sendBatch(createBatch()));
+
+		client.close();
+	}
+
+	@Test
+	public void asyncBatchTest() throws IOException, InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/batch");
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<List<Response<JsonElement>>> responses = new AtomicReference<>();
+
+		client.sendBatch(createBatch(),
+				new Continuation<List<Response<JsonElement>>>() {
+
+					@Override
+					public void onSuccess(List<Response<JsonElement>> result) {
+						responses.set(result);
+						latch.countDown();
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						latch.countDown();
+					}
+				});
+
+		Assert.assertTrue("Timeout waiting for batch responses",
+				latch.await(10, TimeUnit.SECONDS));
+
+		Assert.assertNotNull("Error sending batch", responses.get());
+		assertResponses(responses.get());
+
+		client.close();
+	}
+
+}
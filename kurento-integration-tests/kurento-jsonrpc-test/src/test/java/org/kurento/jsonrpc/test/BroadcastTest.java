@@ -0,0 +1,95 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.NotificationBroadcaster;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonObject;
+
+public class BroadcastTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_CLIENTS = 5;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private final List<Session> sessions = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("join".equals(request.getMethod())) {
+				sessions.add(transaction.getSession());
+				transaction.sendResponse(sessions.size());
+			} else {
+				transaction.sendResponse(NotificationBroadcaster.broadcast(
+						sessions, "event", request.getParams()));
+			}
+		}
+
+		@Override
+		public void afterConnectionClosed(Session session, String status)
+				throws Exception {
+			sessions.remove(session);
+		}
+	}
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		final CountDownLatch eventsLatch = new CountDownLatch(NUM_CLIENTS);
+
+		List<JsonRpcClient> clients = new ArrayList<>();
+
+		try {
+			for (int i = 0; i < NUM_CLIENTS; i++) {
+
+				JsonRpcClient client = createJsonRpcClient("/broadcast");
+
+				client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+
+					@Override
+					public void handleRequest(Transaction transaction,
+							Request<JsonObject> request) throws Exception {
+
+						if ("event".equals(request.getMethod())
+								&& request.getParams().get("value").getAsInt() == 42) {
+							eventsLatch.countDown();
+						}
+					}
+				});
+
+				clients.add(client);
+				client.sendRequest("join");
+			}
+
+			JsonObject params = new JsonObject();
+			params.addProperty("value", 42);
+
+			Assert.assertEquals(NUM_CLIENTS, clients.get(0)
+					.sendRequest("broadcast", params).getAsInt());
+
+			Assert.assertTrue("The event has not been received by all clients",
+					eventsLatch.await(5000, TimeUnit.MILLISECONDS));
+
+		} finally {
+			for (JsonRpcClient client : clients) {
+				client.close();
+			}
+		}
+	}
+
+}
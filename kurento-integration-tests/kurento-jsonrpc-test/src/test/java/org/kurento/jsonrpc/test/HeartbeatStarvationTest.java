@@ -0,0 +1,64 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.client.JsonRpcClientRuntime;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+public class HeartbeatStarvationTest extends JsonRpcConnectorBaseTest {
+
+	private static final int DISPATCH_THREADS = 2;
+
+	@Test
+	public void blockedHandlersTest() throws Exception {
+
+		JsonRpcClientRuntime runtime = new JsonRpcClientRuntime(
+				DISPATCH_THREADS);
+
+		// The server closes connections without pings
+		JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+				"ws://localhost:" + getPort() + "/pingpong", null, runtime);
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		try {
+			Assert.assertEquals("OK",
+					client.sendRequest("echo", "Params", String.class));
+
+			Session wsSession = client.getWebSocketSession();
+
+			// Handlers of other clients blocking all the dispatch threads
+			for (int i = 0; i < DISPATCH_THREADS; i++) {
+				runtime.getDispatchExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							blocked.await(30, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+
+			client.setHeartbeatInterval(500);
+			client.enableHeartbeat();
+
+			Thread.sleep(10000);
+
+			Assert.assertSame("Connection closed without heartbeat",
+					wsSession, client.getWebSocketSession());
+			Assert.assertTrue(wsSession.isOpen());
+
+		} finally {
+			blocked.countDown();
+			client.close();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientHttp;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HttpLongPollingTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HttpLongPollingTest.class);
+
+	private static final int NUM_EVENTS = 10;
+
+	private static final long MAX_AVERAGE_LATENCY = 100;
+
+	public static class Handler extends DefaultJsonRpcHandler<Integer> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<Integer> request) throws Exception {
+
+			transaction.sendResponse(request.getParams());
+
+			final Session session = transaction.getSession();
+			final int numEvents = request.getParams();
+
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < numEvents; i++) {
+
+							// Let the client poll before the next event
+							Thread.sleep(200);
+
+							long sent = System.currentTimeMillis();
+							long echo = session.sendRequest("event",
+									Long.valueOf(sent), Long.class);
+
+							Assert.assertEquals(sent, echo);
+						}
+					} catch (Exception e) {
+						log.error("Exception sending events", e);
+					}
+				}
+			}.start();
+		}
+	}
+
+	@Test
+	public void serverRequestLatencyTest() throws IOException,
+			InterruptedException {
+
+		final CountDownLatch eventsLatch = new CountDownLatch(NUM_EVENTS);
+		final AtomicLong totalLatency = new AtomicLong();
+
+		try (JsonRpcClientHttp client = new JsonRpcClientHttp(
+				"http://localhost:" + getPort() + "/longpolling")) {
+
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<Long>() {
+
+				@Override
+				public void handleRequest(Transaction transaction,
+						Request<Long> request) throws Exception {
+
+					long latency = System.currentTimeMillis()
+							- request.getParams();
+					totalLatency.addAndGet(latency);
+
+					transaction.sendResponse(request.getParams());
+					eventsLatch.countDown();
+				}
+			});
+
+			Assert.assertEquals(Integer.valueOf(NUM_EVENTS), client
+					.sendRequest("events", NUM_EVENTS, Integer.class));
+
+			Assert.assertTrue("Events have not been received",
+					eventsLatch.await(30, TimeUnit.SECONDS));
+		}
+
+		long averageLatency = totalLatency.get() / NUM_EVENTS;
+
+		log.info("Average latency of server requests: {} millis",
+				averageLatency);
+
+		Assert.assertTrue("Server requests should be delivered in less than "
+				+ MAX_AVERAGE_LATENCY + " millis, but took " + averageLatency,
+				averageLatency < MAX_AVERAGE_LATENCY);
+	}
+
+}
@@ -1,6 +1,9 @@
 package org.kurento.jsonrpc.test;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -8,6 +11,7 @@ import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcErrorException;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
 import org.kurento.jsonrpc.message.Request;
@@ -15,11 +19,15 @@ import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonElement;
+
 public class ReconnectionTest extends JsonRpcConnectorBaseTest {
 	
 	private static final Logger log = LoggerFactory
 			.getLogger(ReconnectionTest.class);
 	
+	private static final int NUM_REQUESTS = 10;
+	
 	public static class Handler extends DefaultJsonRpcHandler<String> {
 		
 		@Override
@@ -120,4 +128,54 @@ public class ReconnectionTest extends JsonRpcConnectorBaseTest {
 		
 	}
 	
+	@Test
+	public void requestsDuringReconnectionTest() throws Exception {
+		
+		JsonRpcClient client = createJsonRpcClient("/reconnection");
+		
+		if (client instanceof JsonRpcClientWebSocket) {
+			
+			Assert.assertEquals("new",
+					client.sendRequest("sessiontest", String.class));
+			
+			JsonRpcClientWebSocket webSocketClient =
+					(JsonRpcClientWebSocket) client;
+			webSocketClient.setReconnectionBackoff(500, 1000);
+			webSocketClient.closeNativeSession();
+			
+			// Wait for the disconnection to be detected
+			Thread.sleep(100);
+			
+			final CountDownLatch latch = new CountDownLatch(NUM_REQUESTS);
+			final AtomicInteger oldSessionResponses = new AtomicInteger();
+			
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				client.sendRequest("sessiontest", null,
+						new Continuation<JsonElement>() {
+							
+							@Override
+							public void onSuccess(JsonElement result) {
+								if ("old".equals(result.getAsString())) {
+									oldSessionResponses.incrementAndGet();
+								}
+								latch.countDown();
+							}
+							
+							@Override
+							public void onError(Throwable cause) {
+								log.warn("Request failed", cause);
+								latch.countDown();
+							}
+						});
+			}
+			
+			Assert.assertTrue("Requests sent while reconnecting were not "
+					+ "answered", latch.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(NUM_REQUESTS, oldSessionResponses.get());
+		}
+		
+		client.close();
+		
+	}
+	
 }
@@ -0,0 +1,82 @@
+package org.kurento.jsonrpc.test;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class RequestDispatchTest extends JsonRpcConnectorBaseTest {
+
+	private static final CountDownLatch started = new CountDownLatch(1);
+
+	private static final CountDownLatch blocked = new CountDownLatch(1);
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("slow".equals(request.getMethod())) {
+				started.countDown();
+				blocked.await(10, TimeUnit.SECONDS);
+			}
+
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	@Test
+	public void overloadTest() throws IOException, InterruptedException {
+
+		final CountDownLatch responses = new CountDownLatch(2);
+
+		Continuation<JsonElement> continuation = new Continuation<JsonElement>() {
+			@Override
+			public void onSuccess(JsonElement result) {
+				responses.countDown();
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+			}
+		};
+
+		try (JsonRpcClient client = createJsonRpcClient("/dispatch")) {
+
+			// The first request blocks the handler and the second one waits
+			client.sendRequest("slow", new JsonObject(), continuation);
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+			client.sendRequest("echo", new JsonObject(), continuation);
+
+			// Pings are not queued behind the requests
+			client.sendRequest("ping");
+
+			try {
+				client.sendRequest("echo", new JsonObject());
+				Assert.fail("Requests over the limit should be rejected");
+			} catch (JsonRpcErrorException e) {
+				Assert.assertEquals(ERROR_SERVER_OVERLOADED, e.getCode());
+			}
+
+			blocked.countDown();
+			Assert.assertTrue("Queued requests have not been processed",
+					responses.await(10, TimeUnit.SECONDS));
+		}
+	}
+
+}
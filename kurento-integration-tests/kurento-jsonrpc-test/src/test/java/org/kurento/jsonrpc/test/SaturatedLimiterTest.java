@@ -0,0 +1,130 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.ConcurrencyLimiter;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.client.RequestFuture;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SaturatedLimiterTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(SaturatedLimiterTest.class);
+
+	private static final int LIMIT = 2;
+
+	public static class Handler extends DefaultJsonRpcHandler<String> {
+
+		private static final Queue<Transaction> slowRequests = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<String> request) throws Exception {
+
+			if ("slow".equals(request.getMethod())) {
+				// Answered when the test releases them
+				transaction.startAsync();
+				slowRequests.add(transaction);
+			} else {
+				transaction.sendResponse(transaction.getSession().isNew() ? "new"
+						: "old");
+			}
+		}
+
+		@Override
+		public void afterConnectionEstablished(
+				org.kurento.jsonrpc.Session session) throws Exception {
+			session.setReconnectionTimeout(5000);
+		}
+
+		private static void releaseSlowRequests() {
+			Transaction transaction;
+			while ((transaction = slowRequests.poll()) != null) {
+				try {
+					transaction.sendResponse("slow");
+				} catch (Exception e) {
+					log.debug("Slow request sent before reconnecting", e);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void heartbeatAndReconnectionTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/limited");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			JsonRpcClientWebSocket wsClient = (JsonRpcClientWebSocket) client;
+
+			ConcurrencyLimiter limiter = new ConcurrencyLimiter(LIMIT, LIMIT,
+					LIMIT);
+			client.setConcurrencyLimiter(limiter);
+
+			Assert.assertEquals("new",
+					client.sendRequest("session", String.class));
+
+			List<RequestFuture<String>> slowResponses = new ArrayList<>();
+			for (int i = 0; i < LIMIT; i++) {
+				slowResponses.add(client.sendRequestAsync("slow", null,
+						String.class));
+			}
+
+			Assert.assertEquals(LIMIT, limiter.getInFlight());
+
+			// Pings are sent with all the slots in use
+			Session wsSession = wsClient.getWebSocketSession();
+			client.setHeartbeatInterval(200);
+			client.enableHeartbeat();
+
+			Thread.sleep(1500);
+
+			Assert.assertSame("The heartbeat closed the connection",
+					wsSession, wsClient.getWebSocketSession());
+			Assert.assertTrue(wsSession.isOpen());
+
+			// And so is the reconnection request
+			client.disableHeartbeat();
+			wsClient.closeNativeSession();
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while (wsClient.getWebSocketSession() == wsSession
+					|| !wsClient.getWebSocketSession().isOpen()) {
+				Assert.assertTrue("Client not reconnected",
+						System.currentTimeMillis() < deadline);
+				Thread.sleep(50);
+			}
+
+			// The slow requests are sent again after reconnecting
+			Thread.sleep(500);
+			Handler.releaseSlowRequests();
+
+			for (RequestFuture<String> slowResponse : slowResponses) {
+				Assert.assertEquals("slow",
+						slowResponse.get(10, TimeUnit.SECONDS));
+			}
+
+			Assert.assertEquals("Session not resumed", "old",
+					client.sendRequest("session", String.class));
+			Assert.assertEquals(0, limiter.getNumRejected());
+		}
+
+		client.close();
+	}
+
+}
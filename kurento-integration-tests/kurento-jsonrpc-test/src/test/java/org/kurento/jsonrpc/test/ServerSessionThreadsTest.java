@@ -0,0 +1,145 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClientRuntime;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class ServerSessionThreadsTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ServerSessionThreadsTest.class);
+
+	private static final int NUM_SESSIONS = 200;
+
+	private static final int NUM_REQUESTS = 5;
+
+	private static final int DISPATCH_THREADS = 4;
+
+	/**
+	 * Sends requests to the client asynchronously and answers the request of
+	 * the client with the sum of the results when all of them are answered.
+	 */
+	public static class Handler extends DefaultJsonRpcHandler<Integer> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<Integer> request) throws Exception {
+
+			transaction.startAsync();
+
+			final int numRequests = request.getParams();
+			final AtomicInteger pending = new AtomicInteger(numRequests);
+			final AtomicInteger sum = new AtomicInteger();
+
+			for (int i = 0; i < numRequests; i++) {
+
+				JsonObject params = new JsonObject();
+				params.addProperty("value", i);
+
+				transaction.getSession().sendRequest("question", params,
+						new Continuation<JsonElement>() {
+
+							@Override
+							public void onSuccess(JsonElement result) {
+								sum.addAndGet(result.getAsJsonObject()
+										.get("value").getAsInt());
+								if (pending.decrementAndGet() == 0) {
+									try {
+										transaction.sendResponse(sum.get());
+									} catch (IOException e) {
+										log.error("Exception sending response",
+												e);
+									}
+								}
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								try {
+									transaction.sendError(cause);
+								} catch (IOException e) {
+									log.error("Exception sending error", e);
+								}
+							}
+						});
+			}
+		}
+	}
+
+	@Test
+	public void test() throws IOException {
+
+		JsonRpcClientRuntime runtime = new JsonRpcClientRuntime(
+				DISPATCH_THREADS);
+
+		List<JsonRpcClientWebSocket> clients = new ArrayList<>();
+
+		try {
+			connectSessions(runtime, clients, NUM_SESSIONS / 2);
+			int threadsAtHalf = Thread.activeCount();
+
+			connectSessions(runtime, clients, NUM_SESSIONS);
+			int threadsAtFull = Thread.activeCount();
+
+			log.info("{} threads with {} sessions, {} with {} sessions",
+					threadsAtHalf, NUM_SESSIONS / 2, threadsAtFull,
+					NUM_SESSIONS);
+
+			// Before, each session had its own pool of 10 threads, so doubling
+			// the sessions added hundreds of threads
+			Assert.assertTrue("Threads grow with the number of sessions: "
+					+ threadsAtHalf + " -> " + threadsAtFull, threadsAtFull
+					- threadsAtHalf < NUM_SESSIONS / 4);
+
+		} finally {
+			for (JsonRpcClientWebSocket client : clients) {
+				client.close();
+			}
+		}
+	}
+
+	private void connectSessions(JsonRpcClientRuntime runtime,
+			List<JsonRpcClientWebSocket> clients, int numSessions)
+			throws IOException {
+
+		int expectedSum = 0;
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+			expectedSum += i;
+		}
+
+		while (clients.size() < numSessions) {
+
+			JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+					"ws://localhost:" + getPort() + "/serverthreads", null,
+					runtime);
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+				@Override
+				public void handleRequest(Transaction transaction,
+						Request<JsonObject> request) throws Exception {
+					transaction.sendResponse(request.getParams());
+				}
+			});
+			clients.add(client);
+
+			Assert.assertEquals(Integer.valueOf(expectedSum), client
+					.sendRequest("ask", NUM_REQUESTS, Integer.class));
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SessionResumptionTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(SessionResumptionTest.class);
+
+	private static final int NUM_EVENTS = 10;
+
+	public static class Handler extends DefaultJsonRpcHandler<Integer> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<Integer> request) throws Exception {
+
+			transaction.sendResponse(request.getParams());
+
+			final Session session = transaction.getSession();
+			final int numEvents = request.getParams();
+
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						// Sent while the client is disconnected
+						Thread.sleep(200);
+
+						for (int i = 0; i < numEvents; i++) {
+							session.sendNotification("event", i);
+						}
+					} catch (Exception e) {
+						log.error("Exception sending events", e);
+					}
+				}
+			}.start();
+		}
+
+		@Override
+		public void afterConnectionEstablished(Session session)
+				throws Exception {
+			session.setReconnectionTimeout(5000);
+		}
+	}
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/resumption");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			final CountDownLatch eventsLatch = new CountDownLatch(NUM_EVENTS);
+			final Set<Integer> events = Collections
+					.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+			final AtomicInteger duplicates = new AtomicInteger();
+
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<Integer>() {
+
+				@Override
+				public void handleRequest(Transaction transaction,
+						Request<Integer> request) throws Exception {
+
+					if (events.add(request.getParams())) {
+						eventsLatch.countDown();
+					} else {
+						duplicates.incrementAndGet();
+					}
+				}
+			});
+
+			JsonRpcClientWebSocket webSocketClient = (JsonRpcClientWebSocket) client;
+			webSocketClient.setReconnectionBackoff(500, 1000);
+
+			Assert.assertEquals(Integer.valueOf(NUM_EVENTS),
+					client.sendRequest("events", NUM_EVENTS, Integer.class));
+
+			webSocketClient.closeNativeSession();
+
+			Assert.assertTrue("Events sent while disconnected were lost",
+					eventsLatch.await(10, TimeUnit.SECONDS));
+
+			// A second disconnection doesn't send them again
+			webSocketClient.closeNativeSession();
+			Thread.sleep(1000);
+
+			Assert.assertEquals(Integer.valueOf(0),
+					client.sendRequest("events", 0, Integer.class));
+			Assert.assertEquals(0, duplicates.get());
+		}
+
+		client.close();
+	}
+
+}
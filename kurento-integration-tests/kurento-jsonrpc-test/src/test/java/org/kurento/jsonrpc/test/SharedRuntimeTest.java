@@ -0,0 +1,68 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.client.JsonRpcClientRuntime;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+public class SharedRuntimeTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(SharedRuntimeTest.class);
+
+	private static final int NUM_CLIENTS = 50;
+
+	private static final int DISPATCH_THREADS = 4;
+
+	@Test
+	public void test() throws IOException {
+
+		int threadsBefore = Thread.activeCount();
+
+		JsonRpcClientRuntime runtime = new JsonRpcClientRuntime(
+				DISPATCH_THREADS);
+
+		List<JsonRpcClientWebSocket> clients = new ArrayList<>();
+
+		for (int i = 0; i < NUM_CLIENTS; i++) {
+
+			JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+					"ws://localhost:" + getPort() + "/jsonrpc", null, runtime);
+			client.setLabel("client-" + i);
+			clients.add(client);
+
+			JsonObject params = new JsonObject();
+			params.addProperty("client", i);
+
+			JsonObject result = client.sendRequest("echo", params,
+					JsonObject.class);
+
+			Assert.assertEquals(i, result.get("client").getAsInt());
+		}
+
+		Assert.assertEquals(NUM_CLIENTS, runtime.getReferences());
+
+		int threads = Thread.activeCount() - threadsBefore;
+		log.info("{} threads used by {} clients", threads, NUM_CLIENTS);
+
+		// Before, each client had its own websocket client and executors
+		Assert.assertTrue("Clients are not sharing threads: " + threads,
+				threads < NUM_CLIENTS);
+
+		for (JsonRpcClientWebSocket client : clients) {
+			client.close();
+		}
+
+		Assert.assertEquals(0, runtime.getReferences());
+	}
+
+}
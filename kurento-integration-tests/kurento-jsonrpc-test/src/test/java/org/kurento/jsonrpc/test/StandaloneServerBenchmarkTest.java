@@ -0,0 +1,163 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.kurento.commons.testing.JsonRpcConnectorTests;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.JettyJsonRpcServer;
+import org.kurento.jsonrpc.test.base.BootTestApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the startup time and the heap used by each connection of the
+ * standalone server and the server configured with Spring Boot. Both publish
+ * the same handler, and the heap per connection includes the client side,
+ * that is the same in both.
+ */
+@Category(JsonRpcConnectorTests.class)
+public class StandaloneServerBenchmarkTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(StandaloneServerBenchmarkTest.class);
+
+	private static final int NUM_CONNECTIONS = 100;
+
+	private static final String PATH = "/benchmark";
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	@Test
+	public void startupAndMemoryTest() throws Exception {
+
+		int port = getPort();
+
+		// Started before the Spring server, so it doesn't benefit from the
+		// classes already loaded
+		long start = System.nanoTime();
+
+		JettyJsonRpcServer server = new JettyJsonRpcServer(port);
+		server.addHandler(new Handler(), PATH);
+		server.start();
+
+		long standaloneStartup = millisSince(start);
+
+		long standaloneMemory;
+		try {
+			standaloneMemory = measureMemoryPerConnection(port);
+		} finally {
+			server.close();
+		}
+
+		start = System.nanoTime();
+
+		Properties properties = new Properties();
+		properties.put("server.port", Integer.toString(port));
+
+		SpringApplication application = new SpringApplication(
+				BootTestApplication.class);
+		application.setDefaultProperties(properties);
+
+		ConfigurableApplicationContext context = application.run();
+
+		long springStartup = millisSince(start);
+
+		long springMemory;
+		try {
+			springMemory = measureMemoryPerConnection(port);
+		} finally {
+			context.close();
+		}
+
+		log.info("Startup time: standalone {} ms, Spring {} ms",
+				standaloneStartup, springStartup);
+
+		log.info("Heap per connection ({} connections): standalone {} bytes,"
+				+ " Spring {} bytes", NUM_CONNECTIONS, standaloneMemory,
+				springMemory);
+
+		Assert.assertTrue("Standalone server should start faster than the "
+				+ "Spring one, but took " + standaloneStartup + " ms and "
+				+ springStartup + " ms", standaloneStartup < springStartup);
+	}
+
+	private long measureMemoryPerConnection(int port) throws IOException,
+			InterruptedException {
+
+		String url = "ws://localhost:" + port + PATH;
+
+		// The classes loaded by the first connection are not measured
+		try (JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(url)) {
+			client.sendRequest("echo", new JsonObject());
+		}
+
+		long before = usedHeap();
+
+		List<JsonRpcClientWebSocket> clients = new ArrayList<>();
+		try {
+			for (int i = 0; i < NUM_CONNECTIONS; i++) {
+
+				JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(url);
+				clients.add(client);
+
+				JsonObject params = new JsonObject();
+				params.addProperty("client", i);
+
+				JsonObject result = client.sendRequest("echo", params,
+						JsonObject.class);
+
+				Assert.assertEquals(i, result.get("client").getAsInt());
+			}
+
+			return (usedHeap() - before) / NUM_CONNECTIONS;
+
+		} finally {
+			for (JsonRpcClientWebSocket client : clients) {
+				client.close();
+			}
+		}
+	}
+
+	private static long usedHeap() throws InterruptedException {
+
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long millisSince(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private static int getPort() {
+		String port = System.getProperty("http.port");
+		return port != null ? Integer.parseInt(port) : 7788;
+	}
+
+}
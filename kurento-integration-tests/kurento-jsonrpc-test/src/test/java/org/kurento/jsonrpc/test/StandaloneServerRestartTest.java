@@ -0,0 +1,102 @@
+package org.kurento.jsonrpc.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.kurento.commons.testing.JsonRpcConnectorTests;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.JettyJsonRpcServer;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Stops a standalone server with a connected client and starts a new one in
+ * the same port and path. The sessions of the stopped server are closed
+ * without waiting for the reconnection of the client, and the resources of
+ * its handler are released.
+ */
+@Category(JsonRpcConnectorTests.class)
+public class StandaloneServerRestartTest {
+
+	private static final String PATH = "/restart";
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getParams());
+		}
+
+		@Override
+		public void afterConnectionClosed(Session session, String status)
+				throws Exception {
+			closed.countDown();
+		}
+	}
+
+	@Test
+	public void restartTest() throws Exception {
+
+		int port = getPort();
+
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName dispatcherName = new ObjectName(
+				"org.kurento.jsonrpc:type=RequestDispatcher,name="
+						+ ObjectName.quote("[" + PATH + "]"));
+
+		for (int i = 0; i < 2; i++) {
+
+			Handler handler = new Handler();
+			handler.withPingWatchdog(true).withRequestDispatch(10,
+					OverloadPolicy.REJECT);
+
+			JettyJsonRpcServer server = new JettyJsonRpcServer(port);
+			server.addHandler(handler, PATH);
+			server.start();
+
+			Assert.assertTrue(mbeanServer.isRegistered(dispatcherName));
+
+			try (JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+					"ws://localhost:" + port + PATH)) {
+
+				JsonObject params = new JsonObject();
+				params.addProperty("server", i);
+
+				JsonObject result = client.sendRequest("echo", params,
+						JsonObject.class);
+				Assert.assertEquals(i, result.get("server").getAsInt());
+
+				server.stop();
+
+				// Without waiting for the reconnection timeout
+				Assert.assertTrue("Handler not notified of the closed session",
+						handler.closed.await(5, TimeUnit.SECONDS));
+
+				Assert.assertTrue(server.getSessionsManager().getSessions()
+						.isEmpty());
+				Assert.assertFalse(mbeanServer.isRegistered(dispatcherName));
+			}
+		}
+	}
+
+	private static int getPort() {
+		String port = System.getProperty("http.port");
+		return port != null ? Integer.parseInt(port) : 7788;
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.Session;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocketPool;
+import org.kurento.jsonrpc.client.RequestFuture;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that requests about the same object are sent through the same
+ * connection of the pool, and that requests about different objects are
+ * spread among the connections.
+ */
+public class WebSocketPoolTest extends JsonRpcConnectorBaseTest {
+
+	private static final int POOL_SIZE = 4;
+
+	private static final int NUM_PIPELINES = 20;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("wait".equals(request.getMethod())) {
+				Thread.sleep(request.getParams().get("time").getAsLong());
+			}
+
+			// Responds with the websocket session used by the request
+			transaction.sendResponse(transaction.getSession().getSessionId());
+		}
+	}
+
+	@Test
+	public void test() throws IOException {
+
+		JsonRpcClientWebSocketPool client = new JsonRpcClientWebSocketPool(
+				"ws://localhost:" + getPort() + "/pool", POOL_SIZE);
+
+		Set<String> sessions = new HashSet<>();
+
+		for (int i = 0; i < NUM_PIPELINES; i++) {
+
+			String pipelineSession = sendRequest(client, "pipeline" + i);
+
+			for (int j = 0; j < 5; j++) {
+				Assert.assertEquals(pipelineSession,
+						sendRequest(client, "pipeline" + i + "/element" + j));
+			}
+
+			sessions.add(pipelineSession);
+		}
+
+		Assert.assertTrue("Requests should be spread among connections",
+				sessions.size() > 1);
+
+		client.close();
+	}
+
+	@Test
+	public void createAndTransactionTest() throws IOException {
+
+		JsonRpcClientWebSocketPool client = new JsonRpcClientWebSocketPool(
+				"ws://localhost:" + getPort() + "/pool", POOL_SIZE);
+
+		for (int i = 0; i < NUM_PIPELINES; i++) {
+
+			String pipeline = "pipeline" + i;
+			String pipelineSession = sendRequest(client, pipeline);
+
+			JsonObject constructorParams = new JsonObject();
+			constructorParams.addProperty("mediaPipeline", pipeline);
+			JsonObject createParams = new JsonObject();
+			createParams.addProperty("type", "WebRtcEndpoint");
+			createParams.add("constructorParams", constructorParams);
+
+			Assert.assertEquals("Element created in another connection",
+					pipelineSession, client.sendRequest("create",
+							createParams, String.class));
+
+			// The first operation creates an object not known yet
+			JsonObject newParams = new JsonObject();
+			newParams.addProperty("object", "newref:0");
+			JsonObject invokeParams = new JsonObject();
+			invokeParams.addProperty("object", pipeline + "/element0");
+
+			JsonArray operations = new JsonArray();
+			operations.add(createOperation("invoke", newParams));
+			operations.add(createOperation("invoke", invokeParams));
+			JsonObject transactionParams = new JsonObject();
+			transactionParams.add("operations", operations);
+
+			Assert.assertEquals("Transaction sent in another connection",
+					pipelineSession, client.sendRequest("transaction",
+							transactionParams, String.class));
+		}
+
+		client.close();
+	}
+
+	private JsonObject createOperation(String method, JsonObject params) {
+		JsonObject operation = new JsonObject();
+		operation.addProperty("method", method);
+		operation.add("params", params);
+		return operation;
+	}
+
+	@Test
+	public void pingsAndRequestsTest() throws Exception {
+
+		// A single connection sends both the pings and the requests of the
+		// pool, so their ids have to be different
+		JsonRpcClientWebSocketPool client = new JsonRpcClientWebSocketPool(
+				"ws://localhost:" + getPort() + "/pool", 1);
+
+		try {
+			client.connect();
+
+			JsonRpcClientWebSocket connection = client.getConnections().get(0);
+			Session wsSession = connection.getWebSocketSession();
+
+			List<RequestFuture<String>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				JsonObject params = new JsonObject();
+				params.addProperty("time", 100);
+				futures.add(client.sendRequestAsync("wait", params,
+						String.class));
+			}
+
+			client.enableHeartbeat(50);
+
+			for (RequestFuture<String> future : futures) {
+				Assert.assertNotNull(future.get(30, TimeUnit.SECONDS));
+			}
+
+			Assert.assertSame("Connection closed by the heartbeat", wsSession,
+					connection.getWebSocketSession());
+			Assert.assertTrue(wsSession.isOpen());
+
+		} finally {
+			client.close();
+		}
+	}
+
+	private String sendRequest(JsonRpcClientWebSocketPool client,
+			String object) throws IOException {
+
+		JsonObject params = new JsonObject();
+		params.addProperty("object", object);
+
+		return client.sendRequest("invoke", params, String.class);
+	}
+
+}
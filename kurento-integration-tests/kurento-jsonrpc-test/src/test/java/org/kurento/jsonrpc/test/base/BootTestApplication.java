@@ -1,21 +1,32 @@
 package org.kurento.jsonrpc.test.base;
 
 import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
+import org.kurento.jsonrpc.test.AsyncClientConcurrencyTest;
 import org.kurento.jsonrpc.test.AsyncServerTest;
+import org.kurento.jsonrpc.test.BatchTest;
 import org.kurento.jsonrpc.test.BidirectionalMultiTest;
 import org.kurento.jsonrpc.test.BidirectionalTest;
+import org.kurento.jsonrpc.test.BroadcastTest;
 import org.kurento.jsonrpc.test.CloseSessionTest;
 import org.kurento.jsonrpc.test.ConnectionListenerTest;
 import org.kurento.jsonrpc.test.ErrorServerTest;
+import org.kurento.jsonrpc.test.HttpLongPollingTest;
 import org.kurento.jsonrpc.test.MultipleSessionsTest;
 import org.kurento.jsonrpc.test.NewSessionTest;
 import org.kurento.jsonrpc.test.NotificationTest;
 import org.kurento.jsonrpc.test.PingPongTest;
 import org.kurento.jsonrpc.test.ReconnectionServerTest;
 import org.kurento.jsonrpc.test.ReconnectionTest;
+import org.kurento.jsonrpc.test.RequestDispatchTest;
+import org.kurento.jsonrpc.test.SaturatedLimiterTest;
 import org.kurento.jsonrpc.test.ServerEventsTest;
+import org.kurento.jsonrpc.test.ServerSessionThreadsTest;
+import org.kurento.jsonrpc.test.SessionResumptionTest;
+import org.kurento.jsonrpc.test.StandaloneServerBenchmarkTest;
+import org.kurento.jsonrpc.test.WebSocketPoolTest;
 import org.kurento.jsonrpc.test.handler.EchoJsonRpcHandler;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -69,6 +80,31 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
 		registry.addHandler(new NotificationTest.Handler(), "/notification");
 
+		registry.addHandler(new AsyncClientConcurrencyTest.Handler(),
+				"/async_concurrency");
+
+		registry.addHandler(new BatchTest.Handler(), "/batch");
+
+		registry.addHandler(new WebSocketPoolTest.Handler(), "/pool");
+
+		registry.addHandler(new HttpLongPollingTest.Handler(), "/longpolling");
+
+		registry.addHandler(new ServerSessionThreadsTest.Handler(),
+				"/serverthreads");
+
+		registry.addHandler(new RequestDispatchTest.Handler()
+				.withRequestDispatch(1, OverloadPolicy.REJECT), "/dispatch");
+
+		registry.addHandler(new BroadcastTest.Handler(), "/broadcast");
+
+		registry.addHandler(new SessionResumptionTest.Handler()
+				.withSessionResumption(100), "/resumption");
+
+		registry.addHandler(new StandaloneServerBenchmarkTest.Handler(),
+				"/benchmark");
+
+		registry.addHandler(new SaturatedLimiterTest.Handler(), "/limited");
+
 	}
 
 	@Bean
@@ -0,0 +1,33 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+/**
+ * This exception occurs when a request is not sent because the client has
+ * reached its limit of requests in flight and the request couldn't wait for a
+ * free slot. The request never reached the server, so it can be retried
+ * safely.
+ *
+ * @since 6.0.0
+ */
+public class ConcurrencyLimitExceededException extends JsonRpcException {
+
+	private static final long serialVersionUID = -2786457302146331082L;
+
+	public ConcurrencyLimitExceededException(String message) {
+		super(message);
+	}
+
+}
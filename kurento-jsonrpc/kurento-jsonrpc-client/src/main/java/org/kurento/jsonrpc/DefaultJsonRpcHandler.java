@@ -14,6 +14,13 @@
  */
 package org.kurento.jsonrpc;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.OverflowPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +32,12 @@ public abstract class DefaultJsonRpcHandler<P> implements JsonRpcHandler<P> {
 	private boolean useSockJs;
 	private String label;
 	private boolean pingWatchdog = false;
+	private int outboundQueueCapacity = OutboundMessageQueue.DEFAULT_CAPACITY;
+	private OverflowPolicy outboundOverflowPolicy = OverflowPolicy.BLOCK;
+	private int maxQueuedRequests = 0;
+	private OverloadPolicy overloadPolicy = OverloadPolicy.REJECT;
+	private int resumptionBufferSize = 0;
+	private List<JsonRpcCodec> codecs = Collections.emptyList();
 
 	@Override
 	public void afterConnectionEstablished(Session session) throws Exception {
@@ -82,4 +95,95 @@ public abstract class DefaultJsonRpcHandler<P> implements JsonRpcHandler<P> {
 	public boolean isPingWatchdog(){
 		return pingWatchdog;
 	}
+
+	/**
+	 * Configures the queue of messages waiting to be written in each
+	 * websocket session.
+	 *
+	 * @param capacity
+	 *            maximum number of queued messages
+	 * @param overflowPolicy
+	 *            what to do when a message is sent and the queue is full
+	 */
+	public DefaultJsonRpcHandler<P> withOutboundQueue(int capacity,
+			OverflowPolicy overflowPolicy) {
+		this.outboundQueueCapacity = capacity;
+		this.outboundOverflowPolicy = overflowPolicy;
+		return this;
+	}
+
+	@Override
+	public int getOutboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+
+	@Override
+	public OverflowPolicy getOutboundOverflowPolicy() {
+		return outboundOverflowPolicy;
+	}
+
+	/**
+	 * Processes the requests received through websockets in a pool of
+	 * threads instead of in the transport thread, so a slow request doesn't
+	 * delay the messages of other sessions. Requests of the same session are
+	 * processed in order.
+	 *
+	 * @param maxQueuedRequests
+	 *            maximum number of requests of all the sessions waiting to be
+	 *            processed
+	 * @param overloadPolicy
+	 *            what to do with requests received when the limit is reached
+	 */
+	public DefaultJsonRpcHandler<P> withRequestDispatch(int maxQueuedRequests,
+			OverloadPolicy overloadPolicy) {
+		this.maxQueuedRequests = maxQueuedRequests;
+		this.overloadPolicy = overloadPolicy;
+		return this;
+	}
+
+	@Override
+	public int getMaxQueuedRequests() {
+		return maxQueuedRequests;
+	}
+
+	@Override
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	/**
+	 * Keeps the last requests and notifications sent to each websocket
+	 * session, numbered in sequence. When a client reconnects to its session,
+	 * the messages it hasn't received are sent again, so it doesn't lose the
+	 * events sent while it was disconnected.
+	 *
+	 * @param bufferSize
+	 *            number of messages kept for each session
+	 */
+	public DefaultJsonRpcHandler<P> withSessionResumption(int bufferSize) {
+		this.resumptionBufferSize = bufferSize;
+		return this;
+	}
+
+	@Override
+	public int getResumptionBufferSize() {
+		return resumptionBufferSize;
+	}
+
+	/**
+	 * Offers codecs to websocket clients, so they can exchange messages in a
+	 * more compact format than JSON text. No codec is offered by default.
+	 *
+	 * @param codecs
+	 *            the supported codecs, in order of preference
+	 */
+	public DefaultJsonRpcHandler<P> withCodecs(JsonRpcCodec... codecs) {
+		this.codecs = Arrays.asList(codecs);
+		return this;
+	}
+
+	@Override
+	public List<JsonRpcCodec> getCodecs() {
+		return codecs;
+	}
 }
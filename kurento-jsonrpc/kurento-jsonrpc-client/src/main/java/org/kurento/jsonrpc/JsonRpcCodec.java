@@ -0,0 +1,51 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec used to send JSON-RPC messages in websocket binary frames. The codec
+ * is negotiated with the websocket subprotocol given by {@link #getName()}.
+ * When the peer doesn't accept it, messages are sent as JSON text frames, so
+ * peers without codecs (like the media server) are still supported.
+ *
+ * Implementations must be thread safe.
+ *
+ * @since 6.0.0
+ */
+public interface JsonRpcCodec {
+
+	/**
+	 * @return the websocket subprotocol that identifies this codec
+	 */
+	String getName();
+
+	/**
+	 * @param message
+	 *            the JSON text of the message
+	 * @return the payload of the binary frame
+	 */
+	ByteBuffer encode(String message) throws IOException;
+
+	/**
+	 * @param payload
+	 *            the payload of a binary frame
+	 * @return the JSON text of the message
+	 */
+	String decode(ByteBuffer payload) throws IOException;
+
+}
@@ -14,6 +14,10 @@
  */
 package org.kurento.jsonrpc;
 
+import java.util.List;
+
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.OverflowPolicy;
 import org.kurento.jsonrpc.message.Request;
 
 public interface JsonRpcHandler<P> {
@@ -58,4 +62,42 @@ public interface JsonRpcHandler<P> {
 	 String getLabel();
 	 
 	 boolean isPingWatchdog();
+
+	/**
+	 * @return maximum number of messages waiting to be written in each
+	 *         websocket session
+	 */
+	int getOutboundQueueCapacity();
+
+	/**
+	 * @return what to do when a message is sent to a websocket session whose
+	 *         outbound queue is full
+	 */
+	OverflowPolicy getOutboundOverflowPolicy();
+
+	/**
+	 * @return maximum number of websocket requests of all the sessions waiting
+	 *         to be processed, or 0 to process them in the transport thread
+	 */
+	int getMaxQueuedRequests();
+
+	/**
+	 * @return what to do with the requests received when there are too many
+	 *         requests waiting to be processed
+	 */
+	OverloadPolicy getOverloadPolicy();
+
+	/**
+	 * @return number of requests and notifications sent to each websocket
+	 *         session that are kept to be sent again if the client reconnects
+	 *         after losing them, or 0 to not keep them
+	 */
+	int getResumptionBufferSize();
+
+	/**
+	 * @return codecs offered to websocket clients as subprotocols, in order
+	 *         of preference. Clients not requesting any of them use JSON text
+	 *         frames
+	 */
+	List<JsonRpcCodec> getCodecs();
 }
@@ -30,8 +30,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.JsonRpcMessageDecoder;
+import org.kurento.jsonrpc.internal.JsonRpcMessageEncoder;
 import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
@@ -50,7 +54,9 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
 import com.google.gson.internal.$Gson$Types;
+import com.google.gson.reflect.TypeToken;
 
 /**
  *
@@ -65,7 +71,22 @@ public class JsonUtils {
 	/**
 	 * Static instance of Gson object.
 	 */
-	private static Gson gson;
+	private static volatile Gson gson;
+
+	/**
+	 * Types of requests and responses, created once per params or result
+	 * class. As the same instance is always returned, they are cheap keys for
+	 * the adapter cache.
+	 */
+	private static final ConcurrentMap<Class<?>, Type> requestTypes = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Class<?>, Type> responseTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Adapters resolved by Gson, so they are not looked up again (creating a
+	 * TypeToken and canonicalizing the type) for every message. Only the types
+	 * used in the application are stored, so the cache doesn't need eviction.
+	 */
+	private static final ConcurrentMap<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
 
 	/**
 	 * Serialise Java object to JSON (as String).
@@ -83,43 +104,63 @@ public class JsonUtils {
 		return fromJson(getGson().toJson(obj), JsonObject.class);
 	}
 
+	/**
+	 * Converts a JSON message to a request (if it has a method) or to a
+	 * response. Params and result are returned as {@link JsonElement}.
+	 *
+	 * @param message
+	 *            the JSON message
+	 * @return the request or response
+	 */
 	public static Message fromJsonMessage(String message) {
-		JsonObject json = fromJson(message, JsonObject.class);
-		if(json.has(METHOD_PROPERTY)){
-			return fromJsonRequest(json, JsonObject.class);
-		} else {
-			return fromJsonResponse(json, JsonElement.class);
-		}
+		return JsonRpcMessageDecoder.decodeMessage(message);
+	}
+
+	/**
+	 * @param message
+	 *            the JSON message
+	 * @return true if the message is a JSON-RPC batch (an array of messages)
+	 */
+	public static boolean isBatch(String message) {
+		return JsonRpcMessageDecoder.isBatch(message);
 	}
-	
+
+	/**
+	 * Converts a JSON-RPC batch to a list of requests and responses. Params
+	 * and result are returned as {@link JsonElement}.
+	 *
+	 * @param message
+	 *            the JSON array of messages
+	 * @return the messages in the same order than in the batch
+	 */
+	public static List<Message> fromJsonBatch(String message) {
+		return JsonRpcMessageDecoder.decodeBatch(message);
+	}
+
+	public static String toJsonBatch(List<? extends Message> messages) {
+		return JsonRpcMessageEncoder.encodeBatch(messages);
+	}
+
 	public static <T> Request<T> fromJsonRequest(String json,
 			Class<T> paramsClass) {
 
 		if (INJECT_SESSION_ID) {
-			// TODO Optimise this implementation if possible
-			return fromJsonRequestInject(fromJson(json, JsonObject.class),
-					paramsClass);
+			return JsonRpcMessageDecoder.decodeRequest(json, paramsClass);
 		}
 
-		return getGson().fromJson(
-				json,
-				$Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
-						paramsClass));
+		return getGson().fromJson(json, getRequestType(paramsClass));
 	}
 
 	public static <T> Response<T> fromJsonResponse(String json,
 			Class<T> resultClass) {
 
-		if (INJECT_SESSION_ID) {
-			// TODO Optimise this implementation if possible
-			return fromJsonResponseInject(fromJson(json, JsonObject.class),
-					resultClass);
-		}
 		try {
-			return getGson().fromJson(
-					json,
-					$Gson$Types.newParameterizedTypeWithOwner(null,
-							Response.class, resultClass));
+
+			if (INJECT_SESSION_ID) {
+				return JsonRpcMessageDecoder.decodeResponse(json, resultClass);
+			}
+
+			return getGson().fromJson(json, getResponseType(resultClass));
 
 		} catch (JsonSyntaxException e) {
 			throw new JsonRpcException("Exception converting Json '" + json
@@ -138,10 +179,7 @@ public class JsonUtils {
 
 		}
 
-		return getGson().fromJson(
-				json,
-				$Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
-						paramsClass));
+		return fromJson(json, getRequestType(paramsClass));
 
 	}
 
@@ -154,10 +192,7 @@ public class JsonUtils {
 			return fromJsonResponseInject(json, resultClass);
 		}
 
-		return getGson().fromJson(
-				json,
-				$Gson$Types.newParameterizedTypeWithOwner(null, Response.class,
-						resultClass));
+		return fromJson(json, getResponseType(resultClass));
 
 	}
 
@@ -168,16 +203,9 @@ public class JsonUtils {
 
 			String sessionId = extractSessionId(jsonObject, RESULT_PROPERTY);
 
-			Response<T> response;
-			if (resultClass != null) {
-				response = JsonUtils.fromJson(jsonObject, $Gson$Types
-						.newParameterizedTypeWithOwner(null, Response.class,
-								resultClass));
-			} else {
-				response = JsonUtils.fromJson(jsonObject, $Gson$Types
-						.newParameterizedTypeWithOwner(null, Response.class,
-								JsonElement.class));
-			}
+			Response<T> response = JsonUtils.fromJson(jsonObject,
+					getResponseType(resultClass != null ? resultClass
+							: JsonElement.class));
 
 			response.setSessionId(sessionId);
 			return response;
@@ -194,10 +222,7 @@ public class JsonUtils {
 			Class<T> paramsClass) {
 
 		String sessionId = extractSessionId(jsonObject, PARAMS_PROPERTY);
-		Request<T> request = getGson().fromJson(
-				jsonObject,
-				$Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
-						paramsClass));
+		Request<T> request = fromJson(jsonObject, getRequestType(paramsClass));
 
 		request.setSessionId(sessionId);
 		return request;
@@ -226,17 +251,13 @@ public class JsonUtils {
 	}
 
 	public static <T> String toJsonRequest(Request<T> request) {
-		return getGson().toJson(
-				request,
-				$Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
-						getClassOrNull(request.getParams())));
+		return getGson().toJson(request,
+				getRequestType(getClassOrNull(request.getParams())));
 	}
 
 	public static <T> String toJsonResponse(Response<T> request) {
-		return getGson().toJson(
-				request,
-				$Gson$Types.newParameterizedTypeWithOwner(null, Response.class,
-						getClassOrNull(request.getResult())));
+		return getGson().toJson(request,
+				getResponseType(getClassOrNull(request.getResult())));
 	}
 
 	public static <T> T fromJson(String json, Class<T> clazz) {
@@ -244,7 +265,7 @@ public class JsonUtils {
 	}
 
 	public static <T> T fromJson(JsonElement json, Class<T> clazz) {
-		return getGson().fromJson(json, clazz);
+		return fromJsonTree(JsonUtils.<T> getAdapter(clazz), json);
 	}
 
 	public static <T> T fromJson(String json, Type type) {
@@ -252,13 +273,97 @@ public class JsonUtils {
 	}
 
 	public static <T> T fromJson(JsonElement json, Type type) {
-		return getGson().fromJson(json, type);
+		return fromJsonTree(JsonUtils.<T> getAdapter(type), json);
+	}
+
+	/**
+	 * Same as {@link Gson#fromJson(JsonElement, Type)}, but with an adapter
+	 * already resolved.
+	 */
+	private static <T> T fromJsonTree(TypeAdapter<T> adapter, JsonElement json) {
+
+		if (json == null) {
+			return null;
+		}
+
+		try {
+			return adapter.fromJsonTree(json);
+		} catch (IllegalStateException e) {
+			throw new JsonSyntaxException(e);
+		}
 	}
 
 	private static Class<?> getClassOrNull(Object object) {
 		return (object == null) ? null : object.getClass();
 	}
 
+	/**
+	 * Returns the type of the requests with params of the given class. The
+	 * same instance is returned for the same class.
+	 *
+	 * @param paramsClass
+	 *            the class of the params
+	 * @return the parameterized type {@code Request<paramsClass>}
+	 */
+	public static Type getRequestType(Class<?> paramsClass) {
+		return getParameterizedType(requestTypes, Request.class, paramsClass);
+	}
+
+	/**
+	 * Returns the type of the responses with result of the given class. The
+	 * same instance is returned for the same class.
+	 *
+	 * @param resultClass
+	 *            the class of the result
+	 * @return the parameterized type {@code Response<resultClass>}
+	 */
+	public static Type getResponseType(Class<?> resultClass) {
+		return getParameterizedType(responseTypes, Response.class, resultClass);
+	}
+
+	private static Type getParameterizedType(
+			ConcurrentMap<Class<?>, Type> types, Class<?> rawType,
+			Class<?> argument) {
+
+		if (argument == null) {
+			return $Gson$Types.newParameterizedTypeWithOwner(null, rawType,
+					argument);
+		}
+
+		Type type = types.get(argument);
+		if (type == null) {
+			type = $Gson$Types.newParameterizedTypeWithOwner(null, rawType,
+					argument);
+			Type previous = types.putIfAbsent(argument, type);
+			if (previous != null) {
+				type = previous;
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * Returns the adapter used by the {@link Gson} instance of this class to
+	 * convert values of the given type. Adapters are resolved once per type.
+	 *
+	 * @param type
+	 *            the type of the values
+	 * @return the adapter
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> TypeAdapter<T> getAdapter(Type type) {
+
+		TypeAdapter<?> adapter = adapters.get(type);
+		if (adapter == null) {
+			adapter = getGson().getAdapter(TypeToken.get(type));
+			TypeAdapter<?> previous = adapters.putIfAbsent(type, adapter);
+			if (previous != null) {
+				adapter = previous;
+			}
+		}
+		return (TypeAdapter<T>) adapter;
+	}
+
 	/**
 	 * Gson object accessor (getter).
 	 *
@@ -281,7 +386,19 @@ public class JsonUtils {
 
 					builder.disableHtmlEscaping();
 
-					gson = builder.create();
+					Gson newGson = builder.create();
+
+					// Types of every message, resolved before the first one
+					for (Type type : Arrays.<Type> asList(JsonElement.class,
+							JsonObject.class, ResponseError.class, Props.class,
+							getRequestType(JsonElement.class),
+							getRequestType(JsonObject.class),
+							getResponseType(JsonElement.class))) {
+						adapters.put(type,
+								newGson.getAdapter(TypeToken.get(type)));
+					}
+
+					gson = newGson;
 				}
 			}
 		}
@@ -300,6 +417,10 @@ public class JsonUtils {
 
 	public static String toJsonMessage(Message message) {
 
+		if (JsonRpcMessageEncoder.canEncode(message)) {
+			return JsonRpcMessageEncoder.encode(message);
+		}
+
 		if (message.getSessionId() != null && INJECT_SESSION_ID) {
 
 			JsonObject jsonObject = JsonUtils.toJsonObject(message);
@@ -545,9 +666,11 @@ class JsonRpcResponseDeserializer implements JsonDeserializer<Response<?>> {
 
 			ParameterizedType parameterizedType = (ParameterizedType) typeOfT;
 
-			return new Response<>(id, context.deserialize(
-					jObject.get(RESULT_PROPERTY),
-					parameterizedType.getActualTypeArguments()[0]));
+			// Typed as Object to not select the constructor of error responses
+			Object result = context.deserialize(jObject.get(RESULT_PROPERTY),
+					parameterizedType.getActualTypeArguments()[0]);
+
+			return new Response<>(id, result);
 
 		} else if (jObject.has(ERROR_PROPERTY)) {
 
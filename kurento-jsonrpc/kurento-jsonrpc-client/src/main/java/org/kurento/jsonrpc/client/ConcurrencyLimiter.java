@@ -0,0 +1,414 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.kurento.jsonrpc.internal.MBeanRegistration;
+import org.kurento.jsonrpc.internal.MethodMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the requests in flight of a client to protect a saturated server.
+ * The limit adapts to the round trip time (RTT) of the responses, following
+ * an AIMD (additive increase, multiplicative decrease) policy:
+ * <ul>
+ * <li>When a response arrives in less than {@code rttTolerance} times the
+ * minimum RTT observed for its method, and the limit is being used, the limit
+ * grows by one every {@code limit} responses.</li>
+ * <li>When a response is slower, or a request times out, the server is
+ * considered to be queuing requests and the limit is multiplied by
+ * {@code backoffRatio}. Responses of requests sent before the last decrease
+ * don't decrease it again, so a burst of slow responses reduces the limit
+ * only once.</li>
+ * </ul>
+ *
+ * Each method has its own minimum RTT, so methods that are always slow (as
+ * the creation of a media element) are not taken as congestion when compared
+ * with fast ones. The minimum RTT of a method is measured again every
+ * {@link #RTT_WINDOW} responses of the method, so the limiter follows
+ * permanent changes of the latency of the server. The number of methods with
+ * their own minimum RTT is limited, as they are published in JMX; methods
+ * found after that share the minimum RTT of {@value #OTHER_METHODS}.
+ *
+ * Requests exceeding the limit wait up to {@code maxQueueTime} for a free
+ * slot, and are rejected with
+ * {@link org.kurento.jsonrpc.ConcurrencyLimitExceededException} after that.
+ * Asynchronous requests never wait. The same limiter can be shared by several
+ * clients to limit the requests to a server.
+ *
+ * Batches are not limited: all their requests travel in one message and are
+ * responded together, so they are sent even when the limit has been reached
+ * and don't adapt it.
+ *
+ * @since 6.0.0
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ConcurrencyLimiter.class);
+
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 1000;
+	public static final double DEFAULT_RTT_TOLERANCE = 2.0;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	public static final long DEFAULT_MAX_QUEUE_TIME = 0;
+	public static final int DEFAULT_MAX_METHODS = //
+			MethodMetrics.DEFAULT_MAX_METHODS;
+
+	/**
+	 * Name of the minimum RTT shared by the methods found once the maximum
+	 * number of methods has been reached.
+	 */
+	public static final String OTHER_METHODS = MethodMetrics.OTHER_METHODS;
+
+	static final int RTT_WINDOW = 1000;
+
+	/**
+	 * Minimum RTT of the responses of a method.
+	 */
+	private static class RttBaseline {
+
+		private long minRtt;
+		private long windowMinRtt = Long.MAX_VALUE;
+		private int windowSamples;
+
+		private void update(long rtt) {
+
+			if (rtt < windowMinRtt) {
+				windowMinRtt = rtt;
+			}
+
+			if (minRtt == 0 || rtt < minRtt) {
+				minRtt = rtt;
+			}
+
+			if (++windowSamples >= RTT_WINDOW) {
+				minRtt = windowMinRtt;
+				windowMinRtt = Long.MAX_VALUE;
+				windowSamples = 0;
+			}
+		}
+	}
+
+	private final int minLimit;
+	private final int maxLimit;
+
+	private volatile double rttTolerance = DEFAULT_RTT_TOLERANCE;
+	private volatile double backoffRatio = DEFAULT_BACKOFF_RATIO;
+	private volatile long maxQueueTime = DEFAULT_MAX_QUEUE_TIME;
+	private volatile int maxMethods = DEFAULT_MAX_METHODS;
+
+	// Guarded by this
+	private double limit;
+	private int inFlight;
+	private int waiting;
+	private long numRejected;
+	private long lastDecrease = System.nanoTime();
+	private final Map<String, RttBaseline> baselines = new HashMap<>();
+
+	private final MBeanRegistration registration = new MBeanRegistration(
+			this, "ConcurrencyLimiter");
+
+	public ConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+
+		if (minLimit <= 0 || minLimit > initialLimit
+				|| initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Invalid limits: initial="
+					+ initialLimit + " min=" + minLimit + " max=" + maxLimit);
+		}
+
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Takes a slot for a request, waiting up to the max queue time if the
+	 * limit has been reached.
+	 *
+	 * @return the time when the slot was taken, in nanoseconds, to be passed
+	 *         to {@link #release(String, long, boolean)}; or -1 if the request
+	 *         has been rejected
+	 */
+	public long acquire() throws InterruptedException {
+		return acquire(maxQueueTime);
+	}
+
+	/**
+	 * Takes a slot for a request if the limit has not been reached, without
+	 * waiting.
+	 *
+	 * @return the time when the slot was taken, or -1 if the request has been
+	 *         rejected
+	 */
+	public long tryAcquire() {
+		try {
+			return acquire(0);
+		} catch (InterruptedException e) {
+			// Never happens without waiting
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+
+	private synchronized long acquire(long timeoutMillis)
+			throws InterruptedException {
+
+		if (inFlight >= (int) limit && timeoutMillis > 0) {
+
+			long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+			waiting++;
+			try {
+				long remaining;
+				while (inFlight >= (int) limit
+						&& (remaining = deadline - System.nanoTime()) > 0) {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			} finally {
+				waiting--;
+			}
+		}
+
+		if (inFlight >= (int) limit) {
+			numRejected++;
+			return -1;
+		}
+
+		inFlight++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Frees the slot of a request and adapts the limit, comparing its RTT with
+	 * the one of all the requests released without method.
+	 *
+	 * @see #release(String, long, boolean)
+	 */
+	public void release(long start, boolean dropped) {
+		release(null, start, dropped);
+	}
+
+	/**
+	 * Frees the slot of a request and adapts the limit.
+	 *
+	 * @param method
+	 *            the method of the request, whose RTT is compared with the
+	 *            minimum RTT of the same method
+	 * @param start
+	 *            the time returned by {@link #acquire()}
+	 * @param dropped
+	 *            true if the request timed out or was shed by the server.
+	 *            Other failures (for example, the connection has been closed)
+	 *            should be released with {@link #release()}, as they don't
+	 *            carry information about the load of the server
+	 */
+	public synchronized void release(String method, long start,
+			boolean dropped) {
+
+		long now = System.nanoTime();
+		long rtt = now - start;
+
+		inFlight--;
+
+		RttBaseline baseline = getBaseline(method);
+		if (!dropped) {
+			baseline.update(rtt);
+		}
+
+		if (dropped || rtt > baseline.minRtt * rttTolerance) {
+			if (start - lastDecrease > 0) {
+				lastDecrease = now;
+				setLimit(limit * backoffRatio);
+			}
+		} else if (inFlight + 1 >= (int) limit / 2) {
+			setLimit(limit + 1 / limit);
+		}
+
+		notifyAll();
+	}
+
+	/**
+	 * Frees the slot of a request without adapting the limit.
+	 */
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	private RttBaseline getBaseline(String method) {
+
+		if (method == null) {
+			method = "";
+		}
+
+		RttBaseline baseline = baselines.get(method);
+		if (baseline == null) {
+			if (baselines.size() >= maxMethods) {
+				method = OTHER_METHODS;
+				baseline = baselines.get(method);
+				if (baseline != null) {
+					return baseline;
+				}
+			}
+			baseline = new RttBaseline();
+			baselines.put(method, baseline);
+		}
+		return baseline;
+	}
+
+	private void setLimit(double newLimit) {
+
+		newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+		if ((int) newLimit != (int) limit) {
+			log.debug("Concurrency limit changed from {} to {}", (int) limit,
+					(int) newLimit);
+		}
+
+		limit = newLimit;
+	}
+
+	@Override
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	@Override
+	public synchronized int getWaiting() {
+		return waiting;
+	}
+
+	@Override
+	public synchronized long getNumRejected() {
+		return numRejected;
+	}
+
+	@Override
+	public synchronized Map<String, Double> getMinRtts() {
+		Map<String, Double> minRtts = new TreeMap<>();
+		for (Entry<String, RttBaseline> e : baselines.entrySet()) {
+			minRtts.put(e.getKey(), toMillis(e.getValue().minRtt));
+		}
+		return minRtts;
+	}
+
+	/**
+	 * @return the minimum RTT in milliseconds observed recently for the
+	 *         method, or 0 if none of its requests has been released or it
+	 *         shares the minimum RTT of {@value #OTHER_METHODS}
+	 */
+	public synchronized double getMinRtt(String method) {
+		RttBaseline baseline = baselines.get(method == null ? "" : method);
+		return baseline == null ? 0 : toMillis(baseline.minRtt);
+	}
+
+	private static double toMillis(long nanos) {
+		return (double) TimeUnit.NANOSECONDS.toMicros(nanos) / 1000;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	public double getRttTolerance() {
+		return rttTolerance;
+	}
+
+	/**
+	 * @param rttTolerance
+	 *            how many times the minimum RTT a response can take before
+	 *            the limit is decreased
+	 */
+	public void setRttTolerance(double rttTolerance) {
+		this.rttTolerance = rttTolerance;
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	/**
+	 * @param backoffRatio
+	 *            factor applied to the limit when the server is overloaded,
+	 *            between 0 and 1
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		this.backoffRatio = backoffRatio;
+	}
+
+	public long getMaxQueueTime() {
+		return maxQueueTime;
+	}
+
+	/**
+	 * @param maxQueueTime
+	 *            maximum time in milliseconds a request waits for a free slot
+	 *            before being rejected. By default, requests are rejected
+	 *            without waiting
+	 */
+	public void setMaxQueueTime(long maxQueueTime) {
+		this.maxQueueTime = maxQueueTime;
+	}
+
+	public int getMaxMethods() {
+		return maxMethods;
+	}
+
+	/**
+	 * @param maxMethods
+	 *            maximum number of methods with their own minimum RTT. Methods
+	 *            already tracked keep theirs when it is lowered
+	 */
+	public void setMaxMethods(int maxMethods) {
+		this.maxMethods = maxMethods;
+	}
+
+	/**
+	 * Publishes the limiter in the platform MBean server as
+	 * {@code org.kurento.jsonrpc:type=ConcurrencyLimiter,name=<name>}.
+	 */
+	public ObjectName registerMBean(String name) {
+		return registration.register(name);
+	}
+
+	public void unregisterMBean() {
+		registration.unregister();
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ConcurrencyLimiter}.
+ *
+ * @since 6.0.0
+ */
+public interface ConcurrencyLimiterMXBean {
+
+	int getLimit();
+
+	int getInFlight();
+
+	int getWaiting();
+
+	long getNumRejected();
+
+	/**
+	 * @return the minimum round trip time in milliseconds observed recently
+	 *         for each method
+	 */
+	Map<String, Double> getMinRtts();
+
+}
@@ -21,14 +21,16 @@ import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG_PAYLOAD;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.KeepAliveManager;
 import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
@@ -81,11 +83,137 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 	protected int heartbeatInterval = 0;
 	private static final int DEFAULT_HEARTBEAT_INTERVAL = 5000;
 	protected boolean heartbeating;
+	protected long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+	public static final long DEFAULT_REQUEST_TIMEOUT = 60000;
+	private final ConcurrentMap<String, Long> methodTimeouts = new ConcurrentHashMap<>();
+	protected JsonRpcClientRuntime runtime = JsonRpcClientRuntime.getDefault();
+	protected volatile JsonRpcClientMetricsListener metricsListener;
+	protected volatile ConcurrencyLimiter concurrencyLimiter;
 
-	private ScheduledExecutorService scheduler = Executors
-			.newSingleThreadScheduledExecutor();
+	private volatile Heartbeat heartbeat;
 
-	private Future<?> heartbeat;
+	/**
+	 * Pings the server periodically. The timer of the runtime only hands the
+	 * ping to the control executor, as sending it can block (while requests
+	 * are replayed after a reconnection, or while writing to a slow server)
+	 * and the timer is shared by all the clients of the runtime. Pings don't
+	 * wait for the pong, so they are not delayed by the handlers of responses
+	 * and events.
+	 */
+	private class Heartbeat implements Runnable {
+
+		private final int interval;
+		private volatile boolean cancelled;
+		private volatile Timeout timeout;
+
+		private Heartbeat(int interval) {
+			this.interval = interval;
+		}
+
+		private void schedule(long delay) {
+
+			if (cancelled) {
+				return;
+			}
+
+			timeout = runtime.getTimer().newTimeout(this, delay, MILLISECONDS);
+		}
+
+		private void cancel() {
+			cancelled = true;
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+
+		@Override
+		public void run() {
+
+			if (cancelled) {
+				return;
+			}
+
+			try {
+				runtime.getControlExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						sendPing();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				log.debug("{} Runtime stopped. Heartbeat cancelled", label);
+			}
+		}
+
+		private void sendPing() {
+
+			if (cancelled) {
+				return;
+			}
+
+			if (!isConnected()) {
+				// The connection is being opened or recovered, and that
+				// process enables the heartbeat again
+				schedule(interval);
+				return;
+			}
+
+			try {
+				rsHelper.sendRequest(METHOD_PING, null,
+						new Continuation<JsonElement>() {
+
+							@Override
+							public void onSuccess(JsonElement result) {
+								if (isPong(result)) {
+									schedule(interval);
+								} else {
+									failed(null);
+								}
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								failed(cause);
+							}
+						});
+			} catch (Exception e) {
+				failed(e);
+			}
+		}
+
+		private boolean isPong(JsonElement result) {
+			return result != null
+					&& result.isJsonObject()
+					&& result.getAsJsonObject().has(PONG_PAYLOAD)
+					&& PONG.equals(result.getAsJsonObject().get(PONG_PAYLOAD)
+							.getAsString());
+		}
+
+		private void failed(Throwable cause) {
+
+			if (cancelled) {
+				return;
+			}
+
+			if (cause != null) {
+				log.warn("{} Error sending heartbeat to server", label, cause);
+			}
+
+			// Closing the connection can block, so it is not done in the
+			// timer nor in the thread reading from the connection
+			try {
+				runtime.getControlExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						closeHeartbeatOnFailure();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				log.debug("{} Runtime stopped. Heartbeat cancelled", label);
+			}
+		}
+	}
 
 	public void setServerRequestHandler(JsonRpcHandler<?> handler) {
 		this.handlerManager.setJsonRpcHandler(handler);
@@ -124,6 +252,29 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		rsHelper.sendRequest(method, params, continuation);
 	}
 
+	/**
+	 * Sends a request without blocking. The result is obtained from the
+	 * returned future, that can also be used to cancel the request when it is
+	 * not needed anymore.
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param params
+	 *            the params of the request
+	 * @param resultClass
+	 *            the class of the result
+	 * @return the future of the result
+	 */
+	public <R> RequestFuture<R> sendRequestAsync(String method, Object params,
+			Class<R> resultClass) {
+		return rsHelper.sendRequestAsync(method, params, resultClass);
+	}
+
+	public RequestFuture<JsonElement> sendRequestAsync(String method,
+			Object params) {
+		return rsHelper.sendRequestAsync(method, params, JsonElement.class);
+	}
+
 	@Override
 	public void sendNotification(String method) throws IOException {
 		rsHelper.sendNotification(method);
@@ -141,6 +292,18 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		rsHelper.sendNotification(method, params);
 	}
 
+	@Override
+	public List<Response<JsonElement>> sendBatch(
+			List<Request<JsonObject>> requests) throws IOException {
+		return rsHelper.sendBatch(requests);
+	}
+
+	@Override
+	public void sendBatch(List<Request<JsonObject>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		rsHelper.sendBatch(requests, continuation);
+	}
+
 	@Override
 	public Response<JsonElement> sendRequest(Request<JsonObject> request)
 			throws IOException {
@@ -227,6 +390,64 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		this.heartbeatInterval = interval;
 	}
 
+	/**
+	 * Gets the default time in milliseconds to wait for the response of a
+	 * request.
+	 *
+	 * @return the timeout in milliseconds
+	 */
+	public long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Sets the default time in milliseconds to wait for the response of a
+	 * request. If the response doesn't arrive in this time, the request fails
+	 * with a {@link org.kurento.jsonrpc.TransportException}.
+	 *
+	 * @param requestTimeout
+	 *            the timeout in milliseconds
+	 */
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for the response of the requests
+	 * with the given method. It overrides the default request timeout.
+	 *
+	 * @param method
+	 *            the method of the requests
+	 * @param timeout
+	 *            the timeout in milliseconds
+	 */
+	public void setRequestTimeout(String method, long timeout) {
+		methodTimeouts.put(method, Long.valueOf(timeout));
+	}
+
+	/**
+	 * Obtains the time to wait for the response of the given request. The
+	 * timeout configured in the request takes precedence over the timeout
+	 * configured for its method, and this over the default one.
+	 *
+	 * @param request
+	 *            the request
+	 * @return the timeout in milliseconds
+	 */
+	protected long getRequestTimeout(Request<?> request) {
+
+		if (request.getTimeout() > 0) {
+			return request.getTimeout();
+		}
+
+		Long methodTimeout = methodTimeouts.get(request.getMethod());
+		if (methodTimeout != null) {
+			return methodTimeout.longValue();
+		}
+
+		return requestTimeout;
+	}
+
 	public void enableHeartbeat() {
 		if (this.heartbeatInterval == 0) {
 			this.heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
@@ -236,34 +457,14 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 
 	public synchronized void enableHeartbeat(int interval) {
 
-		if (heartbeat == null || heartbeat.isCancelled()) {
+		if (heartbeat == null) {
 			log.debug("{} Enabling heartbeat with an interval of {} ms", label,
 					interval);
 			this.heartbeating = true;
 			this.heartbeatInterval = interval;
 
-			if (scheduler.isShutdown()) {
-				scheduler = Executors.newSingleThreadScheduledExecutor();
-			}
-
-			heartbeat = scheduler.scheduleAtFixedRate(new Runnable() {
-				@Override
-				public void run() {
-					try {
-						JsonObject response = sendRequest(METHOD_PING)
-								.getAsJsonObject();
-
-						if (!PONG.equals(response.get(PONG_PAYLOAD)
-								.getAsString())) {
-							closeHeartbeatOnFailure();
-						}
-					} catch (Exception e) {
-						log.warn("{} Error sending heartbeat to server", label,
-								e);
-						closeHeartbeatOnFailure();
-					}
-				}
-			}, 0, heartbeatInterval, MILLISECONDS);
+			heartbeat = new Heartbeat(interval);
+			heartbeat.schedule(0);
 		}
 	}
 
@@ -275,9 +476,11 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 				"{} Stopping heartbeat and closing client: failure during heartbeat mechanism",
 				label);
 
-		heartbeat.cancel(false);
-		heartbeat = null;
-		scheduler.shutdownNow();
+		Heartbeat current = heartbeat;
+		if (current != null) {
+			current.cancel();
+			heartbeat = null;
+		}
 
 		try {
 			closeWithReconnection();
@@ -291,10 +494,52 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		if (heartbeating) {
 			this.heartbeating = false;
 			if (heartbeat != null) {
-				heartbeat.cancel(false);
+				heartbeat.cancel();
 				heartbeat = null;
 			}
-			scheduler.shutdownNow();
+		}
+	}
+
+	public JsonRpcClientMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Sets the listener notified of the requests sent by this client, their
+	 * responses and the traffic of the connection. No metrics are collected
+	 * when there is no listener, which is the default.
+	 *
+	 * @param metricsListener
+	 *            the listener (for example, a {@link JsonRpcClientMetrics}),
+	 *            or null to stop collecting metrics
+	 */
+	public void setMetricsListener(JsonRpcClientMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+		if (rsHelper != null) {
+			rsHelper.setMetricsListener(metricsListener);
+		}
+	}
+
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Limits the requests in flight of this client. When the server
+	 * saturates, the limit decreases and requests exceeding it fail fast with
+	 * {@link org.kurento.jsonrpc.ConcurrencyLimitExceededException} instead of
+	 * piling up until their timeout. Requests are not limited by default.
+	 * Notifications and batches are always sent, and don't count in the
+	 * limit.
+	 *
+	 * @param concurrencyLimiter
+	 *            the limiter, that can be shared with other clients, or null
+	 *            to remove the limit
+	 */
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+		if (rsHelper != null) {
+			rsHelper.setConcurrencyLimiter(concurrencyLimiter);
 		}
 	}
 
@@ -308,6 +553,17 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 
 	public abstract void connect() throws IOException;
 
+	/**
+	 * Tells the heartbeat if pings can be sent now. Transports that open or
+	 * recover connections return false meanwhile, so pings are not sent from
+	 * the timer while the connection is being established.
+	 *
+	 * @return true if the client is connected to the server
+	 */
+	protected boolean isConnected() {
+		return true;
+	}
+
 	@Override
 	public abstract void close() throws IOException;
 
@@ -19,11 +19,25 @@ import static org.kurento.jsonrpc.JsonUtils.toJson;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.internal.HttpResponseSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
@@ -36,18 +50,61 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 
+/**
+ * Client that sends requests in HTTP POSTs and receives requests from the
+ * server with long polling: a poll is always waiting in the server, that
+ * answers it as soon as it has requests for this client (or when its poll
+ * timeout expires), and the client polls again immediately with the responses
+ * to those requests.
+ *
+ * Connections are kept alive and reused, so a request or a poll doesn't need
+ * a new TCP (and TLS) handshake.
+ */
 public class JsonRpcClientHttp extends JsonRpcClient {
 
 	private final Logger log = LoggerFactory.getLogger(JsonRpcClient.class);
 
+	/**
+	 * Maximum connections to the server: one for the poll and the rest for
+	 * concurrent requests.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+	/**
+	 * Time to wait for the answer of a poll. It must be longer than the time
+	 * the server holds a poll without requests.
+	 */
+	public static final int DEFAULT_POLL_READ_TIMEOUT = 60000;
+
+	private static final long POLL_RETRY_DELAY = 1000;
+
+	private static final Type REQUEST_LIST_TYPE = new TypeToken<List<Request<JsonElement>>>() {
+	}.getType();
+
 	private Thread longPoolingThread;
 	private String url;
 
 	private HttpResponseSender rs;
 
+	private final CloseableHttpClient httpClient;
+
+	private volatile boolean closed;
+
 	public JsonRpcClientHttp(String url) {
+		this(url, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	public JsonRpcClientHttp(String url, int maxConnections) {
+
 		this.url = url;
 		this.rs = new HttpResponseSender();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager).build();
+
 		this.rsHelper = new JsonRpcRequestSenderHelper() {
 			@Override
 			public <P, R> Response<R> internalSendRequest(Request<P> request,
@@ -57,11 +114,10 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 			@Override
 			protected void internalSendRequest(
-					Request<? extends Object> request,
-					Class<JsonElement> class1,
-					Continuation<Response<JsonElement>> continuation) {
-				throw new UnsupportedOperationException(
-						"Async client int local is unavailable");
+					final Request<? extends Object> request,
+					final Class<JsonElement> resultClass,
+					final Continuation<Response<JsonElement>> continuation) {
+				internalSendRequestHttp(request, resultClass, continuation);
 			}
 		};
 	}
@@ -72,12 +128,14 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 		rsHelper.setSessionId(sessionId);
 
-		if (session == null) {
-			session = new ClientSession(sessionId, registerInfo, this);
+		synchronized (this) {
+			if (session == null) {
+				session = new ClientSession(sessionId, registerInfo, this);
 
-			handlerManager.afterConnectionEstablished(session);
+				handlerManager.afterConnectionEstablished(session);
 
-			startPooling();
+				startPooling();
+			}
 		}
 	}
 
@@ -89,22 +147,14 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 			}
 		};
 
+		this.longPoolingThread.setName("JsonRpcClientHttp-poll");
+		this.longPoolingThread.setDaemon(true);
 		this.longPoolingThread.start();
 	}
 
 	private void longPooling() {
 
-		while (true) {
-
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.debug("Long polling thread interrupted", e);
-			}
-
-			if (Thread.interrupted()) {
-				break;
-			}
+		while (!closed && !Thread.currentThread().isInterrupted()) {
 
 			try {
 
@@ -112,24 +162,35 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 						Request.POLL_METHOD_NAME, rs.getResponseListToSend(),
 						JsonElement.class);
 
-				log.info("Response from pool: {}", requestsListJsonObject);
-
-				Type collectionType = new TypeToken<List<Request<JsonElement>>>() {
-				}.getType();
+				log.debug("Response from poll: {}", requestsListJsonObject);
 
 				List<Request<JsonElement>> requestList = JsonUtils.fromJson(
-						requestsListJsonObject, collectionType);
+						requestsListJsonObject, REQUEST_LIST_TYPE);
 
-				processServerRequests(requestList);
+				if (requestList != null) {
+					processServerRequests(requestList);
+				}
 
 			} catch (IOException e) {
-				// TODO Decide what to do in this case. If the net connection is
-				// lost, this will retry indefinitely
-				log.error(
-						"Exception when waiting for events (long-polling). Retry",
-						e);
+
+				if (closed) {
+					break;
+				}
+
+				// Server is not reachable. Wait before polling again to not
+				// overload the network or the server when it comes back
+				log.warn("Exception when waiting for events (long-polling). "
+						+ "Retrying in {} millis", POLL_RETRY_DELAY, e);
+
+				try {
+					Thread.sleep(POLL_RETRY_DELAY);
+				} catch (InterruptedException e1) {
+					break;
+				}
 			}
 		}
+
+		log.debug("Long polling finished");
 	}
 
 	private void processServerRequests(List<Request<JsonElement>> requestList) {
@@ -144,12 +205,48 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 		}
 	}
 
+	private void internalSendRequestHttp(
+			final Request<? extends Object> request,
+			final Class<JsonElement> resultClass,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+
+				Response<JsonElement> response;
+				try {
+					response = internalSendRequestHttp(request, resultClass);
+				} catch (Exception e) {
+					continuation.onError(e);
+					return;
+				}
+
+				try {
+					continuation.onSuccess(response);
+				} catch (Exception e) {
+					log.error("Exception while processing response", e);
+				}
+			}
+		};
+
+		try {
+			runtime.getDispatchExecutor().execute(task);
+		} catch (RejectedExecutionException e) {
+			continuation.onError(new TransportException(
+					"Request not sent: dispatch executor saturated", e));
+		}
+	}
+
 	private <P, R> Response<R> internalSendRequestHttp(Request<P> request,
 			Class<R> resultClass) throws IOException {
 
-		String resultJson = org.apache.http.client.fluent.Request.Post(url)
-				.bodyString(toJson(request), ContentType.APPLICATION_JSON)
-				.execute().returnContent().asString();
+		int readTimeout = (int) getRequestTimeout(request);
+		if (Request.POLL_METHOD_NAME.equals(request.getMethod())) {
+			readTimeout = Math.max(readTimeout, DEFAULT_POLL_READ_TIMEOUT);
+		}
+
+		String resultJson = post(toJson(request), readTimeout);
 
 		if (resultJson == null || resultJson.trim().isEmpty()) {
 			return new Response<>(request.getId(), new ResponseError(3,
@@ -163,12 +260,47 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 		return response;
 	}
 
+	private String post(String body, int readTimeout) throws IOException {
+
+		HttpPost post = new HttpPost(url);
+		post.setConfig(RequestConfig.custom()
+				.setConnectTimeout(connectionTimeout)
+				.setSocketTimeout(readTimeout).build());
+		post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+
+		try (CloseableHttpResponse response = httpClient.execute(post)) {
+
+			StatusLine status = response.getStatusLine();
+			HttpEntity entity = response.getEntity();
+
+			if (status.getStatusCode() >= 300) {
+				EntityUtils.consume(entity);
+				throw new HttpResponseException(status.getStatusCode(),
+						status.getReasonPhrase());
+			}
+
+			// Consuming the entity returns the connection to the pool
+			return entity == null ? null : EntityUtils.toString(entity,
+					StandardCharsets.UTF_8);
+		}
+	}
+
 	@Override
 	public void close() {
+
+		closed = true;
+
 		if (this.longPoolingThread != null) {
-			log.info("Interrupted!!!");
 			this.longPoolingThread.interrupt();
 		}
+
+		try {
+			// Aborts the poll waiting in the server
+			httpClient.close();
+		} catch (IOException e) {
+			log.debug("Exception closing HTTP client", e);
+		}
+
 		handlerManager.afterConnectionClosed(session,
 				"Client closed connection");
 		session = null;
@@ -179,8 +311,7 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 		try {
 
-			org.apache.http.client.fluent.Request.Post(url)
-			.bodyString("", ContentType.APPLICATION_JSON).execute();
+			post("", connectionTimeout);
 
 		} catch (ClientProtocolException e) {
 			// Silence http connection exception. This indicate that server is
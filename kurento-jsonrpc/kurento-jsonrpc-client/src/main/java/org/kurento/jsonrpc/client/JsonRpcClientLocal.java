@@ -15,6 +15,7 @@
 package org.kurento.jsonrpc.client;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
@@ -24,12 +25,14 @@ import org.kurento.jsonrpc.internal.client.ClientSession;
 import org.kurento.jsonrpc.internal.client.TransactionImpl;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -40,6 +43,7 @@ public class JsonRpcClientLocal extends JsonRpcClient {
 
 	private JsonRpcHandler<? extends Object> remoteHandler;
 	private final JsonRpcHandlerManager remoteHandlerManager = new JsonRpcHandlerManager();
+	private volatile boolean directMode;
 
 	public <F> JsonRpcClientLocal(JsonRpcHandler<? extends Object> handler) {
 
@@ -69,16 +73,54 @@ public class JsonRpcClientLocal extends JsonRpcClient {
 		};
 	}
 
+	/**
+	 * Configures how requests and responses are passed between this client
+	 * and the handler. By default, they are converted to JSON text and back,
+	 * as if they were sent through the network, so the handler is exercised
+	 * as with a remote client.
+	 *
+	 * In direct mode, the objects are handed to the handler and back without
+	 * conversion to text. JSON params and results are copied (as trees), so
+	 * neither side sees the modifications of the other. Params of other types
+	 * are converted to a {@link JsonObject}, as handlers expect JSON params.
+	 * Immutable values and other objects returned as result are shared, so
+	 * they must not be modified after being sent.
+	 *
+	 * @param directMode
+	 *            true to pass the messages as objects
+	 */
+	public void setDirectMode(boolean directMode) {
+		this.directMode = directMode;
+	}
+
+	public boolean isDirectMode() {
+		return directMode;
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private <R, P> Response<R> localSendRequest(Request<P> request,
 			Class<R> resultClass) {
-		// Simulate sending json string for net
-		String jsonRequest = request.toString();
 
-		log.debug("--> {}", jsonRequest);
+		boolean direct = directMode;
+
+		Request<?> newRequest;
+		if (direct) {
 
-		Request<JsonObject> newRequest = JsonUtils.fromJsonRequest(jsonRequest,
-				JsonObject.class);
+			newRequest = new Request<>(request.getSessionId(),
+					request.getId(), request.getMethod(),
+					toJsonParams(request.getParams()));
+			request = (Request<P>) newRequest;
+
+		} else {
+
+			// Simulate sending json string for net
+			String jsonRequest = request.toString();
+
+			log.debug("--> {}", jsonRequest);
+
+			newRequest = JsonUtils.fromJsonRequest(jsonRequest,
+					JsonObject.class);
+		}
 
 		final Response<JsonObject>[] response = new Response[1];
 
@@ -190,6 +232,13 @@ public class JsonRpcClientLocal extends JsonRpcClient {
 			if (responseObj.getId() == null) {
 				responseObj.setId(request.getId());
 			}
+
+			if (direct) {
+				return convertResponse(
+						(Response<Object>) (Response<?>) response[0],
+						resultClass);
+			}
+
 			String jsonResponse = responseObj.toString();
 
 			// log.debug("< {}", jsonResponse);
@@ -207,6 +256,74 @@ public class JsonRpcClientLocal extends JsonRpcClient {
 
 	}
 
+	@SuppressWarnings("unchecked")
+	private <R> Response<R> convertResponse(Response<Object> response,
+			Class<R> resultClass) {
+
+		Object result = response.getResult();
+
+		if (result == null || resultClass == Void.class
+				|| resultClass == void.class) {
+			response.setResult(null);
+			return (Response<R>) (Response<?>) response;
+		}
+
+		if (resultClass.isInstance(result)) {
+			response.setResult(isolate(result));
+			return (Response<R>) (Response<?>) response;
+		}
+
+		// Converted from the tree, so the result is a new object anyway
+		JsonElement json = result instanceof JsonElement ? (JsonElement) result
+				: JsonUtils.toJsonElement(result);
+		response.setResult(json);
+
+		return MessageUtils.convertResponse(
+				(Response<JsonElement>) (Response<?>) response, resultClass);
+	}
+
+	/**
+	 * Copies JSON params, and converts to JSON the rest of params, so the
+	 * handler receives them as with a remote client.
+	 */
+	private static Object toJsonParams(Object params) {
+		if (params == null || params instanceof JsonElement) {
+			return isolate(params);
+		}
+		return JsonUtils.toJsonObject(params);
+	}
+
+	/**
+	 * Copies JSON trees, that can be modified by the sender or the receiver.
+	 * The rest of values are shared.
+	 */
+	private static Object isolate(Object value) {
+		return value instanceof JsonElement ? copy((JsonElement) value) : value;
+	}
+
+	private static JsonElement copy(JsonElement element) {
+
+		if (element.isJsonObject()) {
+			JsonObject copy = new JsonObject();
+			for (Map.Entry<String, JsonElement> member : element
+					.getAsJsonObject().entrySet()) {
+				copy.add(member.getKey(), copy(member.getValue()));
+			}
+			return copy;
+		}
+
+		if (element.isJsonArray()) {
+			JsonArray copy = new JsonArray();
+			for (JsonElement item : element.getAsJsonArray()) {
+				copy.add(copy(item));
+			}
+			return copy;
+		}
+
+		// Primitives and null can't be modified
+		return element;
+	}
+
 	@Override
 	public void close() throws IOException {
 		handlerManager.afterConnectionClosed(session, "Client close");
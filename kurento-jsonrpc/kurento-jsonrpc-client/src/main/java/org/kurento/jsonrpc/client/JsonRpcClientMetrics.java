@@ -0,0 +1,273 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+import org.kurento.jsonrpc.internal.MBeanRegistration;
+import org.kurento.jsonrpc.internal.MethodMetrics;
+import org.kurento.jsonrpc.internal.MethodMetrics.Counters;
+import org.kurento.jsonrpc.message.ResponseError;
+
+/**
+ * Metrics of the requests sent by a client: latency histograms for each
+ * method, requests in flight, error codes, timeouts and traffic. They can be
+ * published in JMX with {@link #registerMBean(String)}.
+ *
+ * Metrics are collected when this object is configured as listener of a
+ * client with
+ * {@link JsonRpcClient#setMetricsListener(JsonRpcClientMetricsListener)}. The
+ * same object can be shared by several clients to aggregate their metrics.
+ * As in the server, the number of methods with their own statistics is
+ * limited, and the rest are counted together under
+ * {@value MethodMetrics#OTHER_METHODS}.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcClientMetrics implements JsonRpcClientMetricsListener,
+		JsonRpcClientMetricsMXBean {
+
+	/**
+	 * Statistics of the requests of a method, as published in JMX.
+	 */
+	public static class MethodStats extends MethodMetrics.Stats {
+
+		private final long timeouts;
+		private final long failures;
+
+		@ConstructorProperties({ "count", "errors", "timeouts", "failures",
+				"meanLatency", "p50Latency", "p90Latency", "p99Latency",
+				"maxLatency" })
+		public MethodStats(long count, long errors, long timeouts,
+				long failures, double meanLatency, double p50Latency,
+				double p90Latency, double p99Latency, double maxLatency) {
+			super(count, errors, meanLatency, p50Latency, p90Latency,
+					p99Latency, maxLatency);
+			this.timeouts = timeouts;
+			this.failures = failures;
+		}
+
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		/**
+		 * @return number of requests without response, including timeouts
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		@Override
+		protected String fieldsToString() {
+			return ", timeouts=" + timeouts + ", failures=" + failures;
+		}
+	}
+
+	private final MethodMetrics methods = new MethodMetrics();
+
+	private final AtomicInteger inFlightRequests = new AtomicInteger();
+	private final AtomicLong numRequests = new AtomicLong();
+	private final AtomicLong numErrors = new AtomicLong();
+	private final AtomicLong numTimeouts = new AtomicLong();
+	private final AtomicLong numFailures = new AtomicLong();
+	private final AtomicLong numRejected = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong messagesSent = new AtomicLong();
+	private final AtomicLong messagesReceived = new AtomicLong();
+
+	private final MBeanRegistration registration = new MBeanRegistration(
+			this, "JsonRpcClientMetrics");
+
+	@Override
+	public void requestSent(String method) {
+		inFlightRequests.incrementAndGet();
+		numRequests.incrementAndGet();
+	}
+
+	@Override
+	public void responseReceived(String method, long latencyNanos,
+			ResponseError error) {
+
+		inFlightRequests.decrementAndGet();
+
+		methods.requestResponded(method, latencyNanos, error);
+
+		if (error != null) {
+			numErrors.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void requestFailed(String method, long latencyNanos,
+			Throwable cause) {
+
+		inFlightRequests.decrementAndGet();
+		numFailures.incrementAndGet();
+
+		boolean timeout = RequestTimeoutException.isTimeout(cause);
+		methods.requestFailed(method, timeout);
+
+		if (timeout) {
+			numTimeouts.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void requestRejected(String method) {
+		numRejected.incrementAndGet();
+	}
+
+	@Override
+	public void messageSent(int bytes) {
+		messagesSent.incrementAndGet();
+		bytesSent.addAndGet(bytes);
+	}
+
+	@Override
+	public void messageReceived(int bytes) {
+		messagesReceived.incrementAndGet();
+		bytesReceived.addAndGet(bytes);
+	}
+
+	@Override
+	public int getInFlightRequests() {
+		return inFlightRequests.get();
+	}
+
+	@Override
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	@Override
+	public long getNumErrors() {
+		return numErrors.get();
+	}
+
+	@Override
+	public long getNumTimeouts() {
+		return numTimeouts.get();
+	}
+
+	@Override
+	public long getNumFailures() {
+		return numFailures.get();
+	}
+
+	@Override
+	public long getNumRejected() {
+		return numRejected.get();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	@Override
+	public long getMessagesSent() {
+		return messagesSent.get();
+	}
+
+	@Override
+	public long getMessagesReceived() {
+		return messagesReceived.get();
+	}
+
+	@Override
+	public Map<Integer, Long> getErrorCodes() {
+		return methods.getErrorCodes();
+	}
+
+	@Override
+	public Map<String, MethodStats> getMethodStats() {
+		Map<String, MethodStats> stats = new TreeMap<>();
+		for (Entry<String, Counters> e : methods.getCounters().entrySet()) {
+			stats.put(e.getKey(), getStats(e.getValue()));
+		}
+		return stats;
+	}
+
+	/**
+	 * @param method
+	 *            the method of the requests
+	 * @return the statistics of the method, or null if no request with that
+	 *         method has finished
+	 */
+	public MethodStats getMethodStats(String method) {
+		Counters counters = methods.getCounters(method);
+		return counters == null ? null : getStats(counters);
+	}
+
+	private static MethodStats getStats(Counters counters) {
+		LatencyHistogram latencies = counters.getLatencies();
+		return new MethodStats(latencies.getCount(), counters.getErrors(),
+				counters.getTimeouts(), counters.getFailures(),
+				latencies.getMean(), latencies.getPercentile(50),
+				latencies.getPercentile(90), latencies.getPercentile(99),
+				latencies.getMax());
+	}
+
+	/**
+	 * Resets the counters and histograms. Requests in flight are still
+	 * counted, as they will be reported when they finish.
+	 */
+	@Override
+	public void reset() {
+		methods.reset();
+		numRequests.set(0);
+		numErrors.set(0);
+		numTimeouts.set(0);
+		numFailures.set(0);
+		numRejected.set(0);
+		bytesSent.set(0);
+		bytesReceived.set(0);
+		messagesSent.set(0);
+		messagesReceived.set(0);
+	}
+
+	/**
+	 * Publishes these metrics in the platform MBean server as
+	 * {@code org.kurento.jsonrpc:type=JsonRpcClientMetrics,name=<name>}.
+	 *
+	 * @param name
+	 *            name that identifies the client in JMX
+	 * @return the name of the registered MBean
+	 */
+	public ObjectName registerMBean(String name) {
+		return registration.register(name);
+	}
+
+	public void unregisterMBean() {
+		registration.unregister();
+	}
+
+}
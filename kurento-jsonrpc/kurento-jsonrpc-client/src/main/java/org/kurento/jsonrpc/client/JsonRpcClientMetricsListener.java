@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import org.kurento.jsonrpc.message.ResponseError;
+
+/**
+ * Listener of the requests sent by a client and of the messages exchanged
+ * with the server, intended to collect metrics. Methods are called from the
+ * threads sending and receiving messages, so they must be thread safe and
+ * return quickly.
+ *
+ * Notifications are only reported as sent messages, as they have no
+ * response.
+ *
+ * @see JsonRpcClientMetrics
+ * @since 6.0.0
+ */
+public interface JsonRpcClientMetricsListener {
+
+	/**
+	 * Called before sending a request.
+	 *
+	 * @param method
+	 *            the method of the request
+	 */
+	void requestSent(String method);
+
+	/**
+	 * Called when the response to a request is received.
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param latencyNanos
+	 *            time since the request was sent, in nanoseconds
+	 * @param error
+	 *            the error of the response, or null if it has a result
+	 */
+	void responseReceived(String method, long latencyNanos,
+			ResponseError error);
+
+	/**
+	 * Called when a request fails without response, because it can't be sent,
+	 * the connection is lost or its timeout expires.
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param latencyNanos
+	 *            time since the request was sent, in nanoseconds
+	 * @param cause
+	 *            the reason of the failure
+	 */
+	void requestFailed(String method, long latencyNanos, Throwable cause);
+
+	/**
+	 * Called when a request is not sent because the concurrency limit of the
+	 * client has been reached.
+	 *
+	 * @param method
+	 *            the method of the request
+	 */
+	void requestRejected(String method);
+
+	/**
+	 * Called when a message is written in the connection.
+	 *
+	 * @param bytes
+	 *            size of the message
+	 */
+	void messageSent(int bytes);
+
+	/**
+	 * Called when a message is read from the connection.
+	 *
+	 * @param bytes
+	 *            size of the message
+	 */
+	void messageReceived(int bytes);
+
+}
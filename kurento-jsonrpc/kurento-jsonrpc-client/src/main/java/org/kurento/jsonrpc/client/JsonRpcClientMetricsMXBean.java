@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link JsonRpcClientMetrics}. Latencies are in
+ * milliseconds.
+ *
+ * @since 6.0.0
+ */
+public interface JsonRpcClientMetricsMXBean {
+
+	int getInFlightRequests();
+
+	long getNumRequests();
+
+	long getNumErrors();
+
+	long getNumTimeouts();
+
+	long getNumFailures();
+
+	long getNumRejected();
+
+	long getBytesSent();
+
+	long getBytesReceived();
+
+	long getMessagesSent();
+
+	long getMessagesReceived();
+
+	/**
+	 * @return number of error responses for each error code
+	 */
+	Map<Integer, Long> getErrorCodes();
+
+	/**
+	 * @return statistics of the requests of each method
+	 */
+	Map<String, JsonRpcClientMetrics.MethodStats> getMethodStats();
+
+	void reset();
+
+}
@@ -0,0 +1,307 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Resources shared by the clients of the same JVM: the websocket client (with
+ * its selectors and threads), the executor where responses and events are
+ * dispatched, the executor of heartbeats and reconnections, and the timer for
+ * request timeouts and delayed tasks. This way, each client only keeps its
+ * connection and a few objects, and an application with hundreds of clients
+ * doesn't need thousands of threads.
+ *
+ * Clients retain the runtime when they are created and release it when they
+ * are closed. When the last client is released, the resources created by the
+ * runtime are stopped, and they are created again if a new client uses it.
+ * Resources provided in the constructor are never stopped by the runtime.
+ * The default runtime is never stopped, but its threads finish when they are
+ * idle.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcClientRuntime {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(JsonRpcClientRuntime.class);
+
+	public static final int DEFAULT_DISPATCH_THREADS = Math.max(10, Runtime
+			.getRuntime().availableProcessors() * 2);
+
+	public static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 10000;
+
+	public static final int DEFAULT_CONTROL_THREADS = Math.max(4, Runtime
+			.getRuntime().availableProcessors());
+
+	public static final long DEFAULT_CONNECT_TIMEOUT = 15000;
+
+	private static final long IDLE_THREAD_TIMEOUT = 60;
+
+	private static volatile JsonRpcClientRuntime defaultRuntime;
+
+	private final boolean stoppable;
+	private final int dispatchThreads;
+	private final int dispatchQueueCapacity;
+	private final ExecutorService providedExecutor;
+	private final WebSocketClient providedWebSocketClient;
+	private final HashedWheelTimer timer;
+
+	private ExecutorService dispatchExecutor;
+	private ExecutorService controlExecutor;
+	private WebSocketClient webSocketClient;
+	private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int references;
+
+	public JsonRpcClientRuntime() {
+		this(DEFAULT_DISPATCH_THREADS);
+	}
+
+	public JsonRpcClientRuntime(int dispatchThreads) {
+		this(dispatchThreads, DEFAULT_DISPATCH_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param dispatchThreads
+	 *            threads of the executor of responses and events
+	 * @param dispatchQueueCapacity
+	 *            maximum number of responses and events waiting for a
+	 *            dispatch thread
+	 * @see #getDispatchExecutor()
+	 */
+	public JsonRpcClientRuntime(int dispatchThreads, int dispatchQueueCapacity) {
+		this(dispatchThreads, dispatchQueueCapacity, null, null, null, true);
+	}
+
+	/**
+	 * Creates a runtime with the given resources. They are not stopped by the
+	 * runtime, and the websocket client must be started.
+	 *
+	 * @param webSocketClient
+	 *            the websocket client, or null to create one
+	 * @param dispatchExecutor
+	 *            the executor of responses and events, or null to create one
+	 * @param timer
+	 *            the timer, or null to use the shared timer
+	 */
+	public JsonRpcClientRuntime(WebSocketClient webSocketClient,
+			ExecutorService dispatchExecutor, HashedWheelTimer timer) {
+		this(DEFAULT_DISPATCH_THREADS, DEFAULT_DISPATCH_QUEUE_CAPACITY,
+				webSocketClient, dispatchExecutor, timer, true);
+	}
+
+	private JsonRpcClientRuntime(int dispatchThreads,
+			int dispatchQueueCapacity, WebSocketClient webSocketClient,
+			ExecutorService dispatchExecutor, HashedWheelTimer timer,
+			boolean stoppable) {
+
+		if (dispatchThreads <= 0) {
+			throw new IllegalArgumentException(
+					"Dispatch threads must be positive, but was "
+							+ dispatchThreads);
+		}
+
+		if (dispatchQueueCapacity <= 0) {
+			throw new IllegalArgumentException(
+					"Dispatch queue capacity must be positive, but was "
+							+ dispatchQueueCapacity);
+		}
+
+		this.stoppable = stoppable;
+		this.dispatchThreads = dispatchThreads;
+		this.dispatchQueueCapacity = dispatchQueueCapacity;
+		this.providedWebSocketClient = webSocketClient;
+		this.providedExecutor = dispatchExecutor;
+		this.timer = timer != null ? timer : HashedWheelTimer.getSharedTimer();
+	}
+
+	/**
+	 * Returns the runtime used by the clients created without an explicit
+	 * one.
+	 *
+	 * @return the default runtime
+	 */
+	public static JsonRpcClientRuntime getDefault() {
+		if (defaultRuntime == null) {
+			synchronized (JsonRpcClientRuntime.class) {
+				if (defaultRuntime == null) {
+					defaultRuntime = new JsonRpcClientRuntime(
+							DEFAULT_DISPATCH_THREADS,
+							DEFAULT_DISPATCH_QUEUE_CAPACITY, null, null, null,
+							false);
+				}
+			}
+		}
+		return defaultRuntime;
+	}
+
+	/**
+	 * Sets the timeout used by the websocket client to open connections. Each
+	 * client also waits at most its own connection timeout.
+	 *
+	 * @param connectTimeout
+	 *            timeout in milliseconds
+	 */
+	public synchronized void setConnectTimeout(long connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public synchronized void retain() {
+		references++;
+	}
+
+	public synchronized void release() {
+
+		if (references == 0) {
+			log.warn("Runtime released more times than retained");
+			return;
+		}
+
+		references--;
+
+		if (references == 0 && stoppable) {
+			stop();
+		}
+	}
+
+	public synchronized int getReferences() {
+		return references;
+	}
+
+	public synchronized WebSocketClient getWebSocketClient() {
+
+		if (providedWebSocketClient != null) {
+			return providedWebSocketClient;
+		}
+
+		if (webSocketClient == null) {
+
+			WebSocketClient client = new WebSocketClient();
+			client.setConnectTimeout(connectTimeout);
+
+			try {
+				client.start();
+			} catch (Exception e) {
+				throw new KurentoException("Exception starting websocket client",
+						e);
+			}
+
+			webSocketClient = client;
+		}
+
+		return webSocketClient;
+	}
+
+	/**
+	 * Returns the executor where the responses, the continuations of
+	 * asynchronous requests and the requests from server are processed. The
+	 * executor created by the runtime has a bounded queue, so a client whose
+	 * handlers block can't make it grow without limit. When the queue is
+	 * full, tasks are rejected with a
+	 * {@link java.util.concurrent.RejectedExecutionException}, and clients
+	 * discard the requests from server (as when the queue of their object is
+	 * full), fail the asynchronous HTTP requests and fail the continuations
+	 * of the responses received. Tasks are only run in the thread that
+	 * submits them once the executor has been shut down.
+	 *
+	 * @return the dispatch executor
+	 */
+	public synchronized ExecutorService getDispatchExecutor() {
+
+		if (providedExecutor != null) {
+			return providedExecutor;
+		}
+
+		if (dispatchExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					dispatchThreads, dispatchThreads, IDLE_THREAD_TIMEOUT,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+							dispatchQueueCapacity), new ThreadFactoryBuilder()
+							.setNameFormat("JsonRpcClientDispatch-%d").build());
+			executor.allowCoreThreadTimeOut(true);
+			dispatchExecutor = executor;
+		}
+
+		return dispatchExecutor;
+	}
+
+	/**
+	 * Returns the executor of the heartbeats and reconnections of the
+	 * clients. It is not shared with the handlers of responses and events,
+	 * so a connection is kept alive and recovered even when they block the
+	 * dispatch executor. Each client has at most a heartbeat and a
+	 * reconnection queued, so its queue doesn't grow beyond the number of
+	 * clients.
+	 *
+	 * @return the control executor
+	 */
+	public synchronized ExecutorService getControlExecutor() {
+
+		if (controlExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					DEFAULT_CONTROL_THREADS, DEFAULT_CONTROL_THREADS,
+					IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactoryBuilder().setNameFormat(
+							"JsonRpcClientControl-%d").build());
+			executor.allowCoreThreadTimeOut(true);
+			controlExecutor = executor;
+		}
+
+		return controlExecutor;
+	}
+
+	public HashedWheelTimer getTimer() {
+		return timer;
+	}
+
+	private void stop() {
+
+		log.debug("Stopping JsonRpcClient runtime");
+
+		if (webSocketClient != null) {
+			try {
+				webSocketClient.stop();
+				webSocketClient.destroy();
+			} catch (Exception e) {
+				log.debug("Could not properly stop websocket client. Reason: {}",
+						e.getMessage());
+			}
+			webSocketClient = null;
+		}
+
+		if (dispatchExecutor != null) {
+			dispatchExecutor.shutdown();
+			dispatchExecutor = null;
+		}
+
+		if (controlExecutor != null) {
+			controlExecutor.shutdown();
+			controlExecutor = null;
+		}
+	}
+
+}
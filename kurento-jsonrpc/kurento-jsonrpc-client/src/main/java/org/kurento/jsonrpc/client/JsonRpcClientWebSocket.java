@@ -13,23 +13,40 @@
  */
 package org.kurento.jsonrpc.client;
 
-import static org.kurento.jsonrpc.JsonUtils.fromJson;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonRequest;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
+import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
+import static org.kurento.jsonrpc.JsonUtils.fromJsonMessage;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.LAST_SEQUENCE_PARAM;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CANCEL_REQUEST;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_RECONNECT;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG_PAYLOAD;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.eclipse.jetty.websocket.api.BatchMode;
 import org.eclipse.jetty.websocket.api.CloseException;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
@@ -37,15 +54,23 @@ import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
-import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.JsonRpcCodec;
 import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.TransportException;
-import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.BatchResponseCollector;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.KeyedSerialExecutor;
 import org.kurento.jsonrpc.internal.client.ClientSession;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.MessageWriter;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.OverflowPolicy;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.Priority;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.WriteCallback;
 import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.internal.ws.SequenceTracker;
 import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
@@ -53,16 +78,13 @@ import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.base.Utf8;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 public class JsonRpcClientWebSocket extends JsonRpcClient {
 
-	private static final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-	.setNameFormat("JsonRpcClientWebsocket-%d").build();
-
-	@WebSocket(maxTextMessageSize = 64 * 1024)
+	@WebSocket(maxTextMessageSize = 64 * 1024, maxBinaryMessageSize = 64 * 1024)
 	public class SimpleEchoSocket {
 
 		@OnWebSocketClose
@@ -72,15 +94,14 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 		@OnWebSocketConnect
 		public void onConnect(Session session) {
+			outboundQueue = createOutboundQueue(session);
 			wsSession = session;
 			rs = new ResponseSender() {
 				@Override
 				public void sendResponse(Message message) throws IOException {
 					String jsonMessage = message.toString();
 					log.debug("{} <-Res {}", label, jsonMessage);
-					synchronized (wsSession) {
-						wsSession.getRemote().sendString(jsonMessage);
-					}
+					outboundQueue.send(jsonMessage, Priority.REQUEST);
 				}
 
 				@Override
@@ -88,9 +109,7 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 						throws IOException {
 					String jsonMessage = message.toString();
 					log.trace("{} <-Res {}", label, jsonMessage);
-					synchronized (wsSession) {
-						wsSession.getRemote().sendString(jsonMessage);
-					}
+					outboundQueue.send(jsonMessage, Priority.CONTROL);
 				}
 			};
 			latch.countDown();
@@ -101,9 +120,23 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 		@OnWebSocketMessage
 		public void onMessage(String message) {
+			JsonRpcClientMetricsListener listener = metricsListener;
+			if (listener != null) {
+				listener.messageReceived(Utf8.encodedLength(message));
+			}
 			handleWebSocketTextMessage(message);
 		}
 
+		@OnWebSocketMessage
+		public void onMessage(byte[] payload, int offset, int length) {
+			JsonRpcClientMetricsListener listener = metricsListener;
+			if (listener != null) {
+				listener.messageReceived(length);
+			}
+			handleWebSocketBinaryMessage(ByteBuffer.wrap(payload, offset,
+					length));
+		}
+
 	}
 
 	public static Logger log = LoggerFactory
@@ -111,23 +144,55 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 	private CountDownLatch latch = new CountDownLatch(1);
 
-	private ExecutorService execService = Executors.newFixedThreadPool(10,
-			threadFactory);
-
 	private String url;
 	private volatile Session wsSession;
-	private final PendingRequests pendingRequests = new PendingRequests();
+	private volatile OutboundMessageQueue outboundQueue;
+	private JsonRpcCodec codec;
+	private int outboundQueueCapacity = OutboundMessageQueue.DEFAULT_CAPACITY;
+	private OverflowPolicy outboundOverflowPolicy = OverflowPolicy.BLOCK;
+	private final PendingRequests pendingRequests;
+
+	private final SequenceTracker receivedSequences = new SequenceTracker();
+	private volatile KeyedSerialExecutor serverRequestExecutor;
 	private ResponseSender rs;
 
 	private JsonRpcWSConnectionListener connectionListener;
 
 	private boolean clientClose;
 
-	public static final long TIMEOUT = 60000;
+	public static final long TIMEOUT = DEFAULT_REQUEST_TIMEOUT;
+
+	public static final int DEFAULT_MAX_BUFFERED_MESSAGES = 1000;
+
+	private static final String VALUE_PARAM = "value";
 
-	private WebSocketClient client;
+	private static final String[] DISPATCH_KEY_PARAMS = { "object",
+			"subscription" };
 
-	private boolean reconnecting;
+	public static final long DEFAULT_RECONNECTION_INITIAL_DELAY = 100;
+
+	public static final long DEFAULT_RECONNECTION_MAX_DELAY = 5000;
+
+	public static final long DEFAULT_MAX_RECONNECTION_TIME = 30000;
+
+	private final AtomicBoolean runtimeReleased = new AtomicBoolean();
+
+	private volatile boolean reconnecting;
+
+	// False while the server doesn't know that the current connection
+	// belongs to the session, because the reconnection request failed
+	private volatile boolean sessionResumed = true;
+
+	// Senders hold the read lock, so the requests are replayed once after
+	// reconnecting, when no request is being sent
+	private final ReadWriteLock reconnectionLock = new ReentrantReadWriteLock();
+	private final Queue<Request<?>> bufferedNotifications = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger numBufferedMessages = new AtomicInteger();
+
+	private int maxBufferedMessages = DEFAULT_MAX_BUFFERED_MESSAGES;
+	private long reconnectionInitialDelay = DEFAULT_RECONNECTION_INITIAL_DELAY;
+	private long reconnectionMaxDelay = DEFAULT_RECONNECTION_MAX_DELAY;
+	private long maxReconnectionTime = DEFAULT_MAX_RECONNECTION_TIME;
 
 	public JsonRpcClientWebSocket(String url) {
 		this(url, null);
@@ -135,9 +200,39 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 	public JsonRpcClientWebSocket(String url,
 			JsonRpcWSConnectionListener connectionListener) {
+		this(url, connectionListener, JsonRpcClientRuntime.getDefault());
+	}
+
+	/**
+	 * Creates a client that uses the websocket client, threads and timer of
+	 * the given runtime. The runtime is retained until the client is closed.
+	 *
+	 * @param url
+	 *            the url of the server
+	 * @param connectionListener
+	 *            the listener of connection events, or null
+	 * @param runtime
+	 *            the runtime shared with other clients
+	 */
+	public JsonRpcClientWebSocket(String url,
+			JsonRpcWSConnectionListener connectionListener,
+			JsonRpcClientRuntime runtime) {
 
 		this.url = url;
 		this.connectionListener = connectionListener;
+		this.runtime = runtime;
+		this.pendingRequests = new PendingRequests(runtime.getTimer());
+		this.serverRequestExecutor = new KeyedSerialExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				if (!dispatch(command)) {
+					throw new RejectedExecutionException(
+							"Dispatch executor saturated");
+				}
+			}
+		});
+
+		runtime.retain();
 
 		rsHelper = new JsonRpcRequestSenderHelper() {
 			@Override
@@ -155,6 +250,26 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 				return internalSendRequestWebSocket(request, resultClass);
 			}
+
+			@Override
+			protected void internalCancelRequest(Request<?> request) {
+				cancelPendingRequest(request.getId());
+			}
+
+			@Override
+			protected List<Response<JsonElement>> internalSendBatch(
+					List<? extends Request<?>> requests) throws IOException {
+
+				return internalSendBatchWebSocket(requests);
+			}
+
+			@Override
+			protected void internalSendBatch(
+					List<? extends Request<?>> requests,
+					Continuation<List<Response<JsonElement>>> continuation) {
+
+				internalSendBatchWebSocket(requests, continuation);
+			}
 		};
 	}
 
@@ -167,14 +282,30 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		}
 		this.disableHeartbeat();
 		clientClose = true;
-		this.closeClient();
+		reconnecting = false;
+		discardBufferedNotifications();
+		pendingRequests.closeAllPendingRequests(new TransportException(label
+				+ " JsonRpcClient closed while waiting for response"));
+		releaseRuntime();
 	}
 
 	@Override
 	public void closeWithReconnection() {
+		if (reconnecting) {
+			log.debug("{} Session is already reconnecting", label);
+			return;
+		}
 		log.info("{} Closing session with reconnection", label);
-		this.wsSession.close();
-		this.closeClient();
+		Session current = wsSession;
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	@Override
+	protected boolean isConnected() {
+		Session current = wsSession;
+		return current != null && current.isOpen() && !reconnecting;
 	}
 
 	public void closeNativeSession() {
@@ -190,30 +321,30 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 		if ((wsSession == null || !wsSession.isOpen()) && !clientClose) {
 
-			try {
-				if (client == null) {
-					client = new WebSocketClient();
-					client.setConnectTimeout(this.connectionTimeout);
-					client.start();
-				} else {
-					log.debug(
-							"{} Using existing websocket client when session is either null or closed.",
-							label);
-				}
+			Future<Session> connection = null;
 
+			try {
 				// TODO this should go in the JsonRpcClient
 				if (heartbeating) {
 					enableHeartbeat();
 				}
 
 				// FIXME Give the client some time, otherwise the exception
-				// is not thrown if the server is down.
-				Thread.sleep(100);
+				// is not thrown if the server is down. When reconnecting, the
+				// backoff delay has already given this time.
+				if (!reconnecting) {
+					Thread.sleep(100);
+				}
 
 				SimpleEchoSocket socket = new SimpleEchoSocket();
 				ClientUpgradeRequest request = new ClientUpgradeRequest();
-				wsSession = client.connect(socket, new URI(url), request).get(
-						this.connectionTimeout, TimeUnit.MILLISECONDS);
+				if (codec != null) {
+					request.setSubProtocols(codec.getName());
+				}
+				connection = runtime.getWebSocketClient().connect(socket,
+						new URI(url), request);
+				wsSession = connection.get(this.connectionTimeout,
+						TimeUnit.MILLISECONDS);
 				wsSession.setIdleTimeout(this.idleTimeout);
 
 			} catch (TimeoutException e) {
@@ -221,7 +352,7 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 					connectionListener.connectionFailed();
 				}
 
-				this.closeClient();
+				connection.cancel(true);
 				throw new KurentoException(label + " Timeout of "
 						+ this.connectionTimeout
 						+ "ms when waiting to connect to Websocket server "
@@ -232,7 +363,9 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 					connectionListener.connectionFailed();
 				}
 
-				this.closeClient();
+				if (connection != null) {
+					connection.cancel(true);
+				}
 				throw new KurentoException(label
 						+ " Exception connecting to WebSocket server " + url, e);
 			}
@@ -243,7 +376,7 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 					if (connectionListener != null) {
 						connectionListener.connectionFailed();
 					}
-					this.closeClient();
+					wsSession.close();
 					throw new KurentoException(label + " Timeout of "
 							+ this.connectionTimeout
 							+ "ms when waiting to connect to Websocket server "
@@ -257,80 +390,203 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 					handlerManager.afterConnectionEstablished(session);
 
 				} else {
+					sessionResumed = false;
+					resumeSession();
+				}
 
-					try {
-						rsHelper.sendRequest(METHOD_RECONNECT, String.class);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 
-						log.info(
-								"{} Reconnected to the same session in server {}",
-								label, url);
+		} else if (!sessionResumed && !clientClose) {
+			// The reconnection request failed in a previous attempt, after
+			// opening the connection
+			resumeSession();
+		}
+	}
 
-					} catch (JsonRpcErrorException e) {
-						if (e.getCode() == 40007) { // Invalid session exception
+	private void resumeSession() throws IOException {
 
-							rsHelper.setSessionId(null);
-							rsHelper.sendRequest(METHOD_RECONNECT, String.class);
+		try {
+			rsHelper.sendRequest(METHOD_RECONNECT, getReconnectParams(),
+					String.class);
 
-							log.info(
-									"{} Reconnected to a new session in server {}",
-									label, url);
-						} else {
-							log.warn(
-									"{} Error sending reconnection request to server ",
-									label, url, e);
-						}
-					}
-				}
+			log.info("{} Reconnected to the same session in server {}", label,
+					url);
 
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+		} catch (JsonRpcErrorException e) {
+			if (e.getCode() == 40007) { // Invalid session exception
+
+				rsHelper.setSessionId(null);
+				receivedSequences.reset();
+				rsHelper.sendRequest(METHOD_RECONNECT, String.class);
+
+				log.info("{} Reconnected to a new session in server {}",
+						label, url);
+			} else {
+				log.warn("{} Error sending reconnection request to server ",
+						label, url, e);
 			}
 		}
+
+		sessionResumed = true;
+
+		replayRequests();
+	}
+
+	/**
+	 * The reconnection request reports the last message received in order,
+	 * so a server with session resumption sends again the ones lost while
+	 * disconnected. Other servers ignore it.
+	 */
+	private JsonObject getReconnectParams() {
+		JsonObject params = new JsonObject();
+		params.addProperty(LAST_SEQUENCE_PARAM,
+				receivedSequences.getLastInOrder());
+		return params;
 	}
 
 	public Session getWebSocketSession() {
 		return wsSession;
 	}
 
-	protected void handleReconnectDisconnection(final int statusCode,
-			final String closeReason) {
+	/**
+	 * Gives access to the requests waiting for a response, mainly to monitor
+	 * their number and timeout rate.
+	 *
+	 * @return the pending requests of this client
+	 */
+	public PendingRequests getPendingRequests() {
+		return pendingRequests;
+	}
 
-		if (!clientClose) {
+	/**
+	 * Gives access to the queue of messages waiting to be written in the
+	 * websocket, mainly to monitor its depth.
+	 *
+	 * @return the outbound queue of the current websocket session, or null if
+	 *         the client has not been connected
+	 */
+	public OutboundMessageQueue getOutboundQueue() {
+		return outboundQueue;
+	}
 
-			reconnecting = true;
+	/**
+	 * Configures the queue of messages waiting to be written in the
+	 * websocket. It is applied in the next connection.
+	 *
+	 * @param capacity
+	 *            maximum number of queued messages
+	 * @param overflowPolicy
+	 *            what to do when a message is sent and the queue is full
+	 */
+	public void setOutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+		this.outboundQueueCapacity = capacity;
+		this.outboundOverflowPolicy = overflowPolicy;
+	}
 
-			if (execService == null || execService.isShutdown()
-					|| execService.isTerminated()) {
-				execService = Executors.newFixedThreadPool(10, threadFactory);
-			}
+	/**
+	 * Configures a codec to send messages in binary frames. The codec is
+	 * offered as websocket subprotocol in the next connection, and it is only
+	 * used if the server accepts it. Otherwise, messages are sent as JSON text.
+	 *
+	 * @param codec
+	 *            the codec, or null to use JSON text
+	 */
+	public void setCodec(JsonRpcCodec codec) {
+		this.codec = codec;
+	}
 
-			execService.execute(new Runnable() {
-				@Override
-				public void run() {
-					try {
-						connectIfNecessary();
+	/**
+	 * Configures how many messages can be sent while the client is
+	 * reconnecting. They are buffered and sent once the connection is
+	 * recovered, along with the requests sent before the disconnection that
+	 * didn't get a response. When the limit is reached, new messages fail
+	 * with a {@link TransportException}.
+	 *
+	 * @param maxBufferedMessages
+	 *            the maximum number of buffered messages. Zero disables the
+	 *            buffering, so messages sent while reconnecting fail
+	 */
+	public void setMaxBufferedMessages(int maxBufferedMessages) {
+		this.maxBufferedMessages = maxBufferedMessages;
+	}
 
-						reconnecting = false;
-					} catch (KurentoException e) {
+	/**
+	 * Configures the delay between reconnection attempts. It starts with the
+	 * initial delay and it is doubled in every attempt up to the max delay.
+	 * A random jitter of up to a half of the delay is applied, so clients
+	 * disconnected at the same time don't reconnect at the same time.
+	 *
+	 * @param initialDelay
+	 *            delay in milliseconds before the first attempt
+	 * @param maxDelay
+	 *            maximum delay in milliseconds between attempts
+	 */
+	public void setReconnectionBackoff(long initialDelay, long maxDelay) {
+		this.reconnectionInitialDelay = initialDelay;
+		this.reconnectionMaxDelay = maxDelay;
+	}
 
-						handlerManager.afterConnectionClosed(session,
-								closeReason);
+	/**
+	 * Configures the time spent trying to reconnect. When it expires, the
+	 * client is disconnected and all the pending and buffered requests fail.
+	 *
+	 * @param maxReconnectionTime
+	 *            time in milliseconds
+	 */
+	public void setMaxReconnectionTime(long maxReconnectionTime) {
+		this.maxReconnectionTime = maxReconnectionTime;
+	}
 
-						log.debug("{} WebSocket closed due to: {}", label,
-								closeReason);
-						wsSession = null;
+	private OutboundMessageQueue createOutboundQueue(final Session session) {
 
-						if (connectionListener != null) {
-							connectionListener.disconnected();
-						}
+		// Messages are buffered by Jetty until the queue is drained, so
+		// messages sent concurrently are written together
+		session.getRemote().setBatchMode(BatchMode.ON);
 
-					} catch (IOException e) {
-						log.warn(
-								"{} Exception trying to reconnect to server {}",
-								label, url, e);
+		final JsonRpcCodec sessionCodec = getNegotiatedCodec(session);
+		if (sessionCodec != null) {
+			log.debug("{} Using codec {}", label, sessionCodec.getName());
+		}
+
+		return new OutboundMessageQueue(new MessageWriter() {
+
+			@Override
+			public void write(String message) throws IOException {
+
+				JsonRpcClientMetricsListener listener = metricsListener;
+
+				if (sessionCodec != null) {
+					ByteBuffer bytes = sessionCodec.encode(message);
+					if (listener != null) {
+						listener.messageSent(bytes.remaining());
 					}
+					session.getRemote().sendBytes(bytes);
+				} else {
+					if (listener != null) {
+						listener.messageSent(Utf8.encodedLength(message));
+					}
+					session.getRemote().sendString(message);
 				}
-			});
+			}
+
+			@Override
+			public void flush() throws IOException {
+				session.getRemote().flush();
+			}
+		}, outboundQueueCapacity, outboundOverflowPolicy);
+	}
+
+	protected void handleReconnectDisconnection(final int statusCode,
+			final String closeReason) {
+
+		if (!clientClose) {
+
+			reconnecting = true;
+
+			scheduleReconnection(closeReason, System.currentTimeMillis(), 0,
+					getReconnectionDelay(0));
 
 		} else {
 
@@ -342,47 +598,325 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		}
 	}
 
-	private void handleRequestFromServer(final JsonObject message) {
+	/**
+	 * Schedules a reconnection attempt in the timer of the runtime, so no
+	 * thread is blocked while waiting for the next attempt. The attempt runs
+	 * in the control executor, not behind the handlers of responses and
+	 * events.
+	 */
+	private void scheduleReconnection(final String closeReason,
+			final long start, final int attempt, long delay) {
+
+		final Runnable reconnection = new Runnable() {
+			@Override
+			public void run() {
+				reconnect(closeReason, start, attempt);
+			}
+		};
 
-		// TODO: Think better ways to do this:
-		// handleWebSocketTextMessage seems to be sequential. That is, the
-		// message waits to be processed until previous message is being
-		// processed. This behavior doesn't allow making a new request in the
-		// handler of an event. To avoid this problem, we have decided to
-		// process requests from server in a new thread (reused from
-		// ExecutorService).
-		execService.submit(new Runnable() {
+		runtime.getTimer().newTimeout(new Runnable() {
 			@Override
 			public void run() {
 				try {
-					handlerManager.handleRequest(session,
-							fromJsonRequest(message, JsonElement.class), rs);
+					runtime.getControlExecutor().execute(reconnection);
+				} catch (RejectedExecutionException e) {
+					log.debug("{} Runtime stopped. Reconnection cancelled",
+							label);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void reconnect(String closeReason, long start, int attempt) {
+
+		try {
+
+			connectIfNecessary();
+			return;
+
+		} catch (KurentoException | IOException e) {
+
+			long delay = getReconnectionDelay(attempt + 1);
+			long elapsed = System.currentTimeMillis() - start;
+
+			if (!clientClose && elapsed + delay <= maxReconnectionTime) {
+				log.debug("{} Reconnection attempt {} to server {} failed",
+						label, attempt + 1, url, e);
+				scheduleReconnection(closeReason, start, attempt + 1, delay);
+				return;
+			}
+
+			log.warn("{} Giving up reconnecting to server {} after {}"
+					+ " attempts in {} ms", label, url, attempt + 1, elapsed);
+		}
+
+		handlerManager.afterConnectionClosed(session, closeReason);
+
+		log.debug("{} WebSocket closed due to: {}", label, closeReason);
+		wsSession = null;
+		reconnecting = false;
+
+		discardBufferedNotifications();
+		pendingRequests.closeAllPendingRequests(new TransportException(label
+				+ " Connection with server closed: " + closeReason));
+
+		if (connectionListener != null) {
+			connectionListener.disconnected();
+		}
+	}
+
+	private long getReconnectionDelay(int attempt) {
+
+		long delay = reconnectionInitialDelay << Math.min(attempt, 20);
+		if (delay <= 0 || delay > reconnectionMaxDelay) {
+			delay = reconnectionMaxDelay;
+		}
+
+		// Equal jitter: half of the delay is random
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+
+	/**
+	 * Sends the requests without response and the notifications buffered
+	 * during the reconnection. Requests are sent with the current session id,
+	 * as the server could have created a new session.
+	 */
+	private void replayRequests() {
+
+		Lock lock = reconnectionLock.writeLock();
+		lock.lock();
+		try {
+
+			List<Request<?>> requests = pendingRequests.getUnansweredRequests();
+
+			if (!requests.isEmpty() || !bufferedNotifications.isEmpty()) {
+				log.info("{} Sending {} requests and {} notifications after"
+						+ " reconnecting", label, requests.size(),
+						bufferedNotifications.size());
+			}
+
+			for (Request<?> request : requests) {
+				replayMessage(request);
+			}
+
+			Request<?> notification;
+			while ((notification = bufferedNotifications.poll()) != null) {
+				replayMessage(notification);
+			}
+
+			numBufferedMessages.set(0);
+
+			// If the session was closed again, the next reconnection will
+			// send the messages not sent now
+			if (wsSession != null && wsSession.isOpen()) {
+				reconnecting = false;
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void replayMessage(Request<?> request) {
+
+		if (INJECT_SESSION_ID && request.getSessionId() != null) {
+			request.setSessionId(rsHelper.getSessionId());
+		}
+
+		try {
+			sendRequestMessage(request, METHOD_PING.equals(request.getMethod()));
+		} catch (IOException e) {
+			log.debug("{} Exception sending request {} after reconnecting",
+					label, request.getId(), e);
+		} catch (RuntimeException e) {
+			if (request.getId() != null) {
+				pendingRequests.failRequest(request.getId(), e);
+			} else {
+				log.warn("{} Exception sending notification after reconnecting",
+						label, e);
+			}
+		}
+	}
+
+	private void discardBufferedNotifications() {
+		if (!bufferedNotifications.isEmpty()) {
+			log.warn("{} Discarding {} notifications sent while reconnecting",
+					label, bufferedNotifications.size());
+			bufferedNotifications.clear();
+		}
+		numBufferedMessages.set(0);
+	}
+
+	private void handleRequestFromServer(final Request<JsonElement> request) {
+
+		if (request.getSequence() != null
+				&& !receivedSequences.received(request.getSequence())) {
+			// Sent again by the server after reconnecting
+			log.debug("{} Discarding duplicated request from server {}",
+					label, request);
+			return;
+		}
+
+		if (METHOD_PING.equals(request.getMethod())) {
+			// Answered in the reading thread, ahead of queued requests
+			answerPing(request);
+			return;
+		}
+
+		// Requests are not processed in the websocket reading thread, so
+		// handlers can make new requests to the server. Requests about the
+		// same object are processed in order, and requests about different
+		// objects in parallel
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					handlerManager.handleRequest(session, request, rs);
 				} catch (IOException e) {
 					log.warn("{} Exception processing request {}", label,
-							message, e);
+							request, e);
 				}
 			}
-		});
+		};
+
+		try {
+			serverRequestExecutor.execute(getDispatchKey(request), task);
+		} catch (RejectedExecutionException e) {
+			log.warn("{} Discarding request from server {}: {}", label,
+					request, e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the key of the requests from server that must be processed in
+	 * order. By default, it is the "object" param (directly in the params or
+	 * in their "value", as in media server events) or, if there is no object,
+	 * the "subscription" param. So events of the same media element are
+	 * processed in the order they are received, and events of different
+	 * elements are processed in parallel.
+	 *
+	 * @param request
+	 *            the request from server
+	 * @return the key, or null if the request can be processed in parallel
+	 *         with any other
+	 */
+	protected Object getDispatchKey(Request<JsonElement> request) {
+
+		if (request.getParams() == null || !request.getParams().isJsonObject()) {
+			return null;
+		}
+
+		JsonObject params = request.getParams().getAsJsonObject();
+
+		JsonElement value = params.get(VALUE_PARAM);
+		if (value != null && value.isJsonObject()) {
+			params = value.getAsJsonObject();
+		}
+
+		for (String keyParam : DISPATCH_KEY_PARAMS) {
+			JsonElement key = params.get(keyParam);
+			if (key != null && key.isJsonPrimitive()) {
+				return key.getAsString();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gives access to the executor of requests from server, mainly to monitor
+	 * the time they wait before being processed.
+	 *
+	 * @return the executor of requests from server
+	 */
+	public KeyedSerialExecutor getServerRequestExecutor() {
+		return serverRequestExecutor;
 	}
 
-	private void handleResponseFromServer(JsonObject message) {
+	/**
+	 * Configures the maximum number of requests from server about the same
+	 * object waiting to be processed. Requests received when the limit is
+	 * reached are discarded.
+	 *
+	 * @param maxQueuedRequests
+	 *            the maximum number of requests per object
+	 */
+	public void setMaxQueuedServerRequests(int maxQueuedRequests) {
+		this.serverRequestExecutor = new KeyedSerialExecutor(
+				serverRequestExecutor.getExecutor(), maxQueuedRequests);
+	}
+
+	private void answerPing(Request<JsonElement> request) {
+
+		if (request.getId() == null) {
+			return;
+		}
+
+		JsonObject pongPayload = new JsonObject();
+		pongPayload.addProperty(PONG_PAYLOAD, PONG);
+
+		try {
+			rs.sendPingResponse(new Response<>(request.getId(), pongPayload));
+		} catch (IOException e) {
+			log.warn("{} Exception answering ping from server", label, e);
+		}
+	}
 
-		Response<JsonElement> response = fromJsonResponse(message,
-				JsonElement.class);
+	private void handleResponseFromServer(Response<JsonElement> response) {
 
 		setSessionId(response.getSessionId());
 
 		pendingRequests.handleResponse(response);
 	}
 
+	private JsonRpcCodec getNegotiatedCodec(Session session) {
+
+		if (codec == null || session.getUpgradeResponse() == null) {
+			return null;
+		}
+
+		return codec.getName().equals(
+				session.getUpgradeResponse().getAcceptedSubProtocol()) ? codec
+				: null;
+	}
+
+	private void handleWebSocketBinaryMessage(ByteBuffer payload) {
+
+		if (codec == null) {
+			log.warn("{} Binary message received without codec", label);
+			return;
+		}
+
+		String message;
+		try {
+			message = codec.decode(payload);
+		} catch (IOException e) {
+			log.warn("{} Exception decoding binary message", label, e);
+			return;
+		}
+
+		handleWebSocketTextMessage(message);
+	}
+
 	private void handleWebSocketTextMessage(String message) {
 
-		JsonObject jsonMessage = fromJson(message, JsonObject.class);
+		if (JsonUtils.isBatch(message)) {
+			for (Message jsonMessage : JsonUtils.fromJsonBatch(message)) {
+				handleMessageFromServer(jsonMessage);
+			}
+		} else {
+			handleMessageFromServer(fromJsonMessage(message));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleMessageFromServer(Message jsonMessage) {
 
-		if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
-			handleRequestFromServer(jsonMessage);
+		if (jsonMessage instanceof Request) {
+			handleRequestFromServer((Request<JsonElement>) jsonMessage);
 		} else {
-			handleResponseFromServer(jsonMessage);
+			handleResponseFromServer((Response<JsonElement>) jsonMessage);
 		}
 	}
 
@@ -391,74 +925,374 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 			final Class<JsonElement> resultClass,
 			final Continuation<Response<JsonElement>> continuation) {
 
-		// FIXME: Poor man async implementation.
-		execService.submit(new Runnable() {
+		final boolean isPing = METHOD_PING.equals(request.getMethod());
+
+		// Pings are sent by the heartbeat only when the client is connected,
+		// so they don't wait for a connection being opened
+		if (!isPing) {
+			try {
+				connectIfNotReconnecting();
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
+			}
+		}
+
+		if (request.getId() != null) {
+
+			// The continuation is fired from handleResponseFromServer, so no
+			// thread is blocked waiting for the response
+			pendingRequests.prepareResponse(
+					request,
+					getRequestTimeout(request),
+					createResponseCallback(request, resultClass, continuation,
+							isPing));
+		}
+
+		try {
+
+			sendOrBuffer(Collections.<Request<?>> singletonList(request),
+					isPing);
+
+		} catch (Exception e) {
+			if (request.getId() != null) {
+				pendingRequests.failRequest(request.getId(), e);
+			} else {
+				continuation.onError(e);
+			}
+			return;
+		}
+
+		if (request.getId() == null) {
+			continuation.onSuccess(null);
+		}
+	}
+
+	/**
+	 * Stops waiting for the response of a request. Its continuation is failed
+	 * and the response is discarded if it arrives later.
+	 *
+	 * @return true if the request was waiting for its response
+	 */
+	boolean cancelPendingRequest(Integer id) {
+		return pendingRequests.cancelRequest(id);
+	}
+
+	private FutureCallback<Response<JsonElement>> createResponseCallback(
+			final Request<?> request, final Class<JsonElement> resultClass,
+			final Continuation<Response<JsonElement>> continuation,
+			final boolean isPing) {
+
+		return new FutureCallback<Response<JsonElement>>() {
+
 			@Override
-			public void run() {
-				try {
-					Response<JsonElement> result = internalSendRequestWebSocket(
-							request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						log.error("{} Exception while processing response",
-								label, e);
+			public void completed(final Response<JsonElement> responseJson) {
+				boolean dispatched = dispatchContinuation(isPing, new Runnable() {
+					@Override
+					public void run() {
+						logResponse(responseJson, isPing);
+
+						Response<JsonElement> response = MessageUtils
+								.convertResponse(responseJson, resultClass);
+
+						if (response.getSessionId() != null) {
+							session.setSessionId(response.getSessionId());
+						}
+
+						try {
+							continuation.onSuccess(response);
+						} catch (Exception e) {
+							log.error("{} Exception while processing response",
+									label, e);
+						}
 					}
-				} catch (Exception e) {
-					continuation.onError(e);
+				});
+
+				if (!dispatched) {
+					continuation.onError(new KurentoException(label
+							+ " Response to request with id " + request.getId()
+							+ " discarded: dispatch executor saturated"));
 				}
 			}
-		});
+
+			@Override
+			public void failed(final Exception cause) {
+				boolean dispatched = dispatchContinuation(isPing,
+						new Runnable() {
+							@Override
+							public void run() {
+								continuation.onError(cause);
+							}
+						});
+
+				if (!dispatched) {
+					continuation.onError(cause);
+				}
+			}
+
+			@Override
+			public void cancelled() {
+				failed(new KurentoException(label + " Request with id "
+						+ request.getId() + " has been cancelled"));
+			}
+		};
 	}
 
-	private <P, R> Response<R> internalSendRequestWebSocket(Request<P> request,
-			Class<R> resultClass) throws IOException {
+	/**
+	 * @return false if the continuation has been discarded because the
+	 *         dispatch executor is saturated, so it has to be failed
+	 */
+	private boolean dispatchContinuation(boolean isPing, Runnable runnable) {
+
+		if (isPing) {
+			// Pings are answered in the reading thread, so a heartbeat is not
+			// delayed by the continuations queued in the executor
+			runnable.run();
+			return true;
+		}
 
-		if (request.getMethod().equals("pull")) {
-			log.info("XXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXX");
+		// Continuations are not executed in the websocket reading thread
+		// because they could make new sync requests to the server
+		return dispatch(runnable);
+	}
+
+	/**
+	 * Runs the task in the dispatch executor. It is only run in the current
+	 * thread if the executor has been shut down. When the executor is
+	 * saturated, the task is discarded: running it here could block the
+	 * thread that reads the responses it waits for.
+	 *
+	 * @return false if the task has been discarded
+	 */
+	private boolean dispatch(Runnable runnable) {
+
+		ExecutorService executor = runtime.getDispatchExecutor();
+
+		try {
+			executor.execute(runnable);
+		} catch (RejectedExecutionException e) {
+			if (!executor.isShutdown()) {
+				log.warn("{} Dispatch executor saturated. Discarding task",
+						label);
+				return false;
+			}
+			log.debug("{} Dispatch executor shut down. Executing task in"
+					+ " current thread", label);
+			runnable.run();
 		}
 
-		connectIfNecessary();
+		return true;
+	}
 
-		Future<Response<JsonElement>> responseFuture = null;
+	private void connectIfNotReconnecting() throws IOException {
+		// While reconnecting, messages are buffered instead of waiting for
+		// the reconnection
+		if (!reconnecting) {
+			connectIfNecessary();
+		}
+	}
 
-		if (request.getId() != null) {
-			responseFuture = pendingRequests.prepareResponse(request.getId());
+	/**
+	 * Sends the requests in a message (a batch if there are several
+	 * requests), or buffers them if the client is reconnecting. Requests with
+	 * id must have been registered in the pending requests.
+	 */
+	private void sendOrBuffer(List<? extends Request<?>> requests,
+			boolean isPing) throws IOException {
+
+		Lock lock = reconnectionLock.readLock();
+		lock.lock();
+		try {
+
+			if (reconnecting && !isReconnectRequest(requests)) {
+				bufferRequests(requests);
+				return;
+			}
+
+			try {
+
+				if (requests.size() == 1) {
+					sendRequestMessage(requests.get(0), isPing);
+				} else {
+					sendBatchMessage(requests);
+				}
+
+			} catch (IOException | RuntimeException e) {
+
+				if (!reconnecting || isReconnectRequest(requests)
+						|| !hasIds(requests)) {
+					throw e;
+				}
+
+				// The connection has been lost while sending. Requests are
+				// pending, so they will be sent again after reconnecting
+				log.debug("{} Requests will be sent after reconnecting", label,
+						e);
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void bufferRequests(List<? extends Request<?>> requests) {
+
+		if (numBufferedMessages.addAndGet(requests.size()) > maxBufferedMessages) {
+			numBufferedMessages.addAndGet(-requests.size());
+			throw new TransportException(label + " Can not send message while"
+					+ " reconnecting to " + url + ". There are already "
+					+ maxBufferedMessages + " buffered messages");
+		}
+
+		for (Request<?> request : requests) {
+			log.debug("{} Req-> {} (buffered until reconnection)", label,
+					request);
+			// Requests with id are in the pending requests
+			if (request.getId() == null) {
+				bufferedNotifications.add(request);
+			}
+		}
+	}
+
+	private boolean isReconnectRequest(List<? extends Request<?>> requests) {
+		return requests.size() == 1
+				&& METHOD_RECONNECT.equals(requests.get(0).getMethod());
+	}
+
+	private boolean hasIds(List<? extends Request<?>> requests) {
+		for (Request<?> request : requests) {
+			if (request.getId() == null) {
+				return false;
+			}
 		}
+		return true;
+	}
+
+	private void sendRequestMessage(Request<?> request, boolean isPing)
+			throws IOException {
 
-		boolean isPing = false;
 		String jsonMessage = request.toString();
-		if (METHOD_PING.equals(request.getMethod())) {
-			isPing = true;
+		if (isPing) {
 			log.trace("{} Req-> {}", label, jsonMessage.trim());
 		} else {
 			log.debug("{} Req-> {}", label, jsonMessage.trim());
 		}
 
-		if (wsSession == null) {
+		// Cancellations are sent before queued requests, so the server knows
+		// them before processing the cancelled requests
+		Priority priority;
+		if (isPing || METHOD_RECONNECT.equals(request.getMethod())
+				|| METHOD_CANCEL_REQUEST.equals(request.getMethod())) {
+			priority = Priority.CONTROL;
+		} else if (request.getId() == null) {
+			priority = Priority.NOTIFICATION;
+		} else {
+			priority = Priority.REQUEST;
+		}
+
+		sendTextMessage(jsonMessage, priority, request.getId() != null
+				? failOnWriteError(Collections.singletonList(request)) : null);
+	}
+
+	private void sendBatchMessage(List<? extends Request<?>> requests)
+			throws IOException {
+
+		String jsonMessage = JsonUtils.toJsonBatch(requests);
+		log.debug("{} Req-> {}", label, jsonMessage);
+
+		sendTextMessage(jsonMessage, Priority.REQUEST,
+				failOnWriteError(requests));
+	}
+
+	/**
+	 * Fails the pending requests of a message written by other thread if the
+	 * write fails, as the sender doesn't get the exception.
+	 */
+	private WriteCallback failOnWriteError(
+			final List<? extends Request<?>> requests) {
+
+		return new WriteCallback() {
+			@Override
+			public void writeFailed(IOException cause) {
+
+				if (reconnecting && !isReconnectRequest(requests)) {
+					// Pending requests are sent again after reconnecting
+					return;
+				}
+
+				for (Request<?> request : requests) {
+					if (request.getId() != null) {
+						pendingRequests.failRequest(request.getId(), cause);
+					}
+				}
+			}
+		};
+	}
+
+	private void sendTextMessage(String jsonMessage, Priority priority,
+			WriteCallback callback) throws IOException {
+
+		OutboundMessageQueue currentQueue = outboundQueue;
+		if (wsSession == null || currentQueue == null) {
 			// SERVER_ERROR
 			throw new CloseException(1011,
 					"JsonRpcClient is disconnected from WebSocket server at '"
 							+ this.url + "'");
 		}
 
-		synchronized (wsSession) {
-			wsSession.getRemote().sendString(jsonMessage);
+		currentQueue.send(jsonMessage, priority, callback);
+	}
+
+	private void logResponse(Response<JsonElement> responseJson, boolean isPing) {
+		if (isPing) {
+			log.trace("{} <-Res {}", label, responseJson.toString());
+		} else {
+			log.debug("{} <-Res {}", label, responseJson.toString());
+		}
+	}
+
+	private <P, R> Response<R> internalSendRequestWebSocket(Request<P> request,
+			Class<R> resultClass) throws IOException {
+
+		connectIfNotReconnecting();
+
+		Future<Response<JsonElement>> responseFuture = null;
+
+		if (request.getId() != null) {
+			responseFuture = pendingRequests.prepareResponse(request,
+					getRequestTimeout(request), null);
+		}
+
+		boolean isPing = METHOD_PING.equals(request.getMethod());
+
+		try {
+			sendOrBuffer(Collections.<Request<?>> singletonList(request),
+					isPing);
+		} catch (IOException | RuntimeException e) {
+			if (request.getId() != null) {
+				pendingRequests.failRequest(request.getId(), e);
+			}
+			throw e;
 		}
 
 		if (responseFuture == null) {
 			return null;
 		}
 
+		return waitForResponse(responseFuture, request, resultClass, isPing);
+	}
+
+	private <R> Response<R> waitForResponse(
+			Future<Response<JsonElement>> responseFuture, Request<?> request,
+			Class<R> resultClass, boolean isPing) {
+
 		Response<JsonElement> responseJson;
 		try {
-			responseJson = responseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			// The future is failed by PendingRequests if the request timeout
+			// expires
+			responseJson = responseFuture.get();
 
-			if (isPing) {
-				log.trace("{} <-Res {}", label, responseJson.toString());
-			} else {
-				log.debug("{} <-Res {}", label, responseJson.toString());
-			}
+			logResponse(responseJson, isPing);
 
 			Response<R> response = MessageUtils.convertResponse(responseJson,
 					resultClass);
@@ -474,39 +1308,83 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 			throw new KurentoException(label
 					+ " Interrupted while waiting for a response", e);
 		} catch (ExecutionException e) {
-			// TODO Is there a better way to handle this?
-			throw new KurentoException(label
-					+ " This exception shouldn't be thrown", e);
-		} catch (TimeoutException e) {
-			throw new TransportException(label + " Timeout of " + TIMEOUT
-					+ " milliseconds waiting from response to request with id:"
-					+ request.getId(), e);
+			throw new TransportException(label
+					+ " Error waiting for response to request with id:"
+					+ request.getId() + ". " + e.getCause().getMessage(),
+					e.getCause());
 		}
 	}
 
-	private void closeClient() {
-		if (client != null) {
-			log.debug("{} Stopping client", label);
-			try {
-				client.stop();
-				client.destroy();
-			} catch (Exception e) {
-				log.debug(
-						"{} Could not properly close websocket client. Reason: {}",
-						label, e.getMessage());
-			}
-			client = null;
+	private List<Response<JsonElement>> internalSendBatchWebSocket(
+			List<? extends Request<?>> requests) throws IOException {
+
+		connectIfNotReconnecting();
+
+		List<Future<Response<JsonElement>>> responseFutures = new ArrayList<>(
+				requests.size());
+
+		for (Request<?> request : requests) {
+			responseFutures.add(pendingRequests.prepareResponse(request,
+					getRequestTimeout(request), null));
 		}
 
-		if (execService != null) {
-			try {
-				execService.shutdown();
-			} catch (Exception e) {
-				log.debug(
-						"{} Could not properly shut down executor service. Reason: {}",
-						label, e.getMessage());
-			}
-			execService = null;
+		try {
+			sendOrBuffer(requests, false);
+		} catch (IOException | RuntimeException e) {
+			failBatch(requests, e);
+			throw e;
+		}
+
+		List<Response<JsonElement>> responses = new ArrayList<>(
+				requests.size());
+
+		for (int i = 0; i < requests.size(); i++) {
+			responses.add(waitForResponse(responseFutures.get(i),
+					requests.get(i), JsonElement.class, false));
+		}
+
+		return responses;
+	}
+
+	private void internalSendBatchWebSocket(
+			List<? extends Request<?>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+
+		try {
+			connectIfNotReconnecting();
+		} catch (Exception e) {
+			continuation.onError(e);
+			return;
+		}
+
+		BatchResponseCollector collector = new BatchResponseCollector(
+				requests.size(), continuation);
+
+		for (int i = 0; i < requests.size(); i++) {
+			Request<?> request = requests.get(i);
+			pendingRequests.prepareResponse(
+					request,
+					getRequestTimeout(request),
+					createResponseCallback(request, JsonElement.class,
+							collector.getContinuation(i), false));
+		}
+
+		try {
+			sendOrBuffer(requests, false);
+		} catch (Exception e) {
+			failBatch(requests, e);
+		}
+	}
+
+	private void failBatch(List<? extends Request<?>> requests, Exception e) {
+		for (Request<?> request : requests) {
+			pendingRequests.failRequest(request.getId(), e);
+		}
+	}
+
+	private void releaseRuntime() {
+		if (runtimeReleased.compareAndSet(false, true)) {
+			runtime.release();
 		}
 	}
 }
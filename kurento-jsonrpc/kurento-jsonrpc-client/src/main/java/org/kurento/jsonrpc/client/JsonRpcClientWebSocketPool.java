@@ -0,0 +1,454 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PARAMS_PROPERTY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.jsonrpc.JsonRpcCodec;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Client that opens several websocket connections to the same server and
+ * spreads the requests among them, so a big message or a burst of events in a
+ * connection doesn't delay the traffic of the others.
+ *
+ * Requests about the same object are always sent through the same connection
+ * to preserve their order. The object is taken from the "object" param and,
+ * if it is a composed reference (like "pipeline/element"), only the first
+ * part is used, so all the objects of a pipeline share connection. Elements
+ * are created and transactions are sent through the connection of their
+ * pipeline too. Requests without object are distributed in round robin.
+ *
+ * Each connection has its own session in the server and reconnects on its
+ * own. Requests from the server received in any connection are handled by
+ * the handler configured in this client.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcClientWebSocketPool extends JsonRpcClient {
+
+	private static final String OBJECT_PARAM = "object";
+	private static final String CONSTRUCTOR_PARAMS_PARAM = "constructorParams";
+	private static final String MEDIA_PIPELINE_PARAM = "mediaPipeline";
+	private static final String OPERATIONS_PARAM = "operations";
+	private static final String NEW_REF_PREFIX = "newref:";
+
+	private final List<JsonRpcClientWebSocket> connections;
+
+	private final AtomicInteger nextConnection = new AtomicInteger();
+
+	public JsonRpcClientWebSocketPool(String url, int poolSize) {
+		this(url, poolSize, null);
+	}
+
+	public JsonRpcClientWebSocketPool(String url, int poolSize,
+			JsonRpcWSConnectionListener connectionListener) {
+		this(url, poolSize, connectionListener, JsonRpcClientRuntime
+				.getDefault());
+	}
+
+	public JsonRpcClientWebSocketPool(String url, int poolSize,
+			JsonRpcWSConnectionListener connectionListener,
+			JsonRpcClientRuntime runtime) {
+
+		if (poolSize <= 0) {
+			throw new IllegalArgumentException(
+					"Pool size must be positive, but was " + poolSize);
+		}
+
+		List<JsonRpcClientWebSocket> clients = new ArrayList<>(poolSize);
+		for (int i = 0; i < poolSize; i++) {
+			clients.add(new JsonRpcClientWebSocket(url, connectionListener,
+					runtime));
+		}
+		this.connections = Collections.unmodifiableList(clients);
+		this.runtime = runtime;
+
+		this.session = new ClientSession(null, null, this);
+
+		rsHelper = new JsonRpcRequestSenderHelper() {
+
+			@Override
+			protected void internalSendRequest(
+					Request<? extends Object> request,
+					Class<JsonElement> resultClass,
+					Continuation<Response<JsonElement>> continuation) {
+
+				internalSendRequestPool(request, continuation);
+			}
+
+			@Override
+			protected <P, R> Response<R> internalSendRequest(
+					Request<P> request, Class<R> resultClass)
+					throws IOException {
+
+				return internalSendRequestPool(request, resultClass);
+			}
+
+			@Override
+			protected void internalCancelRequest(Request<?> request) {
+				// Ids are unique in the pool, so only the connection sending
+				// the request has it
+				for (JsonRpcClientWebSocket connection : connections) {
+					if (connection.cancelPendingRequest(request.getId())) {
+						return;
+					}
+				}
+			}
+		};
+
+		// Connections send their pings and reconnections with ids of the same
+		// counter than the requests of the pool, so they never repeat the id
+		// of a request in flight
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.rsHelper.setIdGenerator(rsHelper.getIdGenerator());
+		}
+	}
+
+	/**
+	 * Sets the listener in all the connections of the pool. Requests are
+	 * reported by the connection sending them, so they are counted once.
+	 */
+	@Override
+	public void setMetricsListener(JsonRpcClientMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setMetricsListener(metricsListener);
+		}
+	}
+
+	/**
+	 * Sets the limiter in all the connections of the pool, so it limits the
+	 * requests in flight of the whole pool.
+	 */
+	@Override
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setConcurrencyLimiter(concurrencyLimiter);
+		}
+	}
+
+	/**
+	 * @return the connections of the pool
+	 */
+	public List<JsonRpcClientWebSocket> getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Selects the connection used to send the request.
+	 *
+	 * @param request
+	 *            the request to be sent
+	 * @return the connection
+	 */
+	protected JsonRpcClientWebSocket getConnection(Request<?> request) {
+
+		String key = getAffinityKey(request);
+
+		int index;
+		if (key != null) {
+			index = (key.hashCode() & Integer.MAX_VALUE) % connections.size();
+		} else {
+			index = (nextConnection.getAndIncrement() & Integer.MAX_VALUE)
+					% connections.size();
+		}
+
+		return connections.get(index);
+	}
+
+	/**
+	 * Returns the key used to send related requests through the same
+	 * connection. By default, it is the pipeline of the request: the first
+	 * part of the "object" param, or the "mediaPipeline" constructor param of
+	 * a "create" request. The key of a "transaction" request is the key of the
+	 * first of its operations that has one.
+	 *
+	 * @param request
+	 *            the request to be sent
+	 * @return the key, or null if the request can be sent through any
+	 *         connection
+	 */
+	protected String getAffinityKey(Request<?> request) {
+
+		if (!(request.getParams() instanceof JsonObject)) {
+			return null;
+		}
+
+		return getAffinityKey((JsonObject) request.getParams());
+	}
+
+	private String getAffinityKey(JsonObject params) {
+
+		String key = getObjectKey(params.get(OBJECT_PARAM));
+		if (key != null) {
+			return key;
+		}
+
+		JsonElement constructorParams = params.get(CONSTRUCTOR_PARAMS_PARAM);
+		if (constructorParams != null && constructorParams.isJsonObject()) {
+			key = getObjectKey(constructorParams.getAsJsonObject().get(
+					MEDIA_PIPELINE_PARAM));
+			if (key != null) {
+				return key;
+			}
+		}
+
+		JsonElement operations = params.get(OPERATIONS_PARAM);
+		if (operations != null && operations.isJsonArray()) {
+			for (JsonElement operation : operations.getAsJsonArray()) {
+				if (!operation.isJsonObject()) {
+					continue;
+				}
+				JsonElement operationParams = operation.getAsJsonObject().get(
+						PARAMS_PROPERTY);
+				if (operationParams != null && operationParams.isJsonObject()) {
+					key = getAffinityKey(operationParams.getAsJsonObject());
+					if (key != null) {
+						return key;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private String getObjectKey(JsonElement object) {
+
+		if (object == null || !object.isJsonPrimitive()) {
+			return null;
+		}
+
+		String objectRef = object.getAsString();
+
+		// Objects created in the same transaction are not known yet
+		if (objectRef.startsWith(NEW_REF_PREFIX)) {
+			return null;
+		}
+
+		int separator = objectRef.indexOf('/');
+		return separator < 0 ? objectRef : objectRef.substring(0, separator);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <P, R> Response<R> internalSendRequestPool(Request<P> request,
+			Class<R> resultClass) throws IOException {
+
+		JsonRpcClientWebSocket connection = getConnection(request);
+
+		if (request.getId() == null) {
+			connection.sendNotification(request.getMethod(),
+					request.getParams());
+			return null;
+		}
+
+		prepareRequest(request, connection);
+
+		Response<JsonElement> response = connection
+				.sendRequest((Request<JsonObject>) request);
+
+		return MessageUtils.convertResponse(response, resultClass);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void internalSendRequestPool(Request<? extends Object> request,
+			Continuation<Response<JsonElement>> continuation) {
+
+		JsonRpcClientWebSocket connection = getConnection(request);
+
+		try {
+
+			if (request.getId() == null) {
+				connection.sendNotification(request.getMethod(),
+						request.getParams());
+				continuation.onSuccess(null);
+				return;
+			}
+
+			prepareRequest(request, connection);
+
+			connection.sendRequest((Request<JsonObject>) request,
+					continuation);
+
+		} catch (IOException e) {
+			continuation.onError(e);
+		}
+	}
+
+	private void prepareRequest(Request<?> request,
+			JsonRpcClientWebSocket connection) {
+
+		// Each connection has its own session in the server
+		if (INJECT_SESSION_ID) {
+			request.setSessionId(connection.getSession() != null ? connection
+					.getSession().getSessionId() : null);
+		}
+	}
+
+	@Override
+	public void connect() throws IOException {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.connect();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		IOException exception = null;
+
+		for (JsonRpcClientWebSocket connection : connections) {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				log.warn("{} Exception closing connection", label, e);
+				exception = e;
+			}
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	@Override
+	public void closeWithReconnection() {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.closeWithReconnection();
+		}
+	}
+
+	/**
+	 * Configures the codec offered to the server in every connection.
+	 *
+	 * @see JsonRpcClientWebSocket#setCodec(JsonRpcCodec)
+	 */
+	public void setCodec(JsonRpcCodec codec) {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setCodec(codec);
+		}
+	}
+
+	/**
+	 * @see JsonRpcClientWebSocket#setMaxBufferedMessages(int)
+	 */
+	public void setMaxBufferedMessages(int maxBufferedMessages) {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setMaxBufferedMessages(maxBufferedMessages);
+		}
+	}
+
+	/**
+	 * @see JsonRpcClientWebSocket#setReconnectionBackoff(long, long)
+	 */
+	public void setReconnectionBackoff(long initialDelay, long maxDelay) {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setReconnectionBackoff(initialDelay, maxDelay);
+		}
+	}
+
+	/**
+	 * @see JsonRpcClientWebSocket#setMaxReconnectionTime(long)
+	 */
+	public void setMaxReconnectionTime(long maxReconnectionTime) {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setMaxReconnectionTime(maxReconnectionTime);
+		}
+	}
+
+	@Override
+	public void setServerRequestHandler(JsonRpcHandler<?> handler) {
+		super.setServerRequestHandler(handler);
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setServerRequestHandler(handler);
+		}
+	}
+
+	@Override
+	public void setLabel(String label) {
+		super.setLabel(label);
+		for (int i = 0; i < connections.size(); i++) {
+			connections.get(i).setLabel(label + "-" + i);
+		}
+	}
+
+	@Override
+	public void setConnectionTimeoutValue(int connectionTimeout) {
+		super.setConnectionTimeoutValue(connectionTimeout);
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setConnectionTimeoutValue(connectionTimeout);
+		}
+	}
+
+	@Override
+	public void setIdleTimeout(int idleTimeout) {
+		super.setIdleTimeout(idleTimeout);
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setIdleTimeout(idleTimeout);
+		}
+	}
+
+	@Override
+	public void setRequestTimeout(long requestTimeout) {
+		super.setRequestTimeout(requestTimeout);
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setRequestTimeout(requestTimeout);
+		}
+	}
+
+	@Override
+	public void setRequestTimeout(String method, long timeout) {
+		super.setRequestTimeout(method, timeout);
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.setRequestTimeout(method, timeout);
+		}
+	}
+
+	/**
+	 * Enables the heartbeat in each connection, so every one of them detects
+	 * its own failures and reconnects.
+	 */
+	@Override
+	public void enableHeartbeat(int interval) {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.enableHeartbeat(interval);
+		}
+	}
+
+	@Override
+	public void disableHeartbeat() {
+		for (JsonRpcClientWebSocket connection : connections) {
+			connection.disableHeartbeat();
+		}
+	}
+
+}
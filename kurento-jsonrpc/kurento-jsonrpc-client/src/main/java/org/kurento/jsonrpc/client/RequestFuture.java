@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.client;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.kurento.jsonrpc.message.Request;
+
+/**
+ * Future of the result of a request sent with
+ * {@link JsonRpcClient#sendRequestAsync(String, Object, Class)}. If the
+ * request fails or the server answers with an error, {@link #get()} throws an
+ * {@link java.util.concurrent.ExecutionException} with the cause.
+ *
+ * The request can be abandoned with {@link #cancel(boolean)}: it is removed
+ * from the pending requests, its timeout is cancelled and its response will be
+ * discarded.
+ *
+ * @since 6.0.0
+ */
+public abstract class RequestFuture<R> extends BasicFuture<R> {
+
+	private final Request<?> request;
+
+	protected RequestFuture(Request<?> request) {
+		super(null);
+		this.request = request;
+	}
+
+	public Request<?> getRequest() {
+		return request;
+	}
+
+	/**
+	 * Cancels the request if it has not finished yet.
+	 *
+	 * @param mayInterruptIfRunning
+	 *            if true, the server is also notified with a
+	 *            {@code cancelRequest} notification, so it doesn't process the
+	 *            request if it hasn't started it yet
+	 * @return false if the request had already finished
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+
+		if (!super.cancel(mayInterruptIfRunning)) {
+			return false;
+		}
+
+		requestCancelled(mayInterruptIfRunning);
+		return true;
+	}
+
+	/**
+	 * Releases the resources of the request after it has been cancelled.
+	 *
+	 * @param notifyPeer
+	 *            true if the server has to be notified
+	 */
+	protected abstract void requestCancelled(boolean notifyPeer);
+
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Collects the responses to the requests of a batch, that can arrive in any
+ * order, and notifies them all together when the last one arrives. If any
+ * request fails, the continuation is notified with the first error.
+ *
+ * @since 6.0.0
+ */
+public class BatchResponseCollector {
+
+	private final AtomicReferenceArray<Response<JsonElement>> responses;
+	private final AtomicInteger pendingResponses;
+	private final AtomicBoolean failed = new AtomicBoolean();
+	private final Continuation<List<Response<JsonElement>>> continuation;
+
+	public BatchResponseCollector(int numRequests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		this.responses = new AtomicReferenceArray<>(numRequests);
+		this.pendingResponses = new AtomicInteger(numRequests);
+		this.continuation = continuation;
+	}
+
+	/**
+	 * @param index
+	 *            the position of the request in the batch
+	 * @return the continuation to be notified with the response of the request
+	 */
+	public Continuation<Response<JsonElement>> getContinuation(final int index) {
+		return new Continuation<Response<JsonElement>>() {
+
+			@Override
+			public void onSuccess(Response<JsonElement> response) {
+				responseReceived(index, response);
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				requestFailed(cause);
+			}
+		};
+	}
+
+	private void responseReceived(int index, Response<JsonElement> response) {
+
+		responses.set(index, response);
+
+		if (pendingResponses.decrementAndGet() == 0 && !failed.get()) {
+
+			List<Response<JsonElement>> list = new ArrayList<>(
+					responses.length());
+			for (int i = 0; i < responses.length(); i++) {
+				list.add(responses.get(i));
+			}
+
+			continuation.onSuccess(list);
+		}
+	}
+
+	private void requestFailed(Throwable cause) {
+		if (failed.compareAndSet(false, true)) {
+			continuation.onError(cause);
+		}
+	}
+
+}
@@ -0,0 +1,220 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.kurento.jsonrpc.JsonRpcCodec;
+
+/**
+ * Compact binary codec. Each message is compressed independently with
+ * DEFLATE, using a preset dictionary with the keys and values that repeat in
+ * every JSON-RPC message (like "jsonrpc", "sessionId", "operationParams" or
+ * the types of the objects of the media server). This way, even small
+ * messages are reduced, and no state is shared between messages.
+ *
+ * The payload is a version byte followed by the raw DEFLATE data. Messages
+ * inflated beyond a maximum size are rejected, so a small payload can't make
+ * the peer allocate a huge buffer.
+ *
+ * @since 6.0.0
+ */
+public class DeflateJsonRpcCodec implements JsonRpcCodec {
+
+	public static final String NAME = "jsonrpc-deflate.kurento.org";
+
+	private static final byte VERSION = 1;
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+	/**
+	 * Deflate gives shorter distances to the end of the dictionary, so most
+	 * common strings are placed last. Changing the dictionary requires a new
+	 * version.
+	 */
+	private static final byte[] DICTIONARY = ("\"__module__\":\"kurento\","
+			+ "\"__type__\":\"IceCandidate\",\"candidate\":\"candidate:"
+			+ " typ host generation 0\",\"sdpMLineIndex\":0,\"sdpMid\":\"audio"
+			+ "v=0\\r\\no=- 0 0 IN IP4 0.0.0.0\\r\\ns=Kurento Media Server"
+			+ "\\r\\nc=IN IP4 0.0.0.0\\r\\nt=0 0\\r\\na=rtpmap:"
+			+ "\"sdpOffer\":\"\"offer\":\"\"mediaPipeline\":\""
+			+ "\"constructorParams\":{\"type\":\"\"properties\":{}"
+			+ "\"create\"\"release\"\"subscribe\"\"unsubscribe\""
+			+ "\"subscription\":\"\"timestamp\":\"\"tags\":[],"
+			+ "\"source\":\"\"data\":{\"type\":\"OnIceCandidate\""
+			+ "\"method\":\"onEvent\",\"params\":{\"value\":{"
+			+ "_kurento.MediaPipeline/_kurento.WebRtcEndpoint"
+			+ "\"connect\"\"addIceCandidate\"\"processOffer\""
+			+ "\"gatherCandidates\"\"ping\"\"pong\"\"value\":\""
+			+ "\"result\":{\"value\":\"\"error\":{\"code\":\"message\":\""
+			+ "{\"id\":,\"method\":\"invoke\",\"params\":{\"object\":\""
+			+ "_kurento.MediaPipeline\",\"operation\":\""
+			+ "\",\"operationParams\":{\",\"sessionId\":\""
+			+ "\"},\"jsonrpc\":\"2.0\"}").getBytes(StandardCharsets.UTF_8);
+
+	private static class Buffers {
+
+		private final Deflater deflater = new Deflater(
+				Deflater.DEFAULT_COMPRESSION, true);
+		private final Inflater inflater = new Inflater(true);
+		private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+	}
+
+	private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	private final int maxMessageSize;
+
+	public DeflateJsonRpcCodec() {
+		this(DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/**
+	 * @param maxMessageSize
+	 *            maximum size in bytes of a decoded message
+	 */
+	public DeflateJsonRpcCodec(int maxMessageSize) {
+		if (maxMessageSize <= 0) {
+			throw new IllegalArgumentException(
+					"Max message size must be positive, but was "
+							+ maxMessageSize);
+		}
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public ByteBuffer encode(String message) {
+
+		Buffers b = buffers.get();
+		Deflater deflater = b.deflater;
+
+		byte[] input = message.getBytes(StandardCharsets.UTF_8);
+
+		deflater.reset();
+		deflater.setDictionary(DICTIONARY);
+		deflater.setInput(input);
+		deflater.finish();
+
+		byte[] output = b.buffer;
+		output[0] = VERSION;
+		int length = 1;
+
+		while (!deflater.finished()) {
+			if (length == output.length) {
+				output = Arrays.copyOf(output, output.length * 2);
+				b.buffer = output;
+			}
+			length += deflater.deflate(output, length, output.length - length);
+		}
+
+		ByteBuffer result = ByteBuffer.wrap(Arrays.copyOf(output, length));
+		releaseBuffer(b);
+		return result;
+	}
+
+	@Override
+	public String decode(ByteBuffer payload) throws IOException {
+
+		if (!payload.hasRemaining() || payload.get() != VERSION) {
+			throw new IOException("Unsupported " + NAME + " payload");
+		}
+
+		byte[] input = new byte[payload.remaining()];
+		payload.get(input);
+
+		Buffers b = buffers.get();
+		Inflater inflater = b.inflater;
+
+		inflater.reset();
+		inflater.setDictionary(DICTIONARY);
+		inflater.setInput(input);
+
+		byte[] output = b.buffer;
+		int capacity = Math.min(output.length, maxMessageSize);
+		int length = 0;
+
+		try {
+
+			while (!inflater.finished()) {
+
+				if (length == capacity) {
+					if (capacity == maxMessageSize) {
+						// The message may end right at the maximum size
+						if (inflater.inflate(new byte[1]) == 0
+								&& inflater.finished()) {
+							break;
+						}
+						releaseBuffer(b);
+						throw new IOException(NAME
+								+ " message exceeds the maximum size of "
+								+ maxMessageSize + " bytes");
+					}
+					output = Arrays.copyOf(output,
+							Math.min(output.length * 2, maxMessageSize));
+					b.buffer = output;
+					capacity = output.length;
+				}
+
+				int inflated = inflater.inflate(output, length, capacity
+						- length);
+
+				if (inflated == 0 && (inflater.needsInput()
+						|| inflater.needsDictionary())) {
+					throw new IOException("Truncated " + NAME + " payload");
+				}
+
+				length += inflated;
+			}
+
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid " + NAME + " payload", e);
+		}
+
+		String result = new String(output, 0, length, StandardCharsets.UTF_8);
+		releaseBuffer(b);
+		return result;
+	}
+
+	private void releaseBuffer(Buffers b) {
+		// Don't retain the memory used by a big message (like a SDP)
+		if (b.buffer.length > MAX_POOLED_BUFFER_SIZE) {
+			b.buffer = new byte[INITIAL_BUFFER_SIZE];
+		}
+	}
+
+}
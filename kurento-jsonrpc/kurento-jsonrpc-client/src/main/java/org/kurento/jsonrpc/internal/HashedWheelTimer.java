@@ -0,0 +1,289 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Timer optimized for a big number of timeouts that are usually cancelled
+ * before expiring, like request deadlines or ping watchdogs. Scheduling and
+ * cancelling a timeout are O(1) operations and all timeouts are expired by a
+ * single thread that advances a wheel of buckets every tick. Expiration is
+ * approximated to the tick duration.
+ *
+ * Tasks are executed in the timer thread, so they must be short and must not
+ * block.
+ *
+ * @since 6.0.0
+ */
+public class HashedWheelTimer {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HashedWheelTimer.class);
+
+	private static final long DEFAULT_TICK_DURATION = 100;
+
+	private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	private static volatile HashedWheelTimer sharedTimer;
+
+	public interface Timeout {
+
+		/**
+		 * Cancels this timeout. The task will not be executed.
+		 *
+		 * @return true if the timeout has been cancelled, false if it was
+		 *         already expired or cancelled
+		 */
+		boolean cancel();
+
+		boolean isExpired();
+
+		boolean isCancelled();
+	}
+
+	private static final int ST_INIT = 0;
+	private static final int ST_CANCELLED = 1;
+	private static final int ST_EXPIRED = 2;
+
+	private final class WheelTimeout implements Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(ST_INIT);
+		private long remainingRounds;
+
+		private WheelTimeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public boolean cancel() {
+			// The timeout is removed lazily from its bucket
+			return state.compareAndSet(ST_INIT, ST_CANCELLED);
+		}
+
+		@Override
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+				return;
+			}
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.warn("Exception executing task in timer '{}'", name, t);
+			}
+		}
+	}
+
+	private final String name;
+	private final long tickDuration;
+	private final LinkedList<WheelTimeout>[] wheel;
+	private final int mask;
+	private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+	private final Thread workerThread;
+	private volatile boolean running = true;
+	private final long startTime;
+	private long tick;
+
+	public HashedWheelTimer(String name) {
+		this(name, DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS,
+				DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	@SuppressWarnings("unchecked")
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit,
+			int ticksPerWheel) {
+
+		Preconditions.checkArgument(tickDuration > 0,
+				"tickDuration must be greater than 0");
+		Preconditions.checkArgument(ticksPerWheel > 0,
+				"ticksPerWheel must be greater than 0");
+
+		this.name = name;
+		this.tickDuration = unit.toNanos(tickDuration);
+
+		int wheelSize = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+		if (wheelSize == 0) {
+			wheelSize = 1;
+		}
+
+		this.wheel = new LinkedList[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			wheel[i] = new LinkedList<>();
+		}
+		this.mask = wheelSize - 1;
+
+		this.startTime = System.nanoTime();
+
+		this.workerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, name);
+		this.workerThread.setDaemon(true);
+		this.workerThread.start();
+	}
+
+	/**
+	 * Returns a timer shared by all the components of the JVM that don't
+	 * need a dedicated one. It is started lazily and never stopped.
+	 *
+	 * @return the shared timer
+	 */
+	public static HashedWheelTimer getSharedTimer() {
+		if (sharedTimer == null) {
+			synchronized (HashedWheelTimer.class) {
+				if (sharedTimer == null) {
+					sharedTimer = new HashedWheelTimer("JsonRpcTimer");
+				}
+			}
+		}
+		return sharedTimer;
+	}
+
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+
+		Preconditions.checkNotNull(task, "task cannot be null");
+
+		if (!running) {
+			throw new IllegalStateException("Timer '" + name
+					+ "' has been stopped");
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+
+		WheelTimeout timeout = new WheelTimeout(task, deadline);
+		pendingTimeouts.incrementAndGet();
+		newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return the number of timeouts scheduled and not processed yet by the
+	 *         timer thread (including the cancelled ones not yet discarded)
+	 */
+	public int getPendingTimeouts() {
+		return pendingTimeouts.get();
+	}
+
+	public void stop() {
+		running = false;
+		workerThread.interrupt();
+	}
+
+	private void work() {
+
+		while (running) {
+
+			if (!waitForNextTick()) {
+				break;
+			}
+
+			transferNewTimeouts();
+
+			expireTimeouts(wheel[(int) (tick & mask)]);
+
+			tick++;
+		}
+	}
+
+	private void transferNewTimeouts() {
+
+		WheelTimeout timeout;
+		while ((timeout = newTimeouts.poll()) != null) {
+
+			if (timeout.isCancelled()) {
+				pendingTimeouts.decrementAndGet();
+				continue;
+			}
+
+			long calculated = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+			// Timeouts in the past are expired in the current tick
+			long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void expireTimeouts(LinkedList<WheelTimeout> bucket) {
+
+		Iterator<WheelTimeout> it = bucket.iterator();
+		while (it.hasNext()) {
+
+			WheelTimeout timeout = it.next();
+
+			if (timeout.isCancelled()) {
+				it.remove();
+				pendingTimeouts.decrementAndGet();
+
+			} else if (timeout.remainingRounds <= 0) {
+				it.remove();
+				pendingTimeouts.decrementAndGet();
+				timeout.expire();
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+	}
+
+	private boolean waitForNextTick() {
+
+		long deadline = tickDuration * (tick + 1);
+
+		while (true) {
+
+			long currentTime = System.nanoTime() - startTime;
+			long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+
+			if (sleepTimeMs <= 0) {
+				return true;
+			}
+
+			try {
+				Thread.sleep(sleepTimeMs);
+			} catch (InterruptedException e) {
+				if (!running) {
+					return false;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.kurento.commons.exception.KurentoException;
+
+/**
+ * Registration of the MBeans of the JSON-RPC library in the platform MBean
+ * server.
+ *
+ * @since 6.0.0
+ */
+public class JmxUtils {
+
+	public static final String JMX_DOMAIN = "org.kurento.jsonrpc";
+
+	/**
+	 * Registers the MBean as
+	 * {@code org.kurento.jsonrpc:type=<type>,name=<name>}.
+	 *
+	 * @return the name of the registered MBean
+	 */
+	public static ObjectName registerMBean(Object mbean, String type,
+			String name) {
+
+		try {
+			ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type="
+					+ type + ",name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mbean,
+					objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new KurentoException("Exception registering MBean " + name
+					+ " of type " + type, e);
+		}
+	}
+
+	/**
+	 * Unregisters the MBean, if it is registered.
+	 */
+	public static void unregisterMBean(ObjectName objectName) {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			throw new KurentoException("Exception unregistering MBean "
+					+ objectName, e);
+		}
+	}
+
+}
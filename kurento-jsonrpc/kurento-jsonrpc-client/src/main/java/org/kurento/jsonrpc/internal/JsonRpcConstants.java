@@ -42,6 +42,18 @@ public class JsonRpcConstants {
 
 	public static final String SESSION_ID_PROPERTY = "sessionId";
 
+	/**
+	 * Sequence number of the requests and notifications sent by a server with
+	 * session resumption. It is a member of the message, next to the id.
+	 */
+	public static final String SEQUENCE_PROPERTY = "seq";
+
+	/**
+	 * Param of the reconnection request with the sequence number of the last
+	 * message received by the client, so the server sends the next ones again.
+	 */
+	public static final String LAST_SEQUENCE_PARAM = "lastSequence";
+
 	public static final String METHOD_START = "start";
 
 	public static final String METHOD_TERMINATE = "terminate";
@@ -54,6 +66,8 @@ public class JsonRpcConstants {
 
 	public static final String METHOD_PING = "ping";
 
+	public static final String METHOD_CANCEL_REQUEST = "cancelRequest";
+
 	public static final String PONG_PAYLOAD = "message";
 
 	public static final String PONG = "pong";
@@ -82,4 +96,11 @@ public class JsonRpcConstants {
 
 	public static final int ERROR_SERVER_ERROR = -32000;
 
+	public static final int ERROR_SERVER_OVERLOADED = -32001;
+
+	/**
+	 * Error of the requests cancelled by the client before being processed.
+	 */
+	public static final int ERROR_REQUEST_CANCELLED = -32800;
+
 }
@@ -0,0 +1,381 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_VERSION;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PARAMS_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.RESULT_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SEQUENCE_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SESSION_ID_PROPERTY;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Decodes JSON-RPC messages reading the text only once with a
+ * {@link JsonReader}. The envelope fields (jsonrpc, id, method) are read
+ * directly from the stream and params/result are bound to the target type.
+ * When the target type is a {@link JsonElement} (the usual case in clients
+ * and servers) the parsed tree is used as is, without copying it.
+ *
+ * The sessionId injected in params/result objects is extracted and removed,
+ * as done by {@link JsonUtils#fromJsonRequest(JsonObject, Class)} and
+ * {@link JsonUtils#fromJsonResponse(JsonObject, Class)}. For this reason, an
+ * object params/result has to be parsed as a tree before being bound to a
+ * non-json type.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcMessageDecoder {
+
+	private enum Kind {
+		REQUEST, RESPONSE, ANY
+	}
+
+	private static class Fields {
+
+		private String jsonRpc;
+		private Integer id;
+		private boolean validId = true;
+		private String method;
+		private Object data;
+		private boolean hasData;
+		private ResponseError error;
+		private String sessionId;
+		private Long sequence;
+	}
+
+	public static Message decodeMessage(String json) {
+
+		Fields fields = decode(json, JsonElement.class, Kind.ANY);
+
+		if (fields.method != null) {
+			return createRequest(fields);
+		} else {
+			return createResponse(fields);
+		}
+	}
+
+	/**
+	 * Checks if the given JSON text is a JSON-RPC batch (an array of
+	 * messages). Only the first non whitespace character is inspected.
+	 *
+	 * @param json
+	 *            the JSON text
+	 * @return true if it is a batch
+	 */
+	public static boolean isBatch(String json) {
+		for (int i = 0; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				return c == '[';
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes a JSON-RPC batch. Each element is converted to a request (if it
+	 * has a method) or to a response with params/result as
+	 * {@link JsonElement}.
+	 *
+	 * @param json
+	 *            the JSON array of messages
+	 * @return the messages in the same order than in the batch
+	 */
+	public static List<Message> decodeBatch(String json) {
+
+		try {
+
+			JsonReader reader = new JsonReader(new StringReader(json));
+			reader.setLenient(true);
+
+			List<Message> messages = new ArrayList<>();
+
+			reader.beginArray();
+			while (reader.hasNext()) {
+
+				Fields fields = readFields(reader, JsonElement.class, Kind.ANY);
+
+				if (fields.method != null) {
+					messages.add(createRequest(fields));
+				} else {
+					messages.add(createResponse(fields));
+				}
+			}
+			reader.endArray();
+
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException(
+						"JSON document was not fully consumed.");
+			}
+
+			return messages;
+
+		} catch (IOException | IllegalStateException
+				| NumberFormatException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public static <T> Request<T> decodeRequest(String json, Type paramsType) {
+		return createRequest(decode(json, paramsType, Kind.REQUEST));
+	}
+
+	public static <T> Response<T> decodeResponse(String json, Type resultType) {
+		return createResponse(decode(json,
+				resultType == null ? JsonElement.class : resultType,
+				Kind.RESPONSE));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Request<T> createRequest(Fields fields) {
+
+		if (fields.method == null) {
+			throw new JsonParseException("Invalid JsonRpc request lacking '"
+					+ METHOD_PROPERTY + "' field");
+		}
+
+		if (!fields.validId) {
+			throw new JsonParseException("Invalid JsonRpc request. It has an"
+					+ " invalid '" + ID_PROPERTY + "' field");
+		}
+
+		Request<T> request = new Request<>(fields.id, fields.method,
+				(T) fields.data);
+		request.setSessionId(fields.sessionId);
+		request.setSequence(fields.sequence);
+		return request;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Response<T> createResponse(Fields fields) {
+
+		if (fields.jsonRpc == null) {
+			throw new JsonParseException(
+					"Invalid JsonRpc response lacking version '"
+							+ JSON_RPC_PROPERTY + "' field");
+		}
+
+		if (!fields.jsonRpc.equals(JSON_RPC_VERSION)) {
+			throw new JsonParseException("Invalid JsonRpc version");
+		}
+
+		if (fields.id == null || !fields.validId) {
+			throw new JsonParseException(
+					"Invalid JsonRpc response. It lacks a valid '"
+							+ ID_PROPERTY + "' field");
+		}
+
+		Response<T> response;
+		if (fields.hasData) {
+			response = new Response<>(fields.id, (T) fields.data);
+		} else if (fields.error != null) {
+			response = new Response<>(fields.id, fields.error);
+		} else {
+			throw new JsonParseException(
+					"Invalid JsonRpc response. It lacks a valid '"
+							+ RESULT_PROPERTY + "' or '" + ERROR_PROPERTY
+							+ "' field");
+		}
+
+		response.setSessionId(fields.sessionId);
+		return response;
+	}
+
+	private static Fields decode(String json, Type dataType, Kind kind) {
+
+		try {
+
+			JsonReader reader = new JsonReader(new StringReader(json));
+			reader.setLenient(true);
+
+			Fields fields = readFields(reader, dataType, kind);
+
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException(
+						"JSON document was not fully consumed.");
+			}
+
+			return fields;
+
+		} catch (IOException | IllegalStateException
+				| NumberFormatException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	private static Fields readFields(JsonReader reader, Type dataType,
+			Kind kind) throws IOException {
+
+		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+			throw new JsonParseException("JsonObject expected, found "
+					+ reader.peek());
+		}
+
+		Fields fields = new Fields();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+
+			String name = reader.nextName();
+
+			if (JSON_RPC_PROPERTY.equals(name)) {
+
+				fields.jsonRpc = readString(reader);
+
+			} else if (ID_PROPERTY.equals(name)) {
+
+				readId(reader, fields);
+
+			} else if (METHOD_PROPERTY.equals(name) && kind != Kind.RESPONSE) {
+
+				fields.method = readString(reader);
+
+			} else if ((PARAMS_PROPERTY.equals(name) && kind != Kind.RESPONSE)
+					|| (RESULT_PROPERTY.equals(name) && kind != Kind.REQUEST)) {
+
+				fields.data = readData(reader, dataType, fields);
+				fields.hasData = fields.hasData
+						|| RESULT_PROPERTY.equals(name);
+
+			} else if (SEQUENCE_PROPERTY.equals(name)
+					&& reader.peek() == JsonToken.NUMBER) {
+
+				fields.sequence = reader.nextLong();
+
+			} else if (ERROR_PROPERTY.equals(name) && kind != Kind.REQUEST) {
+
+				fields.error = JsonUtils.<ResponseError> getAdapter(
+						ResponseError.class).read(reader);
+
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return fields;
+	}
+
+	private static String readString(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private static void readId(JsonReader reader, Fields fields)
+			throws IOException {
+
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			fields.id = null;
+			return;
+		}
+
+		try {
+			fields.id = Integer.valueOf(reader.nextInt());
+			fields.validId = true;
+		} catch (NumberFormatException | IllegalStateException e) {
+			reader.skipValue();
+			fields.validId = false;
+		}
+	}
+
+	private static Object readData(JsonReader reader, Type dataType,
+			Fields fields) throws IOException {
+
+		boolean jsonTarget = dataType instanceof Class
+				&& JsonElement.class.isAssignableFrom((Class<?>) dataType);
+
+		boolean voidTarget = dataType == Void.class || dataType == void.class;
+
+		if (!jsonTarget && reader.peek() != JsonToken.BEGIN_OBJECT) {
+
+			if (voidTarget) {
+				reader.skipValue();
+				return null;
+			}
+
+			// There is no sessionId to extract. Bind directly from the stream
+			return JsonUtils.getAdapter(dataType).read(reader);
+		}
+
+		JsonElement element = JsonUtils.<JsonElement> getAdapter(
+				JsonElement.class).read(reader);
+
+		if (element.isJsonObject()) {
+			JsonElement sessionIdJson = element.getAsJsonObject().remove(
+					SESSION_ID_PROPERTY);
+			if (sessionIdJson != null && !(sessionIdJson instanceof JsonNull)) {
+				fields.sessionId = sessionIdJson.getAsString();
+			}
+		}
+
+		if (jsonTarget) {
+			return checkJsonType(element, (Class<?>) dataType);
+		}
+
+		if (voidTarget) {
+			return null;
+		}
+
+		return JsonUtils.fromJson(element, dataType);
+	}
+
+	/**
+	 * The data must be of the requested JSON type, like a JSON object for
+	 * {@link JsonObject}. Null is valid for any type.
+	 */
+	private static JsonElement checkJsonType(JsonElement element,
+			Class<?> jsonType) {
+
+		if (jsonType.isInstance(element)) {
+			return element;
+		}
+
+		if (element.isJsonNull()) {
+			return null;
+		}
+
+		throw new JsonParseException("Invalid JsonRpc data: expected "
+				+ jsonType.getSimpleName() + ", found "
+				+ element.getClass().getSimpleName());
+	}
+
+}
@@ -0,0 +1,303 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PARAMS_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.RESULT_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SESSION_ID_PROPERTY;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Encodes JSON-RPC messages streaming them with a {@link JsonWriter}. The
+ * sessionId is injected in params/result while they are written, so the
+ * message is not converted to a tree nor serialized several times.
+ *
+ * Messages are encoded in a buffer reused by each thread, so only the final
+ * String is allocated per message.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcMessageEncoder {
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/**
+	 * Buffers bigger than this are not kept in the pool to avoid retaining
+	 * memory after sending a big message (like a SDP).
+	 */
+	private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+	private static class Buffer {
+
+		private final StringWriter writer = new StringWriter(
+				INITIAL_BUFFER_SIZE);
+		private boolean inUse;
+	}
+
+	private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	/**
+	 * @param message
+	 *            the message to be encoded
+	 * @return true if the message can be encoded by this class. Subclasses of
+	 *         {@link Request} and {@link Response} can have their own fields,
+	 *         so they are not supported.
+	 */
+	public static boolean canEncode(Message message) {
+		return message.getClass() == Request.class
+				|| message.getClass() == Response.class;
+	}
+
+	public static String encode(Message message) {
+		return encode(message, JsonUtils.INJECT_SESSION_ID);
+	}
+
+	/**
+	 * @param message
+	 *            the message to be encoded
+	 * @param injectSessionId
+	 *            if true, the sessionId of the message is injected in
+	 *            params/result
+	 * @return the JSON text of the message
+	 */
+	public static String encode(Message message, boolean injectSessionId) {
+
+		Buffer buffer = acquireBuffer();
+
+		try {
+
+			encode(message, injectSessionId, buffer.writer);
+			return buffer.writer.toString();
+
+		} catch (IOException e) {
+			throw new JsonRpcException("Exception encoding message", e);
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Encodes the messages as a JSON-RPC batch (a JSON array).
+	 *
+	 * @param messages
+	 *            the messages of the batch
+	 * @return the JSON text of the batch
+	 */
+	public static String encodeBatch(List<? extends Message> messages) {
+
+		Buffer buffer = acquireBuffer();
+		StringBuffer sb = buffer.writer.getBuffer();
+
+		try {
+
+			sb.append('[');
+			for (int i = 0; i < messages.size(); i++) {
+
+				if (i > 0) {
+					sb.append(',');
+				}
+
+				Message message = messages.get(i);
+				if (canEncode(message)) {
+					encode(message, JsonUtils.INJECT_SESSION_ID, buffer.writer);
+				} else {
+					sb.append(JsonUtils.toJsonMessage(message));
+				}
+			}
+			sb.append(']');
+
+			return sb.toString();
+
+		} catch (IOException e) {
+			throw new JsonRpcException("Exception encoding batch", e);
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
+
+	private static Buffer acquireBuffer() {
+
+		Buffer buffer = buffers.get();
+
+		if (buffer.inUse) {
+			// Reentrant call (e.g. from a type adapter). Don't share buffer
+			return new Buffer();
+		}
+
+		buffer.inUse = true;
+		return buffer;
+	}
+
+	private static void releaseBuffer(Buffer buffer) {
+
+		buffer.inUse = false;
+
+		StringBuffer sb = buffer.writer.getBuffer();
+		if (sb.capacity() > MAX_POOLED_BUFFER_SIZE) {
+			if (buffers.get() == buffer) {
+				buffers.remove();
+			}
+		} else {
+			sb.setLength(0);
+		}
+	}
+
+	public static void encode(Message message, boolean injectSessionId,
+			Writer out) throws IOException {
+
+		JsonWriter writer = new JsonWriter(out);
+		writer.setHtmlSafe(false);
+		writer.setSerializeNulls(false);
+
+		String sessionId = injectSessionId ? message.getSessionId() : null;
+
+		if (message instanceof Request) {
+			writeRequest((Request<?>) message, sessionId, writer);
+		} else {
+			writeResponse((Response<?>) message, sessionId, writer);
+		}
+
+		writer.flush();
+	}
+
+	private static void writeRequest(Request<?> request, String sessionId,
+			JsonWriter writer) throws IOException {
+
+		writer.beginObject();
+
+		if (request.getId() != null) {
+			writer.name(ID_PROPERTY).value(request.getId());
+		}
+
+		if (request.getMethod() != null) {
+			writer.name(METHOD_PROPERTY).value(request.getMethod());
+		}
+
+		if (request.getParams() != null) {
+			writer.name(PARAMS_PROPERTY);
+			writeData(request.getParams(), sessionId, writer);
+		}
+
+		writer.name(JSON_RPC_PROPERTY).value(request.getVersion());
+
+		if (request.getParams() == null && sessionId != null) {
+			writer.name(PARAMS_PROPERTY);
+			writeSessionIdObject(sessionId, writer);
+		}
+
+		writer.endObject();
+	}
+
+	private static void writeResponse(Response<?> response,
+			String sessionId, JsonWriter writer) throws IOException {
+
+		writer.beginObject();
+
+		if (response.getId() != null) {
+			writer.name(ID_PROPERTY).value(response.getId());
+		}
+
+		if (response.getResult() != null) {
+			writer.name(RESULT_PROPERTY);
+			writeData(response.getResult(),
+					response.getError() == null ? sessionId : null, writer);
+		}
+
+		if (response.getError() != null) {
+			writer.name(ERROR_PROPERTY);
+			if (sessionId == null) {
+				JsonUtils.getGson().toJson(response.getError(),
+						ResponseError.class, writer);
+			} else {
+				writeData(response.getError(), sessionId, writer);
+			}
+		}
+
+		writer.name(JSON_RPC_PROPERTY).value(response.getVersion());
+
+		if (response.getResult() == null && response.getError() == null
+				&& sessionId != null) {
+			writer.name(RESULT_PROPERTY);
+			writeSessionIdObject(sessionId, writer);
+		}
+
+		writer.endObject();
+	}
+
+	private static void writeData(Object data, String sessionId,
+			JsonWriter writer) throws IOException {
+
+		Gson gson = JsonUtils.getGson();
+
+		if (sessionId == null) {
+			gson.toJson(data, data.getClass(), writer);
+			return;
+		}
+
+		JsonElement json = data instanceof JsonElement ? (JsonElement) data
+				: gson.toJsonTree(data);
+
+		writer.beginObject();
+
+		if (json.isJsonObject()) {
+			for (Map.Entry<String, JsonElement> member : json
+					.getAsJsonObject().entrySet()) {
+				if (!SESSION_ID_PROPERTY.equals(member.getKey())) {
+					writer.name(member.getKey());
+					gson.toJson(member.getValue(), writer);
+				}
+			}
+		} else {
+			writer.name("value");
+			gson.toJson(json, writer);
+		}
+
+		writer.name(SESSION_ID_PROPERTY).value(sessionId);
+		writer.endObject();
+	}
+
+	private static void writeSessionIdObject(String sessionId,
+			JsonWriter writer) throws IOException {
+		writer.beginObject();
+		writer.name(SESSION_ID_PROPERTY).value(sessionId);
+		writer.endObject();
+	}
+
+}
@@ -15,6 +15,7 @@
 package org.kurento.jsonrpc.internal;
 
 import java.io.IOException;
+import java.util.List;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -50,4 +51,10 @@ public interface JsonRpcRequestSender {
 
 	void sendNotification(String method, Object params,
 			Continuation<JsonElement> continuation) throws IOException;
+
+	List<Response<JsonElement>> sendBatch(List<Request<JsonObject>> requests)
+			throws IOException;
+
+	void sendBatch(List<Request<JsonObject>> requests,
+			Continuation<List<Response<JsonElement>>> continuation);
 }
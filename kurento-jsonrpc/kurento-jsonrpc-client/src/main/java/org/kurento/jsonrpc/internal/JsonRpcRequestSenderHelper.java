@@ -15,14 +15,33 @@
 package org.kurento.jsonrpc.internal;
 
 import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CANCEL_REQUEST;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_RECONNECT;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.kurento.jsonrpc.ConcurrencyLimitExceededException;
 import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.client.ConcurrencyLimiter;
 import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClientMetricsListener;
+import org.kurento.jsonrpc.client.RequestFuture;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -30,9 +49,15 @@ import com.google.gson.JsonObject;
 public abstract class JsonRpcRequestSenderHelper implements
 		JsonRpcRequestSender {
 
+	private static final Logger log = LoggerFactory
+			.getLogger(JsonRpcRequestSenderHelper.class);
+
 	protected AtomicInteger id = new AtomicInteger();
 	protected String sessionId;
 
+	private volatile JsonRpcClientMetricsListener metricsListener;
+	private volatile ConcurrencyLimiter concurrencyLimiter;
+
 	public JsonRpcRequestSenderHelper() {
 	}
 
@@ -48,6 +73,53 @@ public abstract class JsonRpcRequestSenderHelper implements
 		this.sessionId = sessionId;
 	}
 
+	public JsonRpcClientMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Sets the listener notified of the requests sent and their responses.
+	 * Only requests with id are reported, as notifications have no response.
+	 *
+	 * @param metricsListener
+	 *            the listener, or null to stop collecting metrics
+	 */
+	public void setMetricsListener(JsonRpcClientMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Makes this helper take the ids of its requests from the given counter.
+	 * Helpers sending requests through the same connection have to share it,
+	 * so an id is never used by two requests waiting for their responses.
+	 *
+	 * @param id
+	 *            the counter of the ids
+	 */
+	public void setIdGenerator(AtomicInteger id) {
+		this.id = id;
+	}
+
+	public AtomicInteger getIdGenerator() {
+		return id;
+	}
+
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Sets the limiter of the requests in flight. Only requests with id are
+	 * limited; notifications, batches, pings, reconnections and
+	 * cancellations are always sent.
+	 *
+	 * @param concurrencyLimiter
+	 *            the limiter, or null to send requests without limit
+	 */
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
 	@Override
 	public <R> R sendRequest(String method, Class<R> resultClass)
 			throws IOException {
@@ -72,7 +144,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 	public <P, R> R sendRequest(Request<P> request, Class<R> resultClass)
 			throws JsonRpcErrorException, IOException {
 
-		Response<R> response = internalSendRequest(request, resultClass);
+		Response<R> response = timedSendRequest(request, resultClass);
 
 		if (response == null) {
 			return null;
@@ -111,35 +183,145 @@ public abstract class JsonRpcRequestSenderHelper implements
 			request.setSessionId(sessionId);
 		}
 
-		internalSendRequest(request, JsonElement.class,
-				new Continuation<Response<JsonElement>>() {
+		timedSendRequest(request, new Continuation<Response<JsonElement>>() {
 
-					@Override
-					public void onSuccess(Response<JsonElement> response) {
+				@Override
+				public void onSuccess(Response<JsonElement> response) {
 
-						if (response == null) {
-							continuation.onSuccess(null);
-							return;
-						}
+					if (response == null) {
+						continuation.onSuccess(null);
+						return;
+					}
+
+					if (response.getSessionId() != null) {
+						sessionId = response.getSessionId();
+					}
 
-						if (response.getSessionId() != null) {
-							sessionId = response.getSessionId();
+					if (response.getError() != null) {
+						continuation.onError(new JsonRpcErrorException(
+								response.getError()));
+					} else {
+						continuation.onSuccess(response.getResult());
+					}
+				}
+
+				@Override
+				public void onError(Throwable cause) {
+					continuation.onError(cause);
+				}
+			});
+
+	}
+
+	/**
+	 * Sends a request without blocking the caller. The returned future can be
+	 * used to wait for the result or to cancel the request.
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param params
+	 *            the params of the request
+	 * @param resultClass
+	 *            the class of the result
+	 * @return the future of the result, already failed if the request could
+	 *         not be sent
+	 */
+	public <R> RequestFuture<R> sendRequestAsync(String method, Object params,
+			final Class<R> resultClass) {
+
+		final Request<Object> request = new Request<>(null, method, params);
+
+		setIdIfNecessary(request);
+
+		if (INJECT_SESSION_ID) {
+			request.setSessionId(sessionId);
+		}
+
+		final AtomicReference<InFlightRequest> inFlight = new AtomicReference<>();
+
+		final RequestFuture<R> future = new RequestFuture<R>(request) {
+			@Override
+			protected void requestCancelled(boolean notifyPeer) {
+				cancelRequest(request, inFlight.get(), notifyPeer);
+			}
+		};
+
+		try {
+			inFlight.set(timedSendRequest(request,
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> response) {
+
+							if (response == null) {
+								future.completed(null);
+								return;
+							}
+
+							if (response.getSessionId() != null) {
+								sessionId = response.getSessionId();
+							}
+
+							if (response.getError() != null) {
+								future.failed(new JsonRpcErrorException(response
+										.getError()));
+								return;
+							}
+
+							try {
+								future.completed(MessageUtils.convertResponse(
+										response, resultClass).getResult());
+							} catch (Exception e) {
+								future.failed(e);
+							}
 						}
 
-						if (response.getError() != null) {
-							continuation.onError(new JsonRpcErrorException(
-									response.getError()));
-						} else {
-							continuation.onSuccess(response.getResult());
+						@Override
+						public void onError(Throwable cause) {
+							future.failed(cause instanceof Exception
+									? (Exception) cause
+									: new JsonRpcException(cause));
 						}
-					}
+					}));
+		} catch (RuntimeException e) {
+			// The slot in the limiter, if any, is already released
+			future.failed(e);
+			return future;
+		}
 
-					@Override
-					public void onError(Throwable cause) {
-						continuation.onError(cause);
-					}
-				});
+		// The request could be cancelled before being registered as in flight
+		if (future.isCancelled()) {
+			releaseCancelledRequest(inFlight.get());
+		}
+
+		return future;
+	}
+
+	private void cancelRequest(Request<?> request, InFlightRequest inFlight,
+			boolean notifyPeer) {
+
+		internalCancelRequest(request);
+		releaseCancelledRequest(inFlight);
+
+		if (notifyPeer) {
+			JsonObject params = new JsonObject();
+			params.addProperty("id", request.getId());
+			try {
+				sendNotification(METHOD_CANCEL_REQUEST, params);
+			} catch (Exception e) {
+				log.debug("Exception notifying cancellation of request {}",
+						request.getId(), e);
+			}
+		}
+	}
 
+	/**
+	 * Stops waiting for the response of a cancelled request. Transports that
+	 * keep pending requests override this method to remove the request and
+	 * fail its continuation, so the resources of the request are released.
+	 * By default, the response is just discarded when it arrives.
+	 */
+	protected void internalCancelRequest(Request<?> request) {
 	}
 
 	@Override
@@ -171,7 +353,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 			throws IOException {
 
 		setIdIfNecessary(request);
-		return internalSendRequest(request, JsonElement.class);
+		return timedSendRequest(request, JsonElement.class);
 	}
 
 	private void setIdIfNecessary(Request<? extends Object> request) {
@@ -185,7 +367,371 @@ public abstract class JsonRpcRequestSenderHelper implements
 			throws IOException {
 
 		setIdIfNecessary(request);
-		internalSendRequest(request, JsonElement.class, continuation);
+		timedSendRequest(request, continuation);
+	}
+
+	private <P, R> Response<R> timedSendRequest(Request<P> request,
+			Class<R> resultClass) throws IOException {
+
+		ConcurrencyLimiter limiter = concurrencyLimiter;
+		JsonRpcClientMetricsListener listener = metricsListener;
+		if ((limiter == null && listener == null) || request.getId() == null
+				|| isControlRequest(request)) {
+			return internalSendRequest(request, resultClass);
+		}
+
+		String method = request.getMethod();
+
+		long start;
+		if (limiter != null) {
+			try {
+				start = limiter.acquire();
+			} catch (InterruptedException e) {
+				throw new JsonRpcException(
+						"Interrupted while waiting to send a request", e);
+			}
+			if (start < 0) {
+				throw rejectRequest(limiter, listener, method);
+			}
+		} else {
+			start = System.nanoTime();
+		}
+
+		if (listener != null) {
+			listener.requestSent(method);
+		}
+
+		Response<R> response;
+		try {
+			response = internalSendRequest(request, resultClass);
+		} catch (IOException | RuntimeException e) {
+			finishRequest(limiter, listener, method, start, null, e);
+			throw e;
+		}
+
+		finishRequest(limiter, listener, method, start, response, null);
+
+		return response;
+	}
+
+	/**
+	 * @return the request in flight, to release it if the request is
+	 *         cancelled, or null if it is neither limited nor metered
+	 */
+	private InFlightRequest timedSendRequest(Request<?> request,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		ConcurrencyLimiter limiter = concurrencyLimiter;
+		JsonRpcClientMetricsListener listener = metricsListener;
+		if ((limiter == null && listener == null) || request.getId() == null
+				|| isControlRequest(request)) {
+			internalSendRequest(request, JsonElement.class, continuation);
+			return null;
+		}
+
+		String method = request.getMethod();
+
+		long start;
+		if (limiter != null) {
+			start = limiter.tryAcquire();
+			if (start < 0) {
+				continuation.onError(rejectRequest(limiter, listener, method));
+				return null;
+			}
+		} else {
+			start = System.nanoTime();
+		}
+
+		if (listener != null) {
+			listener.requestSent(method);
+		}
+
+		final InFlightRequest inFlight = new InFlightRequest(limiter,
+				listener, method, start);
+
+		try {
+			internalSendRequest(request, JsonElement.class,
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> response) {
+							inFlight.finish(response, null);
+							continuation.onSuccess(response);
+						}
+
+						@Override
+						public void onError(Throwable cause) {
+							inFlight.finish(null, cause);
+							continuation.onError(cause);
+						}
+					});
+		} catch (RuntimeException e) {
+			inFlight.finish(null, e);
+			throw e;
+		}
+
+		return inFlight;
+	}
+
+	/**
+	 * Releases the slot of a cancelled request in the limiter right away.
+	 * Its response may never arrive, and its continuation may be failed late
+	 * or not at all, depending on the transport.
+	 */
+	private static void releaseCancelledRequest(InFlightRequest inFlight) {
+		if (inFlight != null) {
+			inFlight.finish(null, new CancellationException(
+					"Request cancelled"));
+		}
+	}
+
+	/**
+	 * Pings, reconnections and cancellations keep the connection working, so
+	 * they are neither limited nor metered like application requests. If
+	 * they were, a saturated limiter would make the heartbeat close a healthy
+	 * connection or a reconnection fail.
+	 */
+	private static boolean isControlRequest(Request<?> request) {
+		String method = request.getMethod();
+		return METHOD_PING.equals(method) || METHOD_RECONNECT.equals(method)
+				|| METHOD_CANCEL_REQUEST.equals(method);
+	}
+
+	private ConcurrencyLimitExceededException rejectRequest(
+			ConcurrencyLimiter limiter, JsonRpcClientMetricsListener listener,
+			String method) {
+
+		if (listener != null) {
+			listener.requestRejected(method);
+		}
+
+		return new ConcurrencyLimitExceededException("Request " + method
+				+ " rejected: there are " + limiter.getInFlight()
+				+ " requests in flight and the limit is "
+				+ limiter.getLimit());
+	}
+
+	private void finishRequest(ConcurrencyLimiter limiter,
+			JsonRpcClientMetricsListener listener, String method, long start,
+			Response<?> response, Throwable cause) {
+
+		if (limiter != null) {
+			if (cause == null) {
+				// Requests shed by an overloaded server decrease the limit as
+				// timeouts do
+				limiter.release(method, start, isServerOverloaded(response));
+			} else if (RequestTimeoutException.isTimeout(cause)) {
+				limiter.release(method, start, true);
+			} else {
+				limiter.release();
+			}
+		}
+
+		if (listener != null) {
+			long latency = System.nanoTime() - start;
+			if (cause == null) {
+				listener.responseReceived(method, latency,
+						response != null ? response.getError() : null);
+			} else {
+				listener.requestFailed(method, latency, cause);
+			}
+		}
+	}
+
+	/**
+	 * A limited or metered request waiting for its response. It is finished
+	 * only once, whatever happens first: the response, a failure or the
+	 * cancellation of the request.
+	 */
+	private class InFlightRequest {
+
+		private final ConcurrencyLimiter limiter;
+		private final JsonRpcClientMetricsListener listener;
+		private final String method;
+		private final long start;
+		private final AtomicBoolean finished = new AtomicBoolean();
+
+		InFlightRequest(ConcurrencyLimiter limiter,
+				JsonRpcClientMetricsListener listener, String method,
+				long start) {
+			this.limiter = limiter;
+			this.listener = listener;
+			this.method = method;
+			this.start = start;
+		}
+
+		void finish(Response<?> response, Throwable cause) {
+			if (finished.compareAndSet(false, true)) {
+				finishRequest(limiter, listener, method, start, response,
+						cause);
+			}
+		}
+	}
+
+	private static boolean isServerOverloaded(Response<?> response) {
+		return response != null && response.getError() != null
+				&& response.getError().getCode() == ERROR_SERVER_OVERLOADED;
+	}
+
+	/**
+	 * Sends the requests in a JSON-RPC batch. Requests without id are given
+	 * one, so there is a response for each request.
+	 *
+	 * @param requests
+	 *            the requests of the batch
+	 * @return the responses in the same order than the requests. Each response
+	 *         has the result or the error of its request
+	 * @throws IOException
+	 */
+	@Override
+	public List<Response<JsonElement>> sendBatch(
+			List<Request<JsonObject>> requests) throws IOException {
+
+		if (requests.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		prepareBatch(requests);
+
+		List<Response<JsonElement>> responses;
+
+		JsonRpcClientMetricsListener listener = metricsListener;
+		if (listener == null) {
+			responses = internalSendBatch(requests);
+		} else {
+			for (Request<?> request : requests) {
+				listener.requestSent(request.getMethod());
+			}
+			long start = System.nanoTime();
+			try {
+				responses = internalSendBatch(requests);
+			} catch (IOException | RuntimeException e) {
+				batchFailed(listener, requests, start, e);
+				throw e;
+			}
+			batchReceived(listener, requests, start, responses);
+		}
+
+		updateSessionId(responses);
+
+		return responses;
+	}
+
+	@Override
+	public void sendBatch(List<Request<JsonObject>> requests,
+			final Continuation<List<Response<JsonElement>>> continuation) {
+
+		if (requests.isEmpty()) {
+			continuation.onSuccess(Collections
+					.<Response<JsonElement>> emptyList());
+			return;
+		}
+
+		prepareBatch(requests);
+
+		final List<Request<JsonObject>> batch = requests;
+		final JsonRpcClientMetricsListener listener = metricsListener;
+		if (listener != null) {
+			for (Request<?> request : requests) {
+				listener.requestSent(request.getMethod());
+			}
+		}
+		final long start = System.nanoTime();
+
+		internalSendBatch(requests,
+				new Continuation<List<Response<JsonElement>>>() {
+
+					@Override
+					public void onSuccess(List<Response<JsonElement>> responses) {
+						if (listener != null) {
+							batchReceived(listener, batch, start, responses);
+						}
+						updateSessionId(responses);
+						continuation.onSuccess(responses);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						if (listener != null) {
+							batchFailed(listener, batch, start, cause);
+						}
+						continuation.onError(cause);
+					}
+				});
+	}
+
+	private void batchReceived(JsonRpcClientMetricsListener listener,
+			List<? extends Request<?>> requests, long start,
+			List<Response<JsonElement>> responses) {
+
+		long latency = System.nanoTime() - start;
+		for (int i = 0; i < requests.size(); i++) {
+			Response<JsonElement> response = i < responses.size() ? responses
+					.get(i) : null;
+			listener.responseReceived(requests.get(i).getMethod(), latency,
+					response != null ? response.getError() : null);
+		}
+	}
+
+	private void batchFailed(JsonRpcClientMetricsListener listener,
+			List<? extends Request<?>> requests, long start, Throwable cause) {
+
+		long latency = System.nanoTime() - start;
+		for (Request<?> request : requests) {
+			listener.requestFailed(request.getMethod(), latency, cause);
+		}
+	}
+
+	private void prepareBatch(List<? extends Request<?>> requests) {
+		for (Request<?> request : requests) {
+			setIdIfNecessary(request);
+			if (INJECT_SESSION_ID && request.getSessionId() == null) {
+				request.setSessionId(sessionId);
+			}
+		}
+	}
+
+	private void updateSessionId(List<Response<JsonElement>> responses) {
+		for (Response<JsonElement> response : responses) {
+			if (response.getSessionId() != null) {
+				sessionId = response.getSessionId();
+			}
+		}
+	}
+
+	/**
+	 * Sends the requests of a batch. By default, requests are sent one by one.
+	 * Transports supporting batches override this method to send all of them
+	 * in a single message.
+	 */
+	protected List<Response<JsonElement>> internalSendBatch(
+			List<? extends Request<?>> requests) throws IOException {
+
+		List<Response<JsonElement>> responses = new ArrayList<>(
+				requests.size());
+
+		for (Request<?> request : requests) {
+			responses.add(internalSendRequest(request, JsonElement.class));
+		}
+
+		return responses;
+	}
+
+	/**
+	 * Sends the requests of a batch asynchronously. By default, requests are
+	 * sent one by one. Transports supporting batches override this method to
+	 * send all of them in a single message.
+	 */
+	protected void internalSendBatch(List<? extends Request<?>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+
+		BatchResponseCollector collector = new BatchResponseCollector(
+				requests.size(), continuation);
+
+		for (int i = 0; i < requests.size(); i++) {
+			internalSendRequest(requests.get(i), JsonElement.class,
+					collector.getContinuation(i));
+		}
 	}
 
 	protected abstract <P, R> Response<R> internalSendRequest(
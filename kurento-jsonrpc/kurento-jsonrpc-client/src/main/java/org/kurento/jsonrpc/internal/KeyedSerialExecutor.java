@@ -0,0 +1,321 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes tasks with the same key one after another, in the same order they
+ * were submitted, and tasks with different keys in parallel. Tasks are run in
+ * the underlying executor, and no thread is dedicated to a key: the queue of
+ * a key only exists while it has tasks.
+ *
+ * Tasks without key are executed directly in the underlying executor, without
+ * order guarantees.
+ *
+ * @since 6.0.0
+ */
+public class KeyedSerialExecutor {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(KeyedSerialExecutor.class);
+
+	public static final int DEFAULT_MAX_QUEUED_TASKS = 10000;
+
+	/**
+	 * Tasks executed before giving the thread back to the executor, so a key
+	 * with many tasks doesn't delay the others.
+	 */
+	private static final int MAX_TASKS_PER_RUN = 32;
+
+	private static class QueuedTask {
+
+		private final Runnable task;
+		private final long queuedTime = System.nanoTime();
+
+		private QueuedTask(Runnable task) {
+			this.task = task;
+		}
+	}
+
+	private class SerialQueue implements Runnable {
+
+		private final Object key;
+		private final Queue<QueuedTask> tasks = new ArrayDeque<>();
+		private boolean running;
+		private boolean removed;
+
+		private SerialQueue(Object key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+
+			while (true) {
+
+				for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+
+					QueuedTask queuedTask;
+
+					synchronized (this) {
+						queuedTask = tasks.poll();
+						if (queuedTask == null) {
+							running = false;
+							removed = true;
+							queues.remove(key, this);
+							return;
+						}
+					}
+
+					execute(queuedTask);
+				}
+
+				// Still running, so no other thread will submit this queue
+				try {
+					submit(this);
+					return;
+				} catch (RejectedExecutionException e) {
+					// The executor is saturated, and this thread is already
+					// one of its threads, so it keeps running the tasks
+				}
+			}
+		}
+	}
+
+	private final ConcurrentMap<Object, SerialQueue> queues = new ConcurrentHashMap<>();
+
+	private final Executor executor;
+	private final int maxQueuedTasks;
+
+	private final AtomicLong numExecuted = new AtomicLong();
+	private final AtomicLong numRejected = new AtomicLong();
+	private final AtomicLong totalLag = new AtomicLong();
+	private volatile long maxLag;
+
+	public KeyedSerialExecutor(Executor executor) {
+		this(executor, DEFAULT_MAX_QUEUED_TASKS);
+	}
+
+	/**
+	 * @param executor
+	 *            the executor where tasks are run
+	 * @param maxQueuedTasks
+	 *            maximum number of tasks waiting for each key
+	 */
+	public KeyedSerialExecutor(Executor executor, int maxQueuedTasks) {
+
+		if (maxQueuedTasks <= 0) {
+			throw new IllegalArgumentException(
+					"Max queued tasks must be positive, but was "
+							+ maxQueuedTasks);
+		}
+
+		this.executor = executor;
+		this.maxQueuedTasks = maxQueuedTasks;
+	}
+
+	/**
+	 * Executes the task after the tasks previously submitted with the same
+	 * key.
+	 *
+	 * @param key
+	 *            the key, or null if the task has no order requirements
+	 * @param task
+	 *            the task
+	 * @throws RejectedExecutionException
+	 *             if there are too many tasks waiting for the key or the
+	 *             executor is saturated. The task is discarded
+	 */
+	public void execute(Object key, Runnable task) {
+
+		final QueuedTask queuedTask = new QueuedTask(task);
+
+		if (key == null) {
+			try {
+				submit(new Runnable() {
+					@Override
+					public void run() {
+						execute(queuedTask);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				numRejected.incrementAndGet();
+				throw e;
+			}
+			return;
+		}
+
+		while (true) {
+
+			SerialQueue queue = queues.get(key);
+			if (queue == null) {
+				SerialQueue newQueue = new SerialQueue(key);
+				queue = queues.putIfAbsent(key, newQueue);
+				if (queue == null) {
+					queue = newQueue;
+				}
+			}
+
+			synchronized (queue) {
+
+				if (queue.removed) {
+					// The queue has been emptied and discarded meanwhile
+					continue;
+				}
+
+				if (queue.tasks.size() >= maxQueuedTasks) {
+					numRejected.incrementAndGet();
+					throw new RejectedExecutionException("There are already "
+							+ maxQueuedTasks + " tasks waiting for key " + key);
+				}
+
+				queue.tasks.add(queuedTask);
+
+				if (queue.running) {
+					return;
+				}
+
+				queue.running = true;
+
+				// Submitted holding the lock, so no task is added to the
+				// queue if it is rejected
+				try {
+					if (trySubmit(queue)) {
+						return;
+					}
+				} catch (RejectedExecutionException e) {
+					queue.tasks.clear();
+					queue.running = false;
+					queue.removed = true;
+					queues.remove(key, queue);
+					numRejected.incrementAndGet();
+					throw e;
+				}
+			}
+
+			queue.run();
+			return;
+		}
+	}
+
+	private void submit(Runnable runnable) {
+		if (!trySubmit(runnable)) {
+			runnable.run();
+		}
+	}
+
+	/**
+	 * Runs the task in the executor. Tasks are only run in the current thread
+	 * when the executor has been shut down, so they are not lost when clients
+	 * are closed. When the executor is saturated, the rejection is thrown to
+	 * the caller, as the current thread can be the one reading from a
+	 * connection, and a task waiting for a response there would block it.
+	 *
+	 * @return false if the executor is shut down and the task has to be run
+	 *         in the current thread
+	 */
+	private boolean trySubmit(Runnable runnable) {
+		try {
+			executor.execute(runnable);
+			return true;
+		} catch (RejectedExecutionException e) {
+			if (!isShutdown()) {
+				throw e;
+			}
+			log.debug("Executor is shut down. Executing task in current thread");
+			return false;
+		}
+	}
+
+	private boolean isShutdown() {
+		return executor instanceof ExecutorService
+				&& ((ExecutorService) executor).isShutdown();
+	}
+
+	private void execute(QueuedTask queuedTask) {
+
+		long lag = System.nanoTime() - queuedTask.queuedTime;
+		totalLag.addAndGet(lag);
+		if (lag > maxLag) {
+			maxLag = lag;
+		}
+
+		try {
+			queuedTask.task.run();
+		} catch (Exception e) {
+			log.warn("Exception executing task", e);
+		} finally {
+			numExecuted.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the number of keys with tasks running or waiting
+	 */
+	public int getActiveKeys() {
+		return queues.size();
+	}
+
+	public long getNumExecuted() {
+		return numExecuted.get();
+	}
+
+	/**
+	 * @return the number of tasks rejected because there were too many tasks
+	 *         waiting for their key or the executor was saturated
+	 */
+	public long getNumRejected() {
+		return numRejected.get();
+	}
+
+	/**
+	 * @return the average time in milliseconds between submitting a task and
+	 *         starting its execution
+	 */
+	public double getAverageLag() {
+		long executed = numExecuted.get();
+		return executed == 0 ? 0 : (double) TimeUnit.NANOSECONDS
+				.toMicros(totalLag.get()) / executed / 1000;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds between submitting a task and
+	 *         starting its execution
+	 */
+	public long getMaxLag() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLag);
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public int getMaxQueuedTasks() {
+		return maxQueuedTasks;
+	}
+
+}
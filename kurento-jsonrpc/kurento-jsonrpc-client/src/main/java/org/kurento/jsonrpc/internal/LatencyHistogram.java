@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with a fixed relative precision, in the style of
+ * HdrHistogram: each power of two is divided in {@value #SUB_BUCKETS}
+ * buckets, so values are recorded with an error below 7% in a few kilobytes,
+ * from microseconds to days. Recording is lock free and doesn't allocate.
+ *
+ * @since 6.0.0
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Values from 2^40 microseconds (about 12 days) are truncated. */
+	private static final int MAX_VALUE_BITS = 40;
+
+	private static final int NUM_BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1)
+			* SUB_BUCKETS + SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long duration, TimeUnit unit) {
+
+		long micros = Math.max(0, unit.toMicros(duration));
+
+		counts.incrementAndGet(getBucket(micros));
+		totalCount.incrementAndGet();
+		totalMicros.addAndGet(micros);
+
+		long max;
+		while (micros > (max = maxMicros.get())) {
+			if (maxMicros.compareAndSet(max, micros)) {
+				break;
+			}
+		}
+	}
+
+	static int getBucket(long micros) {
+
+		if (micros < 2 * SUB_BUCKETS) {
+			return (int) micros;
+		}
+
+		int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+		if (highestBit >= MAX_VALUE_BITS) {
+			return NUM_BUCKETS - 1;
+		}
+
+		int shift = highestBit - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS
+				+ (int) ((micros >> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * @return the highest value (in microseconds) recorded in the bucket
+	 */
+	static long getBucketHighestValue(int bucket) {
+
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = bucket / SUB_BUCKETS - 1;
+		long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * @return the mean of the recorded values, in milliseconds
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalMicros.get() / count / 1000;
+	}
+
+	/**
+	 * @return the maximum recorded value, in milliseconds
+	 */
+	public double getMax() {
+		return (double) maxMicros.get() / 1000;
+	}
+
+	/**
+	 * Returns the value below which the given percentage of the recorded
+	 * values fall.
+	 *
+	 * @param percentile
+	 *            the percentage, from 0 to 100
+	 * @return the value in milliseconds, or 0 if nothing has been recorded
+	 */
+	public double getPercentile(double percentile) {
+
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1,
+				(long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+
+		long accumulated = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			accumulated += counts.get(i);
+			if (accumulated >= target) {
+				return (double) Math.min(getBucketHighestValue(i),
+						maxMicros.get()) / 1000;
+			}
+		}
+
+		return getMax();
+	}
+
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+}
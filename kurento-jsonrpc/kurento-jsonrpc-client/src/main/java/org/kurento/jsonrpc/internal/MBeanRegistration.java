@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import javax.management.ObjectName;
+
+/**
+ * Registration of an object in the platform MBean server, which can be
+ * replaced or removed later.
+ *
+ * @since 6.0.0
+ */
+public class MBeanRegistration {
+
+	private final Object mbean;
+	private final String type;
+
+	private ObjectName objectName;
+
+	public MBeanRegistration(Object mbean, String type) {
+		this.mbean = mbean;
+		this.type = type;
+	}
+
+	/**
+	 * Registers the MBean as
+	 * {@code org.kurento.jsonrpc:type=<type>,name=<name>}, replacing the
+	 * previous registration.
+	 *
+	 * @return the name of the registered MBean
+	 */
+	public synchronized ObjectName register(String name) {
+		unregister();
+		objectName = JmxUtils.registerMBean(mbean, type, name);
+		return objectName;
+	}
+
+	public synchronized void unregister() {
+
+		if (objectName != null) {
+			try {
+				JmxUtils.unregisterMBean(objectName);
+			} finally {
+				objectName = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.message.ResponseError;
+
+/**
+ * Latency histograms and counters of the requests of each method, and
+ * number of error responses of each error code. Used by the metrics of the
+ * client and of the server.
+ *
+ * Method names may be chosen by the remote peer, so the number of methods
+ * with their own counters is limited. Requests of other methods are counted
+ * together under {@value #OTHER_METHODS}.
+ *
+ * @since 6.0.0
+ */
+public class MethodMetrics {
+
+	public static final int DEFAULT_MAX_METHODS = 100;
+
+	/**
+	 * Name of the counters of the methods found once the maximum number of
+	 * methods has been reached.
+	 */
+	public static final String OTHER_METHODS = "other";
+
+	/**
+	 * Statistics of the requests of a method, as published in JMX. Subclasses
+	 * add the statistics specific to the client or the server.
+	 */
+	public abstract static class Stats {
+
+		private final long count;
+		private final long errors;
+		private final double meanLatency;
+		private final double p50Latency;
+		private final double p90Latency;
+		private final double p99Latency;
+		private final double maxLatency;
+
+		protected Stats(long count, long errors, double meanLatency,
+				double p50Latency, double p90Latency, double p99Latency,
+				double maxLatency) {
+			this.count = count;
+			this.errors = errors;
+			this.meanLatency = meanLatency;
+			this.p50Latency = p50Latency;
+			this.p90Latency = p90Latency;
+			this.p99Latency = p99Latency;
+			this.maxLatency = maxLatency;
+		}
+
+		/**
+		 * @return number of requests responded (with result or error)
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getMeanLatency() {
+			return meanLatency;
+		}
+
+		public double getP50Latency() {
+			return p50Latency;
+		}
+
+		public double getP90Latency() {
+			return p90Latency;
+		}
+
+		public double getP99Latency() {
+			return p99Latency;
+		}
+
+		public double getMaxLatency() {
+			return maxLatency;
+		}
+
+		/**
+		 * @return the statistics added by the subclass, as shown by
+		 *         {@link #toString()}
+		 */
+		protected String fieldsToString() {
+			return "";
+		}
+
+		@Override
+		public String toString() {
+			return "[count=" + count + ", errors=" + errors + fieldsToString()
+					+ ", mean=" + meanLatency + "ms, p50=" + p50Latency
+					+ "ms, p90=" + p90Latency + "ms, p99=" + p99Latency
+					+ "ms, max=" + maxLatency + "ms]";
+		}
+	}
+
+	/**
+	 * Counters of the requests of a method.
+	 */
+	public static class Counters {
+
+		private final LatencyHistogram latencies = new LatencyHistogram();
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong timeouts = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+
+		/**
+		 * @return latencies of the requests responded
+		 */
+		public LatencyHistogram getLatencies() {
+			return latencies;
+		}
+
+		public long getRequests() {
+			return requests.get();
+		}
+
+		public long getErrors() {
+			return errors.get();
+		}
+
+		public long getTimeouts() {
+			return timeouts.get();
+		}
+
+		/**
+		 * @return number of requests without response, including timeouts
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+	}
+
+	private final ConcurrentMap<String, Counters> methods = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Integer, AtomicLong> errorCodes = new ConcurrentHashMap<>();
+
+	private final int maxMethods;
+
+	public MethodMetrics() {
+		this(DEFAULT_MAX_METHODS);
+	}
+
+	/**
+	 * @param maxMethods
+	 *            maximum number of methods with their own counters
+	 */
+	public MethodMetrics(int maxMethods) {
+
+		if (maxMethods <= 0) {
+			throw new IllegalArgumentException(
+					"The maximum number of methods must be positive");
+		}
+
+		this.maxMethods = maxMethods;
+	}
+
+	public void requestStarted(String method) {
+		getOrCreate(method).requests.incrementAndGet();
+	}
+
+	/**
+	 * @param latencyNanos
+	 *            time since the request was sent or received
+	 * @param error
+	 *            the error of the response, or null if it has a result
+	 */
+	public void requestResponded(String method, long latencyNanos,
+			ResponseError error) {
+
+		Counters counters = getOrCreate(method);
+		counters.latencies.record(latencyNanos, TimeUnit.NANOSECONDS);
+
+		if (error != null) {
+			counters.errors.incrementAndGet();
+
+			Integer code = error.getCode();
+			AtomicLong counter = errorCodes.get(code);
+			if (counter == null) {
+				AtomicLong newCounter = new AtomicLong();
+				counter = errorCodes.putIfAbsent(code, newCounter);
+				if (counter == null) {
+					counter = newCounter;
+				}
+			}
+			counter.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Invoked when a request finishes without response.
+	 */
+	public void requestFailed(String method, boolean timeout) {
+
+		Counters counters = getOrCreate(method);
+		counters.failures.incrementAndGet();
+
+		if (timeout) {
+			counters.timeouts.incrementAndGet();
+		}
+	}
+
+	private Counters getOrCreate(String method) {
+
+		if (method == null) {
+			method = "";
+		}
+
+		Counters counters = methods.get(method);
+		if (counters == null) {
+			if (methods.size() >= maxMethods) {
+				// The map may exceed the limit by a few entries when new
+				// methods are found concurrently.
+				method = OTHER_METHODS;
+				counters = methods.get(method);
+				if (counters != null) {
+					return counters;
+				}
+			}
+			Counters newCounters = new Counters();
+			counters = methods.putIfAbsent(method, newCounters);
+			if (counters == null) {
+				counters = newCounters;
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * @return the counters of the method, or null if no request with that
+	 *         method has been counted or it is counted in
+	 *         {@value #OTHER_METHODS}
+	 */
+	public Counters getCounters(String method) {
+		return methods.get(method);
+	}
+
+	/**
+	 * @return the counters of each method, sorted by method name
+	 */
+	public Map<String, Counters> getCounters() {
+		return new TreeMap<>(methods);
+	}
+
+	/**
+	 * @return number of error responses for each error code
+	 */
+	public Map<Integer, Long> getErrorCodes() {
+		Map<Integer, Long> codes = new TreeMap<>();
+		for (Entry<Integer, AtomicLong> e : errorCodes.entrySet()) {
+			codes.put(e.getKey(), e.getValue().get());
+		}
+		return codes;
+	}
+
+	public void reset() {
+		methods.clear();
+		errorCodes.clear();
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+/**
+ * Dispatches the requests received by a server to the threads where they are
+ * processed, so a slow handler doesn't block the transport thread of its
+ * connection. Requests of the same session are processed one after another,
+ * in the order they were received, and requests of different sessions in
+ * parallel.
+ *
+ * The number of requests waiting to be processed is bounded for all the
+ * sessions. When the limit is reached, new requests are shed and the
+ * {@link OverloadPolicy} decides what the client receives.
+ *
+ * @since 6.0.0
+ */
+public class RequestDispatcher implements RequestDispatcherMXBean {
+
+	public static final int DEFAULT_MAX_QUEUED_REQUESTS = 10000;
+
+	public enum OverloadPolicy {
+
+		/**
+		 * Shed requests are answered with an
+		 * {@link JsonRpcConstants#ERROR_SERVER_OVERLOADED} error.
+		 */
+		REJECT,
+
+		/**
+		 * The connection of the client sending a shed request is closed with
+		 * the SERVICE_OVERLOAD (1013) status, so it can reconnect later or to
+		 * other server.
+		 */
+		CLOSE
+	}
+
+	private final KeyedSerialExecutor executor;
+	private final int maxQueuedRequests;
+	private final OverloadPolicy overloadPolicy;
+
+	private final AtomicInteger queuedRequests = new AtomicInteger();
+	private final AtomicLong numShed = new AtomicLong();
+	private final LatencyHistogram queueTime = new LatencyHistogram();
+
+	private final MBeanRegistration registration = new MBeanRegistration(
+			this, "RequestDispatcher");
+
+	public RequestDispatcher(Executor executor) {
+		this(executor, DEFAULT_MAX_QUEUED_REQUESTS, OverloadPolicy.REJECT);
+	}
+
+	/**
+	 * @param executor
+	 *            the executor where requests are processed
+	 * @param maxQueuedRequests
+	 *            maximum number of requests of all the sessions waiting to be
+	 *            processed
+	 * @param overloadPolicy
+	 *            what to do with requests received when the limit is reached
+	 */
+	public RequestDispatcher(Executor executor, int maxQueuedRequests,
+			OverloadPolicy overloadPolicy) {
+
+		if (maxQueuedRequests <= 0) {
+			throw new IllegalArgumentException(
+					"Max queued requests must be positive, but was "
+							+ maxQueuedRequests);
+		}
+
+		this.executor = new KeyedSerialExecutor(executor, maxQueuedRequests);
+		this.maxQueuedRequests = maxQueuedRequests;
+		this.overloadPolicy = overloadPolicy;
+	}
+
+	/**
+	 * Processes the request after the requests previously dispatched for the
+	 * same session.
+	 *
+	 * @param session
+	 *            the key of the session of the request
+	 * @param task
+	 *            the processing of the request
+	 * @return false if the request has been shed because the server is
+	 *         overloaded, so it will never be processed
+	 */
+	public boolean dispatch(Object session, final Runnable task) {
+
+		if (queuedRequests.incrementAndGet() > maxQueuedRequests) {
+			queuedRequests.decrementAndGet();
+			numShed.incrementAndGet();
+			return false;
+		}
+
+		final long queuedTime = System.nanoTime();
+
+		try {
+			executor.execute(session, new Runnable() {
+				@Override
+				public void run() {
+					queuedRequests.decrementAndGet();
+					queueTime.record(System.nanoTime() - queuedTime,
+							TimeUnit.NANOSECONDS);
+					task.run();
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			queuedRequests.decrementAndGet();
+			numShed.incrementAndGet();
+			return false;
+		}
+	}
+
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	@Override
+	public int getQueuedRequests() {
+		return queuedRequests.get();
+	}
+
+	@Override
+	public int getMaxQueuedRequests() {
+		return maxQueuedRequests;
+	}
+
+	@Override
+	public int getActiveSessions() {
+		return executor.getActiveKeys();
+	}
+
+	@Override
+	public long getNumProcessed() {
+		return queueTime.getCount();
+	}
+
+	@Override
+	public long getNumShed() {
+		return numShed.get();
+	}
+
+	@Override
+	public double getMeanQueueTime() {
+		return queueTime.getMean();
+	}
+
+	@Override
+	public double getP99QueueTime() {
+		return queueTime.getPercentile(99);
+	}
+
+	@Override
+	public double getMaxQueueTime() {
+		return queueTime.getMax();
+	}
+
+	@Override
+	public void reset() {
+		numShed.set(0);
+		queueTime.reset();
+	}
+
+	/**
+	 * Registers this dispatcher in the platform MBean server as
+	 * {@code org.kurento.jsonrpc:type=RequestDispatcher,name=<name>}.
+	 *
+	 * @param name
+	 *            the name of the dispatcher, usually the path of its handler
+	 * @return the name of the registered MBean
+	 */
+	public ObjectName registerMBean(String name) {
+		return registration.register(name);
+	}
+
+	public void unregisterMBean() {
+		registration.unregister();
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+/**
+ * Management interface of {@link RequestDispatcher}. Times are in
+ * milliseconds.
+ *
+ * @since 6.0.0
+ */
+public interface RequestDispatcherMXBean {
+
+	/**
+	 * @return the number of requests waiting to be processed
+	 */
+	int getQueuedRequests();
+
+	int getMaxQueuedRequests();
+
+	/**
+	 * @return the number of sessions with requests being processed or waiting
+	 */
+	int getActiveSessions();
+
+	long getNumProcessed();
+
+	/**
+	 * @return the number of requests not processed because the server was
+	 *         overloaded
+	 */
+	long getNumShed();
+
+	/**
+	 * @return the mean time requests wait before being processed
+	 */
+	double getMeanQueueTime();
+
+	double getP99QueueTime();
+
+	double getMaxQueueTime();
+
+	void reset();
+
+}
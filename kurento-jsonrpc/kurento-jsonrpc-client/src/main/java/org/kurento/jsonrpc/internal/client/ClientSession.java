@@ -15,6 +15,7 @@
 package org.kurento.jsonrpc.internal.client;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -93,6 +94,18 @@ public class ClientSession extends AbstractSession {
 		requestSender.sendNotification(method, params, continuation);
 	}
 
+	@Override
+	public List<Response<JsonElement>> sendBatch(
+			List<Request<JsonObject>> requests) throws IOException {
+		return requestSender.sendBatch(requests);
+	}
+
+	@Override
+	public void sendBatch(List<Request<JsonObject>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		requestSender.sendBatch(requests, continuation);
+	}
+
 	public Response<JsonElement> sendRequest(Request<JsonObject> request)
 			throws IOException {
 		return requestSender.sendRequest(request);
@@ -0,0 +1,522 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.TransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound messages of a websocket session. Any thread can enqueue messages
+ * without locking, and only one thread at a time writes them to the socket:
+ * the sender that finds the queue idle becomes the writer and drains all the
+ * messages enqueued meanwhile by other threads. Messages written in the same
+ * drain are flushed together, so the transport can coalesce them in a single
+ * network write when the peer is slow.
+ *
+ * Messages are written by {@link Priority}: control messages (pings,
+ * reconnections and their responses) before requests and responses, and
+ * these before notifications. Within a priority, messages keep the order in
+ * which they were enqueued. So a burst of bulk traffic doesn't delay pings
+ * until the heartbeat of the connection fails.
+ *
+ * The queue is bounded. When it is full, the {@link OverflowPolicy} decides
+ * if the sender waits, fails or (for notifications) discards the oldest
+ * queued notification. Control messages are never blocked nor rejected.
+ *
+ * A {@link MessagePreparer} completes a message in the writer thread, just
+ * before it is written, so what it adds (as a sequence number) follows the
+ * order of the messages in the transport, whatever their priority.
+ *
+ * A failed write is reported to the sender of the failed message: it is
+ * thrown if the sender is the writer, and notified to the
+ * {@link WriteCallback} of the message otherwise. The writer never gets the
+ * exceptions of messages of other senders.
+ *
+ * @since 6.0.0
+ */
+public class OutboundMessageQueue {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OutboundMessageQueue.class);
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public enum OverflowPolicy {
+
+		/**
+		 * The sender waits until there is room in the queue.
+		 */
+		BLOCK,
+
+		/**
+		 * The message is rejected with a {@link TransportException}.
+		 */
+		FAIL,
+
+		/**
+		 * A notification discards the oldest queued notification. Other
+		 * messages (or notifications when no notification is queued) are
+		 * rejected as with {@link #FAIL}.
+		 */
+		DROP_OLDEST
+	}
+
+	public enum Priority {
+
+		/**
+		 * Messages that keep the connection alive, as pings and
+		 * reconnections, and cancellations of requests.
+		 */
+		CONTROL,
+
+		/**
+		 * Requests and responses.
+		 */
+		REQUEST,
+
+		/**
+		 * Notifications, that can be dropped with
+		 * {@link OverflowPolicy#DROP_OLDEST}.
+		 */
+		NOTIFICATION
+	}
+
+	/**
+	 * Writes messages to the transport.
+	 */
+	public interface MessageWriter {
+
+		void write(String message) throws IOException;
+
+		/**
+		 * Invoked after writing the messages available in the queue.
+		 * Transports buffering writes should send them now.
+		 */
+		void flush() throws IOException;
+	}
+
+	/**
+	 * Notified when a message can't be written by other thread than its
+	 * sender, as the sender has already returned.
+	 */
+	public interface WriteCallback {
+
+		void writeFailed(IOException cause);
+	}
+
+	/**
+	 * Completes a message when it is going to be written. Invoked by the
+	 * writer thread, once for each message and in the order of the writes.
+	 */
+	public interface MessagePreparer {
+
+		/**
+		 * @return the text to write
+		 */
+		String prepare(String message);
+	}
+
+	private static class OutboundMessage {
+
+		private final String text;
+		private final WriteCallback callback;
+		private final MessagePreparer preparer;
+
+		OutboundMessage(String text, WriteCallback callback,
+				MessagePreparer preparer) {
+			this.text = text;
+			this.callback = callback;
+			this.preparer = preparer;
+		}
+
+		private String prepare() {
+			return preparer != null ? preparer.prepare(text) : text;
+		}
+	}
+
+	private final Queue<OutboundMessage> controlQueue = new ConcurrentLinkedQueue<>();
+	private final Queue<OutboundMessage> requestQueue = new ConcurrentLinkedQueue<>();
+	private final Queue<OutboundMessage> notificationQueue = new ConcurrentLinkedQueue<>();
+
+	// Control messages are not counted, as they don't use capacity
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicBoolean writing = new AtomicBoolean();
+
+	private final MessageWriter writer;
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+
+	private final Object spaceLock = new Object();
+	private int waitingSenders;
+
+	private volatile int peakSize;
+	private final AtomicLong numWritten = new AtomicLong();
+	private final AtomicLong numFlushes = new AtomicLong();
+	private final AtomicLong numDropped = new AtomicLong();
+	private final AtomicLong numRejected = new AtomicLong();
+
+	public OutboundMessageQueue(MessageWriter writer) {
+		this(writer, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	public OutboundMessageQueue(MessageWriter writer, int capacity,
+			OverflowPolicy overflowPolicy) {
+
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+					"Capacity must be positive, but was " + capacity);
+		}
+
+		this.writer = writer;
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Enqueues the message and, if no other thread is writing, writes it along
+	 * with any other queued message.
+	 *
+	 * @param message
+	 *            the JSON message
+	 * @param notification
+	 *            true if the message is a notification, that can be dropped
+	 *            with the {@link OverflowPolicy#DROP_OLDEST} policy
+	 * @throws IOException
+	 *             if this thread wrote the message and the write failed
+	 * @throws TransportException
+	 *             if the message is rejected because the queue is full
+	 */
+	public void send(String message, boolean notification) throws IOException {
+		send(message, notification ? Priority.NOTIFICATION : Priority.REQUEST);
+	}
+
+	/**
+	 * Enqueues the message with the given priority and, if no other thread is
+	 * writing, writes it along with any other queued message.
+	 *
+	 * @param message
+	 *            the JSON message
+	 * @param priority
+	 *            the priority of the message
+	 * @throws IOException
+	 *             if this thread wrote the message and the write failed
+	 * @throws TransportException
+	 *             if the message is rejected because the queue is full
+	 */
+	public void send(String message, Priority priority) throws IOException {
+		send(message, priority, null);
+	}
+
+	/**
+	 * Enqueues the message with the given priority and, if no other thread is
+	 * writing, writes it along with any other queued message.
+	 *
+	 * @param message
+	 *            the JSON message
+	 * @param priority
+	 *            the priority of the message
+	 * @param callback
+	 *            notified if the message is written by other thread and the
+	 *            write fails, or null to only log the failure
+	 * @throws IOException
+	 *             if this thread wrote the message and the write failed
+	 * @throws TransportException
+	 *             if the message is rejected because the queue is full
+	 */
+	public void send(String message, Priority priority, WriteCallback callback)
+			throws IOException {
+		send(message, priority, callback, null);
+	}
+
+	/**
+	 * Enqueues the message with the given priority and, if no other thread is
+	 * writing, writes it along with any other queued message.
+	 *
+	 * @param message
+	 *            the JSON message
+	 * @param priority
+	 *            the priority of the message
+	 * @param callback
+	 *            notified if the message is written by other thread and the
+	 *            write fails, or null to only log the failure
+	 * @param preparer
+	 *            completes the message just before it is written, or null to
+	 *            write it as is. It is not invoked if the message is dropped
+	 * @throws IOException
+	 *             if this thread wrote the message and the write failed
+	 * @throws TransportException
+	 *             if the message is rejected because the queue is full
+	 */
+	public void send(String message, Priority priority,
+			WriteCallback callback, MessagePreparer preparer)
+			throws IOException {
+
+		OutboundMessage outboundMessage = new OutboundMessage(message,
+				callback, preparer);
+
+		switch (priority) {
+		case CONTROL:
+			controlQueue.offer(outboundMessage);
+			break;
+		case REQUEST:
+			reserve(false);
+			requestQueue.offer(outboundMessage);
+			break;
+		default:
+			reserve(true);
+			notificationQueue.offer(outboundMessage);
+		}
+
+		drain(outboundMessage);
+	}
+
+	private void reserve(boolean notification) {
+
+		while (true) {
+
+			int current = size.get();
+
+			if (current < capacity) {
+				if (size.compareAndSet(current, current + 1)) {
+					if (current + 1 > peakSize) {
+						peakSize = current + 1;
+					}
+					return;
+				}
+				continue;
+			}
+
+			switch (overflowPolicy) {
+			case BLOCK:
+				waitForSpace();
+				break;
+			case DROP_OLDEST:
+				if (notification && dropOldestNotification()) {
+					// The slot of the dropped message is reused
+					return;
+				}
+				reject();
+				break;
+			default:
+				reject();
+			}
+		}
+	}
+
+	private boolean dropOldestNotification() {
+
+		OutboundMessage dropped = notificationQueue.poll();
+		if (dropped == null) {
+			return false;
+		}
+
+		numDropped.incrementAndGet();
+		log.debug("Outbound queue full. Dropped notification {}",
+				dropped.text);
+		return true;
+	}
+
+	private void reject() {
+		numRejected.incrementAndGet();
+		throw new TransportException("Outbound queue is full ("
+				+ capacity + " messages)");
+	}
+
+	private void waitForSpace() {
+		synchronized (spaceLock) {
+			waitingSenders++;
+			try {
+				while (size.get() >= capacity) {
+					spaceLock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TransportException(
+						"Interrupted while waiting for space in outbound queue",
+						e);
+			} finally {
+				waitingSenders--;
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued messages if no other thread is writing.
+	 *
+	 * @param own
+	 *            the message of this thread, whose failure is thrown
+	 */
+	private void drain(OutboundMessage own) throws IOException {
+
+		IOException ownFailure = null;
+
+		// The queue is checked after releasing the writer role, because a
+		// message could have been enqueued while the previous writer was
+		// finishing
+		while (!isEmpty() && writing.compareAndSet(false, true)) {
+
+			try {
+
+				List<OutboundMessage> written = new ArrayList<>();
+				OutboundMessage message;
+
+				while ((message = poll()) != null) {
+
+					try {
+						writer.write(message.prepare());
+						written.add(message);
+					} catch (IOException e) {
+						log.warn("Exception writing message {}", message.text,
+								e);
+						if (message == own) {
+							ownFailure = e;
+						} else {
+							writeFailed(message, e);
+						}
+					}
+				}
+
+				if (!written.isEmpty()) {
+					numWritten.addAndGet(written.size());
+					numFlushes.incrementAndGet();
+					try {
+						writer.flush();
+					} catch (IOException e) {
+						// None of the messages written since the last flush
+						// may have been sent
+						log.warn("Exception flushing {} messages",
+								written.size(), e);
+						for (OutboundMessage flushed : written) {
+							if (flushed == own) {
+								ownFailure = e;
+							} else {
+								writeFailed(flushed, e);
+							}
+						}
+					}
+				}
+
+			} finally {
+				writing.set(false);
+			}
+		}
+
+		if (ownFailure != null) {
+			throw ownFailure;
+		}
+	}
+
+	private void writeFailed(OutboundMessage message, IOException cause) {
+		if (message.callback != null) {
+			try {
+				message.callback.writeFailed(cause);
+			} catch (RuntimeException e) {
+				log.warn("Exception notifying write failure of message {}",
+						message.text, e);
+			}
+		}
+	}
+
+	private boolean isEmpty() {
+		return controlQueue.isEmpty() && requestQueue.isEmpty()
+				&& notificationQueue.isEmpty();
+	}
+
+	/**
+	 * Takes the next message to write. Queues are checked for every message,
+	 * so a control message is written as soon as the current write finishes.
+	 */
+	private OutboundMessage poll() {
+
+		OutboundMessage message = controlQueue.poll();
+		if (message != null) {
+			return message;
+		}
+
+		message = requestQueue.poll();
+		if (message == null) {
+			message = notificationQueue.poll();
+		}
+
+		if (message != null) {
+			size.decrementAndGet();
+			signalSpace();
+		}
+
+		return message;
+	}
+
+	private void signalSpace() {
+		synchronized (spaceLock) {
+			if (waitingSenders > 0) {
+				spaceLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of messages waiting to be written
+	 */
+	public int getSize() {
+		return size.get();
+	}
+
+	/**
+	 * @return the maximum number of messages that have been waiting at the
+	 *         same time
+	 */
+	public int getPeakSize() {
+		return peakSize;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public long getNumWritten() {
+		return numWritten.get();
+	}
+
+	/**
+	 * @return the number of flushes. The ratio between written messages and
+	 *         flushes shows how many messages are coalesced
+	 */
+	public long getNumFlushes() {
+		return numFlushes.get();
+	}
+
+	public long getNumDropped() {
+		return numDropped.get();
+	}
+
+	public long getNumRejected() {
+		return numRejected.get();
+	}
+
+}
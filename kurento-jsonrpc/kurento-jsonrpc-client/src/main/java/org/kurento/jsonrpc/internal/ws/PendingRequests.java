@@ -14,12 +14,23 @@
  */
 package org.kurento.jsonrpc.internal.ws;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
 import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
+import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,34 +43,278 @@ public class PendingRequests {
 	private static final Logger log = LoggerFactory
 			.getLogger(PendingRequests.class);
 
-	private final ConcurrentMap<Integer, BasicFuture<Response<JsonElement>>> pendingRequests = new ConcurrentHashMap<>();
+	private static class PendingRequest {
+
+		private final BasicFuture<Response<JsonElement>> future;
+		private final Request<?> request;
+		private final long sequence;
+		private volatile Timeout timeout;
+
+		private PendingRequest(BasicFuture<Response<JsonElement>> future,
+				Request<?> request, long sequence) {
+			this.future = future;
+			this.request = request;
+			this.sequence = sequence;
+		}
+
+		private void cancelTimeout() {
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+	}
+
+	private static final Comparator<PendingRequest> SEQUENCE_ORDER = new Comparator<PendingRequest>() {
+		@Override
+		public int compare(PendingRequest r1, PendingRequest r2) {
+			return Long.compare(r1.sequence, r2.sequence);
+		}
+	};
+
+	private final ConcurrentMap<Integer, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+	private final HashedWheelTimer timer;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	private final AtomicLong numRequests = new AtomicLong();
+
+	private final AtomicLong numTimeouts = new AtomicLong();
+
+	public PendingRequests() {
+		this(HashedWheelTimer.getSharedTimer());
+	}
+
+	public PendingRequests(HashedWheelTimer timer) {
+		this.timer = timer;
+	}
 
 	public void handleResponse(Response<JsonElement> response) {
 
-		BasicFuture<Response<JsonElement>> responseFuture = pendingRequests
+		PendingRequest pendingRequest = pendingRequests
 				.remove(response.getId());
 
-		if (responseFuture == null) {
-			// TODO It is necessary to do something else? Who is watching this?
-			log.error("Received response with an id not registered as pending request");
+		if (pendingRequest == null) {
+			// The request may have expired or been cancelled meanwhile
+			log.debug("Received response with id {} not registered as"
+					+ " pending request", response.getId());
 		} else {
-			responseFuture.completed(response);
+			pendingRequest.cancelTimeout();
+			pendingRequest.future.completed(response);
 		}
 	}
 
 	public Future<Response<JsonElement>> prepareResponse(Integer id) {
+		return prepareResponse(id, 0, null);
+	}
+
+	public Future<Response<JsonElement>> prepareResponse(Integer id,
+			FutureCallback<Response<JsonElement>> callback) {
+		return prepareResponse(id, 0, callback);
+	}
+
+	/**
+	 * Registers a pending request whose response will be notified to the
+	 * given callback from the thread that receives it. No thread is blocked
+	 * waiting for the response.
+	 *
+	 * If a timeout is specified and the response doesn't arrive before it,
+	 * the request is removed and the future is failed with a
+	 * {@link RequestTimeoutException}.
+	 *
+	 * @param id
+	 *            the request id
+	 * @param timeoutMillis
+	 *            the maximum time to wait for the response. Zero or negative
+	 *            means no timeout
+	 * @param callback
+	 *            the callback to be notified when the response arrives, when
+	 *            the request fails or when it is cancelled. Can be null.
+	 * @return the future of the response
+	 */
+	public Future<Response<JsonElement>> prepareResponse(final Integer id,
+			final long timeoutMillis,
+			FutureCallback<Response<JsonElement>> callback) {
+		return prepareResponse(id, null, timeoutMillis, callback);
+	}
+
+	/**
+	 * Registers a pending request as
+	 * {@link #prepareResponse(Integer, long, FutureCallback)}, keeping the
+	 * request so it can be sent again with {@link #getUnansweredRequests()}
+	 * if the connection is lost before the response arrives.
+	 *
+	 * @param request
+	 *            the request, that must have an id
+	 * @param timeoutMillis
+	 *            the maximum time to wait for the response. Zero or negative
+	 *            means no timeout
+	 * @param callback
+	 *            the callback to be notified when the response arrives, when
+	 *            the request fails or when it is cancelled. Can be null.
+	 * @return the future of the response
+	 */
+	public Future<Response<JsonElement>> prepareResponse(Request<?> request,
+			long timeoutMillis, FutureCallback<Response<JsonElement>> callback) {
+		return prepareResponse(request.getId(), request, timeoutMillis,
+				callback);
+	}
+
+	private Future<Response<JsonElement>> prepareResponse(final Integer id,
+			Request<?> request, final long timeoutMillis,
+			FutureCallback<Response<JsonElement>> callback) {
 
 		Preconditions.checkNotNull(id, "The request id cannot be null");
 
 		BasicFuture<Response<JsonElement>> responseFuture = new BasicFuture<>(
-				null);
+				callback);
+
+		final PendingRequest pendingRequest = new PendingRequest(
+				responseFuture, request, nextSequence.incrementAndGet());
 
-		if (pendingRequests.putIfAbsent(id, responseFuture) != null) {
+		if (pendingRequests.putIfAbsent(id, pendingRequest) != null) {
 			throw new JsonRpcException("Can not send a request with the id '"
 					+ id + "'. There is already a pending request with this id");
 		}
 
+		numRequests.incrementAndGet();
+
+		if (timeoutMillis > 0) {
+			pendingRequest.timeout = timer.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					requestTimeout(id, pendingRequest, timeoutMillis);
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+			// The request may have been finished before the timeout was set,
+			// without cancelling it
+			if (pendingRequests.get(id) != pendingRequest) {
+				pendingRequest.cancelTimeout();
+			}
+		}
+
 		return responseFuture;
 	}
 
+	private void requestTimeout(Integer id, PendingRequest pendingRequest,
+			long timeoutMillis) {
+
+		// Only this request is removed, not a later one with the same id
+		if (pendingRequests.remove(id, pendingRequest)) {
+			numTimeouts.incrementAndGet();
+			pendingRequest.future.failed(new RequestTimeoutException("Timeout of "
+					+ timeoutMillis
+					+ " milliseconds waiting from response to request with id:"
+					+ id));
+		}
+	}
+
+	/**
+	 * Removes the pending request with the given id and fails it with the
+	 * given cause.
+	 *
+	 * @param id
+	 *            the request id
+	 * @param cause
+	 *            the reason of the failure
+	 */
+	public void failRequest(Integer id, Exception cause) {
+
+		PendingRequest pendingRequest = pendingRequests.remove(id);
+
+		if (pendingRequest != null) {
+			pendingRequest.cancelTimeout();
+			pendingRequest.future.failed(cause);
+		}
+	}
+
+	/**
+	 * Removes the pending request with the given id and cancels its future.
+	 * The response, if it arrives later, is discarded.
+	 *
+	 * @param id
+	 *            the request id
+	 * @return true if the request was pending
+	 */
+	public boolean cancelRequest(Integer id) {
+
+		PendingRequest pendingRequest = pendingRequests.remove(id);
+
+		if (pendingRequest == null) {
+			return false;
+		}
+
+		pendingRequest.cancelTimeout();
+		pendingRequest.future.cancel(true);
+		return true;
+	}
+
+	/**
+	 * Fails all the pending requests with the given cause. It is intended to
+	 * be used when the underlying connection is definitively closed.
+	 *
+	 * @param cause
+	 *            the reason of the failure
+	 */
+	public void closeAllPendingRequests(Exception cause) {
+		for (Integer id : pendingRequests.keySet()) {
+			failRequest(id, cause);
+		}
+	}
+
+	/**
+	 * Returns the requests registered with
+	 * {@link #prepareResponse(Request, long, FutureCallback)} that are still
+	 * waiting for a response, in the same order they were registered. As
+	 * pending requests are identified by their id, each request appears only
+	 * once.
+	 *
+	 * @return the requests without response
+	 */
+	public List<Request<?>> getUnansweredRequests() {
+
+		List<PendingRequest> unanswered = new ArrayList<>();
+		for (PendingRequest pendingRequest : pendingRequests.values()) {
+			if (pendingRequest.request != null) {
+				unanswered.add(pendingRequest);
+			}
+		}
+
+		Collections.sort(unanswered, SEQUENCE_ORDER);
+
+		List<Request<?>> requests = new ArrayList<>(unanswered.size());
+		for (PendingRequest pendingRequest : unanswered) {
+			requests.add(pendingRequest.request);
+		}
+		return requests;
+	}
+
+	public int size() {
+		return pendingRequests.size();
+	}
+
+	/**
+	 * @return the number of requests registered since this object was created
+	 */
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	/**
+	 * @return the number of requests that have expired without response
+	 */
+	public long getNumTimeouts() {
+		return numTimeouts.get();
+	}
+
+	/**
+	 * @return the ratio of requests expired without response
+	 */
+	public double getTimeoutRate() {
+		long requests = numRequests.get();
+		return requests == 0 ? 0 : (double) numTimeouts.get() / requests;
+	}
+
 }
@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.util.TreeSet;
+
+/**
+ * Sequence numbers of the messages received from a server with session
+ * resumption. The server numbers messages as it writes them, but the ones
+ * sent again after a reconnection keep their priority and can arrive out of
+ * order, so the last sequence number received in order is tracked along
+ * with the ones received ahead of it. After a reconnection, the server sends
+ * again the messages after the last one in order, and the ones already
+ * received are discarded as duplicates.
+ *
+ * @since 6.0.0
+ */
+public class SequenceTracker {
+
+	/**
+	 * Maximum number of messages received ahead of a missing one. When it is
+	 * exceeded, the missing message is considered lost.
+	 */
+	public static final int MAX_AHEAD = 1024;
+
+	private long lastInOrder = 0;
+
+	private final TreeSet<Long> ahead = new TreeSet<>();
+
+	/**
+	 * Records a received message.
+	 *
+	 * @param sequence
+	 *            the sequence number of the message
+	 * @return false if the message had already been received
+	 */
+	public synchronized boolean received(long sequence) {
+
+		if (sequence <= lastInOrder || !ahead.add(sequence)) {
+			return false;
+		}
+
+		if (ahead.size() > MAX_AHEAD) {
+			lastInOrder = ahead.first() - 1;
+		}
+
+		while (!ahead.isEmpty() && ahead.first() == lastInOrder + 1) {
+			lastInOrder = ahead.pollFirst();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the sequence number of the last message received in order, or
+	 *         0 if none
+	 */
+	public synchronized long getLastInOrder() {
+		return lastInOrder;
+	}
+
+	/**
+	 * Forgets the received messages, when the client starts a new session
+	 * whose messages are numbered again from the beginning.
+	 */
+	public synchronized void reset() {
+		lastInOrder = 0;
+		ahead.clear();
+	}
+
+}
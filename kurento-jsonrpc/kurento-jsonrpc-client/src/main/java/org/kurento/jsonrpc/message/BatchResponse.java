@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.message;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.kurento.jsonrpc.JsonUtils;
+
+/**
+ * Responses to the requests of a JSON-RPC batch. It is sent as a single JSON
+ * array with one response for each request (notifications are not responded).
+ *
+ * @since 6.0.0
+ */
+public class BatchResponse extends Message {
+
+	private final transient List<Response<?>> responses;
+
+	public BatchResponse(List<Response<?>> responses) {
+		this.responses = Collections.unmodifiableList(responses);
+	}
+
+	public List<Response<?>> getResponses() {
+		return responses;
+	}
+
+	@Override
+	public String toString() {
+		return JsonUtils.toJsonBatch(responses);
+	}
+
+}
@@ -14,11 +14,10 @@
  */
 package org.kurento.jsonrpc.message;
 
-import static org.kurento.jsonrpc.JsonUtils.getGson;
-
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.kurento.jsonrpc.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,6 +73,12 @@ public class MessageUtils {
 			return null;
 		}
 
+		// Results already in the requested form are not walked again
+		if (JsonElement.class.isAssignableFrom(resultClass)
+				&& resultClass.isInstance(resultJsonObject)) {
+			return resultClass.cast(resultJsonObject);
+		}
+
 		R resultR = null;
 		if (resultClass == String.class || resultClass == Boolean.class
 				|| resultClass == Character.class
@@ -119,9 +124,9 @@ public class MessageUtils {
 				value = resultJsonObject;
 			}
 
-			resultR = getGson().fromJson(value, resultClass);
+			resultR = JsonUtils.fromJson(value, resultClass);
 		} else {
-			resultR = getGson().fromJson(resultJsonObject, resultClass);
+			resultR = JsonUtils.fromJson(resultJsonObject, resultClass);
 		}
 		return resultR;
 	}
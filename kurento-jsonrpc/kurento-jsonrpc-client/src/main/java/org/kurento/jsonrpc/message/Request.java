@@ -45,6 +45,18 @@ public class Request<P> extends Message {
 	 */
 	protected P params;
 
+	/**
+	 * Maximum time to wait for the response of this request. It is not
+	 * serialized. Zero means the default timeout of the sender.
+	 */
+	private transient long timeout;
+
+	/**
+	 * Sequence number given by a server with session resumption to the
+	 * requests it sends, or null. It is not serialized with the request.
+	 */
+	private transient Long sequence;
+
 	/**
 	 * Default constructor.
 	 */
@@ -112,4 +124,38 @@ public class Request<P> extends Message {
 		this.id = id;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Gets the maximum time in milliseconds to wait for the response of this
+	 * request.
+	 *
+	 * @return the timeout in milliseconds, or zero if the default timeout of
+	 *         the sender will be used
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds to wait for the response of this
+	 * request, overriding the default and per-method timeouts of the sender.
+	 *
+	 * @param timeout
+	 *            the timeout in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the sequence number given by the server to this request, or
+	 *         null if the server doesn't number its requests
+	 */
+	public Long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(Long sequence) {
+		this.sequence = sequence;
+	}
+
+}
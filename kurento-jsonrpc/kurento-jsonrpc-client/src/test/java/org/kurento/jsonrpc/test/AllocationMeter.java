@@ -0,0 +1,56 @@
+package org.kurento.jsonrpc.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated by the current thread using the HotSpot
+ * specific extension of {@link ThreadMXBean}. Used to compare the allocation
+ * per message of different encoding/decoding implementations.
+ */
+public class AllocationMeter {
+
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	private AllocationMeter(com.sun.management.ThreadMXBean threadBean) {
+		this.threadBean = threadBean;
+	}
+
+	/**
+	 * @return the meter or null if the JVM doesn't support measuring thread
+	 *         allocation
+	 */
+	public static AllocationMeter create() {
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+
+		if (!threadBean.isThreadAllocatedMemorySupported()
+				|| !threadBean.isThreadAllocatedMemoryEnabled()) {
+			return null;
+		}
+
+		return new AllocationMeter(threadBean);
+	}
+
+	/**
+	 * Executes the task (once to warm up and once measuring) and returns the
+	 * bytes allocated per iteration.
+	 */
+	public long bytesPerIteration(Runnable task, int iterations) {
+
+		task.run();
+
+		long threadId = Thread.currentThread().getId();
+		long start = threadBean.getThreadAllocatedBytes(threadId);
+		task.run();
+		return (threadBean.getThreadAllocatedBytes(threadId) - start)
+				/ iterations;
+	}
+
+}
@@ -0,0 +1,272 @@
+package org.kurento.jsonrpc.test;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_RECONNECT;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.ConcurrencyLimitExceededException;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.ConcurrencyLimiter;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.client.JsonRpcClientMetrics;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class ConcurrencyLimiterTest {
+
+	@Test
+	public void limitTest() throws InterruptedException {
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2);
+
+		long first = limiter.acquire();
+		long second = limiter.acquire();
+
+		Assert.assertTrue(first > 0 && second > 0);
+		Assert.assertEquals(-1, limiter.tryAcquire());
+		Assert.assertEquals(1, limiter.getNumRejected());
+
+		limiter.release();
+		Assert.assertTrue(limiter.tryAcquire() > 0);
+		Assert.assertEquals(2, limiter.getInFlight());
+	}
+
+	@Test
+	public void queueTest() throws Exception {
+
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		limiter.setMaxQueueTime(5000);
+
+		limiter.acquire();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Long> waiting = executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return limiter.acquire();
+				}
+			});
+
+			while (limiter.getWaiting() == 0) {
+				Thread.sleep(10);
+			}
+
+			limiter.release();
+			Assert.assertTrue(waiting.get(5, TimeUnit.SECONDS) > 0);
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void adaptiveLimitTest() throws InterruptedException {
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20);
+
+		// Fast responses with the limit in use increase it
+		for (int i = 0; i < 100; i++) {
+			long[] starts = new long[limiter.getLimit()];
+			for (int j = 0; j < starts.length; j++) {
+				starts[j] = limiter.acquire();
+			}
+			Thread.sleep(2);
+			for (long start : starts) {
+				limiter.release(start, false);
+			}
+		}
+
+		int increasedLimit = limiter.getLimit();
+		Assert.assertTrue("Limit should grow, but is " + increasedLimit,
+				increasedLimit > 10);
+
+		// Requests in flight when the server saturates decrease it only once
+		long first = limiter.acquire();
+		long second = limiter.acquire();
+		Thread.sleep(1);
+
+		limiter.release(first, true);
+		int decreasedLimit = limiter.getLimit();
+		Assert.assertTrue(decreasedLimit < increasedLimit);
+
+		limiter.release(second, true);
+		Assert.assertEquals(decreasedLimit, limiter.getLimit());
+
+		// Until the minimum limit
+		for (int i = 0; i < 100; i++) {
+			long start = limiter.acquire();
+			Thread.sleep(1);
+			limiter.release(start, true);
+		}
+		Assert.assertEquals(1, limiter.getLimit());
+	}
+
+	@Test
+	public void methodBaselineTest() throws InterruptedException {
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20);
+
+		for (int i = 0; i < 5; i++) {
+			long start = limiter.acquire();
+			Thread.sleep(1);
+			limiter.release("fast", start, false);
+		}
+
+		// A slow method is compared with its own responses, not with the
+		// fast ones
+		for (int i = 0; i < 5; i++) {
+			long start = limiter.acquire();
+			Thread.sleep(30);
+			limiter.release("create", start, false);
+		}
+
+		Assert.assertEquals(10, limiter.getLimit());
+		Assert.assertTrue(limiter.getMinRtt("create") >= 30);
+		Assert.assertTrue(limiter.getMinRtt("fast") < 30);
+		Assert.assertEquals(2, limiter.getMinRtts().size());
+
+		// But the limit decreases when the method becomes slower
+		long start = limiter.acquire();
+		Thread.sleep(100);
+		limiter.release("create", start, false);
+
+		Assert.assertTrue(limiter.getLimit() < 10);
+	}
+
+	@Test
+	public void maxMethodsTest() throws InterruptedException {
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20);
+		limiter.setMaxMethods(2);
+
+		for (String method : new String[] { "a", "b", "c", "d" }) {
+			limiter.release(method, limiter.acquire(), false);
+		}
+
+		// Methods beyond the limit share a baseline
+		Assert.assertEquals(3, limiter.getMinRtts().size());
+		Assert.assertTrue(limiter.getMinRtts().containsKey(
+				ConcurrencyLimiter.OTHER_METHODS));
+		Assert.assertEquals(0, limiter.getMinRtt("c"), 0);
+		Assert.assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void clientFastFailTest() throws Exception {
+
+		final CountDownLatch received = new CountDownLatch(2);
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		JsonRpcClientMetrics metrics = new JsonRpcClientMetrics();
+
+		final JsonRpcClient client = new JsonRpcClientLocal(
+				new DefaultJsonRpcHandler<JsonObject>() {
+					@Override
+					public void handleRequest(Transaction transaction,
+							Request<JsonObject> request) throws Exception {
+						received.countDown();
+						blocked.await(10, TimeUnit.SECONDS);
+						transaction.sendResponse(request.getParams());
+					}
+				});
+
+		client.setConcurrencyLimiter(new ConcurrencyLimiter(2, 1, 2));
+		client.setMetricsListener(metrics);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++) {
+				executor.submit(new Callable<JsonElement>() {
+					@Override
+					public JsonElement call() throws Exception {
+						return client.sendRequest("slow", new JsonObject());
+					}
+				});
+			}
+
+			Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+
+			try {
+				client.sendRequest("slow", new JsonObject());
+				Assert.fail("Request over the limit should be rejected");
+			} catch (ConcurrencyLimitExceededException e) {
+				// Expected
+			}
+
+			Assert.assertEquals(1, metrics.getNumRejected());
+
+			blocked.countDown();
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+			Assert.assertNotNull(client.sendRequest("slow", new JsonObject()));
+			Assert.assertEquals(0, client.getConcurrencyLimiter()
+					.getInFlight());
+
+		} finally {
+			executor.shutdownNow();
+			client.close();
+		}
+	}
+
+	@Test
+	public void controlRequestsTest() throws Exception {
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		final JsonRpcClient client = new JsonRpcClientLocal(
+				new DefaultJsonRpcHandler<JsonObject>() {
+					@Override
+					public void handleRequest(Transaction transaction,
+							Request<JsonObject> request) throws Exception {
+						if ("slow".equals(request.getMethod())) {
+							blocked.await(10, TimeUnit.SECONDS);
+						}
+						transaction.sendResponse(new JsonObject());
+					}
+				});
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		client.setConcurrencyLimiter(limiter);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(new Callable<JsonElement>() {
+				@Override
+				public JsonElement call() throws Exception {
+					return client.sendRequest("slow", new JsonObject());
+				}
+			});
+
+			while (limiter.getInFlight() == 0) {
+				Thread.sleep(10);
+			}
+
+			// Pings and reconnections are sent with the limiter saturated
+			Assert.assertNotNull(client.sendRequest(METHOD_PING));
+			Assert.assertNotNull(client.sendRequest(METHOD_RECONNECT));
+
+			Assert.assertEquals(0, limiter.getNumRejected());
+			Assert.assertEquals(1, limiter.getInFlight());
+
+		} finally {
+			blocked.countDown();
+			executor.shutdownNow();
+			client.close();
+		}
+	}
+
+}
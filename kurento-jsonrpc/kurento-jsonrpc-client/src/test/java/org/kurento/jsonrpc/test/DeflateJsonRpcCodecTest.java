@@ -0,0 +1,238 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonRpcCodec;
+import org.kurento.jsonrpc.internal.DeflateJsonRpcCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DeflateJsonRpcCodecTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(DeflateJsonRpcCodecTest.class);
+
+	private static final int NUM_ITERATIONS = 2000;
+
+	private static final String PIPELINE = "6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a"
+			+ "_kurento.MediaPipeline";
+
+	private static final String ENDPOINT = PIPELINE
+			+ "/f5e8a2a4-7b3c-4b0e-9f2e_kurento.WebRtcEndpoint";
+
+	private static final String SESSION_ID = "d4e8c6b7-59f4-4b0c";
+
+	/**
+	 * Messages as exchanged with a media server in a WebRTC call.
+	 */
+	private static final List<String> TRAFFIC = Arrays.asList(
+			"{\"id\":1,\"method\":\"create\",\"params\":{\"type\":"
+					+ "\"MediaPipeline\",\"constructorParams\":{},"
+					+ "\"properties\":{}},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":1,\"result\":{\"value\":\"" + PIPELINE
+					+ "\",\"sessionId\":\"" + SESSION_ID
+					+ "\"},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":2,\"method\":\"create\",\"params\":{\"type\":"
+					+ "\"WebRtcEndpoint\",\"constructorParams\":{"
+					+ "\"mediaPipeline\":\"" + PIPELINE + "\"},"
+					+ "\"properties\":{},\"sessionId\":\"" + SESSION_ID
+					+ "\"},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":3,\"method\":\"subscribe\",\"params\":{\"type\":"
+					+ "\"OnIceCandidate\",\"object\":\"" + ENDPOINT
+					+ "\",\"sessionId\":\"" + SESSION_ID
+					+ "\"},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":4,\"method\":\"invoke\",\"params\":{\"object\":\""
+					+ ENDPOINT + "\",\"operation\":\"processOffer\","
+					+ "\"operationParams\":{\"offer\":\"v=0\\r\\n"
+					+ "o=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\n"
+					+ "s=-\\r\\nt=0 0\\r\\na=group:BUNDLE audio video\\r\\n"
+					+ "m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 0 8\\r\\n"
+					+ "c=IN IP4 0.0.0.0\\r\\na=rtcp:9 IN IP4 0.0.0.0\\r\\n"
+					+ "a=ice-ufrag:Wb7c\\r\\na=ice-pwd:rZ5pLvkt4W1T0gVlLJIt6gde"
+					+ "\\r\\na=mid:audio\\r\\na=sendrecv\\r\\na=rtcp-mux\\r\\n"
+					+ "a=rtpmap:111 opus/48000/2\\r\\n"
+					+ "a=fmtp:111 minptime=10;useinbandfec=1\\r\\n"
+					+ "a=rtpmap:103 ISAC/16000\\r\\na=rtpmap:104 ISAC/32000"
+					+ "\\r\\na=rtpmap:9 G722/8000\\r\\na=rtpmap:0 PCMU/8000"
+					+ "\\r\\na=rtpmap:8 PCMA/8000\\r\\n"
+					+ "m=video 9 UDP/TLS/RTP/SAVPF 100 116 117 96\\r\\n"
+					+ "c=IN IP4 0.0.0.0\\r\\na=rtcp:9 IN IP4 0.0.0.0\\r\\n"
+					+ "a=ice-ufrag:Wb7c\\r\\na=ice-pwd:rZ5pLvkt4W1T0gVlLJIt6gde"
+					+ "\\r\\na=mid:video\\r\\na=sendrecv\\r\\na=rtcp-mux\\r\\n"
+					+ "a=rtpmap:100 VP8/90000\\r\\na=rtcp-fb:100 ccm fir\\r\\n"
+					+ "a=rtcp-fb:100 nack\\r\\na=rtcp-fb:100 nack pli\\r\\n"
+					+ "a=rtcp-fb:100 goog-remb\\r\\n\"},\"sessionId\":\""
+					+ SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":5,\"method\":\"invoke\",\"params\":{\"object\":\""
+					+ ENDPOINT + "\",\"operation\":\"addIceCandidate\","
+					+ "\"operationParams\":{\"candidate\":{\"__module__\":"
+					+ "\"kurento\",\"__type__\":\"IceCandidate\","
+					+ "\"candidate\":\"candidate:1 1 UDP 2013266431 "
+					+ "192.168.1.33 43572 typ host generation 0\","
+					+ "\"sdpMLineIndex\":0,\"sdpMid\":\"audio\"}},"
+					+ "\"sessionId\":\"" + SESSION_ID
+					+ "\"},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":5,\"result\":{\"sessionId\":\"" + SESSION_ID
+					+ "\"},\"jsonrpc\":\"2.0\"}",
+			"{\"method\":\"onEvent\",\"params\":{\"value\":{\"data\":{"
+					+ "\"candidate\":{\"__module__\":\"kurento\","
+					+ "\"__type__\":\"IceCandidate\",\"candidate\":"
+					+ "\"candidate:2 1 UDP 2013266431 172.17.0.2 51337 "
+					+ "typ host generation 0\",\"sdpMLineIndex\":1,"
+					+ "\"sdpMid\":\"video\"},\"source\":\"" + ENDPOINT
+					+ "\",\"tags\":[],\"timestamp\":\"1447852153\","
+					+ "\"type\":\"OnIceCandidate\"},\"object\":\""
+					+ ENDPOINT + "\",\"type\":\"OnIceCandidate\"}},"
+					+ "\"jsonrpc\":\"2.0\"}",
+			"{\"id\":6,\"method\":\"ping\",\"params\":{\"interval\":240000},"
+					+ "\"jsonrpc\":\"2.0\"}",
+			"{\"id\":6,\"result\":{\"value\":\"pong\"},\"jsonrpc\":\"2.0\"}",
+			"{\"id\":7,\"error\":{\"code\":40101,\"message\":\"Object '"
+					+ ENDPOINT + "' not found\",\"data\":{\"type\":"
+					+ "\"MEDIA_OBJECT_NOT_FOUND\"}},\"jsonrpc\":\"2.0\"}");
+
+	private final JsonRpcCodec codec = new DeflateJsonRpcCodec();
+
+	@Test
+	public void roundTripTest() throws IOException {
+
+		for (String message : TRAFFIC) {
+			Assert.assertEquals(message, codec.decode(codec.encode(message)));
+		}
+
+		String unicode = "{\"id\":1,\"result\":{\"value\":\"ñá "
+				+ "中文 😀\"},\"jsonrpc\":\"2.0\"}";
+		Assert.assertEquals(unicode, codec.decode(codec.encode(unicode)));
+	}
+
+	@Test
+	public void bigMessageTest() throws IOException {
+
+		StringBuilder sb = new StringBuilder(
+				"{\"id\":1,\"result\":{\"value\":\"");
+		for (int i = 0; i < 20000; i++) {
+			sb.append(Integer.toHexString(i * 31));
+		}
+		sb.append("\"},\"jsonrpc\":\"2.0\"}");
+		String message = sb.toString();
+
+		Assert.assertEquals(message, codec.decode(codec.encode(message)));
+
+		// Buffers are still valid after being released
+		String small = TRAFFIC.get(0);
+		Assert.assertEquals(small, codec.decode(codec.encode(small)));
+	}
+
+	@Test
+	public void invalidPayloadTest() throws IOException {
+
+		ByteBuffer encoded = codec.encode(TRAFFIC.get(4));
+		ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(encoded.array(),
+				encoded.remaining() / 2));
+
+		for (ByteBuffer payload : Arrays.asList(ByteBuffer.allocate(0),
+				ByteBuffer.wrap(new byte[] { 42, 1, 2 }), truncated)) {
+			try {
+				codec.decode(payload);
+				Assert.fail("Payload should have been rejected");
+			} catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void maxMessageSizeTest() throws IOException {
+
+		// A few KB of compressed data inflated to several MB
+		char[] padding = new char[4 * DeflateJsonRpcCodec.DEFAULT_MAX_MESSAGE_SIZE];
+		Arrays.fill(padding, ' ');
+		ByteBuffer bomb = codec.encode("{\"id\":1,\"result\":{\"value\":\""
+				+ new String(padding) + "\"},\"jsonrpc\":\"2.0\"}");
+
+		Assert.assertTrue(bomb.remaining() < 16 * 1024);
+
+		try {
+			codec.decode(bomb);
+			Assert.fail("Payload bigger than the max size should be rejected");
+		} catch (IOException e) {
+			// Expected
+		}
+
+		String message = TRAFFIC.get(4);
+		int size = message.getBytes(StandardCharsets.UTF_8).length;
+
+		Assert.assertEquals(message, new DeflateJsonRpcCodec(size)
+				.decode(codec.encode(message)));
+
+		try {
+			new DeflateJsonRpcCodec(size - 1).decode(codec.encode(message));
+			Assert.fail("Payload bigger than the max size should be rejected");
+		} catch (IOException e) {
+			// Expected
+		}
+
+		// Buffers are still valid after a rejected payload
+		Assert.assertEquals(message, codec.decode(codec.encode(message)));
+	}
+
+	/**
+	 * Compares the size in the wire and the time to encode and decode the
+	 * messages with the codec and as JSON text.
+	 */
+	@Test
+	public void wireSizeTest() throws IOException {
+
+		long textBytes = 0;
+		long codecBytes = 0;
+
+		for (String message : TRAFFIC) {
+
+			int text = message.getBytes(StandardCharsets.UTF_8).length;
+			int encoded = codec.encode(message).remaining();
+
+			log.info("Message of {} bytes encoded in {} bytes ({}%)", text,
+					encoded, encoded * 100 / text);
+
+			textBytes += text;
+			codecBytes += encoded;
+		}
+
+		long textTime = measure(false);
+		long codecTime = measure(true);
+
+		log.info("Total bytes: text={} codec={}. Time per message: text={}ns "
+				+ "codec={}ns", textBytes, codecBytes, textTime, codecTime);
+
+		Assert.assertTrue("Codec should reduce the size of the traffic",
+				codecBytes < textBytes * 3 / 4);
+	}
+
+	private long measure(boolean useCodec) throws IOException {
+
+		int count = 0;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_ITERATIONS; i++) {
+			for (String message : TRAFFIC) {
+				if (useCodec) {
+					count += codec.decode(codec.encode(message)).length();
+				} else {
+					count += new String(message.getBytes(StandardCharsets.UTF_8),
+							StandardCharsets.UTF_8).length();
+				}
+			}
+		}
+
+		long time = System.nanoTime() - start;
+		Assert.assertTrue(count > 0);
+		return time / (NUM_ITERATIONS * TRAFFIC.size());
+	}
+
+}
@@ -1,6 +1,10 @@
 package org.kurento.jsonrpc.test;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +22,8 @@ public class JsonRpcClientLocalTest {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(JsonRpcClientLocalTest.class);
 
+	private static final int NUM_REQUESTS = 20000;
+
 	static class EchoJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
 		@Override
@@ -32,6 +38,19 @@ public class JsonRpcClientLocalTest {
 		}
 	}
 
+	static class ModifyingJsonRpcHandler extends
+			DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			JsonObject params = request.getParams();
+			params.addProperty("handled", true);
+			transaction.sendResponse(params);
+		}
+	}
+
 	static class Params {
 		String param1;
 		String param2;
@@ -61,4 +80,148 @@ public class JsonRpcClientLocalTest {
 
 	}
 
+	@Test
+	public void directModeTest() throws Exception {
+
+		JsonRpcClientLocal client = new JsonRpcClientLocal(
+				new EchoJsonRpcHandler());
+		client.setDirectMode(true);
+
+		Params params = new Params();
+		params.param1 = "Value1";
+		params.param2 = "Value2";
+
+		Params result = client.sendRequest("echo", params, Params.class);
+
+		Assert.assertEquals(params.param1, result.param1);
+		Assert.assertEquals(params.param2, result.param2);
+
+		JsonObject jsonParams = new JsonObject();
+		jsonParams.addProperty("value", "Value1");
+
+		Assert.assertEquals("Value1",
+				client.sendRequest("echo", jsonParams, String.class));
+
+		client.close();
+	}
+
+	@Test
+	public void directModeIsolationTest() throws Exception {
+
+		JsonRpcClientLocal client = new JsonRpcClientLocal(
+				new ModifyingJsonRpcHandler());
+		client.setDirectMode(true);
+
+		JsonObject params = new JsonObject();
+		params.addProperty("param1", "Value1");
+
+		JsonObject result = client.sendRequest("modify", params,
+				JsonObject.class);
+
+		Assert.assertTrue(result.get("handled").getAsBoolean());
+		Assert.assertFalse("Params modified by the handler",
+				params.has("handled"));
+		Assert.assertNotSame(params, result);
+
+		client.close();
+	}
+
+	@Test
+	public void directModeObjectParamsTest() throws Exception {
+
+		JsonRpcClientLocal client = new JsonRpcClientLocal(
+				new ModifyingJsonRpcHandler());
+		client.setDirectMode(true);
+
+		Params params = new Params();
+		params.param1 = "Value1";
+
+		JsonObject result = client.sendRequest("modify", params,
+				JsonObject.class);
+
+		Assert.assertEquals("Value1", result.get("param1").getAsString());
+		Assert.assertTrue(result.get("handled").getAsBoolean());
+
+		Map<String, Object> mapParams = new HashMap<>();
+		mapParams.put("param1", "Value1");
+
+		result = client.sendRequest("modify", mapParams, JsonObject.class);
+
+		Assert.assertEquals("Value1", result.get("param1").getAsString());
+		Assert.assertTrue(result.get("handled").getAsBoolean());
+		Assert.assertFalse("Params modified by the handler",
+				mapParams.containsKey("handled"));
+
+		client.close();
+	}
+
+	/**
+	 * Compares the cost of a request in direct mode and converting it to JSON
+	 * text and back.
+	 */
+	@Test
+	public void directModeCostTest() throws Exception {
+
+		final JsonRpcClientLocal roundTripClient = new JsonRpcClientLocal(
+				new EchoJsonRpcHandler());
+		final JsonRpcClientLocal directClient = new JsonRpcClientLocal(
+				new EchoJsonRpcHandler());
+		directClient.setDirectMode(true);
+
+		final JsonObject params = new JsonObject();
+		params.addProperty("object", "6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a"
+				+ "_kurento.MediaPipeline");
+		params.addProperty("operation", "getMediaState");
+
+		Runnable roundTrip = createRequests(roundTripClient, params);
+		Runnable direct = createRequests(directClient, params);
+
+		// Warm up
+		roundTrip.run();
+		direct.run();
+
+		long roundTripTime = measure(roundTrip);
+		long directTime = measure(direct);
+
+		LOG.info("Time per request: roundTrip={}ns direct={}ns",
+				roundTripTime, directTime);
+
+		AllocationMeter meter = AllocationMeter.create();
+		Assume.assumeNotNull(meter);
+
+		long roundTripBytes = meter.bytesPerIteration(roundTrip, NUM_REQUESTS);
+		long directBytes = meter.bytesPerIteration(direct, NUM_REQUESTS);
+
+		LOG.info("Bytes allocated per request: roundTrip={} direct={}",
+				roundTripBytes, directBytes);
+
+		Assert.assertTrue("Direct mode should allocate less than converting "
+				+ "messages to JSON", directBytes < roundTripBytes);
+
+		roundTripClient.close();
+		directClient.close();
+	}
+
+	private Runnable createRequests(final JsonRpcClient client,
+			final JsonObject params) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < NUM_REQUESTS; i++) {
+						client.sendRequest("echo", params, JsonObject.class);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	private long measure(Runnable task) {
+		long start = System.nanoTime();
+		task.run();
+		return (System.nanoTime() - start) / NUM_REQUESTS;
+	}
+
 }
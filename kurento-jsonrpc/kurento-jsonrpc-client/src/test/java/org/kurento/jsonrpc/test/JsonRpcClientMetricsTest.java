@@ -0,0 +1,175 @@
+package org.kurento.jsonrpc.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.client.JsonRpcClientMetrics;
+import org.kurento.jsonrpc.client.JsonRpcClientMetrics.MethodStats;
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcClientMetricsTest {
+
+	private static final int ERROR_CODE = 40401;
+
+	static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("fail".equals(request.getMethod())) {
+				transaction.sendError(ERROR_CODE, "Failed", null);
+			} else {
+				transaction.sendResponse(request.getParams());
+			}
+		}
+	}
+
+	@Test
+	public void histogramTest() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i, TimeUnit.MILLISECONDS);
+		}
+
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(500.5, histogram.getMean(), 1);
+		Assert.assertEquals(1000, histogram.getMax(), 1000 * 0.07);
+
+		// Buckets have a relative error below 1/16
+		Assert.assertEquals(500, histogram.getPercentile(50), 500 * 0.07);
+		Assert.assertEquals(990, histogram.getPercentile(99), 990 * 0.07);
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getPercentile(99), 0);
+	}
+
+	@Test
+	public void clientMetricsTest() throws Exception {
+
+		JsonRpcClientMetrics metrics = new JsonRpcClientMetrics();
+
+		try (JsonRpcClient client = new JsonRpcClientLocal(new Handler())) {
+
+			client.setMetricsListener(metrics);
+
+			JsonObject params = new JsonObject();
+			params.addProperty("value", 1);
+
+			for (int i = 0; i < 10; i++) {
+				client.sendRequest("echo", params);
+			}
+
+			try {
+				client.sendRequest("fail", params);
+				Assert.fail("Error response expected");
+			} catch (JsonRpcErrorException e) {
+				Assert.assertEquals(ERROR_CODE, e.getCode());
+			}
+
+			client.setMetricsListener(null);
+			client.sendRequest("echo", params);
+		}
+
+		Assert.assertEquals(11, metrics.getNumRequests());
+		Assert.assertEquals(0, metrics.getInFlightRequests());
+		Assert.assertEquals(1, metrics.getNumErrors());
+		Assert.assertEquals(Long.valueOf(1),
+				metrics.getErrorCodes().get(ERROR_CODE));
+
+		MethodStats echoStats = metrics.getMethodStats("echo");
+		Assert.assertEquals(10, echoStats.getCount());
+		Assert.assertEquals(0, echoStats.getErrors());
+		Assert.assertTrue(echoStats.getP99Latency() >= echoStats
+				.getP50Latency());
+
+		MethodStats failStats = metrics.getMethodStats("fail");
+		Assert.assertEquals(1, failStats.getCount());
+		Assert.assertEquals(1, failStats.getErrors());
+	}
+
+	@Test
+	public void failuresTest() {
+
+		JsonRpcClientMetrics metrics = new JsonRpcClientMetrics();
+
+		metrics.requestSent("slow");
+		metrics.requestFailed("slow", TimeUnit.SECONDS.toNanos(60),
+				new TransportException("Request failed",
+						new RequestTimeoutException("Timeout")));
+
+		metrics.requestSent("slow");
+		metrics.requestFailed("slow", 0, new TransportException(
+				"Connection closed"));
+
+		Assert.assertEquals(2, metrics.getNumFailures());
+		Assert.assertEquals(1, metrics.getNumTimeouts());
+		Assert.assertEquals(0, metrics.getInFlightRequests());
+		Assert.assertEquals(2, metrics.getMethodStats("slow").getFailures());
+		Assert.assertEquals(0, metrics.getMethodStats("slow").getCount());
+
+		metrics.messageSent(100);
+		metrics.messageReceived(30);
+		metrics.messageReceived(20);
+
+		Assert.assertEquals(100, metrics.getBytesSent());
+		Assert.assertEquals(50, metrics.getBytesReceived());
+		Assert.assertEquals(2, metrics.getMessagesReceived());
+
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getNumFailures());
+		Assert.assertNull(metrics.getMethodStats("slow"));
+	}
+
+	@Test
+	public void mbeanTest() throws Exception {
+
+		JsonRpcClientMetrics metrics = new JsonRpcClientMetrics();
+		metrics.requestSent("echo");
+		metrics.responseReceived("echo", TimeUnit.MILLISECONDS.toNanos(5),
+				null);
+
+		ObjectName name = metrics.registerMBean("test:client");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		try {
+			Assert.assertTrue(server.isRegistered(name));
+			Assert.assertEquals(1L, server.getAttribute(name, "NumRequests"));
+
+			TabularData methods = (TabularData) server.getAttribute(name,
+					"MethodStats");
+			CompositeData echo = (CompositeData) methods.get(
+					new Object[] { "echo" }).get("value");
+			Assert.assertEquals(1L, echo.get("count"));
+
+			server.invoke(name, "reset", null, null);
+			Assert.assertEquals(0L, server.getAttribute(name, "NumRequests"));
+
+		} finally {
+			metrics.unregisterMBean();
+		}
+
+		Assert.assertFalse(server.isRegistered(name));
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.client.JsonRpcClientRuntime;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+
+public class JsonRpcClientRuntimeTest {
+
+	@Test
+	public void referenceCountTest() {
+
+		JsonRpcClientRuntime runtime = new JsonRpcClientRuntime(2);
+
+		runtime.retain();
+		runtime.retain();
+
+		ExecutorService executor = runtime.getDispatchExecutor();
+		Assert.assertSame(executor, runtime.getDispatchExecutor());
+		Assert.assertSame(HashedWheelTimer.getSharedTimer(),
+				runtime.getTimer());
+
+		ExecutorService controlExecutor = runtime.getControlExecutor();
+		Assert.assertNotSame(executor, controlExecutor);
+
+		runtime.release();
+		Assert.assertFalse(executor.isShutdown());
+
+		runtime.release();
+		Assert.assertTrue(executor.isShutdown());
+		Assert.assertTrue(controlExecutor.isShutdown());
+		Assert.assertEquals(0, runtime.getReferences());
+
+		// Resources are created again when the runtime is used again
+		runtime.retain();
+		ExecutorService newExecutor = runtime.getDispatchExecutor();
+		Assert.assertNotSame(executor, newExecutor);
+		Assert.assertFalse(newExecutor.isShutdown());
+		runtime.release();
+	}
+
+	@Test
+	public void providedResourcesTest() {
+
+		HashedWheelTimer timer = new HashedWheelTimer("RuntimeTest");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			JsonRpcClientRuntime runtime = new JsonRpcClientRuntime(null,
+					executor, timer);
+
+			runtime.retain();
+			Assert.assertSame(executor, runtime.getDispatchExecutor());
+			Assert.assertSame(timer, runtime.getTimer());
+			runtime.release();
+
+			// Provided resources are not stopped by the runtime
+			Assert.assertFalse(executor.isShutdown());
+
+		} finally {
+			executor.shutdown();
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void defaultRuntimeIsNotStoppedTest() {
+
+		JsonRpcClientRuntime runtime = JsonRpcClientRuntime.getDefault();
+		Assert.assertSame(runtime, JsonRpcClientRuntime.getDefault());
+
+		runtime.retain();
+		ExecutorService executor = runtime.getDispatchExecutor();
+		runtime.release();
+
+		Assert.assertFalse(executor.isShutdown());
+	}
+
+	@Test
+	public void boundedDispatchQueueTest() throws InterruptedException {
+
+		JsonRpcClientRuntime runtime = new JsonRpcClientRuntime(1, 1);
+		runtime.retain();
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocked.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		try {
+			ExecutorService executor = runtime.getDispatchExecutor();
+
+			// One task running and one queued
+			executor.execute(task);
+			executor.execute(task);
+
+			try {
+				executor.execute(task);
+				Assert.fail("Task over the queue capacity should be rejected");
+			} catch (RejectedExecutionException e) {
+				// Expected
+			}
+
+			// Control tasks are not queued behind blocked handlers
+			final CountDownLatch controlled = new CountDownLatch(1);
+			runtime.getControlExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					controlled.countDown();
+				}
+			});
+			Assert.assertTrue(controlled.await(5, TimeUnit.SECONDS));
+
+		} finally {
+			blocked.countDown();
+			runtime.release();
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+public class JsonRpcMessageDecoderTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(JsonRpcMessageDecoderTest.class);
+
+	private static final String EVENT = "{\"jsonrpc\":\"2.0\",\"method\":\"onEvent\","
+			+ "\"params\":{\"value\":{\"data\":{\"candidate\":{\"__module__\":\"kurento\","
+			+ "\"__type__\":\"IceCandidate\",\"candidate\":\"candidate:1 1 UDP 2013266431 "
+			+ "192.168.1.33 43572 typ host\",\"sdpMLineIndex\":0,\"sdpMid\":\"audio\"},"
+			+ "\"source\":\"6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a_kurento.MediaPipeline/"
+			+ "f5e8a2a4-7b3c-4b0e-9f2e-0c5d6c4a1b2e_kurento.WebRtcEndpoint\",\"tags\":[],"
+			+ "\"timestamp\":\"1434623404\",\"type\":\"OnIceCandidate\"},"
+			+ "\"object\":\"6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a_kurento.MediaPipeline/"
+			+ "f5e8a2a4-7b3c-4b0e-9f2e-0c5d6c4a1b2e_kurento.WebRtcEndpoint\","
+			+ "\"type\":\"OnIceCandidate\"},\"sessionId\":\"d4e8c6b7-59f4-4b0c\"}}";
+
+	private static final String RESPONSE = "{\"id\":3,\"result\":{\"value\":"
+			+ "\"6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a_kurento.MediaPipeline\","
+			+ "\"sessionId\":\"d4e8c6b7-59f4-4b0c\"},\"jsonrpc\":\"2.0\"}";
+
+	private static final int NUM_MESSAGES = 20000;
+
+	static class Params {
+		String param1;
+	}
+
+	@Test
+	public void eventRequestTest() {
+
+		Request<JsonElement> request = JsonUtils.fromJsonRequest(EVENT,
+				JsonElement.class);
+
+		Request<JsonElement> treeRequest = JsonUtils.fromJsonRequest(
+				JsonUtils.fromJson(EVENT, JsonObject.class), JsonElement.class);
+
+		Assert.assertEquals("onEvent", request.getMethod());
+		Assert.assertNull(request.getId());
+		Assert.assertEquals("d4e8c6b7-59f4-4b0c", request.getSessionId());
+		Assert.assertFalse(request.getParams().getAsJsonObject()
+				.has("sessionId"));
+
+		Assert.assertEquals(treeRequest.getParams(), request.getParams());
+		Assert.assertEquals(treeRequest.getSessionId(), request.getSessionId());
+	}
+
+	@Test
+	public void responseTest() {
+
+		Message message = JsonUtils.fromJsonMessage(RESPONSE);
+
+		Assert.assertTrue(message instanceof Response);
+
+		Response<?> response = (Response<?>) message;
+		Assert.assertEquals(Integer.valueOf(3), response.getId());
+		Assert.assertEquals("d4e8c6b7-59f4-4b0c", response.getSessionId());
+		Assert.assertEquals(
+				"6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a_kurento.MediaPipeline",
+				((JsonObject) response.getResult()).get("value").getAsString());
+	}
+
+	@Test
+	public void errorResponseTest() {
+
+		Response<JsonElement> response = JsonUtils.fromJsonResponse(
+				"{\"jsonrpc\":\"2.0\",\"id\":7,\"error\":{\"code\":-32601,"
+						+ "\"message\":\"Method not found\"}}",
+				JsonElement.class);
+
+		Assert.assertTrue(response.isError());
+		Assert.assertEquals(-32601, response.getError().getCode());
+		Assert.assertEquals("Method not found", response.getError()
+				.getMessage());
+	}
+
+	@Test
+	public void paramsBindingTest() {
+
+		Request<Params> request = JsonUtils.fromJsonRequest(
+				"{\"params\":{\"sessionId\":\"xxx\",\"param1\":\"Value1\"},"
+						+ "\"id\":\"2\",\"method\":\"method\"}", Params.class);
+
+		Assert.assertEquals(Integer.valueOf(2), request.getId());
+		Assert.assertEquals("Value1", request.getParams().param1);
+		Assert.assertEquals("xxx", request.getSessionId());
+	}
+
+	@Test
+	public void jsonTypeMismatchTest() {
+
+		try {
+			JsonUtils.fromJsonRequest(
+					"{\"params\":[1,2],\"id\":2,\"method\":\"method\"}",
+					JsonObject.class);
+			Assert.fail("Params of other JSON type should be rejected");
+		} catch (JsonParseException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(
+					"expected JsonObject, found JsonArray"));
+		}
+
+		// Any JSON type is valid for JsonElement, and null for all of them
+		Assert.assertTrue(JsonUtils.fromJsonRequest(
+				"{\"params\":[1,2],\"id\":2,\"method\":\"method\"}",
+				JsonElement.class).getParams() instanceof JsonArray);
+		Assert.assertNull(JsonUtils.fromJsonRequest(
+				"{\"params\":null,\"id\":2,\"method\":\"method\"}",
+				JsonObject.class).getParams());
+	}
+
+	@Test
+	public void batchTest() {
+
+		Request<JsonObject> request = new Request<>(1, "echo", new JsonObject());
+		Request<JsonObject> notification = new Request<>("onEvent", null);
+		Response<String> response = new Response<>(2, "value");
+
+		String batch = JsonUtils.toJsonBatch(Arrays.<Message> asList(request,
+				notification, response));
+
+		Assert.assertTrue(JsonUtils.isBatch(" " + batch));
+		Assert.assertFalse(JsonUtils.isBatch(RESPONSE));
+
+		List<Message> messages = JsonUtils.fromJsonBatch(batch);
+
+		Assert.assertEquals(3, messages.size());
+		Assert.assertEquals("echo", ((Request<?>) messages.get(0)).getMethod());
+		Assert.assertEquals(Integer.valueOf(1), ((Request<?>) messages.get(0))
+				.getId());
+		Assert.assertNull(((Request<?>) messages.get(1)).getId());
+		Assert.assertEquals("value", ((JsonElement) ((Response<?>) messages
+				.get(2)).getResult()).getAsString());
+	}
+
+	/**
+	 * Compares the bytes allocated per message by the streaming decoder and by
+	 * the previous implementation (parse into a tree and bind the tree).
+	 */
+	@Test
+	public void allocationPerMessageTest() {
+
+		AllocationMeter meter = AllocationMeter.create();
+		Assume.assumeNotNull(meter);
+
+		long streaming = meter.bytesPerIteration(new Runnable() {
+			@Override
+			public void run() {
+				decodeStreaming(NUM_MESSAGES);
+			}
+		}, NUM_MESSAGES);
+
+		long tree = meter.bytesPerIteration(new Runnable() {
+			@Override
+			public void run() {
+				decodeTree(NUM_MESSAGES);
+			}
+		}, NUM_MESSAGES);
+
+		log.info("Bytes allocated per event: streaming={} tree={}", streaming,
+				tree);
+
+		Assert.assertTrue("Streaming decoder should allocate less than the "
+				+ "tree based one", streaming < tree);
+	}
+
+	private void decodeStreaming(int numMessages) {
+		for (int i = 0; i < numMessages; i++) {
+			JsonUtils.fromJsonRequest(EVENT, JsonElement.class);
+		}
+	}
+
+	private void decodeTree(int numMessages) {
+		for (int i = 0; i < numMessages; i++) {
+			JsonUtils.fromJsonRequest(
+					JsonUtils.fromJson(EVENT, JsonObject.class),
+					JsonElement.class);
+		}
+	}
+
+}
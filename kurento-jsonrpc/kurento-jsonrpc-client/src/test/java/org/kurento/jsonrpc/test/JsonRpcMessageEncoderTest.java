@@ -0,0 +1,134 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcMessageEncoderTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(JsonRpcMessageEncoderTest.class);
+
+	private static final int NUM_MESSAGES = 20000;
+
+	private static final String SESSION_ID = "d4e8c6b7-59f4-4b0c";
+
+	private static Request<JsonObject> createAddIceCandidate() {
+
+		JsonObject candidate = new JsonObject();
+		candidate.addProperty("__module__", "kurento");
+		candidate.addProperty("__type__", "IceCandidate");
+		candidate.addProperty("candidate",
+				"candidate:1 1 UDP 2013266431 192.168.1.33 43572 typ host");
+		candidate.addProperty("sdpMLineIndex", 0);
+		candidate.addProperty("sdpMid", "audio");
+
+		JsonObject operationParams = new JsonObject();
+		operationParams.add("candidate", candidate);
+
+		JsonObject params = new JsonObject();
+		params.addProperty("object",
+				"6ba9067f-ba2b-4cde-9a4c-3e4b3a4d3f8a_kurento.MediaPipeline/"
+						+ "f5e8a2a4-7b3c-4b0e-9f2e_kurento.WebRtcEndpoint");
+		params.addProperty("operation", "addIceCandidate");
+		params.add("operationParams", operationParams);
+
+		Request<JsonObject> request = new Request<>(5, "invoke", params);
+		request.setSessionId(SESSION_ID);
+		return request;
+	}
+
+	/**
+	 * Previous implementation: serialize, parse into a tree, inject the
+	 * sessionId and serialize again.
+	 */
+	private static String encodeTree(Request<JsonObject> request) {
+		JsonObject json = JsonUtils.toJsonObject(request);
+		json.getAsJsonObject("params").addProperty("sessionId",
+				request.getSessionId());
+		return json.toString();
+	}
+
+	@Test
+	public void requestTest() {
+
+		Request<JsonObject> request = createAddIceCandidate();
+
+		Assert.assertEquals(encodeTree(request), request.toString());
+	}
+
+	@Test
+	public void primitiveResultTest() {
+
+		Response<String> response = new Response<>(1, "value");
+		response.setSessionId(SESSION_ID);
+
+		Assert.assertEquals("{\"id\":1,\"result\":{\"value\":\"value\","
+				+ "\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}",
+				response.toString());
+	}
+
+	@Test
+	public void errorResponseTest() {
+
+		Response<Void> response = new Response<>(1, new ResponseError(-32601,
+				"Method not found"));
+		response.setSessionId(SESSION_ID);
+
+		Assert.assertEquals("{\"id\":1,\"error\":{\"code\":-32601,"
+				+ "\"message\":\"Method not found\",\"sessionId\":\""
+				+ SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}", response.toString());
+
+		response.setSessionId(null);
+
+		Assert.assertEquals("{\"id\":1,\"error\":{\"code\":-32601,"
+				+ "\"message\":\"Method not found\"},\"jsonrpc\":\"2.0\"}",
+				response.toString());
+	}
+
+	/**
+	 * Compares the bytes allocated per message by the streaming encoder and by
+	 * the previous implementation.
+	 */
+	@Test
+	public void allocationPerMessageTest() {
+
+		AllocationMeter meter = AllocationMeter.create();
+		Assume.assumeNotNull(meter);
+
+		final Request<JsonObject> request = createAddIceCandidate();
+
+		long streaming = meter.bytesPerIteration(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < NUM_MESSAGES; i++) {
+					request.toString();
+				}
+			}
+		}, NUM_MESSAGES);
+
+		long tree = meter.bytesPerIteration(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < NUM_MESSAGES; i++) {
+					encodeTree(request);
+				}
+			}
+		}, NUM_MESSAGES);
+
+		log.info("Bytes allocated per request: streaming={} tree={}",
+				streaming, tree);
+
+		Assert.assertTrue("Streaming encoder should allocate less than the "
+				+ "tree based one", streaming < tree);
+	}
+
+}
@@ -0,0 +1,170 @@
+package org.kurento.jsonrpc.test;
+
+import java.lang.reflect.Type;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.internal.$Gson$Types;
+
+public class JsonTypeCacheTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(JsonTypeCacheTest.class);
+
+	private static final int NUM_MESSAGES = 20000;
+
+	public static class Candidate {
+
+		private String candidate;
+		private int sdpMLineIndex;
+		private String sdpMid;
+
+		public String getCandidate() {
+			return candidate;
+		}
+
+		public int getSdpMLineIndex() {
+			return sdpMLineIndex;
+		}
+
+		public String getSdpMid() {
+			return sdpMid;
+		}
+	}
+
+	private static final JsonObject RESPONSE = new JsonParser().parse(
+			"{\"id\":5,\"result\":{\"candidate\":\"candidate:1 1 UDP "
+					+ "2013266431 192.168.1.33 43572 typ host\","
+					+ "\"sdpMLineIndex\":0,\"sdpMid\":\"audio\"},"
+					+ "\"jsonrpc\":\"2.0\"}").getAsJsonObject();
+
+	/**
+	 * Previous implementation: the type is created and its adapter looked up
+	 * for every message.
+	 */
+	private static Response<Candidate> decodeUncached(JsonObject json) {
+		return JsonUtils.getGson().fromJson(
+				json,
+				$Gson$Types.newParameterizedTypeWithOwner(null, Response.class,
+						Candidate.class));
+	}
+
+	private static Response<Candidate> decodeCached(JsonObject json) {
+		return JsonUtils.fromJson(json,
+				JsonUtils.getResponseType(Candidate.class));
+	}
+
+	@Test
+	public void cachedTypesTest() {
+
+		Type type = JsonUtils.getResponseType(Candidate.class);
+
+		Assert.assertSame(type, JsonUtils.getResponseType(Candidate.class));
+		Assert.assertEquals($Gson$Types.newParameterizedTypeWithOwner(null,
+				Response.class, Candidate.class), type);
+		Assert.assertFalse(type.equals(JsonUtils
+				.getRequestType(Candidate.class)));
+
+		Assert.assertSame(JsonUtils.getAdapter(type),
+				JsonUtils.getAdapter(type));
+	}
+
+	@Test
+	public void decodeTest() {
+
+		Response<Candidate> response = decodeCached(RESPONSE);
+
+		Assert.assertEquals(Integer.valueOf(5), response.getId());
+		Assert.assertEquals("audio", response.getResult().getSdpMid());
+		Assert.assertEquals(0, response.getResult().getSdpMLineIndex());
+
+		Assert.assertNull(JsonUtils.fromJson((JsonElement) null,
+				Candidate.class));
+	}
+
+	@Test
+	public void convertResponseTest() {
+
+		JsonObject result = new JsonObject();
+		result.addProperty("value", "pong");
+
+		Response<JsonElement> response = new Response<JsonElement>(1, result);
+		Assert.assertSame(result,
+				MessageUtils.convertResponse(response, JsonObject.class)
+						.getResult());
+
+		response = new Response<JsonElement>(1, result);
+		Assert.assertEquals("pong",
+				MessageUtils.convertResponse(response, String.class)
+						.getResult());
+	}
+
+	/**
+	 * Compares the time and the bytes allocated per message when the type and
+	 * adapter are resolved for each message and when they are cached.
+	 */
+	@Test
+	public void decodingCostTest() {
+
+		Assert.assertEquals(decodeUncached(RESPONSE).getResult()
+				.getCandidate(), decodeCached(RESPONSE).getResult()
+				.getCandidate());
+
+		Runnable uncached = new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < NUM_MESSAGES; i++) {
+					decodeUncached(RESPONSE);
+				}
+			}
+		};
+
+		Runnable cached = new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < NUM_MESSAGES; i++) {
+					decodeCached(RESPONSE);
+				}
+			}
+		};
+
+		// Warm up
+		uncached.run();
+		cached.run();
+
+		long uncachedTime = measure(uncached);
+		long cachedTime = measure(cached);
+
+		log.info("Time per message: uncached={}ns cached={}ns", uncachedTime,
+				cachedTime);
+
+		AllocationMeter meter = AllocationMeter.create();
+		Assume.assumeNotNull(meter);
+
+		long uncachedBytes = meter.bytesPerIteration(uncached, NUM_MESSAGES);
+		long cachedBytes = meter.bytesPerIteration(cached, NUM_MESSAGES);
+
+		log.info("Bytes allocated per message: uncached={} cached={}",
+				uncachedBytes, cachedBytes);
+
+		Assert.assertTrue("Cached types should allocate less than resolving "
+				+ "them for every message", cachedBytes < uncachedBytes);
+	}
+
+	private long measure(Runnable task) {
+		long start = System.nanoTime();
+		task.run();
+		return (System.nanoTime() - start) / NUM_MESSAGES;
+	}
+
+}
@@ -0,0 +1,242 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.KeyedSerialExecutor;
+
+public class KeyedSerialExecutorTest {
+
+	private static final int NUM_KEYS = 20;
+
+	private static final int NUM_TASKS = 500;
+
+	private ExecutorService executor;
+
+	@Before
+	public void createExecutor() {
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void orderPerKeyTest() throws Exception {
+
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor);
+
+		final List<List<Integer>> executed = new ArrayList<>();
+		for (int k = 0; k < NUM_KEYS; k++) {
+			executed.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+
+		final CountDownLatch latch = new CountDownLatch(NUM_KEYS * NUM_TASKS);
+
+		for (int i = 0; i < NUM_TASKS; i++) {
+			for (int k = 0; k < NUM_KEYS; k++) {
+				final List<Integer> keyTasks = executed.get(k);
+				final int task = i;
+				keyedExecutor.execute("key" + k, new Runnable() {
+					@Override
+					public void run() {
+						keyTasks.add(task);
+						latch.countDown();
+					}
+				});
+			}
+		}
+
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+		for (List<Integer> keyTasks : executed) {
+			Assert.assertEquals(NUM_TASKS, keyTasks.size());
+			for (int i = 0; i < NUM_TASKS; i++) {
+				Assert.assertEquals(i, keyTasks.get(i).intValue());
+			}
+		}
+
+		Assert.assertEquals(NUM_KEYS * NUM_TASKS, keyedExecutor.getNumExecuted());
+
+		// Queues are discarded when they are empty
+		Thread.sleep(100);
+		Assert.assertEquals(0, keyedExecutor.getActiveKeys());
+	}
+
+	@Test
+	public void parallelKeysTest() throws Exception {
+
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor);
+
+		final CountDownLatch bothRunning = new CountDownLatch(2);
+		final CountDownLatch finished = new CountDownLatch(2);
+
+		for (String key : new String[] { "key1", "key2" }) {
+			keyedExecutor.execute(key, new Runnable() {
+				@Override
+				public void run() {
+					bothRunning.countDown();
+					try {
+						// Only completes if the other key runs meanwhile
+						if (bothRunning.await(5, TimeUnit.SECONDS)) {
+							finished.countDown();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+
+		Assert.assertTrue("Tasks with different keys were not executed in "
+				+ "parallel", finished.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void maxQueuedTasksTest() throws Exception {
+
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor,
+				2);
+
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		keyedExecutor.execute("key", new Runnable() {
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		running.await();
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+
+		keyedExecutor.execute("key", task);
+		keyedExecutor.execute("key", task);
+
+		try {
+			keyedExecutor.execute("key", task);
+			Assert.fail("Task should have been rejected");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+
+		// Other keys are not affected
+		keyedExecutor.execute("other", task);
+
+		release.countDown();
+
+		Assert.assertEquals(1, keyedExecutor.getNumRejected());
+		Thread.sleep(100);
+		Assert.assertEquals(4, keyedExecutor.getNumExecuted());
+		Assert.assertTrue(keyedExecutor.getMaxLag() >= 0);
+	}
+
+	@Test
+	public void saturatedExecutorTest() throws Exception {
+
+		ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 0,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+		try {
+			KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(
+					saturated);
+
+			final CountDownLatch release = new CountDownLatch(1);
+			keyedExecutor.execute("key1", new Runnable() {
+				@Override
+				public void run() {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+
+			final Thread caller = Thread.currentThread();
+			final AtomicBoolean runInCaller = new AtomicBoolean();
+			Runnable task = new Runnable() {
+				@Override
+				public void run() {
+					runInCaller.set(Thread.currentThread() == caller);
+				}
+			};
+
+			for (String key : new String[] { "key2", null }) {
+				try {
+					keyedExecutor.execute(key, task);
+					Assert.fail("Task should have been rejected");
+				} catch (RejectedExecutionException e) {
+					// Expected
+				}
+			}
+
+			Assert.assertFalse("Task run in the thread submitting it",
+					runInCaller.get());
+			Assert.assertEquals(2, keyedExecutor.getNumRejected());
+
+			release.countDown();
+			Thread.sleep(100);
+
+			// The key of the rejected task is not blocked
+			final CountDownLatch executed = new CountDownLatch(1);
+			keyedExecutor.execute("key2", new Runnable() {
+				@Override
+				public void run() {
+					executed.countDown();
+				}
+			});
+			Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+		} finally {
+			saturated.shutdownNow();
+		}
+	}
+
+	@Test
+	public void shutdownExecutorTest() throws Exception {
+
+		KeyedSerialExecutor keyedExecutor = new KeyedSerialExecutor(executor);
+		executor.shutdown();
+
+		final Thread caller = Thread.currentThread();
+		final AtomicBoolean runInCaller = new AtomicBoolean();
+
+		keyedExecutor.execute("key", new Runnable() {
+			@Override
+			public void run() {
+				runInCaller.set(Thread.currentThread() == caller);
+			}
+		});
+
+		Assert.assertTrue("Tasks are run by the caller after the shutdown",
+				runInCaller.get());
+		Assert.assertEquals(0, keyedExecutor.getNumRejected());
+	}
+
+}
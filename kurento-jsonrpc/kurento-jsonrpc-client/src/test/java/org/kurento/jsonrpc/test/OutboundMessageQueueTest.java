@@ -0,0 +1,322 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.MessagePreparer;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.MessageWriter;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.OverflowPolicy;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.Priority;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.WriteCallback;
+
+public class OutboundMessageQueueTest {
+
+	private static final int NUM_THREADS = 8;
+
+	private static final int NUM_MESSAGES = 200;
+
+	/**
+	 * Writer that blocks until released, simulating a slow peer.
+	 */
+	private static class BlockingWriter implements MessageWriter {
+
+		private final List<String> messages = Collections
+				.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch writing = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void write(String message) throws IOException {
+			writing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			messages.add(message);
+		}
+
+		@Override
+		public void flush() {
+		}
+	}
+
+	@Test
+	public void concurrentSendersTest() throws Exception {
+
+		final List<String> messages = Collections
+				.synchronizedList(new ArrayList<String>());
+
+		final OutboundMessageQueue queue = new OutboundMessageQueue(
+				new MessageWriter() {
+
+					@Override
+					public void write(String message) throws IOException {
+						messages.add(message);
+						try {
+							Thread.sleep(1);
+						} catch (InterruptedException e) {
+							throw new IOException(e);
+						}
+					}
+
+					@Override
+					public void flush() {
+					}
+				}, 16, OverflowPolicy.BLOCK);
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final int thread = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < NUM_MESSAGES; i++) {
+						try {
+							queue.send(thread + "-" + i, false);
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		Assert.assertEquals(NUM_THREADS * NUM_MESSAGES, messages.size());
+		Assert.assertEquals(NUM_THREADS * NUM_MESSAGES, queue.getNumWritten());
+		Assert.assertEquals(0, queue.getSize());
+		Assert.assertTrue(queue.getPeakSize() <= 16);
+
+		// Messages sent while other thread was writing are flushed together
+		Assert.assertTrue(queue.getNumFlushes() < queue.getNumWritten());
+
+		// Messages of each sender are written in order
+		int[] next = new int[NUM_THREADS];
+		for (String message : messages) {
+			String[] parts = message.split("-");
+			int thread = Integer.parseInt(parts[0]);
+			Assert.assertEquals(next[thread]++, Integer.parseInt(parts[1]));
+		}
+	}
+
+	@Test
+	public void failPolicyTest() throws Exception {
+
+		BlockingWriter writer = new BlockingWriter();
+		final OutboundMessageQueue queue = new OutboundMessageQueue(writer, 2,
+				OverflowPolicy.FAIL);
+
+		Thread writerThread = sendInBackground(queue, "first", false);
+		writer.writing.await();
+
+		queue.send("second", false);
+		queue.send("third", false);
+
+		try {
+			queue.send("fourth", false);
+			Assert.fail("Message should have been rejected");
+		} catch (TransportException e) {
+			// Expected
+		}
+
+		writer.release.countDown();
+		writerThread.join();
+
+		Assert.assertEquals(1, queue.getNumRejected());
+		Assert.assertEquals(3, writer.messages.size());
+	}
+
+	@Test
+	public void dropOldestPolicyTest() throws Exception {
+
+		BlockingWriter writer = new BlockingWriter();
+		final OutboundMessageQueue queue = new OutboundMessageQueue(writer, 2,
+				OverflowPolicy.DROP_OLDEST);
+
+		Thread writerThread = sendInBackground(queue, "response", false);
+		writer.writing.await();
+
+		queue.send("event1", true);
+		queue.send("event2", true);
+		queue.send("event3", true);
+
+		writer.release.countDown();
+		writerThread.join();
+
+		Assert.assertEquals(1, queue.getNumDropped());
+		Assert.assertEquals(Arrays.asList("response", "event2", "event3"),
+				writer.messages);
+	}
+
+	@Test
+	public void priorityTest() throws Exception {
+
+		BlockingWriter writer = new BlockingWriter();
+		final OutboundMessageQueue queue = new OutboundMessageQueue(writer, 3,
+				OverflowPolicy.FAIL);
+
+		Thread writerThread = sendInBackground(queue, "response1", false);
+		writer.writing.await();
+
+		queue.send("event1", Priority.NOTIFICATION);
+		queue.send("response2", Priority.REQUEST);
+		queue.send("event2", Priority.NOTIFICATION);
+
+		// The queue is full, but control messages are always accepted
+		queue.send("ping", Priority.CONTROL);
+
+		writer.release.countDown();
+		writerThread.join();
+
+		Assert.assertEquals(0, queue.getNumRejected());
+		Assert.assertEquals(Arrays.asList("response1", "ping", "response2",
+				"event1", "event2"), writer.messages);
+	}
+
+	@Test
+	public void preparerTest() throws Exception {
+
+		final List<String> messages = new ArrayList<>();
+		final AtomicReference<OutboundMessageQueue> queue = new AtomicReference<>();
+
+		final MessagePreparer numbering = new MessagePreparer() {
+
+			private int sequence;
+
+			@Override
+			public String prepare(String message) {
+				return message + "#" + ++sequence;
+			}
+		};
+
+		queue.set(new OutboundMessageQueue(new MessageWriter() {
+
+			@Override
+			public void write(String message) throws IOException {
+				messages.add(message);
+				if (message.startsWith("event1")) {
+					// Enqueued while this thread is the writer
+					queue.get().send("event2", Priority.NOTIFICATION, null,
+							numbering);
+					queue.get().send("request", Priority.REQUEST, null,
+							numbering);
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+		}, 10, OverflowPolicy.FAIL));
+
+		queue.get().send("event1", Priority.NOTIFICATION, null, numbering);
+
+		// Numbered in the order they are written, not in the order they
+		// were sent
+		Assert.assertEquals(Arrays.asList("event1#1", "request#2", "event2#3"),
+				messages);
+	}
+
+	@Test
+	public void writeFailureTest() throws Exception {
+
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final OutboundMessageQueue queue = new OutboundMessageQueue(
+				new MessageWriter() {
+
+					@Override
+					public void write(String message) throws IOException {
+						writing.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							throw new IOException(e);
+						}
+						if (message.startsWith("fail")) {
+							throw new IOException("Failed " + message);
+						}
+					}
+
+					@Override
+					public void flush() {
+					}
+				}, 10, OverflowPolicy.FAIL);
+
+		final AtomicReference<Exception> writerException = new AtomicReference<>();
+
+		Thread writerThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					queue.send("first", Priority.REQUEST);
+				} catch (Exception e) {
+					writerException.set(e);
+				}
+			}
+		};
+		writerThread.start();
+		writing.await();
+
+		final AtomicReference<IOException> callbackException = new AtomicReference<>();
+
+		// Written by the other thread, so the failure is notified to its
+		// callback
+		queue.send("fail-second", Priority.REQUEST, new WriteCallback() {
+			@Override
+			public void writeFailed(IOException cause) {
+				callbackException.set(cause);
+			}
+		});
+
+		release.countDown();
+		writerThread.join();
+
+		// The writer doesn't get the exception of other sender
+		Assert.assertNull(writerException.get());
+		Assert.assertEquals("Failed fail-second", callbackException.get()
+				.getMessage());
+
+		// The failure of its own message is thrown to the sender
+		try {
+			queue.send("fail-third", Priority.REQUEST);
+			Assert.fail("Failed write should be thrown to the writer");
+		} catch (IOException e) {
+			Assert.assertEquals("Failed fail-third", e.getMessage());
+		}
+	}
+
+	private Thread sendInBackground(final OutboundMessageQueue queue,
+			final String message, final boolean notification) {
+
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					queue.send(message, notification);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+}
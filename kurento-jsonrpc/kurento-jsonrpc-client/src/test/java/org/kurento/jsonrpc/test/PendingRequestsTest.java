@@ -0,0 +1,161 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class PendingRequestsTest {
+
+	private static HashedWheelTimer timer;
+
+	@BeforeClass
+	public static void startTimer() {
+		timer = new HashedWheelTimer("PendingRequestsTest", 10,
+				TimeUnit.MILLISECONDS, 64);
+	}
+
+	@AfterClass
+	public static void stopTimer() {
+		timer.stop();
+	}
+
+	@Test
+	public void responseBeforeTimeout() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests(timer);
+
+		Future<Response<JsonElement>> future = pendingRequests
+				.prepareResponse(1, 200, null);
+
+		Response<JsonElement> response = new Response<JsonElement>(1,
+				new JsonPrimitive("result"));
+		pendingRequests.handleResponse(response);
+
+		Assert.assertSame(response, future.get(1, TimeUnit.SECONDS));
+		Assert.assertEquals(0, pendingRequests.size());
+
+		Thread.sleep(300);
+
+		Assert.assertEquals(0, pendingRequests.getNumTimeouts());
+	}
+
+	@Test
+	public void responseBeforeTimeoutIsSet() throws Exception {
+
+		final PendingRequests[] pendingRequests = new PendingRequests[1];
+		final List<Timeout> timeouts = new ArrayList<>();
+
+		// The response arrives while the timeout is being scheduled
+		HashedWheelTimer racingTimer = new HashedWheelTimer(
+				"PendingRequestsRaceTest", 10, TimeUnit.MILLISECONDS, 64) {
+
+			@Override
+			public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+				pendingRequests[0].handleResponse(new Response<JsonElement>(
+						1, new JsonPrimitive("result")));
+				Timeout timeout = super.newTimeout(task, delay, unit);
+				timeouts.add(timeout);
+				return timeout;
+			}
+		};
+
+		try {
+			pendingRequests[0] = new PendingRequests(racingTimer);
+
+			Future<Response<JsonElement>> future = pendingRequests[0]
+					.prepareResponse(1, 10000, null);
+
+			Assert.assertTrue(future.isDone());
+			Assert.assertEquals(0, pendingRequests[0].size());
+			Assert.assertTrue("Timeout not cancelled", timeouts.get(0)
+					.isCancelled());
+		} finally {
+			racingTimer.stop();
+		}
+	}
+
+	@Test
+	public void requestTimeout() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests(timer);
+
+		Future<Response<JsonElement>> future = pendingRequests
+				.prepareResponse(1, 50, null);
+
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			Assert.fail("The request should have expired");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TransportException);
+		}
+
+		Assert.assertEquals(0, pendingRequests.size());
+		Assert.assertEquals(1, pendingRequests.getNumTimeouts());
+		Assert.assertEquals(1.0, pendingRequests.getTimeoutRate(), 0.001);
+	}
+
+	@Test
+	public void cancelRequest() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests(timer);
+
+		Future<Response<JsonElement>> future = pendingRequests
+				.prepareResponse(1, 50, null);
+
+		Assert.assertTrue(pendingRequests.cancelRequest(1));
+		Assert.assertTrue(future.isCancelled());
+		Assert.assertEquals(0, pendingRequests.size());
+		Assert.assertFalse(pendingRequests.cancelRequest(1));
+
+		// Late responses are discarded
+		pendingRequests.handleResponse(new Response<JsonElement>(1,
+				new JsonPrimitive("result")));
+
+		Thread.sleep(100);
+
+		Assert.assertEquals(0, pendingRequests.getNumTimeouts());
+	}
+
+	@Test
+	public void unansweredRequests() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests(timer);
+
+		for (int id : new int[] { 5, 2, 9, 7 }) {
+			pendingRequests.prepareResponse(new Request<JsonObject>(id,
+					"method" + id, null), 0, null);
+		}
+
+		// Registered without request, so it can not be sent again
+		pendingRequests.prepareResponse(3, 0, null);
+
+		pendingRequests.handleResponse(new Response<JsonElement>(9,
+				new JsonPrimitive("result")));
+
+		List<Integer> ids = new ArrayList<>();
+		for (Request<?> request : pendingRequests.getUnansweredRequests()) {
+			ids.add(request.getId());
+		}
+
+		Assert.assertEquals(Arrays.asList(5, 2, 7), ids);
+	}
+
+}
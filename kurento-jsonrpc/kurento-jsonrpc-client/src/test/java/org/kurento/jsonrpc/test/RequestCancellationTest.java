@@ -0,0 +1,222 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.client.ConcurrencyLimiter;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.RequestFuture;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class RequestCancellationTest {
+
+	/**
+	 * Keeps the continuations of the requests, that are answered by the test.
+	 */
+	private static class HeldRequestsSender extends JsonRpcRequestSenderHelper {
+
+		private final List<Request<?>> sentRequests = new ArrayList<>();
+		private final List<Continuation<Response<JsonElement>>> continuations = new ArrayList<>();
+		private final List<Request<?>> cancelledRequests = new ArrayList<>();
+
+		@Override
+		protected <P, R> Response<R> internalSendRequest(Request<P> request,
+				Class<R> resultClass) throws IOException {
+			sentRequests.add(request);
+			return null;
+		}
+
+		private RuntimeException sendFailure;
+
+		@Override
+		protected void internalSendRequest(Request<? extends Object> request,
+				Class<JsonElement> resultClass,
+				Continuation<Response<JsonElement>> continuation) {
+			if (sendFailure != null) {
+				throw sendFailure;
+			}
+			sentRequests.add(request);
+			continuations.add(continuation);
+		}
+
+		@Override
+		protected void internalCancelRequest(Request<?> request) {
+			cancelledRequests.add(request);
+		}
+	}
+
+	@Test
+	public void resultTest() throws Exception {
+
+		HeldRequestsSender sender = new HeldRequestsSender();
+
+		RequestFuture<Integer> future = sender.sendRequestAsync("sum",
+				new JsonObject(), Integer.class);
+
+		Assert.assertFalse(future.isDone());
+
+		sender.continuations.get(0).onSuccess(
+				new Response<JsonElement>(future.getRequest().getId(),
+						new JsonPrimitive(3)));
+
+		Assert.assertEquals(Integer.valueOf(3),
+				future.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void errorTest() throws Exception {
+
+		HeldRequestsSender sender = new HeldRequestsSender();
+
+		RequestFuture<JsonElement> future = sender.sendRequestAsync("sum",
+				new JsonObject(), JsonElement.class);
+
+		sender.continuations.get(0).onSuccess(
+				new Response<JsonElement>(future.getRequest().getId(),
+						new ResponseError(1, "Failed")));
+
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			Assert.fail("Error response should fail the future");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof JsonRpcErrorException);
+		}
+	}
+
+	@Test
+	public void cancelTest() throws Exception {
+
+		HeldRequestsSender sender = new HeldRequestsSender();
+
+		RequestFuture<JsonElement> future = sender.sendRequestAsync("offer",
+				new JsonObject(), JsonElement.class);
+
+		Assert.assertTrue(future.cancel(false));
+		Assert.assertTrue(future.isCancelled());
+		Assert.assertFalse(future.cancel(false));
+
+		Assert.assertEquals(1, sender.cancelledRequests.size());
+		Assert.assertSame(future.getRequest(), sender.cancelledRequests.get(0));
+
+		// The server is not notified
+		Assert.assertEquals(1, sender.sentRequests.size());
+
+		// A late response is ignored
+		sender.continuations.get(0).onSuccess(
+				new Response<JsonElement>(future.getRequest().getId(),
+						new JsonPrimitive("answer")));
+
+		try {
+			future.get();
+			Assert.fail("Cancelled future should not have result");
+		} catch (CancellationException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void cancelNotifyingPeerTest() throws Exception {
+
+		HeldRequestsSender sender = new HeldRequestsSender();
+
+		RequestFuture<JsonElement> future = sender.sendRequestAsync("offer",
+				new JsonObject(), JsonElement.class);
+
+		Assert.assertTrue(future.cancel(true));
+
+		Assert.assertEquals(2, sender.sentRequests.size());
+
+		Request<?> notification = sender.sentRequests.get(1);
+		Assert.assertEquals("cancelRequest", notification.getMethod());
+		Assert.assertNull(notification.getId());
+		Assert.assertEquals(future.getRequest().getId().intValue(),
+				((JsonObject) notification.getParams()).get("id").getAsInt());
+	}
+
+	@Test
+	public void cancelReleasesLimiterTest() throws Exception {
+
+		HeldRequestsSender sender = new HeldRequestsSender();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		sender.setConcurrencyLimiter(limiter);
+
+		RequestFuture<JsonElement> future = sender.sendRequestAsync("offer",
+				new JsonObject(), JsonElement.class);
+
+		Assert.assertEquals(1, limiter.getInFlight());
+
+		// The continuation is not failed by the transport, but the slot is
+		// released anyway
+		Assert.assertTrue(future.cancel(true));
+		Assert.assertEquals(0, limiter.getInFlight());
+
+		// The cancellation is not limited
+		Assert.assertEquals("cancelRequest", sender.sentRequests.get(1)
+				.getMethod());
+
+		RequestFuture<JsonElement> next = sender.sendRequestAsync("offer",
+				new JsonObject(), JsonElement.class);
+		Assert.assertEquals(1, limiter.getInFlight());
+
+		// A late response of the cancelled request doesn't release the slot
+		// of the next one
+		sender.continuations.get(0).onSuccess(
+				new Response<JsonElement>(future.getRequest().getId(),
+						new JsonPrimitive("answer")));
+		Assert.assertEquals(1, limiter.getInFlight());
+
+		sender.continuations.get(1).onSuccess(
+				new Response<JsonElement>(next.getRequest().getId(),
+						new JsonPrimitive("answer")));
+		Assert.assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void sendFailureTest() throws Exception {
+
+		HeldRequestsSender sender = new HeldRequestsSender();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		sender.setConcurrencyLimiter(limiter);
+
+		IllegalStateException failure = new IllegalStateException(
+				"Session closed");
+		sender.sendFailure = failure;
+
+		RequestFuture<JsonElement> future = sender.sendRequestAsync("offer",
+				new JsonObject(), JsonElement.class);
+
+		// The failure is reported through the future, not thrown
+		Assert.assertTrue(future.isDone());
+		Assert.assertEquals(0, limiter.getInFlight());
+
+		try {
+			future.get();
+			Assert.fail("Failed send should fail the future");
+		} catch (ExecutionException e) {
+			Assert.assertSame(failure, e.getCause());
+		}
+
+		// Also when the request is not limited
+		sender.setConcurrencyLimiter(null);
+
+		future = sender.sendRequestAsync("offer", new JsonObject(),
+				JsonElement.class);
+
+		Assert.assertTrue(future.isDone());
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.kurento.jsonrpc.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.RequestDispatcher;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+
+public class RequestDispatcherTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void createExecutor() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void sessionOrderTest() throws InterruptedException {
+
+		RequestDispatcher dispatcher = new RequestDispatcher(executor);
+
+		final List<Integer> processed = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(100);
+
+		for (int i = 0; i < 100; i++) {
+			final int request = i;
+			Assert.assertTrue(dispatcher.dispatch("session", new Runnable() {
+				@Override
+				public void run() {
+					processed.add(request);
+					latch.countDown();
+				}
+			}));
+		}
+
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(i, processed.get(i).intValue());
+		}
+
+		Assert.assertEquals(100, dispatcher.getNumProcessed());
+		Assert.assertEquals(0, dispatcher.getQueuedRequests());
+	}
+
+	@Test
+	public void overloadTest() throws InterruptedException {
+
+		RequestDispatcher dispatcher = new RequestDispatcher(executor, 2,
+				OverloadPolicy.CLOSE);
+
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		Runnable slowRequest = new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					blocked.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		// Processing requests don't count as queued
+		Assert.assertTrue(dispatcher.dispatch("session1", slowRequest));
+		Assert.assertTrue(dispatcher.dispatch("session2", slowRequest));
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		Assert.assertTrue(dispatcher.dispatch("session1", slowRequest));
+		Assert.assertTrue(dispatcher.dispatch("session2", slowRequest));
+		Assert.assertEquals(2, dispatcher.getQueuedRequests());
+
+		Assert.assertFalse(dispatcher.dispatch("session3", slowRequest));
+		Assert.assertEquals(1, dispatcher.getNumShed());
+		Assert.assertEquals(OverloadPolicy.CLOSE,
+				dispatcher.getOverloadPolicy());
+
+		blocked.countDown();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (dispatcher.getNumProcessed() < 4
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		Assert.assertEquals(4, dispatcher.getNumProcessed());
+		Assert.assertTrue(dispatcher.dispatch("session3", slowRequest));
+	}
+
+	@Test
+	public void mbeanTest() throws Exception {
+
+		RequestDispatcher dispatcher = new RequestDispatcher(executor);
+
+		ObjectName name = dispatcher.registerMBean("/test");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		try {
+			Assert.assertTrue(server.isRegistered(name));
+			Assert.assertEquals(RequestDispatcher.DEFAULT_MAX_QUEUED_REQUESTS,
+					server.getAttribute(name, "MaxQueuedRequests"));
+			Assert.assertEquals(0L, server.getAttribute(name, "NumShed"));
+			Assert.assertNotNull(server.getAttribute(name, "P99QueueTime"));
+		} finally {
+			dispatcher.unregisterMBean();
+		}
+
+		Assert.assertFalse(server.isRegistered(name));
+	}
+
+}
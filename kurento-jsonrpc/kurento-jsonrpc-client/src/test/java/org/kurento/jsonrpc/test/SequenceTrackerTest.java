@@ -0,0 +1,63 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.ws.SequenceTracker;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+
+public class SequenceTrackerTest {
+
+	@Test
+	public void outOfOrderTest() {
+
+		SequenceTracker tracker = new SequenceTracker();
+
+		Assert.assertTrue(tracker.received(1));
+		Assert.assertTrue(tracker.received(3));
+		Assert.assertEquals(1, tracker.getLastInOrder());
+
+		// Duplicates are detected before and after the last in order
+		Assert.assertFalse(tracker.received(1));
+		Assert.assertFalse(tracker.received(3));
+
+		Assert.assertTrue(tracker.received(2));
+		Assert.assertEquals(3, tracker.getLastInOrder());
+
+		tracker.reset();
+		Assert.assertEquals(0, tracker.getLastInOrder());
+		Assert.assertTrue(tracker.received(1));
+	}
+
+	@Test
+	public void lostMessageTest() {
+
+		SequenceTracker tracker = new SequenceTracker();
+
+		// Message 1 never arrives
+		for (int i = 2; i <= SequenceTracker.MAX_AHEAD + 2; i++) {
+			Assert.assertTrue(tracker.received(i));
+		}
+
+		Assert.assertEquals(SequenceTracker.MAX_AHEAD + 2,
+				tracker.getLastInOrder());
+	}
+
+	@Test
+	public void decodeSequenceTest() {
+
+		Message message = JsonUtils.fromJsonMessage("{\"seq\":42,"
+				+ "\"method\":\"event\",\"params\":{\"value\":1},"
+				+ "\"jsonrpc\":\"2.0\"}");
+
+		Request<?> request = (Request<?>) message;
+		Assert.assertEquals(Long.valueOf(42), request.getSequence());
+		Assert.assertEquals("event", request.getMethod());
+
+		Request<?> unnumbered = (Request<?>) JsonUtils
+				.fromJsonMessage("{\"method\":\"event\",\"jsonrpc\":\"2.0\"}");
+		Assert.assertNull(unnumbered.getSequence());
+	}
+
+}
@@ -0,0 +1,423 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Session of a client connected through HTTP. As the server can't open
+ * connections to the client, requests from the server are queued until the
+ * client polls for them.
+ *
+ * The poll is held by the server (with an asynchronous servlet request, so no
+ * thread is blocked) until there are requests to deliver or the poll timeout
+ * expires. When a request is queued while a poll is waiting, the poll is
+ * answered immediately, so requests reach the client with the latency of the
+ * network and not of a polling interval. Requests whose poll can't be
+ * answered (because the client has gone away) are queued again for the next
+ * poll.
+ *
+ * The queue is bounded, so it doesn't grow without limit when the client
+ * stops polling. When it is full, a notification discards the oldest queued
+ * notification, and requests (or notifications when no notification is
+ * queued) are rejected with a {@link TransportException}, as websocket
+ * sessions do with the DROP_OLDEST overflow policy.
+ *
+ * @since 6.0.0
+ */
+public class HttpRequestServerSession extends ServerSession {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HttpRequestServerSession.class);
+
+	public static final long DEFAULT_POLL_TIMEOUT = 20000;
+
+	public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1024;
+
+	private class Poll implements AsyncListener {
+
+		private final Integer id;
+		private final ResponseSender responseSender;
+
+		private Poll(Integer id, ResponseSender responseSender) {
+			this.id = id;
+			this.responseSender = responseSender;
+		}
+
+		/**
+		 * @return false if the poll couldn't be answered, so the requests
+		 *         have not reached the client
+		 */
+		private boolean answer(List<Request<?>> requests) {
+			try {
+				responseSender.sendResponse(new Response<Object>(id, requests));
+				return true;
+			} catch (IOException e) {
+				log.warn("Exception answering poll of session {}",
+						getSessionId(), e);
+				return false;
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			if (removeWaitingPoll(this)) {
+				answer(Collections.<Request<?>> emptyList());
+			}
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			removeWaitingPoll(this);
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {
+			removeWaitingPoll(this);
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {
+		}
+	}
+
+	private final PendingRequests pendingRequests = new PendingRequests();
+
+	private final long pollTimeout;
+
+	private final int maxQueuedRequests;
+
+	// Guarded by this
+	private List<Request<?>> queuedRequests = new ArrayList<>();
+	private Poll waitingPoll;
+
+	public HttpRequestServerSession(String sessionId, Object registerInfo,
+			SessionsManager sessionsManager, String internalSessionId) {
+		this(sessionId, registerInfo, sessionsManager, internalSessionId,
+				DEFAULT_POLL_TIMEOUT);
+	}
+
+	public HttpRequestServerSession(String sessionId, Object registerInfo,
+			SessionsManager sessionsManager, String internalSessionId,
+			long pollTimeout) {
+		this(sessionId, registerInfo, sessionsManager, internalSessionId,
+				pollTimeout, DEFAULT_MAX_QUEUED_REQUESTS);
+	}
+
+	public HttpRequestServerSession(String sessionId, Object registerInfo,
+			SessionsManager sessionsManager, String internalSessionId,
+			long pollTimeout, int maxQueuedRequests) {
+
+		super(sessionId, registerInfo, sessionsManager, internalSessionId);
+
+		if (maxQueuedRequests <= 0) {
+			throw new IllegalArgumentException(
+					"Max queued requests must be positive, but was "
+							+ maxQueuedRequests);
+		}
+
+		this.pollTimeout = pollTimeout;
+		this.maxQueuedRequests = maxQueuedRequests;
+
+		setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
+
+			@Override
+			protected <P, R> Response<R> internalSendRequest(
+					Request<P> request, Class<R> resultClass)
+					throws IOException {
+				return sendRequestHttp(request, resultClass);
+			}
+
+			@Override
+			protected void internalSendRequest(
+					Request<? extends Object> request,
+					Class<JsonElement> resultClass,
+					Continuation<Response<JsonElement>> continuation) {
+				sendRequestHttp(request, resultClass, continuation);
+			}
+		});
+	}
+
+	private <P, R> Response<R> sendRequestHttp(Request<P> request,
+			Class<R> resultClass) {
+
+		if (request.getId() == null) {
+			queueRequest(request);
+			return null;
+		}
+
+		Future<Response<JsonElement>> responseFuture = pendingRequests
+				.prepareResponse(request.getId(), getTimeout(request), null);
+
+		try {
+			queueRequest(request);
+		} catch (TransportException e) {
+			pendingRequests.failRequest(request.getId(), e);
+		}
+
+		try {
+			return MessageUtils.convertResponse(responseFuture.get(),
+					resultClass);
+		} catch (InterruptedException e) {
+			throw new JsonRpcException(
+					"Interrupted while waiting for a response", e);
+		} catch (ExecutionException e) {
+			throw new TransportException(e.getCause().getMessage(),
+					e.getCause());
+		}
+	}
+
+	private void sendRequestHttp(Request<? extends Object> request,
+			final Class<JsonElement> resultClass,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		if (request.getId() == null) {
+			try {
+				queueRequest(request);
+			} catch (TransportException e) {
+				continuation.onError(e);
+				return;
+			}
+			continuation.onSuccess(null);
+			return;
+		}
+
+		pendingRequests.prepareResponse(request.getId(), getTimeout(request),
+				new FutureCallback<Response<JsonElement>>() {
+
+					@Override
+					public void completed(Response<JsonElement> response) {
+						try {
+							continuation.onSuccess(MessageUtils
+									.convertResponse(response, resultClass));
+						} catch (Exception e) {
+							log.error("Exception while processing response", e);
+						}
+					}
+
+					@Override
+					public void failed(Exception cause) {
+						continuation.onError(cause);
+					}
+
+					@Override
+					public void cancelled() {
+						continuation.onError(new TransportException(
+								"Request cancelled"));
+					}
+				});
+
+		try {
+			queueRequest(request);
+		} catch (TransportException e) {
+			pendingRequests.failRequest(request.getId(), e);
+		}
+	}
+
+	private long getTimeout(Request<?> request) {
+		return request.getTimeout() > 0 ? request.getTimeout()
+				: JsonRpcClientWebSocket.TIMEOUT;
+	}
+
+	private void queueRequest(Request<?> request) {
+
+		Poll poll;
+		List<Request<?>> requests;
+
+		synchronized (this) {
+
+			if (queuedRequests.size() >= maxQueuedRequests
+					&& !dropOldestNotification(request)) {
+				throw new TransportException("There are already "
+						+ maxQueuedRequests + " requests waiting for session "
+						+ getSessionId() + " to poll");
+			}
+
+			queuedRequests.add(request);
+
+			if (waitingPoll == null) {
+				return;
+			}
+
+			poll = waitingPoll;
+			waitingPoll = null;
+			requests = takeQueuedRequests();
+		}
+
+		answerPoll(poll, requests);
+	}
+
+	/**
+	 * Makes room for a notification discarding the oldest queued one.
+	 *
+	 * @return false if the request is not a notification or there is no
+	 *         notification to discard
+	 */
+	private boolean dropOldestNotification(Request<?> request) {
+
+		if (request.getId() != null) {
+			return false;
+		}
+
+		for (int i = 0; i < queuedRequests.size(); i++) {
+			if (queuedRequests.get(i).getId() == null) {
+				Request<?> queued = queuedRequests.remove(i);
+				log.debug("Notification {} to session {} discarded: too many"
+						+ " requests waiting to poll", queued.getMethod(),
+						getSessionId());
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void answerPoll(Poll poll, List<Request<?>> requests) {
+		if (!poll.answer(requests) && !requests.isEmpty()) {
+			requeueRequests(requests);
+		}
+	}
+
+	/**
+	 * Queues again the requests of a poll that couldn't be answered, before
+	 * the requests queued meanwhile, so they are delivered in order. If the
+	 * client is already waiting in a new poll, they are sent in it.
+	 */
+	private void requeueRequests(List<Request<?>> requests) {
+
+		Poll poll;
+		List<Request<?>> pollRequests;
+
+		synchronized (this) {
+
+			queuedRequests.addAll(0, requests);
+
+			if (waitingPoll == null) {
+				return;
+			}
+
+			poll = waitingPoll;
+			waitingPoll = null;
+			pollRequests = takeQueuedRequests();
+		}
+
+		answerPoll(poll, pollRequests);
+	}
+
+	/**
+	 * Answers the poll with the queued requests. If there are none, the poll
+	 * is held until a request is queued or the poll timeout expires.
+	 */
+	@Override
+	public void processPollRequest(Request<JsonElement> request,
+			ResponseSender responseSender) throws IOException {
+
+		Poll poll = new Poll(request.getId(), responseSender);
+		Poll previousPoll;
+		List<Request<?>> requests = null;
+
+		synchronized (this) {
+
+			// The client doesn't wait for the previous poll anymore
+			previousPoll = waitingPoll;
+			waitingPoll = null;
+
+			if (queuedRequests.isEmpty()
+					&& responseSender instanceof ServletResponseSender
+					&& ((ServletResponseSender) responseSender).startAsync(
+							pollTimeout, poll)) {
+				waitingPoll = poll;
+			} else {
+				requests = takeQueuedRequests();
+			}
+		}
+
+		if (previousPoll != null) {
+			previousPoll.answer(Collections.<Request<?>> emptyList());
+		}
+
+		if (requests != null) {
+			answerPoll(poll, requests);
+		}
+	}
+
+	private List<Request<?>> takeQueuedRequests() {
+		List<Request<?>> requests = queuedRequests;
+		queuedRequests = new ArrayList<>();
+		return requests;
+	}
+
+	private synchronized boolean removeWaitingPoll(Poll poll) {
+		if (waitingPoll == poll) {
+			waitingPoll = null;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void handleResponse(Response<JsonElement> response) {
+		pendingRequests.handleResponse(response);
+	}
+
+	/**
+	 * @return the number of requests waiting for the client to poll
+	 */
+	public synchronized int getNumQueuedRequests() {
+		return queuedRequests.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			pendingRequests.closeAllPendingRequests(new TransportException(
+					"Session closed"));
+		} finally {
+			super.close();
+		}
+	}
+
+	@Override
+	public void closeNativeSession(String reason) {
+		throw new UnsupportedOperationException();
+	}
+
+}
@@ -21,62 +21,17 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import org.kurento.jsonrpc.client.Continuation;
-import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
-import org.kurento.jsonrpc.message.Message;
-import org.kurento.jsonrpc.message.Request;
-import org.kurento.jsonrpc.message.Response;
 import org.springframework.web.HttpRequestHandler;
 
 import com.google.common.io.CharStreams;
-import com.google.gson.JsonElement;
 
 public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
-	private final class HttpRequestServerSession extends ServerSession {
-
-		private HttpRequestServerSession(String sessionId, Object registerInfo,
-				SessionsManager sessionsManager, String internalSessionId) {
-
-			super(sessionId, registerInfo, sessionsManager, internalSessionId);
-
-			setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
-
-				@Override
-				protected <P, R> Response<R> internalSendRequest(
-						Request<P> request, Class<R> resultClass)
-								throws IOException {
-					// TODO Poner aquí la cola de mensajes que devolver al
-					// cliente cuando haga pooling
-					return new Response<>();
-				}
-
-				@Override
-				protected void internalSendRequest(
-						Request<? extends Object> request,
-						Class<JsonElement> class1,
-						Continuation<Response<JsonElement>> continuation) {
-					throw new UnsupportedOperationException(
-							"Async client is unavailable");
-				}
-			});
-		}
-
-		@Override
-		public void handleResponse(Response<JsonElement> response) {
-		}
-
-		@Override
-		public void closeNativeSession(String reason) {
-			throw new UnsupportedOperationException();			
-		}
-	}
-
 	private final ProtocolManager protocolManager;
 
 	public JsonRpcHttpRequestHandler(ProtocolManager protocolManager) {
@@ -105,17 +60,8 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 			}
 		};
 
-		ResponseSender responseSender = new ResponseSender() {
-			@Override
-			public void sendResponse(Message message) throws IOException {
-				servletResponse.getWriter().println(message);
-			}
-
-			@Override
-			public void sendPingResponse(Message message) throws IOException {
-				sendResponse(message);
-			}
-		};
+		ResponseSender responseSender = new ServletResponseSender(
+				servletRequest, servletResponse);
 
 		String internalSessionId = null;
 
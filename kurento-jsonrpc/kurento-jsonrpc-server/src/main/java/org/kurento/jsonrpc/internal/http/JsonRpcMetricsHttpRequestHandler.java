@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.jsonrpc.server.JsonRpcServerMetrics;
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Returns the metrics of the server as a JSON object, so they can be
+ * collected by monitoring tools without access to JMX.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcMetricsHttpRequestHandler implements HttpRequestHandler {
+
+	private final JsonRpcServerMetrics metrics;
+
+	public JsonRpcMetricsHttpRequestHandler(JsonRpcServerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void handleRequest(HttpServletRequest servletRequest,
+			HttpServletResponse servletResponse) throws ServletException,
+			IOException {
+
+		if (!"GET".equals(servletRequest.getMethod())) {
+			servletResponse.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+
+		servletResponse.setContentType("application/json");
+		servletResponse.setCharacterEncoding("UTF-8");
+		servletResponse.setHeader("Cache-Control", "no-cache");
+		servletResponse.getWriter().print(metrics.toJson().toString());
+	}
+
+}
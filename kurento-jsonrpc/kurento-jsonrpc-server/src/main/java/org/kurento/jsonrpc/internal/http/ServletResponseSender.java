@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+
+/**
+ * Writes the response to a JSON-RPC message in the body of its HTTP response.
+ * The HTTP request can be put in asynchronous mode, so the response is sent
+ * later from other thread and the request thread is released meanwhile.
+ *
+ * @since 6.0.0
+ */
+public class ServletResponseSender implements ResponseSender {
+
+	private final HttpServletRequest servletRequest;
+	private final HttpServletResponse servletResponse;
+
+	private AsyncContext asyncContext;
+
+	public ServletResponseSender(HttpServletRequest servletRequest,
+			HttpServletResponse servletResponse) {
+		this.servletRequest = servletRequest;
+		this.servletResponse = servletResponse;
+	}
+
+	/**
+	 * Puts the HTTP request in asynchronous mode. The HTTP response is
+	 * completed when the JSON-RPC response is sent or when the timeout
+	 * expires, and the listener is notified in both cases.
+	 *
+	 * @param timeout
+	 *            maximum time in milliseconds to wait for the response
+	 * @param listener
+	 *            the listener of the asynchronous request
+	 * @return false if the servlet doesn't support asynchronous requests, so
+	 *         the response must be sent before returning from the request
+	 *         thread
+	 */
+	public synchronized boolean startAsync(long timeout, AsyncListener listener) {
+
+		if (!servletRequest.isAsyncSupported()) {
+			return false;
+		}
+
+		asyncContext = servletRequest.startAsync();
+		asyncContext.setTimeout(timeout);
+		asyncContext.addListener(listener);
+		return true;
+	}
+
+	@Override
+	public synchronized void sendResponse(Message message) throws IOException {
+
+		if (asyncContext == null) {
+			servletResponse.getWriter().println(message);
+			return;
+		}
+
+		try {
+			asyncContext.getResponse().getWriter().println(message);
+		} finally {
+			asyncContext.complete();
+		}
+	}
+
+	@Override
+	public void sendPingResponse(Message message) throws IOException {
+		sendResponse(message);
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.BatchResponse;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+/**
+ * Gathers the responses to the requests of a JSON-RPC batch and sends them
+ * together in a single message when the last one is available. Responses can
+ * be generated in any order (handlers can answer asynchronously), but they
+ * are sent in the order of the requests in the batch.
+ *
+ * Notifications (requests without id) are not responded, so any response
+ * generated for them is discarded. Requests that are not processed, because
+ * they are cancelled by the client or shed by the dispatcher, must be
+ * answered with an error response, or the batch would never be sent.
+ *
+ * @since 6.0.0
+ */
+class BatchResponseSender implements ResponseSender {
+
+	private final ResponseSender responseSender;
+	private final Map<Integer, Response<?>> responses = new LinkedHashMap<>();
+	private int pendingResponses;
+
+	public BatchResponseSender(List<Message> messages,
+			ResponseSender responseSender) {
+
+		this.responseSender = responseSender;
+
+		for (Message message : messages) {
+			if (message instanceof Request) {
+				Integer id = ((Request<?>) message).getId();
+				if (id != null && !responses.containsKey(id)) {
+					responses.put(id, null);
+					pendingResponses++;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void sendResponse(Message message) throws IOException {
+
+		BatchResponse batchResponse;
+
+		synchronized (this) {
+
+			Integer id = ((Response<?>) message).getId();
+
+			if (id == null || !responses.containsKey(id)
+					|| responses.get(id) != null) {
+				return;
+			}
+
+			responses.put(id, (Response<?>) message);
+			pendingResponses--;
+
+			if (pendingResponses > 0) {
+				return;
+			}
+
+			batchResponse = new BatchResponse(new ArrayList<>(
+					responses.values()));
+		}
+
+		responseSender.sendResponse(batchResponse);
+	}
+
+	@Override
+	public void sendPingResponse(Message message) throws IOException {
+		sendResponse(message);
+	}
+
+}
@@ -14,15 +14,22 @@
  */
 package org.kurento.jsonrpc.internal.server;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcCodec;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.OverflowPolicy;
 import org.kurento.jsonrpc.message.Request;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
@@ -46,6 +53,18 @@ public class PerSessionJsonRpcHandler<T> implements JsonRpcHandler<T>,
 
 	private boolean pingWachdog = false;
 
+	private int outboundQueueCapacity = OutboundMessageQueue.DEFAULT_CAPACITY;
+
+	private OverflowPolicy outboundOverflowPolicy = OverflowPolicy.BLOCK;
+
+	private int maxQueuedRequests = 0;
+
+	private OverloadPolicy overloadPolicy = OverloadPolicy.REJECT;
+
+	private int resumptionBufferSize = 0;
+
+	private List<JsonRpcCodec> codecs = Collections.emptyList();
+
 	public PerSessionJsonRpcHandler(String handlerName) {
 		this(handlerName, null);
 	}
@@ -194,4 +213,58 @@ public class PerSessionJsonRpcHandler<T> implements JsonRpcHandler<T>,
 		return pingWachdog;
 	}
 
+	public PerSessionJsonRpcHandler<T> withOutboundQueue(int capacity,
+			OverflowPolicy overflowPolicy) {
+		this.outboundQueueCapacity = capacity;
+		this.outboundOverflowPolicy = overflowPolicy;
+		return this;
+	}
+
+	@Override
+	public int getOutboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+
+	@Override
+	public OverflowPolicy getOutboundOverflowPolicy() {
+		return outboundOverflowPolicy;
+	}
+
+	public PerSessionJsonRpcHandler<T> withRequestDispatch(
+			int maxQueuedRequests, OverloadPolicy overloadPolicy) {
+		this.maxQueuedRequests = maxQueuedRequests;
+		this.overloadPolicy = overloadPolicy;
+		return this;
+	}
+
+	@Override
+	public int getMaxQueuedRequests() {
+		return maxQueuedRequests;
+	}
+
+	@Override
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	public PerSessionJsonRpcHandler<T> withSessionResumption(int bufferSize) {
+		this.resumptionBufferSize = bufferSize;
+		return this;
+	}
+
+	@Override
+	public int getResumptionBufferSize() {
+		return resumptionBufferSize;
+	}
+
+	public PerSessionJsonRpcHandler<T> withCodecs(JsonRpcCodec... codecs) {
+		this.codecs = Arrays.asList(codecs);
+		return this;
+	}
+
+	@Override
+	public List<JsonRpcCodec> getCodecs() {
+		return codecs;
+	}
+
 }
@@ -2,8 +2,11 @@ package org.kurento.jsonrpc.internal.server;
 
 import java.util.Date;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.TaskScheduler;
@@ -19,20 +22,40 @@ public class PingWatchdogManager {
 
 	private static final long NUM_NO_PINGS_TO_CLOSE = 3;
 
+	/**
+	 * Watchdog of the pings of a session. Receiving a ping only records its
+	 * time, so it doesn't lock or touch the timer. A single timeout per
+	 * session is kept in the wheel: when it expires, it is scheduled again
+	 * for the time remaining since the last ping, or the session is closed
+	 * if no pings have been received in that time.
+	 */
 	public class PingWatchdogSession {
 
 		private static final long MAX_PING_INTERVAL = 20000;
-		
-		private String transportId;
-		private long pingInterval = MAX_PING_INTERVAL;
+
+		private volatile String transportId;
+		private volatile long pingInterval = MAX_PING_INTERVAL;
 		private boolean pingIntervalCalculated = false;
-		private volatile ScheduledFuture<?> lastTask;
+
+		private volatile long lastPingTime;
+		private volatile boolean active;
+
+		// Guarded by this
+		private Timeout timeout;
 
 		private long firstPingArrivalTime;
 		private int currentPingMeasures = 0;
-		private String sessionId;
+		private volatile String sessionId;
+
+		private Runnable checkPingsTask = new Runnable() {
+			@Override
+			public void run() {
+				checkPings();
+			}
+		};
 
 		private Runnable closeSessionTask = new Runnable() {
+			@Override
 			public void run() {
 				log.info(
 						"Closing session with sessionId={} and transportId={} for not receiving ping in "
@@ -48,13 +71,16 @@ public class PingWatchdogManager {
 
 		public void pingReceived() {
 
+			lastPingTime = System.nanoTime();
+
 			if (!pingIntervalCalculated) {
 
-				if(currentPingMeasures == 0){
-					log.info("Activated PingWatchdog for session {} with transportId {}",
+				if (currentPingMeasures == 0) {
+					log.info(
+							"Activated PingWatchdog for session {} with transportId {}",
 							sessionId, transportId);
 				}
-				
+
 				// First ping is ignored because its receiving time is not very
 				// precise
 				if (currentPingMeasures == 1) {
@@ -64,26 +90,62 @@ public class PingWatchdogManager {
 							.currentTimeMillis() - firstPingArrivalTime)) / NUM_NO_PINGS_TO_CLOSE);
 
 					pingIntervalCalculated = true;
-					
+
 					log.info("Measured ping interval in {}"
 							+ " millis in session {} with transportId {}",
 							pingInterval, sessionId, transportId);
-					activateSessionCloser();
+
+					// The timeout was scheduled with the maximum interval
+					activateSessionCloser(true);
 				}
 				currentPingMeasures++;
+			}
 
+			if (!active) {
+				activateSessionCloser(false);
+			}
+		}
+
+		private synchronized void activateSessionCloser(boolean reschedule) {
+
+			active = true;
+
+			if (timeout != null) {
+				if (!reschedule && !timeout.isExpired()
+						&& !timeout.isCancelled()) {
+					return;
+				}
+				timeout.cancel();
 			}
-			
-			activateSessionCloser();
+
+			timeout = timer.newTimeout(checkPingsTask, NUM_NO_PINGS_TO_CLOSE
+					* pingInterval, TimeUnit.MILLISECONDS);
 		}
 
-		private void activateSessionCloser() {
-			
-			disablePrevPingWatchdog();
+		private void checkPings() {
+
+			synchronized (this) {
+
+				if (!active) {
+					return;
+				}
+
+				long remaining = lastPingTime
+						+ TimeUnit.MILLISECONDS.toNanos(NUM_NO_PINGS_TO_CLOSE
+								* pingInterval) - System.nanoTime();
+
+				if (remaining > 0) {
+					timeout = timer.newTimeout(checkPingsTask, remaining,
+							TimeUnit.NANOSECONDS);
+					return;
+				}
+
+				active = false;
+				timeout = null;
+			}
 
-			lastTask = taskScheduler.schedule(closeSessionTask,
-					new Date(System.currentTimeMillis()
-							+ (NUM_NO_PINGS_TO_CLOSE * pingInterval)));
+			// The timer thread is not blocked closing the session
+			closeExecutor.execute(closeSessionTask);
 		}
 
 		public void setSessionId(String sessionId) {
@@ -92,31 +154,55 @@ public class PingWatchdogManager {
 
 		public void setTransportId(String transportId) {
 			this.transportId = transportId;
-			disablePrevPingWatchdog();
 
 			if (pingWachdog) {
 				log.info("Restarting timer to consider disconnected client if pings are not received in "
 						+ NUM_NO_PINGS_TO_CLOSE * pingInterval + " millis");
-				activateSessionCloser();
+				lastPingTime = System.nanoTime();
+				activateSessionCloser(true);
+			} else {
+				disablePrevPingWatchdog();
 			}
 		}
 
-		private void disablePrevPingWatchdog() {
-			if (lastTask != null) {
-				lastTask.cancel(false);
+		private synchronized void disablePrevPingWatchdog() {
+			active = false;
+			if (timeout != null) {
+				timeout.cancel();
+				timeout = null;
 			}
 		}
 	}
 
 	private ConcurrentHashMap<String, PingWatchdogSession> sessions = new ConcurrentHashMap<>();
-	private boolean pingWachdog = false;
-	private TaskScheduler taskScheduler;
+	private volatile boolean pingWachdog = false;
+	private Executor closeExecutor;
+	private HashedWheelTimer timer;
 	private NativeSessionCloser closer;
 
-	public PingWatchdogManager(TaskScheduler taskScheduler,
+	public PingWatchdogManager(final TaskScheduler taskScheduler,
 			NativeSessionCloser closer) {
-		this.taskScheduler = taskScheduler;
+		this(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				taskScheduler.schedule(command, new Date());
+			}
+		}, closer, HashedWheelTimer.getSharedTimer());
+	}
+
+	/**
+	 * @param closeExecutor
+	 *            the executor where sessions without pings are closed
+	 * @param closer
+	 *            the closer of the native sessions
+	 * @param timer
+	 *            the timer where ping timeouts are scheduled
+	 */
+	public PingWatchdogManager(Executor closeExecutor,
+			NativeSessionCloser closer, HashedWheelTimer timer) {
+		this.closeExecutor = closeExecutor;
 		this.closer = closer;
+		this.timer = timer;
 	}
 
 	public void associateSessionId(String transportId, String sessionId) {
@@ -133,15 +219,17 @@ public class PingWatchdogManager {
 		}
 	}
 
-	// TODO Improve concurrency
-	private synchronized PingWatchdogSession getOrCreatePingSession(
-			String transportId) {
+	private PingWatchdogSession getOrCreatePingSession(String transportId) {
 		PingWatchdogSession session = sessions.get(transportId);
 		if (session == null) {
-			log.info("Created PingWatchdogSession for transportId {}",
+			PingWatchdogSession newSession = new PingWatchdogSession(
 					transportId);
-			session = new PingWatchdogSession(transportId);
-			sessions.put(transportId, session);
+			session = sessions.putIfAbsent(transportId, newSession);
+			if (session == null) {
+				log.info("Created PingWatchdogSession for transportId {}",
+						transportId);
+				session = newSession;
+			}
 		}
 		return session;
 	}
@@ -153,10 +241,25 @@ public class PingWatchdogManager {
 	public void removeSession(ServerSession session) {
 		log.info("Removed PingWatchdogSession for transportId {}",
 				session.getTransportId());
-		sessions.remove(session.getTransportId());
+		PingWatchdogSession pingSession = sessions.remove(session
+				.getTransportId());
+		if (pingSession != null) {
+			pingSession.disablePrevPingWatchdog();
+		}
+	}
+
+	/**
+	 * Disables the ping watchdog of all the sessions, so no session is closed
+	 * by this manager anymore.
+	 */
+	public void removeAllSessions() {
+		for (PingWatchdogSession pingSession : sessions.values()) {
+			pingSession.disablePrevPingWatchdog();
+		}
+		sessions.clear();
 	}
 
-	public synchronized void updateTransportId(String transportId,
+	public void updateTransportId(String transportId,
 			String oldTransportId) {
 		PingWatchdogSession session = sessions.remove(oldTransportId);
 		if (session != null) {
@@ -14,6 +14,11 @@
  */
 package org.kurento.jsonrpc.internal.server;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_INVALID_REQUEST;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_REQUEST_CANCELLED;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.LAST_SEQUENCE_PARAM;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CANCEL_REQUEST;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_RECONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG;
@@ -27,6 +32,8 @@ import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 
 import javax.annotation.PostConstruct;
@@ -35,11 +42,15 @@ import org.kurento.commons.SecretGenerator;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
+import org.kurento.jsonrpc.internal.RequestDispatcher;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.server.PingWatchdogManager.NativeSessionCloser;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
+import org.kurento.jsonrpc.server.JsonRpcServerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -86,6 +97,11 @@ public class ProtocolManager {
 
 	private PingWatchdogManager pingWachdogManager;
 
+	private volatile JsonRpcServerMetrics metrics;
+
+	private final Set<ServerSession> sessionsAwaitingReconnection = Collections
+			.newSetFromMap(new ConcurrentHashMap<ServerSession, Boolean>());
+
 	public ProtocolManager(JsonRpcHandler<?> handler) {
 		this.handlerManager = new JsonRpcHandlerManager(handler);
 	}
@@ -107,6 +123,10 @@ public class ProtocolManager {
 				ServerSession serverSession = sessionsManager
 						.getByTransportId(transportId);
 				if (serverSession != null) {
+					JsonRpcServerMetrics metrics = ProtocolManager.this.metrics;
+					if (metrics != null) {
+						metrics.pingWatchdogClosed();
+					}
 					serverSession
 					.closeNativeSession("Close for not receive ping from client");
 				} else {
@@ -126,12 +146,58 @@ public class ProtocolManager {
 	public void processMessage(String messageJson,
 			ServerSessionFactory factory, ResponseSender responseSender,
 			String internalSessionId) throws IOException {
+		processMessage(messageJson, factory, responseSender,
+				internalSessionId, null);
+	}
 
-		JsonObject messagetJsonObject = JsonUtils.fromJson(messageJson,
-				JsonObject.class);
+	/**
+	 * Process incoming message. Requests to the handler are processed in the
+	 * dispatcher, and pings, responses and the rest of messages of the
+	 * protocol in the current thread.
+	 *
+	 * @param dispatcher
+	 *            the dispatcher of requests, or null to process them in the
+	 *            current thread
+	 */
+	public void processMessage(String messageJson,
+			ServerSessionFactory factory, ResponseSender responseSender,
+			String internalSessionId, RequestDispatcher dispatcher)
+			throws IOException {
 
-		processMessage(messagetJsonObject, factory, responseSender,
-				internalSessionId);
+		if (JsonUtils.isBatch(messageJson)) {
+			processBatchMessage(JsonUtils.fromJsonBatch(messageJson), factory,
+					responseSender, internalSessionId, dispatcher);
+			return;
+		}
+
+		Message message = JsonUtils.fromJsonMessage(messageJson);
+
+		processMessage(message, factory, responseSender, internalSessionId,
+				dispatcher);
+	}
+
+	/**
+	 * Process the messages of a JSON-RPC batch. The responses to all requests
+	 * are sent together in a single message when the last one is available.
+	 */
+	private void processBatchMessage(List<Message> messages,
+			ServerSessionFactory factory, ResponseSender responseSender,
+			String internalSessionId, RequestDispatcher dispatcher)
+			throws IOException {
+
+		if (messages.isEmpty()) {
+			responseSender.sendResponse(new Response<>(null, new ResponseError(
+					ERROR_INVALID_REQUEST, "Invalid request: empty batch")));
+			return;
+		}
+
+		BatchResponseSender batchResponseSender = new BatchResponseSender(
+				messages, responseSender);
+
+		for (Message message : messages) {
+			processMessage(message, factory, batchResponseSender,
+					internalSessionId, dispatcher);
+		}
 	}
 
 	/**
@@ -149,10 +215,26 @@ public class ProtocolManager {
 			String internalSessionId) throws IOException {
 
 		if (messagetJsonObject.has(Request.METHOD_FIELD_NAME)) {
-			processRequestMessage(factory, messagetJsonObject, responseSender,
-					internalSessionId);
+			processRequestMessage(factory, JsonUtils.fromJsonRequest(
+					messagetJsonObject, JsonElement.class), responseSender,
+					internalSessionId, null);
 		} else {
-			processResponseMessage(messagetJsonObject, internalSessionId);
+			processResponseMessage(JsonUtils.fromJsonResponse(
+					messagetJsonObject, JsonElement.class), internalSessionId);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void processMessage(Message message, ServerSessionFactory factory,
+			ResponseSender responseSender, String internalSessionId,
+			RequestDispatcher dispatcher) throws IOException {
+
+		if (message instanceof Request) {
+			processRequestMessage(factory, (Request<JsonElement>) message,
+					responseSender, internalSessionId, dispatcher);
+		} else {
+			processResponseMessage((Response<JsonElement>) message,
+					internalSessionId);
 		}
 	}
 
@@ -161,11 +243,9 @@ public class ProtocolManager {
 	// parameters
 	// and the implementation is easier
 	private void processRequestMessage(ServerSessionFactory factory,
-			JsonObject requestJsonObject, ResponseSender responseSender,
-			String transportId) throws IOException {
-
-		Request<JsonElement> request = JsonUtils.fromJsonRequest(
-				requestJsonObject, JsonElement.class);
+			Request<JsonElement> request, ResponseSender responseSender,
+			String transportId, RequestDispatcher dispatcher)
+			throws IOException {
 
 		switch (request.getMethod()) {
 		case METHOD_RECONNECT:
@@ -186,9 +266,6 @@ public class ProtocolManager {
 			log.debug("{} Req-> {} [jsonRpcSessionId={}, transportId={}]",
 					label, request, session.getSessionId(), transportId);
 
-			// TODO, Take out this an put in Http specific handler. The main
-			// reason is to wait for request before responding to the client.
-			// And for no contaminate the ProtocolManager.
 			if (request.getMethod().equals(Request.POLL_METHOD_NAME)) {
 
 				Type collectionType = new TypeToken<List<Response<JsonElement>>>() {
@@ -201,23 +278,161 @@ public class ProtocolManager {
 					session.handleResponse(response);
 				}
 
-				// Wait for some time if there is a request from server to
-				// client
+				// Held by the session until there are requests from server
+				// to client
+				session.processPollRequest(request, responseSender);
+
+			} else if (request.getMethod().equals(METHOD_CANCEL_REQUEST)) {
+
+				processCancelRequestMessage(session, request);
 
-				// TODO Allow send empty responses. Now you have to send at
-				// least an
-				// empty string
-				responseSender.sendResponse(new Response<Object>(request
-						.getId(), Collections.emptyList()));
+			} else if (request.getId() != null
+					&& session.removeCancelledRequest(request.getId())) {
+
+				sendCancelledResponse(request, responseSender);
 
 			} else {
-				handlerManager.handleRequest(session, request, responseSender);
+
+				JsonRpcServerMetrics metrics = this.metrics;
+				if (metrics != null) {
+					responseSender = meterRequest(metrics, request,
+							responseSender);
+				}
+
+				if (dispatcher != null) {
+					dispatchRequest(dispatcher, session, request,
+							responseSender);
+				} else {
+					handlerManager.handleRequest(session, request,
+							responseSender);
+				}
 			}
 			break;
 		}
 
 	}
 
+	/**
+	 * Counts the request and wraps the response sender to record the latency
+	 * and error of the response, including the time queued in the dispatcher.
+	 */
+	private ResponseSender meterRequest(final JsonRpcServerMetrics metrics,
+			final Request<JsonElement> request,
+			final ResponseSender responseSender) {
+
+		metrics.requestReceived(request.getMethod(), request.getId() == null);
+
+		if (request.getId() == null) {
+			return responseSender;
+		}
+
+		final long start = System.nanoTime();
+
+		return new ResponseSender() {
+
+			@Override
+			public void sendResponse(Message message) throws IOException {
+				if (message instanceof Response) {
+					metrics.responseSent(request.getMethod(),
+							System.nanoTime() - start,
+							((Response<?>) message).getError());
+				}
+				responseSender.sendResponse(message);
+			}
+
+			@Override
+			public void sendPingResponse(Message message) throws IOException {
+				responseSender.sendPingResponse(message);
+			}
+		};
+	}
+
+	private void dispatchRequest(RequestDispatcher dispatcher,
+			final ServerSession session, final Request<JsonElement> request,
+			final ResponseSender responseSender) throws IOException {
+
+		boolean dispatched = dispatcher.dispatch(session, new Runnable() {
+			@Override
+			public void run() {
+
+				try {
+
+					// The client can cancel the request while it is queued
+					if (request.getId() != null
+							&& session.removeCancelledRequest(request.getId())) {
+						sendCancelledResponse(request, responseSender);
+						return;
+					}
+
+					handlerManager.handleRequest(session, request,
+							responseSender);
+
+				} catch (IOException e) {
+					log.warn("{} Exception processing request {}", label,
+							request, e);
+				} catch (RuntimeException e) {
+					log.error("{} Exception processing request {}", label,
+							request, e);
+					sendErrorResponse(request, responseSender,
+							ResponseError.newFromException(e));
+				}
+			}
+		});
+
+		if (dispatched) {
+			return;
+		}
+
+		// The request is answered even if the session is going to be closed,
+		// because it can be an element of a batch that is waiting for it
+		sendErrorResponse(request, responseSender, new ResponseError(
+				ERROR_SERVER_OVERLOADED, "Server overloaded"));
+
+		if (dispatcher.getOverloadPolicy() == OverloadPolicy.CLOSE) {
+
+			log.warn("{} Server overloaded with {} queued requests. Closing"
+					+ " session {}", label, dispatcher.getQueuedRequests(),
+					session.getSessionId());
+			session.closeNativeSessionOnOverload("Server overloaded");
+
+		} else {
+
+			log.debug("{} Server overloaded with {} queued requests. Request"
+					+ " {} rejected", label, dispatcher.getQueuedRequests(),
+					request);
+		}
+	}
+
+	/**
+	 * Answers a request cancelled by the client before being processed. The
+	 * client is not waiting for the response anymore, but a batch including
+	 * the request is not sent until all its requests are answered.
+	 */
+	private void sendCancelledResponse(Request<JsonElement> request,
+			ResponseSender responseSender) {
+
+		log.debug("{} Request {} cancelled by client before being processed",
+				label, request.getId());
+
+		sendErrorResponse(request, responseSender, new ResponseError(
+				ERROR_REQUEST_CANCELLED, "Request cancelled"));
+	}
+
+	private void sendErrorResponse(Request<JsonElement> request,
+			ResponseSender responseSender, ResponseError error) {
+
+		if (request.getId() == null) {
+			return;
+		}
+
+		try {
+			responseSender.sendResponse(new Response<>(request.getId(), error));
+		} catch (IOException e) {
+			log.warn("{} Exception sending error response to request {}",
+					label, request, e);
+		}
+	}
+
 	private ServerSession getSession(ServerSessionFactory factory,
 			String transportId, Request<JsonElement> request) {
 
@@ -245,6 +460,19 @@ public class ProtocolManager {
 		return session;
 	}
 
+	private void processCancelRequestMessage(ServerSession session,
+			Request<JsonElement> request) {
+
+		JsonElement params = request.getParams();
+		if (params == null || !params.isJsonObject()
+				|| !params.getAsJsonObject().has("id")) {
+			log.warn("{} Cancel request without id: {}", label, request);
+			return;
+		}
+
+		session.cancelRequest(params.getAsJsonObject().get("id").getAsInt());
+	}
+
 	private void processPingMessage(ServerSessionFactory factory,
 			Request<JsonElement> request, ResponseSender responseSender,
 			String transportId) throws IOException {
@@ -291,6 +519,9 @@ public class ProtocolManager {
 
 				responseSender.sendResponse(new Response<>(sessionId, request
 						.getId(), RECONNECTION_SUCCESSFUL));
+
+				resumeSession(session, request);
+
 			} else {
 
 				responseSender.sendResponse(new Response<>(request.getId(),
@@ -299,6 +530,23 @@ public class ProtocolManager {
 		}
 	}
 
+	/**
+	 * Sends again the messages lost by the client while it was disconnected,
+	 * if it reports the last one received.
+	 */
+	private void resumeSession(ServerSession session,
+			Request<JsonElement> request) {
+
+		JsonElement params = request.getParams();
+		if (params == null || !params.isJsonObject()
+				|| !params.getAsJsonObject().has(LAST_SEQUENCE_PARAM)) {
+			return;
+		}
+
+		session.resumeAfter(params.getAsJsonObject().get(LAST_SEQUENCE_PARAM)
+				.getAsLong());
+	}
+
 	private ServerSession createSession(ServerSessionFactory factory,
 			Object registerInfo) {
 
@@ -315,12 +563,9 @@ public class ProtocolManager {
 		return session;
 	}
 
-	private void processResponseMessage(JsonObject messagetJsonObject,
+	private void processResponseMessage(Response<JsonElement> response,
 			String internalSessionId) {
 
-		Response<JsonElement> response = JsonUtils.fromJsonResponse(
-				messagetJsonObject, JsonElement.class);
-
 		ServerSession session = sessionsManager
 				.getByTransportId(internalSessionId);
 
@@ -352,11 +597,17 @@ public class ProtocolManager {
 						session.getSessionId(), transportId,
 						format.format(closeTime));
 
+				sessionsAwaitingReconnection.add(session);
+
 				ScheduledFuture<?> lastStartedTimerFuture = taskScheduler
 						.schedule(new Runnable() {
 							@Override
 							public void run() {
-								closeSession(session, reason);
+								// Unless it has been closed on destroy
+								if (sessionsAwaitingReconnection
+										.remove(session)) {
+									closeSession(session, reason);
+								}
 							}
 						}, closeTime);
 
@@ -365,6 +616,7 @@ public class ProtocolManager {
 				pingWachdogManager.disablePingWatchdogForSession(transportId);
 
 			} catch (TaskRejectedException e) {
+				sessionsAwaitingReconnection.remove(session);
 				log.warn(
 						label
 						+ "Close timeout for session {} with transportId {} can not be set "
@@ -375,6 +627,7 @@ public class ProtocolManager {
 	}
 
 	public void closeSession(ServerSession session, String reason) {
+		sessionsAwaitingReconnection.remove(session);
 		log.info(label
 				+ "Removing session {} with transportId {} in ProtocolManager",
 				session.getSessionId(), session.getTransportId());
@@ -384,11 +637,34 @@ public class ProtocolManager {
 	}
 
 	public void cancelCloseTimer(ServerSession session) {
+		sessionsAwaitingReconnection.remove(session);
 		if (session.getCloseTimerTask() != null) {
 			session.getCloseTimerTask().cancel(false);
 		}
 	}
 
+	/**
+	 * Releases the resources of this manager when the server is stopped. The
+	 * ping watchdog is disabled for all the sessions, and the sessions
+	 * waiting for the reconnection of their clients are closed right away,
+	 * so the handler is notified even if the scheduler of the close timers
+	 * is shut down.
+	 *
+	 * @param reason
+	 *            the reason notified to the handler for the closed sessions
+	 */
+	public void destroy(String reason) {
+
+		pingWachdogManager.removeAllSessions();
+
+		for (ServerSession session : sessionsAwaitingReconnection) {
+			if (sessionsAwaitingReconnection.remove(session)) {
+				cancelCloseTimer(session);
+				closeSession(session, reason);
+			}
+		}
+	}
+
 	public void processTransportError(String transportId, Throwable exception) {
 		final ServerSession session = sessionsManager
 				.getByTransportId(transportId);
@@ -404,6 +680,15 @@ public class ProtocolManager {
 		this.maxHeartbeats = maxHeartbeats;
 	}
 
+	/**
+	 * @param metrics
+	 *            the metrics where the requests processed by this manager are
+	 *            recorded, or null to not record them
+	 */
+	public void setMetrics(JsonRpcServerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	public void setPingWachdog(boolean pingWachdog) {
 		this.pingWachdogManager.setPingWatchdog(pingWachdog);
 	}
@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.commons.PropertiesManager;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executors shared by all the sessions of the server. Sessions don't create
+ * threads, so the number of threads of the server doesn't grow with the number
+ * of connected clients.
+ *
+ * The responses to the requests sent by the server to its clients are
+ * processed in the response executor, so continuations never run in the
+ * transport threads. Its size is configured with the properties
+ * {@value #RESPONSE_THREADS_PROPERTY} and
+ * {@value #RESPONSE_QUEUE_SIZE_PROPERTY}. When its queue is full, the
+ * continuations of new responses are failed instead of run.
+ *
+ * The requests of the handlers configured to process them out of the
+ * transport threads are processed in the dispatch executor, configured with
+ * {@value #DISPATCH_THREADS_PROPERTY}. Its queue is not bounded, as the
+ * number of waiting requests is limited by each
+ * {@link org.kurento.jsonrpc.internal.RequestDispatcher}.
+ *
+ * @since 6.0.0
+ */
+public class ServerExecutors {
+
+	public static final String RESPONSE_THREADS_PROPERTY = "jsonRpcServerResponseThreads";
+
+	public static final String RESPONSE_QUEUE_SIZE_PROPERTY = "jsonRpcServerResponseQueueSize";
+
+	public static final int DEFAULT_RESPONSE_THREADS = Math.max(10, Runtime
+			.getRuntime().availableProcessors() * 2);
+
+	public static final int DEFAULT_RESPONSE_QUEUE_SIZE = 10000;
+
+	public static final String DISPATCH_THREADS_PROPERTY = "jsonRpcServerDispatchThreads";
+
+	public static final int DEFAULT_DISPATCH_THREADS = Math.max(10, Runtime
+			.getRuntime().availableProcessors() * 2);
+
+	private static final long IDLE_THREAD_TIMEOUT = 60;
+
+	private static volatile ThreadPoolExecutor responseExecutor;
+
+	private static volatile ThreadPoolExecutor dispatchExecutor;
+
+	private ServerExecutors() {
+	}
+
+	/**
+	 * Returns the executor used by the sessions created without an explicit
+	 * one. Its threads finish when they are idle, so it is never shut down.
+	 *
+	 * @return the default response executor
+	 */
+	public static ThreadPoolExecutor getResponseExecutor() {
+		if (responseExecutor == null) {
+			synchronized (ServerExecutors.class) {
+				if (responseExecutor == null) {
+					responseExecutor = newBoundedExecutor(
+							"JsonRpcServerResponse",
+							PropertiesManager.getProperty(
+									RESPONSE_THREADS_PROPERTY,
+									DEFAULT_RESPONSE_THREADS),
+							PropertiesManager.getProperty(
+									RESPONSE_QUEUE_SIZE_PROPERTY,
+									DEFAULT_RESPONSE_QUEUE_SIZE));
+				}
+			}
+		}
+		return responseExecutor;
+	}
+
+	/**
+	 * Returns the executor where the requests of all the dispatchers are
+	 * processed. Its threads finish when they are idle, so it is never shut
+	 * down.
+	 *
+	 * @return the dispatch executor
+	 */
+	public static ThreadPoolExecutor getDispatchExecutor() {
+		if (dispatchExecutor == null) {
+			synchronized (ServerExecutors.class) {
+				if (dispatchExecutor == null) {
+					dispatchExecutor = newBoundedExecutor(
+							"JsonRpcServerDispatch",
+							PropertiesManager.getProperty(
+									DISPATCH_THREADS_PROPERTY,
+									DEFAULT_DISPATCH_THREADS),
+							Integer.MAX_VALUE);
+				}
+			}
+		}
+		return dispatchExecutor;
+	}
+
+	/**
+	 * Creates an executor with a fixed number of daemon threads, that finish
+	 * when they are idle, and a bounded queue. Tasks submitted when the queue
+	 * is full are rejected with a
+	 * {@link java.util.concurrent.RejectedExecutionException}.
+	 *
+	 * @param name
+	 *            prefix of the names of the threads
+	 * @param threads
+	 *            maximum number of threads
+	 * @param queueSize
+	 *            maximum number of tasks waiting for a thread
+	 * @return the executor
+	 */
+	public static ThreadPoolExecutor newBoundedExecutor(String name,
+			int threads, int queueSize) {
+
+		if (threads <= 0 || queueSize <= 0) {
+			throw new IllegalArgumentException(
+					"Threads and queue size must be positive, but were "
+							+ threads + " and " + queueSize);
+		}
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queueSize),
+				new ThreadFactoryBuilder().setNameFormat(name + "-%d")
+						.setDaemon(true).build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+}
@@ -15,7 +15,11 @@
 package org.kurento.jsonrpc.internal.server;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
@@ -23,6 +27,7 @@ import java.util.concurrent.ScheduledFuture;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 
@@ -38,6 +43,21 @@ public abstract class ServerSession extends AbstractSession {
 	
 	private volatile ConcurrentMap<String, Object> attributes;
 
+	private static final int MAX_CANCELLED_REQUESTS = 100;
+
+	// Guarded by itself. Only the last cancellations are remembered
+	private final Set<Integer> cancelledRequests = Collections
+			.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<Integer, Boolean> eldest) {
+					return size() > MAX_CANCELLED_REQUESTS;
+				}
+			});
+
 	// TODO Make this configurable
 	private long reconnectionTimeoutInMillis = 10000;
 
@@ -52,6 +72,61 @@ public abstract class ServerSession extends AbstractSession {
 
 	public abstract void handleResponse(Response<JsonElement> response);
 
+	/**
+	 * Answers a poll of a client that can't receive requests from the server
+	 * in other way. Responses included in the poll have already been handled.
+	 * By default, there are no requests to deliver and the poll is answered
+	 * with an empty list.
+	 *
+	 * @param request
+	 *            the poll request
+	 * @param responseSender
+	 *            the sender of the answer
+	 * @throws IOException
+	 *             if the answer can't be sent
+	 */
+	public void processPollRequest(Request<JsonElement> request,
+			ResponseSender responseSender) throws IOException {
+		responseSender.sendResponse(new Response<Object>(request.getId(),
+				Collections.emptyList()));
+	}
+
+	/**
+	 * Records that the client has cancelled a request, because it is not
+	 * interested in its response anymore.
+	 *
+	 * @param id
+	 *            the id of the request
+	 */
+	public void cancelRequest(Integer id) {
+		synchronized (cancelledRequests) {
+			cancelledRequests.add(id);
+		}
+	}
+
+	/**
+	 * Handlers processing long requests asynchronously can check this method
+	 * to abandon requests cancelled by the client.
+	 *
+	 * @param id
+	 *            the id of the request
+	 * @return true if the client has cancelled the request
+	 */
+	public boolean isRequestCancelled(Integer id) {
+		synchronized (cancelledRequests) {
+			return cancelledRequests.contains(id);
+		}
+	}
+
+	/**
+	 * @return true if the request was cancelled, so it must not be processed
+	 */
+	boolean removeCancelledRequest(Integer id) {
+		synchronized (cancelledRequests) {
+			return cancelledRequests.remove(id);
+		}
+	}
+
 	public String getTransportId() {
 		return transportId;
 	}
@@ -115,6 +190,18 @@ public abstract class ServerSession extends AbstractSession {
 		rsHelper.sendNotification(method);
 	}
 
+	@Override
+	public List<Response<JsonElement>> sendBatch(
+			List<Request<JsonObject>> requests) throws IOException {
+		return rsHelper.sendBatch(requests);
+	}
+
+	@Override
+	public void sendBatch(List<Request<JsonObject>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		rsHelper.sendBatch(requests, continuation);
+	}
+
 	@Override
 	public Response<JsonElement> sendRequest(Request<JsonObject> request)
 			throws IOException {
@@ -159,4 +246,24 @@ public abstract class ServerSession extends AbstractSession {
 	}
 	
 	public abstract void closeNativeSession(String reason);
+
+	/**
+	 * Closes the native session because the server is overloaded, so the
+	 * client can reconnect later. By default, it is closed as in
+	 * {@link #closeNativeSession(String)}.
+	 */
+	public void closeNativeSessionOnOverload(String reason) {
+		closeNativeSession(reason);
+	}
+
+	/**
+	 * Sends again the requests and notifications sent after the given one,
+	 * when the client reconnects to this session. By default, sent messages
+	 * are not kept, so nothing is sent.
+	 *
+	 * @param lastSequence
+	 *            sequence number of the last message received by the client
+	 */
+	public void resumeAfter(long lastSequence) {
+	}
 }
@@ -14,6 +14,8 @@
  */
 package org.kurento.jsonrpc.internal.server;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.stereotype.Component;
@@ -46,6 +48,14 @@ public class SessionsManager {
 		return sessions.get(sessionId);
 	}
 
+	/**
+	 * @return a read-only view of the sessions, including the ones awaiting
+	 *         reconnection
+	 */
+	public Collection<ServerSession> getSessions() {
+		return Collections.unmodifiableCollection(sessions.values());
+	}
+
 	public ServerSession getByTransportId(String transportId) {
 		return sessionsByTransportId.get(transportId);
 	}
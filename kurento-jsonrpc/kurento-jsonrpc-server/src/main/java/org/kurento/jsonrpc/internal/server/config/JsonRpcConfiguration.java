@@ -21,15 +21,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.annotation.PreDestroy;
+
 import org.apache.catalina.Context;
 import org.apache.tomcat.websocket.server.WsSci;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.internal.http.JsonRpcHttpRequestHandler;
+import org.kurento.jsonrpc.internal.http.JsonRpcMetricsHttpRequestHandler;
 import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
+import org.kurento.jsonrpc.server.JsonRpcServerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.embedded.tomcat.TomcatContextCustomizer;
 import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
@@ -51,10 +59,25 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @EnableWebSocket
 public class JsonRpcConfiguration implements WebSocketConfigurer {
 
+	private static final Logger log = LoggerFactory
+			.getLogger(JsonRpcConfiguration.class);
+
+	/**
+	 * Enables the collection of server metrics and publishes them in JMX.
+	 */
+	public static final String METRICS_PROPERTY = "jsonRpcServerMetrics";
+
+	/**
+	 * Path of the HTTP endpoint that returns the server metrics as JSON.
+	 * Setting it also enables the collection of metrics.
+	 */
+	public static final String METRICS_PATH_PROPERTY = "jsonRpcServerMetricsPath";
+
 	@Autowired
 	protected ApplicationContext ctx;
 
 	private final List<JsonRpcConfigurer> configurers = new ArrayList<>();
+	private final List<JsonRpcWebSocketHandler> wsHandlers = new ArrayList<>();
 	private DefaultJsonRpcHandlerRegistry instanceRegistry;
 
 	private DefaultJsonRpcHandlerRegistry getJsonRpcHandlersRegistry() {
@@ -120,6 +143,12 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 			}
 		}
 
+		String metricsPath = PropertiesManager.getProperty(METRICS_PATH_PROPERTY);
+		if (metricsPath != null) {
+			urlMap.put(metricsPath, new JsonRpcMetricsHttpRequestHandler(
+					jsonRpcServerMetrics()));
+		}
+
 		SimpleUrlHandlerMapping hm = new SimpleUrlHandlerMapping();
 		hm.setUrlMap(urlMap);
 		hm.setOrder(1);
@@ -191,7 +220,8 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 		JsonRpcWebSocketHandler wsHandler = new JsonRpcWebSocketHandler(
 				protocolManager);
 
-		protocolManager.setPingWachdog(handler.isPingWatchdog());
+		wsHandler.configure(handler, paths.toString());
+		wsHandlers.add(wsHandler);
 
 		for (String path : paths) {
 
@@ -201,11 +231,15 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 			if (handler.isSockJSEnabled()) {
 				registration.withSockJS();
 			}
+		}
+	}
 
-			if (handler.getLabel() != null) {
-				wsHandler.setLabel(handler.getLabel());
-			}
+	@PreDestroy
+	public void destroyWebSocketHandlers() {
+		for (JsonRpcWebSocketHandler wsHandler : wsHandlers) {
+			wsHandler.destroy();
 		}
+		wsHandlers.clear();
 	}
 
 	// This methods workaround the bug
@@ -236,10 +270,39 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 		return new SessionsManager();
 	}
 
+	@Bean(destroyMethod = "unregisterMBean")
+	public JsonRpcServerMetrics jsonRpcServerMetrics() {
+
+		JsonRpcServerMetrics metrics = new JsonRpcServerMetrics(
+				sessionsManager());
+
+		if (isMetricsEnabled()) {
+			try {
+				metrics.registerMBean(ctx.getId());
+			} catch (KurentoException e) {
+				log.warn("Server metrics not exported through JMX", e);
+			}
+		}
+
+		return metrics;
+	}
+
+	private boolean isMetricsEnabled() {
+		return PropertiesManager.getProperty(METRICS_PROPERTY, false)
+				|| PropertiesManager.getProperty(METRICS_PATH_PROPERTY) != null;
+	}
+
 	@Bean
 	@Scope("prototype")
 	public ProtocolManager protocolManager(JsonRpcHandler<?> key) {
-		return new ProtocolManager(key);
+
+		ProtocolManager protocolManager = new ProtocolManager(key);
+
+		if (isMetricsEnabled()) {
+			protocolManager.setMetrics(jsonRpcServerMetrics());
+		}
+
+		return protocolManager;
 	}
 
 	@Bean
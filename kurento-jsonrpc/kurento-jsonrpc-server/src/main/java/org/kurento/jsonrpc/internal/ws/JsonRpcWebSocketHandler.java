@@ -15,32 +15,252 @@
 package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.JsonRpcCodec;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.internal.RequestDispatcher;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerExecutors;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.MessageWriter;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.OverflowPolicy;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.Priority;
 import org.kurento.jsonrpc.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
-public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
+public class JsonRpcWebSocketHandler extends AbstractWebSocketHandler
+		implements SubProtocolCapable {
 
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcWebSocketHandler.class);
 
+	private static final String OUTBOUND_QUEUE_ATTRIBUTE = OutboundMessageQueue.class
+			.getName();
+
 	private final ProtocolManager protocolManager;
 
 	private String label = "";
 
+	private int outboundQueueCapacity = OutboundMessageQueue.DEFAULT_CAPACITY;
+
+	private OverflowPolicy outboundOverflowPolicy = OverflowPolicy.BLOCK;
+
+	private volatile Executor responseExecutor;
+
+	private volatile RequestDispatcher requestDispatcher;
+
+	private int resumptionBufferSize = 0;
+
+	private final Map<String, JsonRpcCodec> codecs = new LinkedHashMap<>();
+
 	public JsonRpcWebSocketHandler(ProtocolManager protocolManager) {
 		this.protocolManager = protocolManager;
 	}
 
+	/**
+	 * Configures the codecs offered to clients as websocket subprotocols.
+	 * Clients not requesting any of them use JSON text frames. No codec is
+	 * offered by default.
+	 *
+	 * @param codecs
+	 *            the supported codecs, in order of preference
+	 */
+	public void setCodecs(List<JsonRpcCodec> codecs) {
+		this.codecs.clear();
+		for (JsonRpcCodec codec : codecs) {
+			this.codecs.put(codec.getName(), codec);
+		}
+	}
+
+	@Override
+	public List<String> getSubProtocols() {
+		return new ArrayList<>(codecs.keySet());
+	}
+
+	private JsonRpcCodec getCodec(WebSocketSession wsSession) {
+		String protocol = wsSession.getAcceptedProtocol();
+		return protocol != null ? codecs.get(protocol) : null;
+	}
+
+	public void setOutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+		this.outboundQueueCapacity = capacity;
+		this.outboundOverflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Configures the executor where the responses to the requests sent by the
+	 * server are processed, shared by all the sessions of this handler. By
+	 * default, the executor of {@link ServerExecutors#getResponseExecutor()}
+	 * is used, so it is shared with the rest of handlers.
+	 *
+	 * @param responseExecutor
+	 *            the executor, or null to use the default one
+	 */
+	public void setResponseExecutor(Executor responseExecutor) {
+		this.responseExecutor = responseExecutor;
+	}
+
+	private Executor getResponseExecutor() {
+		Executor executor = responseExecutor;
+		return executor != null ? executor : ServerExecutors
+				.getResponseExecutor();
+	}
+
+	/**
+	 * Configures the dispatcher where requests are processed. By default,
+	 * requests are processed in the transport thread of their connection.
+	 *
+	 * @param requestDispatcher
+	 *            the dispatcher, or null to process requests in the transport
+	 *            thread
+	 */
+	public void setRequestDispatcher(RequestDispatcher requestDispatcher) {
+		this.requestDispatcher = requestDispatcher;
+	}
+
+	public RequestDispatcher getRequestDispatcher() {
+		return requestDispatcher;
+	}
+
+	/**
+	 * Configures the number of requests and notifications kept in each
+	 * session to be sent again when the client reconnects.
+	 *
+	 * @param resumptionBufferSize
+	 *            number of messages kept, or 0 to disable session resumption
+	 */
+	public void setResumptionBufferSize(int resumptionBufferSize) {
+		this.resumptionBufferSize = resumptionBufferSize;
+	}
+
+	/**
+	 * Applies the websocket settings of a handler: ping watchdog, outbound
+	 * queue, request dispatching, session resumption, codecs and label.
+	 *
+	 * @param handler
+	 *            the handler published by this websocket handler
+	 * @param name
+	 *            name of the endpoint, used to export the request dispatcher
+	 *            through JMX
+	 */
+	public void configure(JsonRpcHandler<?> handler, String name) {
+
+		protocolManager.setPingWachdog(handler.isPingWatchdog());
+
+		setOutboundQueue(handler.getOutboundQueueCapacity(),
+				handler.getOutboundOverflowPolicy());
+
+		setResumptionBufferSize(handler.getResumptionBufferSize());
+
+		setCodecs(handler.getCodecs());
+
+		if (handler.getMaxQueuedRequests() > 0) {
+
+			RequestDispatcher dispatcher = new RequestDispatcher(
+					ServerExecutors.getDispatchExecutor(),
+					handler.getMaxQueuedRequests(), handler.getOverloadPolicy());
+
+			try {
+				dispatcher.registerMBean(name);
+			} catch (KurentoException e) {
+				log.warn("Request dispatcher of {} not exported through JMX",
+						name, e);
+			}
+
+			setRequestDispatcher(dispatcher);
+		}
+
+		if (handler.getLabel() != null) {
+			setLabel(handler.getLabel());
+		}
+	}
+
+	/**
+	 * Releases the resources created by {@link #configure(JsonRpcHandler,
+	 * String)}. The request dispatcher is removed from JMX, so a handler can
+	 * be published again with the same name.
+	 */
+	public void destroy() {
+		RequestDispatcher dispatcher = requestDispatcher;
+		if (dispatcher != null) {
+			dispatcher.unregisterMBean();
+		}
+	}
+
+	/**
+	 * Returns the queue of messages waiting to be written in the websocket
+	 * session. All the messages sent to the session (responses, requests and
+	 * notifications) are written through this queue.
+	 *
+	 * @param wsSession
+	 *            the websocket session
+	 * @return the outbound queue of the session
+	 */
+	public static OutboundMessageQueue getOutboundQueue(
+			WebSocketSession wsSession) {
+
+		OutboundMessageQueue queue = (OutboundMessageQueue) wsSession
+				.getAttributes().get(OUTBOUND_QUEUE_ATTRIBUTE);
+
+		if (queue == null) {
+			// The queue is created when the session is established. This is
+			// only a fallback for sessions not managed by this handler
+			synchronized (wsSession) {
+				queue = (OutboundMessageQueue) wsSession.getAttributes().get(
+						OUTBOUND_QUEUE_ATTRIBUTE);
+				if (queue == null) {
+					queue = createOutboundQueue(wsSession, null,
+							OutboundMessageQueue.DEFAULT_CAPACITY,
+							OverflowPolicy.BLOCK);
+					wsSession.getAttributes().put(OUTBOUND_QUEUE_ATTRIBUTE,
+							queue);
+				}
+			}
+		}
+
+		return queue;
+	}
+
+	private static OutboundMessageQueue createOutboundQueue(
+			final WebSocketSession wsSession, final JsonRpcCodec codec,
+			int capacity, OverflowPolicy overflowPolicy) {
+
+		return new OutboundMessageQueue(new MessageWriter() {
+
+			@Override
+			public void write(String message) throws IOException {
+				if (!wsSession.isOpen()) {
+					log.error("Trying to send a message to a closed session");
+				} else if (codec != null) {
+					wsSession.sendMessage(new BinaryMessage(codec
+							.encode(message)));
+				} else {
+					wsSession.sendMessage(new TextMessage(message));
+				}
+			}
+
+			@Override
+			public void flush() {
+				// Each message is sent when written
+			}
+		}, capacity, overflowPolicy);
+	}
+
 	public void setLabel(String label) {
 		this.label = "[" + label + "] ";
 		this.protocolManager.setLabel(label);
@@ -54,6 +274,17 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 		// session is established, not when websocket session is established
 		log.info("{} Client connection stablished from {}", label,
 				session.getRemoteAddress());
+
+		JsonRpcCodec codec = getCodec(session);
+		if (codec != null) {
+			log.debug("{} Using codec {} in WebSocket session '{}'", label,
+					codec.getName(), session.getId());
+		}
+
+		session.getAttributes().put(
+				OUTBOUND_QUEUE_ATTRIBUTE,
+				createOutboundQueue(session, codec, outboundQueueCapacity,
+						outboundOverflowPolicy));
 	}
 
 	@Override
@@ -76,20 +307,49 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 	}
 
 	@Override
-	public void handleTextMessage(final WebSocketSession wsSession,
+	public void handleTextMessage(WebSocketSession wsSession,
 			TextMessage message) throws Exception {
+		processMessage(wsSession, message.getPayload());
+	}
+
+	@Override
+	protected void handleBinaryMessage(WebSocketSession wsSession,
+			BinaryMessage message) throws Exception {
+
+		JsonRpcCodec codec = getCodec(wsSession);
 
+		if (codec == null) {
+			log.warn("{} Binary message received in WebSocket session '{}'"
+					+ " without codec", label, wsSession.getId());
+			return;
+		}
+
+		String messageJson;
 		try {
+			messageJson = codec.decode(message.getPayload());
+		} catch (IOException e) {
+			log.warn("{} Exception decoding binary message", label, e);
+			return;
+		}
+
+		processMessage(wsSession, messageJson);
+	}
 
-			String messageJson = message.getPayload();
+	private void processMessage(final WebSocketSession wsSession,
+			String messageJson) {
+
+		try {
 
 			// TODO Ensure only one register message per websocket session.
 			ServerSessionFactory factory = new ServerSessionFactory() {
 				@Override
 				public ServerSession createSession(String sessionId,
 						Object registerInfo, SessionsManager sessionsManager) {
-					return new WebSocketServerSession(sessionId, registerInfo,
-							sessionsManager, wsSession);
+					WebSocketServerSession session = new WebSocketServerSession(
+							sessionId, registerInfo, sessionsManager,
+							wsSession, getResponseExecutor());
+					session.setResumptionBufferSize(resumptionBufferSize);
+					return session;
 				}
 
 				@Override
@@ -107,7 +367,8 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 
 							String jsonMessage = message.toString();
 							log.debug("{} <-Res {}", label, jsonMessage);
-							sendJsonMessage(jsonMessage);
+							getOutboundQueue(wsSession).send(jsonMessage,
+									Priority.REQUEST);
 						}
 
 						@Override
@@ -116,21 +377,14 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 
 							String jsonMessage = message.toString();
 							log.trace("{} <-Res {}", label, jsonMessage);
-							sendJsonMessage(jsonMessage);
-						}
 
-						private void sendJsonMessage(String jsonMessage)
-								throws IOException {
-							synchronized (wsSession) {
-								if (wsSession.isOpen()) {
-									wsSession.sendMessage(new TextMessage(
-											jsonMessage));
-								} else {
-									log.error("Trying to send a message to a closed session");
-								}
-							}
+							// Written before queued responses and
+							// notifications, so the client doesn't close a
+							// busy connection because pongs are late
+							getOutboundQueue(wsSession).send(jsonMessage,
+									Priority.CONTROL);
 						}
-					}, wsSession.getId());
+					}, wsSession.getId(), requestDispatcher);
 
 		} catch (Exception e) {
 			log.error(label + "Exception processing request", e);
@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SEQUENCE_PROPERTY;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.Priority;
+
+/**
+ * Bounded ring of the last requests and notifications sent to a session,
+ * numbered in sequence. The sequence number is added to each message as the
+ * first member of the JSON object, so messages already encoded (like the
+ * ones of a broadcast) are numbered without being parsed.
+ *
+ * Messages are numbered when they are written, in the order in which they
+ * reach the transport, and keep the priority they were sent with. When the
+ * client reconnects, it reports the last sequence number it has received and
+ * the following messages are sent again with the same priority. If some of
+ * them are no longer in the ring, the client has to recover its state by
+ * other means.
+ *
+ * @since 6.0.0
+ */
+public class ResumptionBuffer {
+
+	private static final String SEQUENCE_PREFIX = "{\"" + SEQUENCE_PROPERTY
+			+ "\":";
+
+	/**
+	 * A message kept in the buffer, with its sequence number.
+	 */
+	public static class Message {
+
+		private final String text;
+		private final Priority priority;
+
+		private Message(String text, Priority priority) {
+			this.text = text;
+			this.priority = priority;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public Priority getPriority() {
+			return priority;
+		}
+	}
+
+	private final Message[] messages;
+
+	private long lastSequence = 0;
+
+	public ResumptionBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+					"Capacity must be positive, but is " + capacity);
+		}
+		this.messages = new Message[capacity];
+	}
+
+	/**
+	 * Gives the next sequence number to the message and keeps it, removing
+	 * the oldest one if the buffer is full.
+	 *
+	 * @param jsonMessage
+	 *            the JSON object of the message
+	 * @param priority
+	 *            the priority the message was sent with
+	 * @return the message with the sequence number
+	 */
+	public synchronized String add(String jsonMessage, Priority priority) {
+
+		long sequence = ++lastSequence;
+
+		StringBuilder sb = new StringBuilder(jsonMessage.length()
+				+ SEQUENCE_PREFIX.length() + 20);
+		sb.append(SEQUENCE_PREFIX).append(sequence);
+
+		// Messages are encoded as objects without whitespace, so the first
+		// char is '{'
+		if (jsonMessage.charAt(1) != '}') {
+			sb.append(',');
+		}
+		sb.append(jsonMessage, 1, jsonMessage.length());
+
+		String sequenced = sb.toString();
+		messages[index(sequence)] = new Message(sequenced, priority);
+		return sequenced;
+	}
+
+	/**
+	 * @param sequence
+	 *            the last sequence number received by the client
+	 * @return the messages kept after the given one, in order
+	 */
+	public synchronized List<Message> getMessagesAfter(long sequence) {
+
+		long first = Math.max(sequence + 1, getFirstSequence());
+
+		List<Message> result = new ArrayList<>();
+		for (long i = first; i <= lastSequence; i++) {
+			result.add(messages[index(i)]);
+		}
+		return result;
+	}
+
+	/**
+	 * @param sequence
+	 *            the last sequence number received by the client
+	 * @return true if all the messages after the given one are kept
+	 */
+	public synchronized boolean canResumeAfter(long sequence) {
+		return sequence + 1 >= getFirstSequence() && sequence <= lastSequence;
+	}
+
+	public int getCapacity() {
+		return messages.length;
+	}
+
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	private long getFirstSequence() {
+		return Math.max(1, lastSequence - messages.length + 1);
+	}
+
+	private int index(long sequence) {
+		return (int) ((sequence - 1) % messages.length);
+	}
+
+}
@@ -15,29 +15,34 @@
 package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.http.concurrent.FutureCallback;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.JsonRpcMessageEncoder;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.server.ServerExecutors;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.MessagePreparer;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.Priority;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.WriteCallback;
+import org.kurento.jsonrpc.internal.ws.ResumptionBuffer.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.google.gson.JsonElement;
@@ -49,16 +54,36 @@ public class WebSocketServerSession extends ServerSession {
 
 	private WebSocketSession wsSession;
 
+	private volatile OutboundMessageQueue outboundQueue;
+
 	private final PendingRequests pendingRequests = new PendingRequests();
 
-	private ExecutorService execService = Executors.newFixedThreadPool(10);
+	private final Executor responseExecutor;
+
+	private volatile ResumptionBuffer resumptionBuffer;
 
 	public WebSocketServerSession(String sessionId, Object registerInfo,
 			SessionsManager sessionsManager, WebSocketSession wsSession) {
+		this(sessionId, registerInfo, sessionsManager, wsSession,
+				ServerExecutors.getResponseExecutor());
+	}
+
+	/**
+	 * @param responseExecutor
+	 *            the executor where the continuations of the asynchronous
+	 *            requests sent to the client are invoked. It is usually shared
+	 *            by all the sessions, so it is not shut down when the session
+	 *            is closed
+	 */
+	public WebSocketServerSession(String sessionId, Object registerInfo,
+			SessionsManager sessionsManager, WebSocketSession wsSession,
+			Executor responseExecutor) {
 
 		super(sessionId, registerInfo, sessionsManager, wsSession.getId());
 
 		this.wsSession = wsSession;
+		this.responseExecutor = responseExecutor;
+		this.outboundQueue = JsonRpcWebSocketHandler.getOutboundQueue(wsSession);
 
 		this.setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
 			@Override
@@ -82,23 +107,95 @@ public class WebSocketServerSession extends ServerSession {
 			final Class<JsonElement> resultClass,
 			final Continuation<Response<JsonElement>> continuation) {
 
-		// FIXME: Poor man async implementation.
-		execService.submit(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					Response<JsonElement> result = sendRequestWebSocket(
-							request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						LOG.error("Exception while processing response", e);
-					}
-				} catch (Exception e) {
-					continuation.onError(e);
-				}
+		if (request.getId() == null) {
+			try {
+				writeRequest(request);
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
 			}
-		});
+			continuation.onSuccess(null);
+			return;
+		}
+
+		// No thread waits for the response. The continuation is invoked in
+		// the response executor when the response arrives or the request
+		// fails
+		pendingRequests.prepareResponse(request.getId(), getTimeout(request),
+				new FutureCallback<Response<JsonElement>>() {
+
+					@Override
+					public void completed(final Response<JsonElement> response) {
+						boolean dispatched = dispatchResponse(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									continuation.onSuccess(MessageUtils
+											.convertResponse(response,
+													resultClass));
+								} catch (Exception e) {
+									LOG.error(
+											"Exception while processing response",
+											e);
+								}
+							}
+						});
+
+						if (!dispatched) {
+							continuation.onError(new TransportException(
+									"Response to request with id "
+											+ request.getId() + " of session "
+											+ getSessionId()
+											+ " discarded: response executor"
+											+ " saturated"));
+						}
+					}
+
+					@Override
+					public void failed(final Exception cause) {
+						boolean dispatched = dispatchResponse(new Runnable() {
+							@Override
+							public void run() {
+								continuation.onError(cause);
+							}
+						});
+
+						if (!dispatched) {
+							continuation.onError(cause);
+						}
+					}
+
+					@Override
+					public void cancelled() {
+						failed(new TransportException("Request cancelled"));
+					}
+				});
+
+		try {
+			writeRequest(request);
+		} catch (Exception e) {
+			pendingRequests.failRequest(request.getId(), e);
+		}
+	}
+
+	/**
+	 * Runs the continuation of a response in the response executor. When the
+	 * executor is saturated, the continuation is discarded: running it in the
+	 * transport thread would block the reading of the responses of this
+	 * session if it sends a synchronous request to the client.
+	 *
+	 * @return false if the task has been discarded, so the continuation has
+	 *         to be failed
+	 */
+	private boolean dispatchResponse(Runnable task) {
+		try {
+			responseExecutor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Response executor saturated, discarding response of "
+					+ "session {}", getSessionId());
+			return false;
+		}
 	}
 
 	private <P, R> Response<R> sendRequestWebSocket(Request<P> request,
@@ -107,20 +204,11 @@ public class WebSocketServerSession extends ServerSession {
 		Future<Response<JsonElement>> responseFuture = null;
 
 		if (request.getId() != null) {
-			responseFuture = pendingRequests.prepareResponse(request.getId());
+			responseFuture = pendingRequests.prepareResponse(request.getId(),
+					getTimeout(request), null);
 		}
 
-		try {
-			synchronized (wsSession) {
-				wsSession
-				.sendMessage(new TextMessage(JsonUtils.toJson(request)));
-			}
-		} catch (Exception e) {
-			throw new KurentoException("Exception while sending message '"
-					+ JsonUtils.toJson(request)
-					+ "' to websocket with native sessionId '"
-					+ wsSession.getId() + "'", e);
-		}
+		writeRequest(request);
 
 		if (responseFuture == null) {
 			return null;
@@ -128,34 +216,155 @@ public class WebSocketServerSession extends ServerSession {
 
 		Response<JsonElement> responseJsonObject;
 		try {
-			responseJsonObject = responseFuture.get(
-					JsonRpcClientWebSocket.TIMEOUT, TimeUnit.MILLISECONDS);
+			// The future is failed by PendingRequests if the request timeout
+			// expires
+			responseJsonObject = responseFuture.get();
 		} catch (InterruptedException e) {
 			// TODO What to do in this case?
 			throw new JsonRpcException(
 					"Interrupted while waiting for a response", e);
 		} catch (ExecutionException e) {
-			// TODO Is there a better way to handle this?
-			throw new JsonRpcException("This exception shouldn't be thrown", e);
-		} catch (TimeoutException e) {
-			throw new TransportException("Timeout of "
-					+ JsonRpcClientWebSocket.TIMEOUT
-					+ " milliseconds waiting from response to request with id:"
-					+ request.getId(), e);
+			throw new TransportException(e.getCause().getMessage(),
+					e.getCause());
 		}
 
 		return MessageUtils.convertResponse(responseJsonObject, resultClass);
 	}
 
+	private long getTimeout(Request<?> request) {
+		return request.getTimeout() > 0 ? request.getTimeout()
+				: JsonRpcClientWebSocket.TIMEOUT;
+	}
+
+	private void writeRequest(final Request<?> request) {
+
+		String jsonRequest = JsonRpcMessageEncoder.canEncode(request) ? JsonRpcMessageEncoder
+				.encode(request, false) : JsonUtils.toJson(request);
+
+		if (request.getId() == null) {
+			writeMessage(jsonRequest, Priority.NOTIFICATION, null);
+			return;
+		}
+
+		// The request is failed if it is written by other thread and the
+		// write fails
+		writeMessage(jsonRequest, Priority.REQUEST, new WriteCallback() {
+			@Override
+			public void writeFailed(IOException cause) {
+				pendingRequests.failRequest(request.getId(), cause);
+			}
+		});
+	}
+
+	/**
+	 * Sends a notification already encoded, so the same text can be sent to
+	 * several sessions without serializing it again.
+	 *
+	 * @param jsonNotification
+	 *            the JSON text of the notification
+	 * @see org.kurento.jsonrpc.server.NotificationBroadcaster
+	 */
+	public void sendEncodedNotification(String jsonNotification) {
+		writeMessage(jsonNotification, Priority.NOTIFICATION, null);
+	}
+
+	private void writeMessage(String jsonMessage, final Priority priority,
+			WriteCallback callback) {
+
+		// Messages are numbered by the thread writing the queue, so sequence
+		// numbers reach the client in order even with concurrent senders and
+		// priorities
+		MessagePreparer preparer = null;
+		final ResumptionBuffer buffer = resumptionBuffer;
+		if (buffer != null) {
+			preparer = new MessagePreparer() {
+				@Override
+				public String prepare(String message) {
+					return buffer.add(message, priority);
+				}
+			};
+		}
+
+		try {
+			outboundQueue.send(jsonMessage, priority, callback, preparer);
+		} catch (Exception e) {
+			throw new KurentoException("Exception while sending message '"
+					+ jsonMessage + "' to websocket with native sessionId '"
+					+ wsSession.getId() + "'", e);
+		}
+	}
+
+	/**
+	 * Keeps the last requests and notifications sent to this session, so
+	 * they can be sent again if the client reconnects after losing them.
+	 *
+	 * @param bufferSize
+	 *            number of messages kept, or 0 to not keep them
+	 */
+	public void setResumptionBufferSize(int bufferSize) {
+		this.resumptionBuffer = bufferSize > 0 ? new ResumptionBuffer(
+				bufferSize) : null;
+	}
+
+	@Override
+	public void resumeAfter(long lastSequence) {
+
+		ResumptionBuffer buffer = resumptionBuffer;
+		if (buffer == null) {
+			return;
+		}
+
+		if (!buffer.canResumeAfter(lastSequence)) {
+			LOG.warn("Messages sent to session {} after message {} are no"
+					+ " longer kept. Only the last {} are sent again",
+					getSessionId(), lastSequence, buffer.getCapacity());
+		}
+
+		List<Message> messages = buffer.getMessagesAfter(lastSequence);
+
+		LOG.debug("Resuming session {} after message {}: sending {} messages",
+				getSessionId(), lastSequence, messages.size());
+
+		// Sent again with their priority, so requests are not dropped as
+		// notifications. The client accepts them out of order, and discards
+		// the ones it already has
+		for (Message message : messages) {
+			try {
+				outboundQueue.send(message.getText(), message.getPriority());
+			} catch (Exception e) {
+				LOG.warn("Exception resuming session {}", getSessionId(), e);
+				return;
+			}
+		}
+	}
+
 	@Override
 	public void handleResponse(Response<JsonElement> response) {
 		pendingRequests.handleResponse(response);
 	}
 
+	/**
+	 * @return the queue of messages waiting to be written in the websocket
+	 */
+	public OutboundMessageQueue getOutboundQueue() {
+		return outboundQueue;
+	}
+
+	/**
+	 * Gives access to the requests sent to the client and waiting for a
+	 * response, mainly to monitor their number and timeout rate.
+	 *
+	 * @return the pending requests of this session
+	 */
+	public PendingRequests getPendingRequests() {
+		return pendingRequests;
+	}
+
 	@Override
 	public void close() throws IOException {
 		try {
-			execService.shutdown();
+			pendingRequests.closeAllPendingRequests(new TransportException(
+					"Session closed"));
 			wsSession.close();
 		} finally {
 			super.close();
@@ -165,6 +374,8 @@ public class WebSocketServerSession extends ServerSession {
 	public void updateWebSocketSession(WebSocketSession wsSession) {
 		synchronized (wsSession) {
 			this.wsSession = wsSession;
+			this.outboundQueue = JsonRpcWebSocketHandler
+					.getOutboundQueue(wsSession);
 		}
 	}
 
@@ -178,4 +389,13 @@ public class WebSocketServerSession extends ServerSession {
 		}
 	}
 
+	@Override
+	public void closeNativeSessionOnOverload(String reason) {
+		try {
+			wsSession.close(CloseStatus.SERVICE_OVERLOAD.withReason(reason));
+		} catch (IOException e) {
+			LOG.warn("Exception closing webSocket session", e);
+		}
+	}
+
 }
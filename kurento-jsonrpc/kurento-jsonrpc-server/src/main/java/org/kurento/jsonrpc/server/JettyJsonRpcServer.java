@@ -0,0 +1,279 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
+import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.adapter.jetty.JettyWebSocketHandlerAdapter;
+import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
+
+/**
+ * JSON-RPC server published in an embedded Jetty, without Spring Boot nor a
+ * servlet container. It uses the same protocol implementation as the
+ * server configured with {@code JsonRpcConfiguration}, so handlers behave
+ * the same in both, but it starts in a fraction of the time and it is
+ * easily embedded in applications and tests:
+ *
+ * <pre>
+ * try (JettyJsonRpcServer server = new JettyJsonRpcServer(8888)) {
+ * 	server.addHandler(new EchoJsonRpcHandler(), &quot;/jsonrpc&quot;);
+ * 	server.start();
+ * 	...
+ * }
+ * </pre>
+ *
+ * Only the websocket transport is published, and handlers are shared by all
+ * the sessions (handlers per session are created as Spring beans, so they
+ * need the Spring configuration). The Jetty websocket server is an optional
+ * dependency of this module, so applications using this class have to
+ * depend on {@code org.eclipse.jetty.websocket:websocket-server}.
+ *
+ * @since 6.0.0
+ */
+public class JettyJsonRpcServer implements Closeable {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(JettyJsonRpcServer.class);
+
+	private final Server server;
+
+	private final ServerConnector connector;
+
+	private final ContextHandlerCollection contexts = new ContextHandlerCollection();
+
+	private final SessionsManager sessionsManager = new SessionsManager();
+
+	private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+
+	private final List<ProtocolManager> protocolManagers = new ArrayList<>();
+
+	private final List<JsonRpcWebSocketHandler> wsHandlers = new ArrayList<>();
+
+	private volatile JsonRpcServerMetrics metrics;
+
+	private volatile boolean stopped;
+
+	/**
+	 * @param port
+	 *            port where the server listens in all the interfaces, or 0 to
+	 *            use any free port
+	 */
+	public JettyJsonRpcServer(int port) {
+		this(null, port);
+	}
+
+	/**
+	 * @param host
+	 *            address where the server listens, or null to listen in all
+	 *            the interfaces
+	 * @param port
+	 *            port where the server listens, or 0 to use any free port
+	 */
+	public JettyJsonRpcServer(String host, int port) {
+
+		this.server = new Server();
+
+		this.connector = new ServerConnector(server);
+		this.connector.setHost(host);
+		this.connector.setPort(port);
+
+		this.server.addConnector(connector);
+		this.server.setHandler(contexts);
+
+		this.taskScheduler.setThreadNamePrefix("jsonrpcTaskScheduler-");
+		this.taskScheduler.initialize();
+	}
+
+	/**
+	 * Publishes a handler in the given paths. Handlers have to be added
+	 * before the server is started.
+	 *
+	 * @param handler
+	 *            the handler, shared by all the sessions
+	 * @param paths
+	 *            paths where the handler is published, like "/jsonrpc"
+	 * @return this server
+	 */
+	public synchronized JettyJsonRpcServer addHandler(
+			JsonRpcHandler<?> handler, String... paths) {
+
+		if (server.isStarted()) {
+			throw new IllegalStateException(
+					"Handlers have to be added before starting the server");
+		}
+
+		if (handler instanceof PerSessionJsonRpcHandler) {
+			throw new IllegalArgumentException(
+					"Handlers per session are only supported in the Spring configuration");
+		}
+
+		ProtocolManager protocolManager = new ProtocolManager(handler,
+				sessionsManager, taskScheduler);
+		protocolManager.setMetrics(metrics);
+		protocolManagers.add(protocolManager);
+
+		JsonRpcWebSocketHandler wsHandler = new JsonRpcWebSocketHandler(
+				protocolManager);
+
+		wsHandler.configure(handler, Arrays.toString(paths));
+		wsHandlers.add(wsHandler);
+
+		for (String path : paths) {
+			ContextHandler context = new ContextHandler(path);
+			// Clients connect to the path itself, not to a resource under it
+			context.setAllowNullPathInfo(true);
+			context.setHandler(createWebSocketHandler(wsHandler));
+			contexts.addHandler(context);
+		}
+
+		return this;
+	}
+
+	private static WebSocketHandler createWebSocketHandler(
+			final JsonRpcWebSocketHandler wsHandler) {
+
+		return new WebSocketHandler() {
+			@Override
+			public void configure(WebSocketServletFactory factory) {
+				factory.setCreator(new WebSocketCreator() {
+					@Override
+					public Object createWebSocket(ServletUpgradeRequest req,
+							ServletUpgradeResponse resp) {
+
+						for (String protocol : req.getSubProtocols()) {
+							if (wsHandler.getSubProtocols().contains(protocol)) {
+								resp.setAcceptedSubProtocol(protocol);
+								break;
+							}
+						}
+
+						// The same adapter used by Spring when it runs on
+						// Jetty, so the handler sees the usual sessions
+						return new JettyWebSocketHandlerAdapter(wsHandler,
+								new JettyWebSocketSession(
+										new ConcurrentHashMap<String, Object>()));
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Collects the metrics of the requests processed by this server. They
+	 * are not exported through JMX unless
+	 * {@link JsonRpcServerMetrics#registerMBean(String)} is invoked.
+	 *
+	 * @param metrics
+	 *            the metrics, usually created with
+	 *            {@link #getSessionsManager()}, or null to not collect them
+	 */
+	public synchronized void setMetrics(JsonRpcServerMetrics metrics) {
+		this.metrics = metrics;
+		for (ProtocolManager protocolManager : protocolManagers) {
+			protocolManager.setMetrics(metrics);
+		}
+	}
+
+	public SessionsManager getSessionsManager() {
+		return sessionsManager;
+	}
+
+	/**
+	 * Starts the server. A stopped server can't be started again, a new one
+	 * has to be created instead.
+	 */
+	public void start() {
+
+		if (stopped) {
+			throw new IllegalStateException(
+					"A stopped server can't be started again");
+		}
+
+		try {
+			server.start();
+		} catch (Exception e) {
+			throw new KurentoException("Exception starting JSON-RPC server in "
+					+ "port " + connector.getPort(), e);
+		}
+		log.info("JSON-RPC server listening in port {}", getPort());
+	}
+
+	/**
+	 * @return the port where the server is listening, or -1 if it is not
+	 *         started
+	 */
+	public int getPort() {
+		return connector.getLocalPort();
+	}
+
+	/**
+	 * Stops the server. The sessions of the clients are closed, without
+	 * waiting for their reconnection, and the resources of the handlers are
+	 * released, so another server can publish them in the same port and
+	 * paths.
+	 */
+	public void stop() {
+		stopped = true;
+		try {
+			server.stop();
+		} catch (Exception e) {
+			throw new KurentoException("Exception stopping JSON-RPC server", e);
+		} finally {
+			destroyHandlers();
+			taskScheduler.shutdown();
+		}
+	}
+
+	private synchronized void destroyHandlers() {
+
+		for (ProtocolManager protocolManager : protocolManagers) {
+			protocolManager.destroy("Server stopped");
+		}
+
+		for (JsonRpcWebSocketHandler wsHandler : wsHandlers) {
+			wsHandler.destroy();
+		}
+		wsHandlers.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		stop();
+	}
+
+}
@@ -0,0 +1,355 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.server;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+import org.kurento.jsonrpc.internal.MBeanRegistration;
+import org.kurento.jsonrpc.internal.MethodMetrics;
+import org.kurento.jsonrpc.internal.MethodMetrics.Counters;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
+import org.kurento.jsonrpc.internal.ws.WebSocketServerSession;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Metrics of a JSON-RPC server: sessions by transport, sessions awaiting
+ * reconnection, latency histograms and rate of the requests of each method,
+ * messages queued to be sent, sessions closed by the ping watchdog and error
+ * codes of the responses.
+ *
+ * Session metrics are taken from the {@link SessionsManager} when they are
+ * read, so they have no cost while requests are processed. They can be
+ * published in JMX with {@link #registerMBean(String)} and are returned as
+ * JSON by {@link #toJson()}.
+ *
+ * Method names are sent by the clients, so the number of methods with their
+ * own statistics is limited. Requests of other methods are counted together
+ * under {@value #OTHER_METHODS}.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcServerMetrics implements JsonRpcServerMetricsMXBean {
+
+	public static final int DEFAULT_MAX_METHODS = //
+			MethodMetrics.DEFAULT_MAX_METHODS;
+
+	/**
+	 * Name of the statistics of the methods received once the maximum number
+	 * of methods has been reached.
+	 */
+	public static final String OTHER_METHODS = MethodMetrics.OTHER_METHODS;
+
+	/**
+	 * Statistics of the requests of a method, as published in JMX.
+	 */
+	public static class MethodStats extends MethodMetrics.Stats {
+
+		private final double rate;
+
+		@ConstructorProperties({ "count", "errors", "rate", "meanLatency",
+				"p50Latency", "p90Latency", "p99Latency", "maxLatency" })
+		public MethodStats(long count, long errors, double rate,
+				double meanLatency, double p50Latency, double p90Latency,
+				double p99Latency, double maxLatency) {
+			super(count, errors, meanLatency, p50Latency, p90Latency,
+					p99Latency, maxLatency);
+			this.rate = rate;
+		}
+
+		/**
+		 * @return mean requests per second since the last reset
+		 */
+		public double getRate() {
+			return rate;
+		}
+
+		@Override
+		protected String fieldsToString() {
+			return ", rate=" + rate + "/s";
+		}
+	}
+
+	private final SessionsManager sessionsManager;
+	private final MethodMetrics methods;
+
+	private final AtomicLong numRequests = new AtomicLong();
+	private final AtomicLong numNotifications = new AtomicLong();
+	private final AtomicLong numErrors = new AtomicLong();
+	private final AtomicLong pingWatchdogCloses = new AtomicLong();
+
+	private volatile long resetTime = System.nanoTime();
+
+	private final MBeanRegistration registration = new MBeanRegistration(
+			this, "JsonRpcServerMetrics");
+
+	public JsonRpcServerMetrics(SessionsManager sessionsManager) {
+		this(sessionsManager, DEFAULT_MAX_METHODS);
+	}
+
+	/**
+	 * @param maxMethods
+	 *            maximum number of methods with their own statistics
+	 */
+	public JsonRpcServerMetrics(SessionsManager sessionsManager,
+			int maxMethods) {
+
+		this.sessionsManager = sessionsManager;
+		this.methods = new MethodMetrics(maxMethods);
+	}
+
+	/**
+	 * Invoked when a request or notification is going to be processed by the
+	 * handler.
+	 */
+	public void requestReceived(String method, boolean notification) {
+		if (notification) {
+			numNotifications.incrementAndGet();
+		} else {
+			numRequests.incrementAndGet();
+		}
+		methods.requestStarted(method);
+	}
+
+	/**
+	 * Invoked when the response to a request is sent.
+	 *
+	 * @param latencyNanos
+	 *            time since the request was received
+	 * @param error
+	 *            the error of the response, or null if it has a result
+	 */
+	public void responseSent(String method, long latencyNanos,
+			ResponseError error) {
+
+		methods.requestResponded(method, latencyNanos, error);
+
+		if (error != null) {
+			numErrors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Invoked when the ping watchdog closes a session because the client has
+	 * stopped sending pings.
+	 */
+	public void pingWatchdogClosed() {
+		pingWatchdogCloses.incrementAndGet();
+	}
+
+	private double getElapsedSeconds() {
+		// Avoids infinite rates just after a reset
+		return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()
+				- resetTime));
+	}
+
+	private static boolean isAwaitingReconnection(ServerSession session) {
+		ScheduledFuture<?> closeTimer = session.getCloseTimerTask();
+		return closeTimer != null && !closeTimer.isDone();
+	}
+
+	@Override
+	public int getActiveSessions() {
+		int active = 0;
+		for (ServerSession session : sessionsManager.getSessions()) {
+			if (!isAwaitingReconnection(session)) {
+				active++;
+			}
+		}
+		return active;
+	}
+
+	@Override
+	public int getWebSocketSessions() {
+		int sessions = 0;
+		for (ServerSession session : sessionsManager.getSessions()) {
+			if (session instanceof WebSocketServerSession
+					&& !isAwaitingReconnection(session)) {
+				sessions++;
+			}
+		}
+		return sessions;
+	}
+
+	@Override
+	public int getHttpSessions() {
+		int sessions = 0;
+		for (ServerSession session : sessionsManager.getSessions()) {
+			if (session instanceof HttpRequestServerSession
+					&& !isAwaitingReconnection(session)) {
+				sessions++;
+			}
+		}
+		return sessions;
+	}
+
+	@Override
+	public int getSessionsAwaitingReconnection() {
+		int sessions = 0;
+		for (ServerSession session : sessionsManager.getSessions()) {
+			if (isAwaitingReconnection(session)) {
+				sessions++;
+			}
+		}
+		return sessions;
+	}
+
+	@Override
+	public int getOutboundQueueDepth() {
+		int depth = 0;
+		for (ServerSession session : sessionsManager.getSessions()) {
+			if (session instanceof WebSocketServerSession) {
+				OutboundMessageQueue queue = ((WebSocketServerSession) session)
+						.getOutboundQueue();
+				if (queue != null) {
+					depth += queue.getSize();
+				}
+			}
+		}
+		return depth;
+	}
+
+	@Override
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	@Override
+	public long getNumNotifications() {
+		return numNotifications.get();
+	}
+
+	@Override
+	public long getNumErrors() {
+		return numErrors.get();
+	}
+
+	@Override
+	public double getRequestRate() {
+		return (numRequests.get() + numNotifications.get())
+				/ getElapsedSeconds();
+	}
+
+	@Override
+	public long getPingWatchdogCloses() {
+		return pingWatchdogCloses.get();
+	}
+
+	@Override
+	public Map<Integer, Long> getErrorCodes() {
+		return methods.getErrorCodes();
+	}
+
+	@Override
+	public Map<String, MethodStats> getMethodStats() {
+		double elapsedSeconds = getElapsedSeconds();
+		Map<String, MethodStats> stats = new TreeMap<>();
+		for (Entry<String, Counters> e : methods.getCounters().entrySet()) {
+			stats.put(e.getKey(), getStats(e.getValue(), elapsedSeconds));
+		}
+		return stats;
+	}
+
+	/**
+	 * @param method
+	 *            the method of the requests
+	 * @return the statistics of the method, or null if no request with that
+	 *         method has been received or it is counted in
+	 *         {@value #OTHER_METHODS}
+	 */
+	public MethodStats getMethodStats(String method) {
+		Counters counters = methods.getCounters(method);
+		return counters == null ? null : getStats(counters,
+				getElapsedSeconds());
+	}
+
+	private static MethodStats getStats(Counters counters,
+			double elapsedSeconds) {
+		LatencyHistogram latencies = counters.getLatencies();
+		return new MethodStats(latencies.getCount(), counters.getErrors(),
+				counters.getRequests() / elapsedSeconds, latencies.getMean(),
+				latencies.getPercentile(50), latencies.getPercentile(90),
+				latencies.getPercentile(99), latencies.getMax());
+	}
+
+	/**
+	 * Resets the counters, rates and histograms. Session metrics are not
+	 * affected, as they are taken from the current sessions.
+	 */
+	@Override
+	public void reset() {
+		methods.reset();
+		numRequests.set(0);
+		numNotifications.set(0);
+		numErrors.set(0);
+		pingWatchdogCloses.set(0);
+		resetTime = System.nanoTime();
+	}
+
+	/**
+	 * @return all the metrics as a JSON object, with the same names as the
+	 *         attributes of the MBean
+	 */
+	public JsonObject toJson() {
+
+		JsonObject json = new JsonObject();
+		json.addProperty("activeSessions", getActiveSessions());
+		json.addProperty("webSocketSessions", getWebSocketSessions());
+		json.addProperty("httpSessions", getHttpSessions());
+		json.addProperty("sessionsAwaitingReconnection",
+				getSessionsAwaitingReconnection());
+		json.addProperty("outboundQueueDepth", getOutboundQueueDepth());
+		json.addProperty("numRequests", getNumRequests());
+		json.addProperty("numNotifications", getNumNotifications());
+		json.addProperty("numErrors", getNumErrors());
+		json.addProperty("requestRate", getRequestRate());
+		json.addProperty("pingWatchdogCloses", getPingWatchdogCloses());
+		json.add("errorCodes", JsonUtils.getGson().toJsonTree(getErrorCodes()));
+		json.add("methodStats",
+				JsonUtils.getGson().toJsonTree(getMethodStats()));
+		return json;
+	}
+
+	/**
+	 * Publishes these metrics in the platform MBean server as
+	 * {@code org.kurento.jsonrpc:type=JsonRpcServerMetrics,name=<name>}.
+	 *
+	 * @param name
+	 *            name that identifies the server in JMX
+	 * @return the name of the registered MBean
+	 */
+	public ObjectName registerMBean(String name) {
+		return registration.register(name);
+	}
+
+	public void unregisterMBean() {
+		registration.unregister();
+	}
+
+}
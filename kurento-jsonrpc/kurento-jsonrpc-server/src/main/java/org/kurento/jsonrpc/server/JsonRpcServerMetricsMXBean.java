@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.server;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link JsonRpcServerMetrics}. Latencies are in
+ * milliseconds and rates in requests per second.
+ *
+ * @since 6.0.0
+ */
+public interface JsonRpcServerMetricsMXBean {
+
+	/**
+	 * @return number of sessions, excluding the ones awaiting reconnection
+	 */
+	int getActiveSessions();
+
+	int getWebSocketSessions();
+
+	int getHttpSessions();
+
+	/**
+	 * @return number of sessions whose transport has been closed, kept until
+	 *         the client reconnects or the reconnection timeout expires
+	 */
+	int getSessionsAwaitingReconnection();
+
+	/**
+	 * @return messages waiting to be written in all the websocket sessions
+	 */
+	int getOutboundQueueDepth();
+
+	long getNumRequests();
+
+	long getNumNotifications();
+
+	long getNumErrors();
+
+	double getRequestRate();
+
+	long getPingWatchdogCloses();
+
+	/**
+	 * @return number of error responses for each error code
+	 */
+	Map<Integer, Long> getErrorCodes();
+
+	/**
+	 * @return statistics of the requests of each method
+	 */
+	Map<String, JsonRpcServerMetrics.MethodStats> getMethodStats();
+
+	void reset();
+
+}
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.server;
+
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.internal.JsonRpcMessageEncoder;
+import org.kurento.jsonrpc.internal.ws.WebSocketServerSession;
+import org.kurento.jsonrpc.message.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the same notification to many sessions, like the participants of a
+ * room or the subscribers of an event. The notification is serialized only
+ * once and the same text is queued in each websocket session. Sessions of
+ * other transports are sent the notification as usual.
+ *
+ * @since 6.0.0
+ */
+public class NotificationBroadcaster {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(NotificationBroadcaster.class);
+
+	private NotificationBroadcaster() {
+	}
+
+	/**
+	 * Sends the notification to all the sessions. A session failing to send
+	 * it doesn't prevent the notification from being sent to the rest.
+	 *
+	 * @param sessions
+	 *            the sessions
+	 * @param method
+	 *            the method of the notification
+	 * @param params
+	 *            the params of the notification, or null
+	 * @return the number of sessions where the notification has been sent
+	 */
+	public static int broadcast(Iterable<? extends Session> sessions,
+			String method, Object params) {
+
+		String jsonNotification = null;
+		int sent = 0;
+
+		for (Session session : sessions) {
+			try {
+				if (session instanceof WebSocketServerSession) {
+
+					if (jsonNotification == null) {
+						// Websocket sessions don't inject the sessionId in the
+						// messages they send, so the text is the same for all
+						jsonNotification = JsonRpcMessageEncoder.encode(
+								new Request<>(null, method, params), false);
+					}
+
+					((WebSocketServerSession) session)
+							.sendEncodedNotification(jsonNotification);
+				} else {
+					session.sendNotification(method, params);
+				}
+				sent++;
+
+			} catch (Exception e) {
+				log.warn("Exception sending notification {} to session {}",
+						method, session.getSessionId(), e);
+			}
+		}
+
+		return sent;
+	}
+
+}
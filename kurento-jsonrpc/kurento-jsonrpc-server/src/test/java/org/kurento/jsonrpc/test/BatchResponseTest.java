@@ -0,0 +1,168 @@
+package org.kurento.jsonrpc.test;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_REQUEST_CANCELLED;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.RequestDispatcher;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.BatchResponse;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.gson.JsonObject;
+
+public class BatchResponseTest {
+
+	static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getId());
+		}
+	}
+
+	static class Sender implements ResponseSender {
+
+		private final List<Message> messages = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void sendResponse(Message message) throws IOException {
+			messages.add(message);
+		}
+
+		@Override
+		public void sendPingResponse(Message message) throws IOException {
+			messages.add(message);
+		}
+	}
+
+	static class QueueExecutor implements Executor {
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		public void runAll() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		}
+	}
+
+	private static final ServerSessionFactory FACTORY = new ServerSessionFactory() {
+
+		@Override
+		public ServerSession createSession(String sessionId,
+				Object registerInfo, SessionsManager sessionsManager) {
+			return new HttpRequestServerSession(sessionId, registerInfo,
+					sessionsManager, "transport");
+		}
+
+		@Override
+		public void updateSessionOnReconnection(ServerSession session) {
+		}
+	};
+
+	private ThreadPoolTaskScheduler scheduler;
+	private ProtocolManager protocolManager;
+
+	@Before
+	public void createProtocolManager() {
+
+		scheduler = new ThreadPoolTaskScheduler();
+		scheduler.initialize();
+
+		protocolManager = new ProtocolManager(new Handler(),
+				new SessionsManager(), scheduler);
+	}
+
+	@After
+	public void shutdownScheduler() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void cancelledRequestTest() throws IOException {
+
+		Sender sender = new Sender();
+
+		protocolManager.processMessage("["
+				+ "{\"jsonrpc\":\"2.0\",\"method\":\"cancelRequest\","
+				+ "\"params\":{\"id\":2}},"
+				+ "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"echo\"},"
+				+ "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"echo\"}]",
+				FACTORY, sender, "transport");
+
+		List<Response<?>> responses = getBatchResponses(sender);
+
+		Assert.assertEquals(2, responses.size());
+		Assert.assertNull(responses.get(0).getError());
+		Assert.assertEquals(ERROR_REQUEST_CANCELLED, responses.get(1)
+				.getError().getCode());
+	}
+
+	@Test
+	public void dispatchedRequestsTest() throws IOException {
+
+		QueueExecutor executor = new QueueExecutor();
+		RequestDispatcher dispatcher = new RequestDispatcher(executor, 2,
+				OverloadPolicy.REJECT);
+
+		Sender sender = new Sender();
+
+		protocolManager.processMessage("["
+				+ "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"echo\"},"
+				+ "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"echo\"},"
+				+ "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"echo\"},"
+				+ "{\"jsonrpc\":\"2.0\",\"method\":\"cancelRequest\","
+				+ "\"params\":{\"id\":2}}]", FACTORY, sender, "transport",
+				dispatcher);
+
+		// Cancelled while queued and shed requests are answered too
+		executor.runAll();
+
+		List<Response<?>> responses = getBatchResponses(sender);
+
+		Assert.assertEquals(3, responses.size());
+		Assert.assertNull(responses.get(0).getError());
+		Assert.assertEquals(ERROR_REQUEST_CANCELLED, responses.get(1)
+				.getError().getCode());
+		Assert.assertEquals(ERROR_SERVER_OVERLOADED, responses.get(2)
+				.getError().getCode());
+	}
+
+	private List<Response<?>> getBatchResponses(Sender sender) {
+
+		Assert.assertEquals(1, sender.messages.size());
+		Assert.assertTrue(sender.messages.get(0) instanceof BatchResponse);
+
+		return ((BatchResponse) sender.messages.get(0)).getResponses();
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+public class HttpRequestServerSessionTest {
+
+	static class Sender implements ResponseSender {
+
+		private final List<Message> messages = new ArrayList<>();
+		private boolean failing;
+
+		@Override
+		public void sendResponse(Message message) throws IOException {
+			if (failing) {
+				throw new IOException("Client gone away");
+			}
+			messages.add(message);
+		}
+
+		@Override
+		public void sendPingResponse(Message message) throws IOException {
+			sendResponse(message);
+		}
+	}
+
+	@Test
+	public void failedPollTest() throws IOException {
+
+		HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, new SessionsManager(), "transport");
+
+		session.sendNotification("event1");
+		session.sendNotification("event2");
+
+		Sender failingSender = new Sender();
+		failingSender.failing = true;
+		session.processPollRequest(createPoll(1), failingSender);
+
+		// Requests not delivered are queued for the next poll
+		Assert.assertEquals(2, session.getNumQueuedRequests());
+
+		session.sendNotification("event3");
+
+		Sender sender = new Sender();
+		session.processPollRequest(createPoll(2), sender);
+
+		Assert.assertEquals(0, session.getNumQueuedRequests());
+		Assert.assertEquals("[event1, event2, event3]", getMethods(sender)
+				.toString());
+	}
+
+	@Test
+	public void maxQueuedRequestsTest() throws IOException {
+
+		HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, new SessionsManager(), "transport",
+				HttpRequestServerSession.DEFAULT_POLL_TIMEOUT, 2);
+
+		session.sendNotification("event1");
+		session.sendNotification("event2");
+
+		// The oldest notification is discarded
+		session.sendNotification("event3");
+		Assert.assertEquals(2, session.getNumQueuedRequests());
+
+		// Requests are rejected
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		session.sendRequest("request", null,
+				new Continuation<JsonElement>() {
+
+					@Override
+					public void onSuccess(JsonElement result) {
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						error.set(cause);
+					}
+				});
+
+		Assert.assertTrue(error.get() instanceof TransportException);
+
+		Sender sender = new Sender();
+		session.processPollRequest(createPoll(1), sender);
+
+		Assert.assertEquals("[event2, event3]", getMethods(sender)
+				.toString());
+	}
+
+	private Request<JsonElement> createPoll(int id) {
+		return new Request<JsonElement>(id, "poll", null);
+	}
+
+	private List<String> getMethods(Sender sender) {
+
+		Assert.assertEquals(1, sender.messages.size());
+
+		List<String> methods = new ArrayList<>();
+		for (Object request : (List<?>) ((Response<?>) sender.messages
+				.get(0)).getResult()) {
+			methods.add(((Request<?>) request).getMethod());
+		}
+		return methods;
+	}
+
+}
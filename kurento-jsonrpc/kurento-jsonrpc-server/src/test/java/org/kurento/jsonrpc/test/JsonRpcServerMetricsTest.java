@@ -0,0 +1,199 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.JsonRpcServerMetrics;
+import org.kurento.jsonrpc.server.JsonRpcServerMetrics.MethodStats;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcServerMetricsTest {
+
+	private static final int ERROR_CODE = 40401;
+
+	static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("fail".equals(request.getMethod())) {
+				transaction.sendError(ERROR_CODE, "Failed", null);
+			} else if (!transaction.isNotification()) {
+				transaction.sendResponse(request.getParams());
+			}
+		}
+	}
+
+	static class Sender implements ResponseSender {
+
+		private final List<Message> messages = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void sendResponse(Message message) throws IOException {
+			messages.add(message);
+		}
+
+		@Override
+		public void sendPingResponse(Message message) throws IOException {
+			messages.add(message);
+		}
+	}
+
+	private static final ServerSessionFactory FACTORY = new ServerSessionFactory() {
+
+		@Override
+		public ServerSession createSession(String sessionId,
+				Object registerInfo, SessionsManager sessionsManager) {
+			return new HttpRequestServerSession(sessionId, registerInfo,
+					sessionsManager, "transport");
+		}
+
+		@Override
+		public void updateSessionOnReconnection(ServerSession session) {
+		}
+	};
+
+	@Test
+	public void requestMetricsTest() throws IOException {
+
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.initialize();
+
+		SessionsManager sessionsManager = new SessionsManager();
+		JsonRpcServerMetrics metrics = new JsonRpcServerMetrics(
+				sessionsManager);
+
+		ProtocolManager protocolManager = new ProtocolManager(new Handler(),
+				sessionsManager, scheduler);
+		protocolManager.setMetrics(metrics);
+
+		Sender sender = new Sender();
+
+		try {
+			for (int i = 0; i < 10; i++) {
+				protocolManager.processMessage("{\"jsonrpc\":\"2.0\",\"id\":"
+						+ i + ",\"method\":\"echo\",\"params\":{}}", FACTORY,
+						sender, "transport");
+			}
+
+			protocolManager.processMessage(
+					"{\"jsonrpc\":\"2.0\",\"id\":10,\"method\":\"fail\"}",
+					FACTORY, sender, "transport");
+
+			protocolManager.processMessage(
+					"{\"jsonrpc\":\"2.0\",\"method\":\"event\"}", FACTORY,
+					sender, "transport");
+
+			// Pings are not requests to the handler
+			protocolManager.processMessage(
+					"{\"jsonrpc\":\"2.0\",\"id\":11,\"method\":\"ping\"}",
+					FACTORY, sender, "transport");
+
+			Assert.assertEquals(11, metrics.getNumRequests());
+			Assert.assertEquals(1, metrics.getNumNotifications());
+			Assert.assertEquals(1, metrics.getNumErrors());
+			Assert.assertEquals(Long.valueOf(1),
+					metrics.getErrorCodes().get(ERROR_CODE));
+			Assert.assertNull(metrics.getMethodStats("ping"));
+
+			MethodStats echoStats = metrics.getMethodStats("echo");
+			Assert.assertEquals(10, echoStats.getCount());
+			Assert.assertEquals(0, echoStats.getErrors());
+			Assert.assertTrue(echoStats.getRate() > 0);
+
+			Assert.assertEquals(1, metrics.getMethodStats("fail").getErrors());
+
+			Assert.assertEquals(1, metrics.getHttpSessions());
+			Assert.assertEquals(0, metrics.getWebSocketSessions());
+			Assert.assertEquals(0, metrics.getSessionsAwaitingReconnection());
+
+			// The session is kept until the reconnection timeout expires
+			protocolManager.closeSessionIfTimeout("transport", "closed");
+
+			Assert.assertEquals(0, metrics.getActiveSessions());
+			Assert.assertEquals(1, metrics.getSessionsAwaitingReconnection());
+
+			JsonObject json = metrics.toJson();
+			Assert.assertEquals(11, json.get("numRequests").getAsLong());
+			Assert.assertEquals(10,
+					json.getAsJsonObject("methodStats")
+					.getAsJsonObject("echo").get("count").getAsLong());
+
+			metrics.reset();
+			Assert.assertEquals(0, metrics.getNumRequests());
+			Assert.assertEquals(1, metrics.getSessionsAwaitingReconnection());
+
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void maxMethodsTest() {
+
+		JsonRpcServerMetrics metrics = new JsonRpcServerMetrics(
+				new SessionsManager(), 2);
+
+		for (int i = 0; i < 10; i++) {
+			metrics.requestReceived("method" + i, false);
+			metrics.responseSent("method" + i, 1000, null);
+		}
+
+		Assert.assertEquals(3, metrics.getMethodStats().size());
+		Assert.assertEquals(1, metrics.getMethodStats("method0").getCount());
+		Assert.assertEquals(1, metrics.getMethodStats("method1").getCount());
+		Assert.assertNull(metrics.getMethodStats("method2"));
+		Assert.assertEquals(8,
+				metrics.getMethodStats(JsonRpcServerMetrics.OTHER_METHODS)
+				.getCount());
+
+		// Known methods are still counted in their own statistics
+		metrics.requestReceived("method1", false);
+		metrics.responseSent("method1", 1000, null);
+		Assert.assertEquals(2, metrics.getMethodStats("method1").getCount());
+	}
+
+	@Test
+	public void mbeanTest() throws Exception {
+
+		JsonRpcServerMetrics metrics = new JsonRpcServerMetrics(
+				new SessionsManager());
+		metrics.requestReceived("echo", false);
+		metrics.pingWatchdogClosed();
+
+		ObjectName name = metrics.registerMBean("test:server");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		try {
+			Assert.assertEquals(1L, server.getAttribute(name, "NumRequests"));
+			Assert.assertEquals(1L,
+					server.getAttribute(name, "PingWatchdogCloses"));
+			Assert.assertEquals(0, server.getAttribute(name, "ActiveSessions"));
+		} finally {
+			metrics.unregisterMBean();
+		}
+
+		Assert.assertFalse(server.isRegistered(name));
+	}
+
+}
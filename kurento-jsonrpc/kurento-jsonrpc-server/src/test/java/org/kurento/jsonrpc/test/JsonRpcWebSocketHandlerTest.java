@@ -0,0 +1,64 @@
+package org.kurento.jsonrpc.test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.RequestDispatcher.OverloadPolicy;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
+import org.kurento.jsonrpc.message.Request;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcWebSocketHandlerTest {
+
+	static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+		}
+	}
+
+	@Test
+	public void dispatcherMBeanTest() throws Exception {
+
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.initialize();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(
+				"org.kurento.jsonrpc:type=RequestDispatcher,name="
+						+ ObjectName.quote("[/dispatched]"));
+
+		try {
+			for (int i = 0; i < 2; i++) {
+
+				Handler handler = new Handler();
+				handler.withRequestDispatch(10, OverloadPolicy.REJECT);
+
+				JsonRpcWebSocketHandler wsHandler = new JsonRpcWebSocketHandler(
+						new ProtocolManager(handler, new SessionsManager(),
+								scheduler));
+
+				// A handler published again with the same name is exported
+				wsHandler.configure(handler, "[/dispatched]");
+				Assert.assertTrue(server.isRegistered(name));
+
+				wsHandler.destroy();
+				Assert.assertFalse(server.isRegistered(name));
+			}
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+}
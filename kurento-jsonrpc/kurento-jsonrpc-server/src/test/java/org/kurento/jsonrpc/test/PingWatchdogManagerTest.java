@@ -3,13 +3,23 @@ package org.kurento.jsonrpc.test;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
 import org.junit.Test;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
 import org.kurento.jsonrpc.internal.server.PingWatchdogManager;
 import org.kurento.jsonrpc.internal.server.PingWatchdogManager.NativeSessionCloser;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 public class PingWatchdogManagerTest {
 
+	private static final int NUM_SESSIONS = 10000;
+
 	@Test
 	public void test() throws InterruptedException {
 
@@ -31,4 +41,53 @@ public class PingWatchdogManagerTest {
 		verify(closer).closeSession("TransportID");
 	}
 
+	@Test
+	public void manySessionsTest() throws InterruptedException {
+
+		HashedWheelTimer timer = new HashedWheelTimer("PingWatchdogTest", 10,
+				TimeUnit.MILLISECONDS, 64);
+
+		final Set<String> closedSessions = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		PingWatchdogManager manager = new PingWatchdogManager(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		}, new NativeSessionCloser() {
+			@Override
+			public void closeSession(String transportId) {
+				closedSessions.add(transportId);
+			}
+		}, timer);
+
+		manager.setPingWatchdog(true);
+
+		try {
+			// Odd sessions stop pinging after measuring the ping interval
+			for (int round = 0; round < 10; round++) {
+				for (int i = 0; i < NUM_SESSIONS; i++) {
+					if (round < 5 || i % 2 == 0) {
+						manager.pingReceived("Transport" + i);
+					}
+				}
+				Thread.sleep(50);
+			}
+
+			Assert.assertEquals(NUM_SESSIONS / 2, closedSessions.size());
+			for (String transportId : closedSessions) {
+				Assert.assertEquals(1,
+						Integer.parseInt(transportId.substring(9)) % 2);
+			}
+
+			// Pings don't schedule timeouts, only one per session is kept
+			// (and the one replaced when the interval was measured)
+			Assert.assertTrue(timer.getPendingTimeouts() < 2 * NUM_SESSIONS);
+
+		} finally {
+			timer.stop();
+		}
+	}
+
 }
@@ -0,0 +1,62 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.JsonRpcMessageEncoder;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.Priority;
+import org.kurento.jsonrpc.internal.ws.ResumptionBuffer;
+import org.kurento.jsonrpc.internal.ws.ResumptionBuffer.Message;
+import org.kurento.jsonrpc.message.Request;
+
+public class ResumptionBufferTest {
+
+	@Test
+	public void sequenceTest() {
+
+		ResumptionBuffer buffer = new ResumptionBuffer(4);
+
+		String json = buffer.add(JsonRpcMessageEncoder.encode(new Request<>(
+				null, "event", 1), false), Priority.NOTIFICATION);
+
+		Request<?> request = (Request<?>) JsonUtils.fromJsonMessage(json);
+		Assert.assertEquals(Long.valueOf(1), request.getSequence());
+		Assert.assertEquals("event", request.getMethod());
+
+		Assert.assertEquals("{\"seq\":2}",
+				buffer.add("{}", Priority.NOTIFICATION));
+	}
+
+	@Test
+	public void resumeTest() {
+
+		ResumptionBuffer buffer = new ResumptionBuffer(4);
+
+		for (int i = 1; i <= 6; i++) {
+			buffer.add("{\"value\":" + i + "}", i % 2 == 0 ? Priority.REQUEST
+					: Priority.NOTIFICATION);
+		}
+
+		// Messages 1 and 2 have been removed
+		Assert.assertTrue(buffer.canResumeAfter(2));
+		Assert.assertFalse(buffer.canResumeAfter(1));
+		Assert.assertTrue(buffer.canResumeAfter(6));
+		Assert.assertFalse(buffer.canResumeAfter(7));
+
+		List<Message> messages = buffer.getMessagesAfter(4);
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("{\"seq\":5,\"value\":5}", messages.get(0)
+				.getText());
+		Assert.assertEquals(Priority.NOTIFICATION, messages.get(0)
+				.getPriority());
+		Assert.assertEquals("{\"seq\":6,\"value\":6}", messages.get(1)
+				.getText());
+		Assert.assertEquals(Priority.REQUEST, messages.get(1).getPriority());
+
+		Assert.assertEquals(4, buffer.getMessagesAfter(0).size());
+		Assert.assertTrue(buffer.getMessagesAfter(6).isEmpty());
+	}
+
+}